@@ -0,0 +1,85 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GraphExporter.exportGraph for each format. Every call marks the graph as changed first, so it
+ * measures a real export rather than a copy from the session's render cache, and the preview is
+ * prepared again as it would be after a layout.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+    @Param({"er", "ba", "grid"})
+    public String model;
+    
+    @Param({"1000", "100000"})
+    public int nodes;
+    
+    @Param({"8"})
+    public int degree;
+    
+    @Param({"gexf", "graphml", "pdf", "png", "svg", "positions"})
+    public String format;
+    
+    // Only read by png: "auto", "preview" or "tiled"
+    @Param({"auto"})
+    public String renderer;
+    
+    private GephiSession session;
+    private File directory;
+    private String filePath;
+    private List<String> formats;
+    private JsonObject params;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        session = SyntheticGraphs.load("bench-export", model, nodes, degree);
+        directory = Files.createTempDirectory("gephi-mcp-bench-export").toFile();
+        filePath = new File(directory, "graph." + (format.equals("positions") ? "bin" : format)).getPath();
+        formats = Collections.singletonList(format);
+        params = new JsonObject();
+        params.addProperty("renderer", renderer);
+    }
+    
+    @Benchmark
+    public List<GraphExporter.ExportResult> export() throws Exception {
+        session.markChanged();
+        return GraphExporter.exportGraph(session, filePath, formats, params);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        GephiContext.getInstance().closeSession(session.getName());
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
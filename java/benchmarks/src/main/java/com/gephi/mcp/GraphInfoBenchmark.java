@@ -0,0 +1,62 @@
+package com.gephi.mcp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GraphInfo.getGraphInfo. Cold calls drop the session's structure cache first, so they include
+ * building the CSR snapshot and the degree and component statistics, as the first call after a
+ * load or an edit does; warm calls measure the cached path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class GraphInfoBenchmark {
+    @Param({"er", "ba", "grid"})
+    public String model;
+    
+    @Param({"1000", "100000", "1000000"})
+    public int nodes;
+    
+    @Param({"8"})
+    public int degree;
+    
+    @Param({"true", "false"})
+    public boolean cold;
+    
+    private GephiSession session;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        session = SyntheticGraphs.load("bench-info", model, nodes, degree);
+    }
+    
+    @Benchmark
+    public GraphInfo.GraphInfoResult graphInfo() throws Exception {
+        if (cold) {
+            session.markStructureChanged();
+        }
+        return GraphInfo.getGraphInfo(session);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        GephiContext.getInstance().closeSession(session.getName());
+    }
+}
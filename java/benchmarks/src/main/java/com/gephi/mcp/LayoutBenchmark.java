@@ -0,0 +1,95 @@
+package com.gephi.mcp;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ForceAtlas2 time per iteration, with and without Barnes-Hut, for the toolkit engine and the
+ * parallel one. Every JMH iteration starts again from the generated positions, so later iterations
+ * do not measure an already converged layout. Without Barnes-Hut an iteration is quadratic in the
+ * node count; narrow the run with -p barnesHut=true for graphs beyond 100k nodes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class LayoutBenchmark {
+    private static final int ITERATIONS = 10;
+    
+    @Param({"er", "ba", "grid"})
+    public String model;
+    
+    @Param({"1000", "10000", "100000"})
+    public int nodes;
+    
+    @Param({"8"})
+    public int degree;
+    
+    @Param({"gephi", "parallel"})
+    public String engine;
+    
+    @Param({"true", "false"})
+    public boolean barnesHut;
+    
+    private GephiSession session;
+    private LayoutProcessor.LayoutOptions options;
+    private Node[] initialNodes;
+    private float[] initialX;
+    private float[] initialY;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        session = SyntheticGraphs.load("bench-layout", model, nodes, degree);
+        options = new LayoutProcessor.LayoutOptions();
+        options.iterations = ITERATIONS;
+        options.engine = engine;
+        options.barnesHutOptimize = barnesHut;
+        options.persistPositions = false;
+        
+        Graph graph = session.getGraph();
+        initialNodes = graph.getNodes().toArray();
+        initialX = new float[initialNodes.length];
+        initialY = new float[initialNodes.length];
+        for (int i = 0; i < initialNodes.length; i++) {
+            initialX[i] = initialNodes[i].x();
+            initialY[i] = initialNodes[i].y();
+        }
+    }
+    
+    @Setup(Level.Iteration)
+    public void resetPositions() {
+        for (int i = 0; i < initialNodes.length; i++) {
+            initialNodes[i].setX(initialX[i]);
+            initialNodes[i].setY(initialY[i]);
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public LayoutProcessor.LayoutResult forceAtlas2() throws Exception {
+        return LayoutProcessor.applyForceAtlas2(session, options, null);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        GephiContext.getInstance().closeSession(session.getName());
+    }
+}
@@ -0,0 +1,67 @@
+package com.gephi.mcp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GraphLoader.loadGraph per input format. Each shot replaces the session's graph, as a repeated
+ * load_graph would. With cache=true the warmup fills the snapshot cache and the measured shots
+ * read from it; csv goes through EdgeListImporter, which never uses the cache.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+    @Param({"er", "ba", "grid"})
+    public String model;
+    
+    @Param({"1000", "100000", "1000000"})
+    public int nodes;
+    
+    @Param({"8"})
+    public int degree;
+    
+    @Param({"gexf", "graphml", "gml", "csv"})
+    public String format;
+    
+    @Param({"false"})
+    public boolean cache;
+    
+    private File file;
+    private GephiSession session;
+    private GraphLoader.LoadOptions options;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = SyntheticGraphs.file(model, nodes, degree, format);
+        session = GephiContext.getInstance().getSession("bench-load");
+        options = SyntheticGraphs.loadOptions(cache);
+    }
+    
+    @Benchmark
+    public GraphLoader.GraphResult load() throws Exception {
+        return GraphLoader.loadGraph(session, file.getPath(), "auto", options);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        GephiContext.getInstance().closeSession(session.getName());
+    }
+}
@@ -0,0 +1,278 @@
+package com.gephi.mcp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic graphs for the benchmarks. The same model, size, degree and seed always
+ * produce the same file, so results stay comparable across runs and releases. Edges are streamed
+ * straight to the writer, so even multi-million node graphs need no edge list in memory.
+ * <ul>
+ * <li>er: Erdos-Renyi G(n, p) with p = degree / (n - 1)</li>
+ * <li>ba: Barabasi-Albert with degree / 2 edges per new node</li>
+ * <li>grid: square 4-neighbour lattice; degree is ignored</li>
+ * </ul>
+ */
+public class SyntheticGraphs {
+    public static final List<String> MODELS = Arrays.asList("er", "ba", "grid");
+    public static final List<String> FORMATS = Arrays.asList("gexf", "graphml", "gml", "csv");
+    public static final long SEED = 42;
+    
+    private static final double SPREAD = 1000;
+    
+    private SyntheticGraphs() {
+    }
+    
+    interface EdgeSink {
+        void edge(int source, int target) throws IOException;
+    }
+    
+    /**
+     * Returns the graph's file, generating it on first use. Files are kept under
+     * java.io.tmpdir/gephi-mcp-bench (or -Dgephi.mcp.bench.dir) so every fork reuses them.
+     */
+    public static File file(String model, int nodes, int degree, String format) throws IOException {
+        String directory = System.getProperty("gephi.mcp.bench.dir",
+            new File(System.getProperty("java.io.tmpdir"), "gephi-mcp-bench").getPath());
+        Path path = new File(directory, model + "-" + nodes + "-" + degree + "-" + SEED + "." + format).toPath();
+        if (!Files.isRegularFile(path)) {
+            Files.createDirectories(path.getParent());
+            // Written aside and moved, so an interrupted run never leaves half a graph behind
+            Path partial = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".part");
+            try {
+                write(model, nodes, degree, SEED, format, partial.toFile());
+                Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+        }
+        return path.toFile();
+    }
+    
+    /**
+     * Loads the graph into a session, bypassing the snapshot cache and saved positions
+     */
+    public static GephiSession load(String sessionName, String model, int nodes, int degree) throws Exception {
+        GephiSession session = GephiContext.getInstance().getSession(sessionName);
+        GraphLoader.loadGraph(session, file(model, nodes, degree, "gexf").getPath(), "auto", loadOptions(false));
+        return session;
+    }
+    
+    public static GraphLoader.LoadOptions loadOptions(boolean cache) {
+        GraphLoader.LoadOptions options = new GraphLoader.LoadOptions();
+        options.cache = cache;
+        options.restorePositions = false;
+        // The generated graphs are undirected in every format
+        options.directed = false;
+        return options;
+    }
+    
+    public static void write(String model, int nodes, int degree, long seed, String format, File file) throws IOException {
+        if (!MODELS.contains(model)) {
+            throw new IllegalArgumentException("Unknown graph model: " + model);
+        }
+        if (!FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Unknown graph format: " + format);
+        }
+        if (nodes < 2) {
+            throw new IllegalArgumentException("nodes must be at least 2");
+        }
+        
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8), 1 << 20)) {
+            switch (format) {
+                case "gexf":
+                    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                        + "<gexf xmlns=\"http://gexf.net/1.3\" xmlns:viz=\"http://gexf.net/1.3/viz\" version=\"1.3\">\n"
+                        + "<graph defaultedgetype=\"undirected\">\n<nodes>\n");
+                    writeNodes(model, nodes, seed, (i, x, y, size) ->
+                        out.write("<node id=\"" + i + "\" label=\"" + i + "\"><viz:size value=\"" + size
+                            + "\"/><viz:position x=\"" + x + "\" y=\"" + y + "\" z=\"0\"/></node>\n"));
+                    out.write("</nodes>\n<edges>\n");
+                    edges(model, nodes, degree, new Random(seed), new EdgeSink() {
+                        private long id;
+                        
+                        @Override
+                        public void edge(int source, int target) throws IOException {
+                            out.write("<edge id=\"" + id++ + "\" source=\"" + source + "\" target=\"" + target + "\"/>\n");
+                        }
+                    });
+                    out.write("</edges>\n</graph>\n</gexf>\n");
+                    break;
+                case "graphml":
+                    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                        + "<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n"
+                        + "<key id=\"x\" for=\"node\" attr.name=\"x\" attr.type=\"float\"/>\n"
+                        + "<key id=\"y\" for=\"node\" attr.name=\"y\" attr.type=\"float\"/>\n"
+                        + "<key id=\"size\" for=\"node\" attr.name=\"size\" attr.type=\"float\"/>\n"
+                        + "<graph edgedefault=\"undirected\">\n");
+                    writeNodes(model, nodes, seed, (i, x, y, size) ->
+                        out.write("<node id=\"" + i + "\"><data key=\"x\">" + x + "</data><data key=\"y\">" + y
+                            + "</data><data key=\"size\">" + size + "</data></node>\n"));
+                    edges(model, nodes, degree, new Random(seed), (source, target) ->
+                        out.write("<edge source=\"" + source + "\" target=\"" + target + "\"/>\n"));
+                    out.write("</graph>\n</graphml>\n");
+                    break;
+                case "gml":
+                    out.write("graph [\n  directed 0\n");
+                    writeNodes(model, nodes, seed, (i, x, y, size) ->
+                        out.write("  node [ id " + i + " label \"" + i + "\" graphics [ x " + x + " y " + y
+                            + " w " + size + " ] ]\n"));
+                    edges(model, nodes, degree, new Random(seed), (source, target) ->
+                        out.write("  edge [ source " + source + " target " + target + " ]\n"));
+                    out.write("]\n");
+                    break;
+                default:
+                    // Edge lists carry no positions, like most real ones
+                    out.write("source,target\n");
+                    edges(model, nodes, degree, new Random(seed), (source, target) ->
+                        out.write(source + "," + target + "\n"));
+                    break;
+            }
+        }
+    }
+    
+    private interface NodeSink {
+        void node(int index, float x, float y, float size) throws IOException;
+    }
+    
+    /**
+     * Grid nodes sit on their lattice points, the others are scattered uniformly
+     */
+    private static void writeNodes(String model, int nodes, long seed, NodeSink sink) throws IOException {
+        // Separate stream from the edges, so positions do not depend on the degree
+        Random random = new Random(seed ^ 0x5deece66dL);
+        int side = side(nodes);
+        double step = 2 * SPREAD / side;
+        for (int i = 0; i < nodes; i++) {
+            float x;
+            float y;
+            if ("grid".equals(model)) {
+                x = (float) (-SPREAD + step * (i % side));
+                y = (float) (-SPREAD + step * (i / side));
+            } else {
+                x = (float) (SPREAD * (2 * random.nextDouble() - 1));
+                y = (float) (SPREAD * (2 * random.nextDouble() - 1));
+            }
+            // Two decimals keep Float.toString out of exponent notation, which GML does not read
+            sink.node(i, Math.round(x * 100) / 100f, Math.round(y * 100) / 100f, 4 + random.nextInt(8));
+        }
+    }
+    
+    static void edges(String model, int nodes, int degree, Random random, EdgeSink sink) throws IOException {
+        switch (model) {
+            case "er":
+                erdosRenyi(nodes, Math.min(1.0, degree / (double) (nodes - 1)), random, sink);
+                break;
+            case "ba":
+                barabasiAlbert(nodes, Math.max(1, degree / 2), random, sink);
+                break;
+            default:
+                grid(nodes, sink);
+                break;
+        }
+    }
+    
+    /**
+     * Batagelj and Brandes' skipping generator: draws the gap to the next present edge from a
+     * geometric distribution, so it runs in O(n + m) and never produces a duplicate
+     */
+    private static void erdosRenyi(int nodes, double p, Random random, EdgeSink sink) throws IOException {
+        if (p >= 1) {
+            for (int v = 1; v < nodes; v++) {
+                for (int w = 0; w < v; w++) {
+                    sink.edge(v, w);
+                }
+            }
+            return;
+        }
+        if (p <= 0) {
+            return;
+        }
+        double logQ = Math.log(1 - p);
+        int v = 1;
+        long w = -1;
+        while (v < nodes) {
+            w += 1 + (long) Math.floor(Math.log(1 - random.nextDouble()) / logQ);
+            while (w >= v && v < nodes) {
+                w -= v;
+                v++;
+            }
+            if (v < nodes) {
+                sink.edge(v, (int) w);
+            }
+        }
+    }
+    
+    /**
+     * Batagelj and Brandes' linear-time preferential attachment: every edge endpoint is kept in
+     * one array, so a uniform pick from it is a pick proportional to degree. Self-loops and repeated
+     * targets of the same new node are dropped, so a few nodes get slightly fewer than m edges.
+     */
+    private static void barabasiAlbert(int nodes, int m, Random random, EdgeSink sink) throws IOException {
+        int[] endpoints = new int[Math.multiplyExact(2 * m, nodes)];
+        int[] targets = new int[m];
+        for (int v = 0; v < nodes; v++) {
+            int count = 0;
+            for (int i = 0; i < m; i++) {
+                int slot = 2 * (v * m + i);
+                endpoints[slot] = v;
+                int target = endpoints[random.nextInt(slot + 1)];
+                endpoints[slot + 1] = target;
+                if (target != v && !contains(targets, count, target)) {
+                    targets[count++] = target;
+                    sink.edge(v, target);
+                }
+            }
+        }
+    }
+    
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static void grid(int nodes, EdgeSink sink) throws IOException {
+        int side = side(nodes);
+        for (int i = 0; i < nodes; i++) {
+            if ((i + 1) % side != 0 && i + 1 < nodes) {
+                sink.edge(i, i + 1);
+            }
+            if (i + side < nodes) {
+                sink.edge(i, i + side);
+            }
+        }
+    }
+    
+    private static int side(int nodes) {
+        return (int) Math.ceil(Math.sqrt(nodes));
+    }
+    
+    /**
+     * Writes one graph to a file, for use outside JMH:
+     * SyntheticGraphs &lt;model&gt; &lt;nodes&gt; &lt;degree&gt; &lt;format&gt; &lt;file&gt; [seed]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.err.println("Usage: SyntheticGraphs <" + String.join("|", MODELS) + "> <nodes> <degree> <"
+                + String.join("|", FORMATS) + "> <file> [seed]");
+            System.exit(1);
+        }
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : SEED;
+        write(args[0].toLowerCase(Locale.ROOT), Integer.parseInt(args[1]), Integer.parseInt(args[2]), seed,
+            args[3].toLowerCase(Locale.ROOT), new File(args[4]));
+    }
+}
@@ -0,0 +1,563 @@
+package com.gephi.mcp;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parallel Louvain community detection on the session's CSR snapshot.
+ * Each level is coloured so no two neighbours share a colour; a sweep visits the colours in
+ * turn, every node of the colour picks its best community in parallel and the moves are then
+ * applied together. The result only depends on the graph and the seed, not on thread timing.
+ */
+public class CommunityDetector {
+    // Gephi's Modularity statistic uses the same column, so its palettes and filters apply
+    public static final String COMMUNITY_COLUMN = "modularity_class";
+    
+    public static void main(String[] args) {
+        try {
+            CommunityResult result = detect(GephiContext.getInstance().getSession(GephiContext.DEFAULT_SESSION),
+                CommunityOptions.fromJson(new JsonObject()));
+                
+            Gson gson = new GsonBuilder().setPrettyPrinting().create();
+            System.out.println(gson.toJson(result));
+            
+        } catch (Exception e) {
+            System.err.println("Error detecting communities: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+    
+    public static CommunityResult detect(GephiSession session, CommunityOptions options) throws Exception {
+        GraphModel graphModel = session.getGraphModel();
+        Graph graph = graphModel.getGraphVisible();
+        
+        if (graph.getNodeCount() == 0) {
+            throw new Exception("No graph loaded. Please load a graph first.");
+        }
+        
+        long start = System.nanoTime();
+        ForkJoinPool pool = GephiContext.getInstance().getComputePool();
+        CsrGraph csr = session.getCsrGraph();
+        int n = csr.getNodeCount();
+        
+        float[] weights = csr.getWeights();
+        if (!options.weighted) {
+            weights = new float[weights.length];
+            Arrays.fill(weights, 1f);
+        }
+        Level level = new Level(csr.getNodeCount(), csr.getOffsets(), csr.getTargets(), weights);
+        
+        // community[i] is the community of original node i, refined level by level
+        int[] community = new int[n];
+        for (int i = 0; i < n; i++) {
+            community[i] = i;
+        }
+        int levels = 0;
+        int sweeps = 0;
+        while (levels < options.maxLevels) {
+            int[] assignment = new int[level.nodeCount];
+            sweeps += moveNodes(level, assignment, options, pool);
+            int count = renumber(assignment);
+            if (count == level.nodeCount) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                community[i] = assignment[community[i]];
+            }
+            levels++;
+            level = aggregate(level, assignment, count);
+        }
+        
+        int communityCount = relabelBySize(community);
+        double modularity = modularity(new Level(csr.getNodeCount(), csr.getOffsets(), csr.getTargets(), weights),
+            community, options.resolution, pool);
+            
+        Node[] nodes = csr.getNodes();
+        StatisticsProcessor.writeColumn(session, graphModel.getNodeTable(), COMMUNITY_COLUMN, Integer.class, csr,
+            i -> community[i]);
+        if (options.colorNodes) {
+            Color[] palette = palette(communityCount);
+            graph.writeLock();
+            try {
+                for (int i = 0; i < n; i++) {
+                    nodes[i].setColor(palette[community[i]]);
+                }
+            } finally {
+                graph.writeUnlock();
+            }
+        }
+        
+        int[] sizes = new int[communityCount];
+        for (int c : community) {
+            sizes[c]++;
+        }
+        int[] largest = Arrays.copyOf(sizes, Math.min(options.topK, communityCount));
+        
+        return new CommunityResult(communityCount, modularity, levels, sweeps, largest,
+            (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    /**
+     * Local moving phase for one level. Fills assignment with each node's community and
+     * returns the number of sweeps made.
+     */
+    private static int moveNodes(Level level, int[] assignment, CommunityOptions options, ForkJoinPool pool) {
+        int n = level.nodeCount;
+        int[] offsets = level.offsets;
+        int[] targets = level.targets;
+        float[] weights = level.weights;
+        double resolution = options.resolution;
+        
+        double[] degree = new double[n];
+        double[] total = new double[n];
+        ParallelChunks.forRange(pool, n, ParallelChunks.chunkCount(pool, n), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                double sum = 0;
+                for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                    sum += weights[e];
+                }
+                degree[i] = sum;
+            }
+        });
+        double m2 = 0;
+        for (int i = 0; i < n; i++) {
+            assignment[i] = i;
+            total[i] = degree[i];
+            m2 += degree[i];
+        }
+        if (m2 == 0) {
+            return 0;
+        }
+        
+        // Nodes of one colour share no edge, so they can move together without chasing each other
+        int[][] classes = colourClasses(level, options.seed);
+        int[] classOffsets = classes[0];
+        int[] members = classes[1];
+        int colours = classOffsets.length - 1;
+        
+        int[] move = new int[n];
+        double scale = resolution / m2;
+        double quality = modularity(level, assignment, resolution, pool);
+        int sweep = 0;
+        while (sweep < options.maxSweeps) {
+            sweep++;
+            int moved = 0;
+            for (int c = 0; c < colours; c++) {
+                int first = classOffsets[c];
+                int size = classOffsets[c + 1] - first;
+                ParallelChunks.forRange(pool, size, ParallelChunks.chunkCount(pool, size), (from, to) -> {
+                    CommunityWeights neighbours = new CommunityWeights();
+                    for (int k = first + from; k < first + to; k++) {
+                        int i = members[k];
+                        neighbours.clear();
+                        for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                            if (targets[e] != i) {
+                                neighbours.add(assignment[targets[e]], weights[e]);
+                            }
+                        }
+                        int own = assignment[i];
+                        int best = own;
+                        double bestGain = neighbours.get(own) - (total[own] - degree[i]) * degree[i] * scale;
+                        for (int j = 0; j < neighbours.size(); j++) {
+                            int candidate = neighbours.key(j);
+                            if (candidate == own) {
+                                continue;
+                            }
+                            double gain = neighbours.value(j) - total[candidate] * degree[i] * scale;
+                            if (gain > bestGain || (gain == bestGain && candidate < best)) {
+                                bestGain = gain;
+                                best = candidate;
+                            }
+                        }
+                        move[i] = best;
+                    }
+                });
+                // Applying is a cheap pass over the class and keeps the totals exact
+                for (int k = first; k < first + size; k++) {
+                    int i = members[k];
+                    int own = assignment[i];
+                    if (move[i] != own) {
+                        total[own] -= degree[i];
+                        total[move[i]] += degree[i];
+                        assignment[i] = move[i];
+                        moved++;
+                    }
+                }
+            }
+            if (moved == 0) {
+                break;
+            }
+            double next = modularity(level, assignment, resolution, pool);
+            if (next - quality < options.tolerance) {
+                break;
+            }
+            quality = next;
+        }
+        return sweep;
+    }
+    
+    /**
+     * Greedy first-fit colouring in a seeded node order, returned as {class offsets, members}.
+     * A linear pass that is cheap next to the sweeps it enables.
+     */
+    private static int[][] colourClasses(Level level, long seed) {
+        int n = level.nodeCount;
+        int[] offsets = level.offsets;
+        int[] targets = level.targets;
+        
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = (mix(i ^ seed) & 0xffffffff00000000L) | i;
+        }
+        Arrays.sort(keys);
+        
+        int[] colour = new int[n];
+        Arrays.fill(colour, -1);
+        // used[c] == i + 1 marks colour c as taken by a neighbour of i
+        int[] used = new int[16];
+        int colours = 0;
+        for (long key : keys) {
+            int i = (int) key;
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int c = colour[targets[e]];
+                if (c >= 0) {
+                    used[c] = i + 1;
+                }
+            }
+            int c = 0;
+            while (c < colours && used[c] == i + 1) {
+                c++;
+            }
+            colour[i] = c;
+            if (c == colours) {
+                colours++;
+                if (colours == used.length) {
+                    used = Arrays.copyOf(used, colours * 2);
+                }
+            }
+        }
+        
+        int[] classOffsets = new int[colours + 1];
+        for (int i = 0; i < n; i++) {
+            classOffsets[colour[i] + 1]++;
+        }
+        for (int c = 0; c < colours; c++) {
+            classOffsets[c + 1] += classOffsets[c];
+        }
+        int[] members = new int[n];
+        int[] cursor = Arrays.copyOf(classOffsets, colours);
+        for (int i = 0; i < n; i++) {
+            members[cursor[colour[i]]++] = i;
+        }
+        return new int[][] {classOffsets, members};
+    }
+    
+    /**
+     * Modularity with resolution: sum over communities of in_c / 2m - resolution * (tot_c / 2m)^2
+     */
+    private static double modularity(Level level, int[] assignment, double resolution, ForkJoinPool pool) {
+        int n = level.nodeCount;
+        int[] offsets = level.offsets;
+        int[] targets = level.targets;
+        float[] weights = level.weights;
+        int chunks = ParallelChunks.chunkCount(pool, n);
+        double[] chunkInside = new double[chunks];
+        double[] chunkTotal = new double[chunks];
+        double[] total = new double[n];
+        ParallelChunks.forChunks(pool, n, chunks, (chunk, from, to) -> {
+            double inside = 0;
+            double all = 0;
+            for (int i = from; i < to; i++) {
+                double degree = 0;
+                for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                    degree += weights[e];
+                    if (assignment[targets[e]] == assignment[i]) {
+                        inside += weights[e];
+                    }
+                }
+                total[i] = degree;
+                all += degree;
+            }
+            chunkInside[chunk] = inside;
+            chunkTotal[chunk] = all;
+        });
+        double inside = 0;
+        double m2 = 0;
+        for (int c = 0; c < chunks; c++) {
+            inside += chunkInside[c];
+            m2 += chunkTotal[c];
+        }
+        if (m2 == 0) {
+            return 0;
+        }
+        // Per-community totals; assignment values are node ids of this level, so n slots suffice
+        double[] communityTotal = new double[n];
+        for (int i = 0; i < n; i++) {
+            communityTotal[assignment[i]] += total[i];
+        }
+        double expected = 0;
+        for (double t : communityTotal) {
+            expected += (t / m2) * (t / m2);
+        }
+        return inside / m2 - resolution * expected;
+    }
+    
+    /**
+     * Collapses every community into one node. Internal weight becomes a self loop so the
+     * row sums, and with them modularity, carry over unchanged.
+     */
+    private static Level aggregate(Level fine, int[] assignment, int count) {
+        int n = fine.nodeCount;
+        int[] memberOffsets = new int[count + 1];
+        for (int i = 0; i < n; i++) {
+            memberOffsets[assignment[i] + 1]++;
+        }
+        for (int c = 0; c < count; c++) {
+            memberOffsets[c + 1] += memberOffsets[c];
+        }
+        int[] members = new int[n];
+        int[] cursor = Arrays.copyOf(memberOffsets, count);
+        for (int i = 0; i < n; i++) {
+            members[cursor[assignment[i]]++] = i;
+        }
+        
+        int[] lastRow = new int[count];
+        Arrays.fill(lastRow, -1);
+        int[] slot = new int[count];
+        int[] offsets = new int[count + 1];
+        int[] targets = new int[fine.targets.length];
+        float[] weights = new float[fine.targets.length];
+        int length = 0;
+        for (int c = 0; c < count; c++) {
+            offsets[c] = length;
+            for (int k = memberOffsets[c]; k < memberOffsets[c + 1]; k++) {
+                int u = members[k];
+                for (int e = fine.offsets[u]; e < fine.offsets[u + 1]; e++) {
+                    int target = assignment[fine.targets[e]];
+                    if (lastRow[target] != c) {
+                        lastRow[target] = c;
+                        slot[target] = length;
+                        targets[length] = target;
+                        weights[length] = fine.weights[e];
+                        length++;
+                    } else {
+                        weights[slot[target]] += fine.weights[e];
+                    }
+                }
+            }
+        }
+        offsets[count] = length;
+        return new Level(count, offsets, Arrays.copyOf(targets, length), Arrays.copyOf(weights, length));
+    }
+    
+    /**
+     * Maps community ids to 0..count-1 in order of first appearance and returns count
+     */
+    private static int renumber(int[] assignment) {
+        int[] id = new int[assignment.length];
+        Arrays.fill(id, -1);
+        int count = 0;
+        for (int i = 0; i < assignment.length; i++) {
+            int c = assignment[i];
+            if (id[c] < 0) {
+                id[c] = count++;
+            }
+            assignment[i] = id[c];
+        }
+        return count;
+    }
+    
+    /**
+     * Renumbers communities so 0 is the largest; ties keep first-appearance order
+     */
+    private static int relabelBySize(int[] community) {
+        int count = renumber(community);
+        int[] sizes = new int[count];
+        for (int c : community) {
+            sizes[c]++;
+        }
+        Integer[] order = new Integer[count];
+        for (int c = 0; c < count; c++) {
+            order[c] = c;
+        }
+        Arrays.sort(order, (a, b) -> sizes[a] != sizes[b] ? Integer.compare(sizes[b], sizes[a]) : Integer.compare(a, b));
+        int[] rank = new int[count];
+        for (int r = 0; r < count; r++) {
+            rank[order[r]] = r;
+        }
+        for (int i = 0; i < community.length; i++) {
+            community[i] = rank[community[i]];
+        }
+        return count;
+    }
+    
+    /**
+     * Well separated hues by golden-angle stepping; larger communities get the earlier colours
+     */
+    private static Color[] palette(int count) {
+        Color[] colors = new Color[count];
+        for (int c = 0; c < count; c++) {
+            float hue = (float) ((c * 0.618033988749895) % 1.0);
+            float saturation = 0.65f + 0.2f * ((c / 7) % 2);
+            float brightness = 0.9f - 0.15f * ((c / 3) % 2);
+            colors[c] = Color.getHSBColor(hue, saturation, brightness);
+        }
+        return colors;
+    }
+    
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+    
+    private static class Level {
+        final int nodeCount;
+        final int[] offsets;
+        final int[] targets;
+        final float[] weights;
+        
+        Level(int nodeCount, int[] offsets, int[] targets, float[] weights) {
+            this.nodeCount = nodeCount;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.weights = weights;
+        }
+    }
+    
+    /**
+     * Small open-addressing map from community to edge weight, reused across nodes
+     */
+    private static class CommunityWeights {
+        private int[] slots = new int[32];
+        private int[] keys = new int[16];
+        private double[] values = new double[16];
+        // Slot of each entry, so clearing does not have to probe through half-cleared chains
+        private int[] entrySlots = new int[16];
+        private int size;
+        
+        CommunityWeights() {
+            Arrays.fill(slots, -1);
+        }
+        
+        void clear() {
+            for (int k = 0; k < size; k++) {
+                slots[entrySlots[k]] = -1;
+            }
+            size = 0;
+        }
+        
+        void add(int key, double value) {
+            int slot = find(key);
+            if (slots[slot] >= 0) {
+                values[slots[slot]] += value;
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                entrySlots = Arrays.copyOf(entrySlots, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            entrySlots[size] = slot;
+            slots[slot] = size++;
+            if (size * 2 > slots.length) {
+                rehash();
+            }
+        }
+        
+        double get(int key) {
+            int slot = find(key);
+            return slots[slot] >= 0 ? values[slots[slot]] : 0;
+        }
+        
+        int size() { return size; }
+        int key(int index) { return keys[index]; }
+        double value(int index) { return values[index]; }
+        
+        private int find(int key) {
+            int mask = slots.length - 1;
+            int hash = key * 0x9e3779b9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (slots[slot] >= 0 && keys[slots[slot]] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+        
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            Arrays.fill(slots, -1);
+            for (int k = 0; k < size; k++) {
+                int slot = find(keys[k]);
+                slots[slot] = k;
+                entrySlots[k] = slot;
+            }
+        }
+    }
+    
+    public static class CommunityOptions {
+        public double resolution = 1.0;
+        public boolean weighted = true;
+        public long seed = 42;
+        public int maxLevels = 20;
+        public int maxSweeps = 50;
+        // Minimum modularity gain per sweep; smaller values mostly buy long tails of tiny moves
+        public double tolerance = 1e-4;
+        public boolean colorNodes = true;
+        public int topK = 10;
+        
+        public static CommunityOptions fromJson(JsonObject params) {
+            CommunityOptions options = new CommunityOptions();
+            if (params.has("resolution")) options.resolution = params.get("resolution").getAsDouble();
+            if (params.has("weighted")) options.weighted = params.get("weighted").getAsBoolean();
+            if (params.has("seed")) options.seed = params.get("seed").getAsLong();
+            if (params.has("maxLevels")) options.maxLevels = params.get("maxLevels").getAsInt();
+            if (params.has("maxSweeps")) options.maxSweeps = params.get("maxSweeps").getAsInt();
+            if (params.has("tolerance")) options.tolerance = params.get("tolerance").getAsDouble();
+            if (params.has("colorNodes")) options.colorNodes = params.get("colorNodes").getAsBoolean();
+            if (params.has("topK")) options.topK = params.get("topK").getAsInt();
+            
+            if (options.resolution <= 0) {
+                throw new IllegalArgumentException("resolution must be positive");
+            }
+            return options;
+        }
+    }
+    
+    public static class CommunityResult {
+        private final int communityCount;
+        private final double modularity;
+        private final int levels;
+        private final int sweeps;
+        private final int[] largestSizes;
+        private final long timeMs;
+        
+        public CommunityResult(int communityCount, double modularity, int levels, int sweeps, int[] largestSizes,
+                               long timeMs) {
+            this.communityCount = communityCount;
+            this.modularity = modularity;
+            this.levels = levels;
+            this.sweeps = sweeps;
+            this.largestSizes = largestSizes;
+            this.timeMs = timeMs;
+        }
+        
+        public int getCommunityCount() { return communityCount; }
+        public double getModularity() { return modularity; }
+        public int getLevels() { return levels; }
+        public int getSweeps() { return sweeps; }
+        public int[] getLargestSizes() { return largestSizes; }
+        public long getTimeMs() { return timeMs; }
+    }
+}
@@ -0,0 +1,173 @@
+package com.gephi.mcp;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed-sparse-row snapshot of a graph's adjacency.
+ * Every edge is stored in both endpoint rows, so rows hold the undirected neighbourhood
+ * and a row's length equals Gephi's degree (self loops count twice).
+ */
+public class CsrGraph {
+    private final int nodeCount;
+    private final int edgeCount;
+    private final int[] offsets;
+    private final int[] targets;
+    private final float[] weights;
+
+    // Only set for snapshots taken from a Gephi graph
+    private final Node[] nodes;
+    private final int[] indexByStoreId;
+
+    public CsrGraph(int nodeCount, int edgeCount, int[] offsets, int[] targets, float[] weights) {
+        this(nodeCount, edgeCount, offsets, targets, weights, null, null);
+    }
+
+    private CsrGraph(int nodeCount, int edgeCount, int[] offsets, int[] targets, float[] weights,
+                     Node[] nodes, int[] indexByStoreId) {
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.nodes = nodes;
+        this.indexByStoreId = indexByStoreId;
+    }
+
+    public static CsrGraph fromGraph(Graph graph) {
+        graph.readLock();
+        try {
+            Node[] nodes = graph.getNodes().toArray();
+            int n = nodes.length;
+
+            int maxStoreId = -1;
+            for (Node node : nodes) {
+                maxStoreId = Math.max(maxStoreId, node.getStoreId());
+            }
+            int[] indexByStoreId = new int[maxStoreId + 1];
+            Arrays.fill(indexByStoreId, -1);
+            for (int i = 0; i < n; i++) {
+                indexByStoreId[nodes[i].getStoreId()] = i;
+            }
+
+            // First pass counts row lengths, second pass fills the rows
+            int[] offsets = new int[n + 1];
+            int edgeCount = 0;
+            for (Edge edge : graph.getEdges()) {
+                offsets[indexByStoreId[edge.getSource().getStoreId()] + 1]++;
+                offsets[indexByStoreId[edge.getTarget().getStoreId()] + 1]++;
+                edgeCount++;
+            }
+            for (int i = 0; i < n; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            int[] targets = new int[offsets[n]];
+            float[] weights = new float[offsets[n]];
+            int[] cursor = Arrays.copyOf(offsets, n);
+            for (Edge edge : graph.getEdges()) {
+                int source = indexByStoreId[edge.getSource().getStoreId()];
+                int target = indexByStoreId[edge.getTarget().getStoreId()];
+                float weight = (float) edge.getWeight();
+
+                targets[cursor[source]] = target;
+                weights[cursor[source]++] = weight;
+                targets[cursor[target]] = source;
+                weights[cursor[target]++] = weight;
+            }
+
+            return new CsrGraph(n, edgeCount, offsets, targets, weights, nodes, indexByStoreId);
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    /**
+     * One-directional rows over the same node indices as this snapshot: row i holds the targets
+     * of i's outgoing edges, or the sources of its incoming edges when incoming is set.
+     * Undirected edges are kept in both rows.
+     */
+    public CsrGraph directed(Graph graph, boolean incoming) {
+        graph.readLock();
+        try {
+            int n = nodeCount;
+            int[] rowOffsets = new int[n + 1];
+            for (Edge edge : graph.getEdges()) {
+                int source = indexOf(edge.getSource());
+                int target = indexOf(edge.getTarget());
+                if (source < 0 || target < 0) {
+                    continue;
+                }
+                rowOffsets[(incoming ? target : source) + 1]++;
+                if (!edge.isDirected() && source != target) {
+                    rowOffsets[(incoming ? source : target) + 1]++;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                rowOffsets[i + 1] += rowOffsets[i];
+            }
+
+            int[] rowTargets = new int[rowOffsets[n]];
+            float[] rowWeights = new float[rowOffsets[n]];
+            int[] cursor = Arrays.copyOf(rowOffsets, n);
+            int count = 0;
+            for (Edge edge : graph.getEdges()) {
+                int source = indexOf(edge.getSource());
+                int target = indexOf(edge.getTarget());
+                if (source < 0 || target < 0) {
+                    continue;
+                }
+                float weight = (float) edge.getWeight();
+                int row = incoming ? target : source;
+                int other = incoming ? source : target;
+                rowTargets[cursor[row]] = other;
+                rowWeights[cursor[row]++] = weight;
+                if (!edge.isDirected() && source != target) {
+                    rowTargets[cursor[other]] = row;
+                    rowWeights[cursor[other]++] = weight;
+                }
+                count++;
+            }
+            return new CsrGraph(n, count, rowOffsets, rowTargets, rowWeights, nodes, indexByStoreId);
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    /**
+     * Approximate heap held by the arrays of this snapshot
+     */
+    long estimateBytes() {
+        return offsets.length * 4L + targets.length * 4L + (weights != null ? weights.length * 4L : 0)
+            + (nodes != null ? nodes.length * 8L : 0) + (indexByStoreId != null ? indexByStoreId.length * 4L : 0);
+    }
+
+    public int getNodeCount() { return nodeCount; }
+    public int getEdgeCount() { return edgeCount; }
+    public int[] getOffsets() { return offsets; }
+    public int[] getTargets() { return targets; }
+    public float[] getWeights() { return weights; }
+    public Node[] getNodes() { return nodes; }
+
+    public int degree(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Index of a Gephi node in this snapshot, or -1 if it was not part of it
+     */
+    public int indexOf(Node node) {
+        if (indexByStoreId == null || node == null) {
+            return -1;
+        }
+        int storeId = node.getStoreId();
+        if (storeId < 0 || storeId >= indexByStoreId.length) {
+            return -1;
+        }
+        int index = indexByStoreId[storeId];
+        return index >= 0 && nodes[index] == node ? index : -1;
+    }
+}
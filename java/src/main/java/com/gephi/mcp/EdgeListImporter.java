@@ -0,0 +1,417 @@
+package com.gephi.mcp;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Fast path for delimited edge lists ("source target [weight]" per line, optional
+ * Source/Target header). The file is scanned through memory-mapped windows, ids are
+ * matched as raw bytes against a primitive hash table, and nodes and edges go straight
+ * into the GraphModel under one write lock, without an importer Container in between.
+ */
+public class EdgeListImporter {
+    private static final long WINDOW_BYTES = 64L * 1024 * 1024;
+    private static final int BATCH_SIZE = 64 * 1024;
+    
+    private final GraphModel graphModel;
+    private final boolean directed;
+    
+    // Interned node ids: bytes live in one arena, the table maps hash slots to node indexes
+    private byte[] arena = new byte[1 << 16];
+    private int arenaLength;
+    private int[] idStart = new int[1 << 12];
+    private int[] idLength = new int[1 << 12];
+    private int[] hashes = new int[1 << 12];
+    private int[] table = new int[1 << 13];
+    private int nodeCount;
+    
+    private final List<Node> nodes = new ArrayList<>();
+    private final List<Node> pendingNodes = new ArrayList<>(BATCH_SIZE);
+    private int edgeCount;
+    
+    // Parsed edges waiting for their nodes to be inserted
+    private final int[] batchSource = new int[BATCH_SIZE];
+    private final int[] batchTarget = new int[BATCH_SIZE];
+    private final double[] batchWeight = new double[BATCH_SIZE];
+    private int batchSize;
+    
+    private byte delimiter;
+    private int weightField = 2;
+    
+    private EdgeListImporter(GraphModel graphModel, boolean directed) {
+        this.graphModel = graphModel;
+        this.directed = directed;
+        Arrays.fill(table, -1);
+    }
+    
+    /**
+     * Whether the fast path can read this file: explicit "edgelist" format, or a
+     * delimited file whose header starts with Source and Target columns
+     */
+    public static boolean accepts(File file, String format) throws IOException {
+        if ("edgelist".equals(format)) {
+            return true;
+        }
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        boolean delimited = name.endsWith(".csv") || name.endsWith(".tsv") || name.endsWith(".txt");
+        if (!("csv".equals(format) || ("auto".equals(format) && delimited))) {
+            return false;
+        }
+        String[] header = firstLine(file).toLowerCase(Locale.ROOT).split("[,;\\t ]");
+        return header.length >= 2 && unquote(header[0]).equals("source") && unquote(header[1]).equals("target");
+    }
+    
+    public static ImportResult importFile(File file, GraphModel graphModel, boolean directed) throws Exception {
+        EdgeListImporter importer = new EdgeListImporter(graphModel, directed);
+        importer.read(file);
+        return new ImportResult(importer.nodeCount, importer.edgeCount);
+    }
+    
+    private void read(File file) throws Exception {
+        Graph graph = graphModel.getGraph();
+        graph.writeLock();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            boolean firstLine = true;
+            
+            while (position < size) {
+                long length = Math.min(WINDOW_BYTES, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length >= size;
+                
+                int limit = (int) length;
+                if (!last) {
+                    // Stop at the last complete line; the next window starts right after it
+                    while (limit > 0 && buffer.get(limit - 1) != '\n') {
+                        limit--;
+                    }
+                    if (limit == 0) {
+                        throw new Exception("Line longer than " + WINDOW_BYTES + " bytes in " + file.getName());
+                    }
+                }
+                
+                int lineStart = 0;
+                while (lineStart < limit) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                        lineEnd++;
+                    }
+                    if (firstLine && hasContent(buffer, lineStart, lineEnd)) {
+                        firstLine = false;
+                        if (readHeader(buffer, lineStart, lineEnd)) {
+                            lineStart = lineEnd + 1;
+                            continue;
+                        }
+                    }
+                    parseLine(buffer, lineStart, lineEnd, graph);
+                    lineStart = lineEnd + 1;
+                }
+                position += limit;
+            }
+            flush(graph);
+        } finally {
+            graph.writeUnlock();
+        }
+    }
+    
+    /**
+     * Picks the delimiter from the first line and skips it if it is a header
+     */
+    private boolean readHeader(MappedByteBuffer buffer, int start, int end) {
+        String line = text(buffer, start, end).trim();
+        if (line.indexOf('\t') >= 0) {
+            delimiter = '\t';
+        } else if (line.indexOf(',') >= 0) {
+            delimiter = ',';
+        } else if (line.indexOf(';') >= 0) {
+            delimiter = ';';
+        } else {
+            delimiter = ' ';
+        }
+        
+        String[] fields = line.toLowerCase(Locale.ROOT).split(delimiter == ' ' ? " +" : String.valueOf((char) delimiter));
+        if (fields.length >= 2 && unquote(fields[0]).equals("source") && unquote(fields[1]).equals("target")) {
+            weightField = -1;
+            for (int i = 2; i < fields.length; i++) {
+                if (unquote(fields[i]).equals("weight")) {
+                    weightField = i;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    private void parseLine(MappedByteBuffer buffer, int start, int end, Graph graph) throws Exception {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        start = skipBlanks(buffer, start, end);
+        if (start >= end || buffer.get(start) == '#' || buffer.get(start) == '%') {
+            return;
+        }
+        
+        int source = -1;
+        int target = -1;
+        double weight = 1.0;
+        int field = 0;
+        int position = start;
+        while (position <= end && field <= Math.max(1, weightField)) {
+            int fieldEnd = position;
+            while (fieldEnd < end && buffer.get(fieldEnd) != delimiter) {
+                fieldEnd++;
+            }
+            int tokenStart = position;
+            int tokenEnd = fieldEnd;
+            if (delimiter == ' ') {
+                // Runs of spaces count as one separator
+                while (fieldEnd + 1 < end && buffer.get(fieldEnd + 1) == ' ') {
+                    fieldEnd++;
+                }
+            }
+            tokenStart = skipBlanks(buffer, tokenStart, tokenEnd);
+            while (tokenEnd > tokenStart && isBlank(buffer.get(tokenEnd - 1))) {
+                tokenEnd--;
+            }
+            if (tokenEnd - tokenStart >= 2 && buffer.get(tokenStart) == '"' && buffer.get(tokenEnd - 1) == '"') {
+                tokenStart++;
+                tokenEnd--;
+            }
+            
+            if (field == 0) {
+                source = nodeIndex(buffer, tokenStart, tokenEnd);
+            } else if (field == 1) {
+                target = nodeIndex(buffer, tokenStart, tokenEnd);
+            } else if (field == weightField && tokenEnd > tokenStart) {
+                weight = parseDouble(buffer, tokenStart, tokenEnd);
+            }
+            field++;
+            position = fieldEnd + 1;
+        }
+        
+        if (target < 0) {
+            throw new Exception("Expected source and target on line: " + text(buffer, start, end));
+        }
+        batchSource[batchSize] = source;
+        batchTarget[batchSize] = target;
+        batchWeight[batchSize] = weight;
+        if (++batchSize == BATCH_SIZE) {
+            flush(graph);
+        }
+    }
+    
+    /**
+     * Inserts the new nodes in one call, then the batch's edges
+     */
+    private void flush(Graph graph) {
+        if (!pendingNodes.isEmpty()) {
+            graph.addAllNodes(pendingNodes);
+            pendingNodes.clear();
+        }
+        
+        GraphFactory factory = graphModel.factory();
+        for (int i = 0; i < batchSize; i++) {
+            Node source = nodes.get(batchSource[i]);
+            Node target = nodes.get(batchTarget[i]);
+            
+            // Repeated pairs are merged and their weights summed, as the importer does by default
+            Edge existing = graph.getEdge(source, target);
+            if (existing != null && existing.isDirected() == directed) {
+                existing.setWeight(existing.getWeight() + batchWeight[i]);
+                continue;
+            }
+            graph.addEdge(factory.newEdge(source, target, 0, batchWeight[i], directed));
+            edgeCount++;
+        }
+        batchSize = 0;
+    }
+    
+    /**
+     * Looks up an id by its bytes, creating the node the first time it is seen
+     */
+    private int nodeIndex(MappedByteBuffer buffer, int start, int end) throws Exception {
+        if (end <= start) {
+            throw new Exception("Empty node id on line: " + text(buffer, start, end));
+        }
+        int hash = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ buffer.get(i)) * 0x01000193;
+        }
+        
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] >= 0) {
+            int index = table[slot];
+            if (hashes[index] == hash && sameBytes(buffer, start, end, index)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        
+        int index = nodeCount++;
+        int length = end - start;
+        if (index == idStart.length) {
+            idStart = Arrays.copyOf(idStart, index * 2);
+            idLength = Arrays.copyOf(idLength, index * 2);
+            hashes = Arrays.copyOf(hashes, index * 2);
+        }
+        if (arenaLength + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + length));
+        }
+        copy(buffer, start, arena, arenaLength, length);
+        idStart[index] = arenaLength;
+        idLength[index] = length;
+        hashes[index] = hash;
+        arenaLength += length;
+        table[slot] = index;
+        if (nodeCount * 2 > table.length) {
+            rehash();
+        }
+        
+        Node node = graphModel.factory().newNode(new String(arena, idStart[index], length, StandardCharsets.UTF_8));
+        node.setLabel((String) node.getId());
+        nodes.add(node);
+        pendingNodes.add(node);
+        return index;
+    }
+    
+    private boolean sameBytes(MappedByteBuffer buffer, int start, int end, int index) {
+        if (idLength[index] != end - start) {
+            return false;
+        }
+        int offset = idStart[index];
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) != arena[offset++]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void rehash() {
+        table = new int[table.length * 2];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        for (int index = 0; index < nodeCount; index++) {
+            int slot = hashes[index] & mask;
+            while (table[slot] >= 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = index;
+        }
+    }
+    
+    /**
+     * Plain decimal numbers are parsed in place; anything fancier goes through Double.parseDouble
+     */
+    private static double parseDouble(MappedByteBuffer buffer, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int scale = 0;
+        boolean fraction = false;
+        int digits = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fraction) {
+                    scale++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i < end || digits == 0 || digits > 15) {
+            return Double.parseDouble(text(buffer, start, end));
+        }
+        double value = mantissa / Math.pow(10, scale);
+        return negative ? -value : value;
+    }
+    
+    private static boolean hasContent(MappedByteBuffer buffer, int start, int end) {
+        int first = skipBlanks(buffer, start, end);
+        return first < end && buffer.get(first) != '#' && buffer.get(first) != '%';
+    }
+    
+    private static int skipBlanks(MappedByteBuffer buffer, int start, int end) {
+        while (start < end && isBlank(buffer.get(start))) {
+            start++;
+        }
+        return start;
+    }
+    
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+    
+    private static String text(MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[Math.max(0, end - start)];
+        copy(buffer, start, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static void copy(MappedByteBuffer buffer, int start, byte[] target, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(target, offset, length);
+    }
+    
+    private static String unquote(String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+    
+    private static String firstLine(File file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty() && !line.startsWith("#") && !line.startsWith("%")) {
+                    return line;
+                }
+            }
+        }
+        return "";
+    }
+    
+    public static class ImportResult {
+        private final int nodeCount;
+        private final int edgeCount;
+        
+        public ImportResult(int nodeCount, int edgeCount) {
+            this.nodeCount = nodeCount;
+            this.edgeCount = edgeCount;
+        }
+        
+        public int getNodeCount() { return nodeCount; }
+        public int getEdgeCount() { return edgeCount; }
+    }
+}
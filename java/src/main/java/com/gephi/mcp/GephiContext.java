@@ -1,84 +1,203 @@
 package com.gephi.mcp;
 
-import org.gephi.graph.api.GraphController;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.project.api.ProjectController;
 import org.gephi.project.api.Workspace;
 import org.gephi.io.importer.api.ImportController;
-import org.gephi.io.processor.plugin.DefaultProcessor;
-import org.gephi.layout.plugin.forceAtlas2.ForceAtlas2;
-import org.gephi.layout.plugin.forceAtlas2.ForceAtlas2Builder;
 import org.gephi.layout.api.LayoutController;
 import org.gephi.io.exporter.api.ExportController;
 import org.openide.util.Lookup;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
 public class GephiContext {
+    public static final String DEFAULT_SESSION = "default";
+
     private static GephiContext instance;
-    
+
     private ProjectController projectController;
-    private Workspace workspace;
-    private GraphModel graphModel;
     private ImportController importController;
     private ExportController exportController;
     private LayoutController layoutController;
-    
+
+    // Sessions in access order, eldest first, so eviction walks the LRU end
+    private final LinkedHashMap<String, GephiSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private final long heapBudgetBytes;
+    private final int maxSessions;
+
+    // Shared fork/join pool for the array-based graph algorithms
+    private final ForkJoinPool computePool = new ForkJoinPool(
+        Integer.getInteger("gephi.mcp.computeThreads", Runtime.getRuntime().availableProcessors()));
+
     private GephiContext() {
+        heapBudgetBytes = readHeapBudget();
+        maxSessions = Integer.getInteger("gephi.mcp.maxSessions", 64);
         initialize();
     }
-    
+
     public static synchronized GephiContext getInstance() {
         if (instance == null) {
             instance = new GephiContext();
         }
         return instance;
     }
-    
+
     private void initialize() {
         // Initialize controllers
         projectController = Lookup.getDefault().lookup(ProjectController.class);
         projectController.newProject();
-        workspace = projectController.getCurrentWorkspace();
-        
-        // Get the GraphModel for current workspace
-        GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
-        graphModel = graphController.getGraphModel();
-        
+
+        // The fresh project already has a workspace, use it for the default session
+        sessions.put(DEFAULT_SESSION, new GephiSession(DEFAULT_SESSION, projectController.getCurrentWorkspace()));
+
         // Initialize other controllers
         importController = Lookup.getDefault().lookup(ImportController.class);
         exportController = Lookup.getDefault().lookup(ExportController.class);
         layoutController = Lookup.getDefault().lookup(LayoutController.class);
     }
-    
+
+    private static long readHeapBudget() {
+        String configured = System.getProperty("gephi.mcp.sessionHeapBudgetMb", System.getenv("GEPHI_MCP_SESSION_HEAP_MB"));
+        if (configured != null && !configured.isEmpty()) {
+            return Long.parseLong(configured) * 1024L * 1024L;
+        }
+        // Leave headroom for imports and exports running on top of the resident graphs
+        return (long) (Runtime.getRuntime().maxMemory() * 0.6);
+    }
+
     public ProjectController getProjectController() {
         return projectController;
     }
-    
+
     public Workspace getWorkspace() {
-        return workspace;
+        return getSession(DEFAULT_SESSION).getWorkspace();
     }
-    
+
     public GraphModel getGraphModel() {
-        return graphModel;
+        return getSession(DEFAULT_SESSION).getGraphModel();
     }
-    
+
     public ImportController getImportController() {
         return importController;
     }
-    
+
     public ExportController getExportController() {
         return exportController;
     }
-    
+
     public LayoutController getLayoutController() {
         return layoutController;
     }
-    
-    public void reset() {
+
+    public ForkJoinPool getComputePool() {
+        return computePool;
+    }
+
+    public long getHeapBudgetBytes() {
+        return heapBudgetBytes;
+    }
+
+    /**
+     * Returns the named session, creating an empty workspace for it if needed
+     */
+    public synchronized GephiSession getSession(String name) {
+        if (name == null || name.isEmpty()) {
+            name = DEFAULT_SESSION;
+        }
+
+        GephiSession session = sessions.get(name);
+        if (session == null) {
+            Workspace workspace = projectController.newWorkspace(projectController.getCurrentProject());
+            session = new GephiSession(name, workspace);
+            sessions.put(name, session);
+            // Lookups don't change what is resident; only new sessions and growing graphs are checked
+            enforceHeapBudget(session);
+        }
+        session.touch();
+        return session;
+    }
+
+    /**
+     * Like getSession, but pins the session against eviction until releaseSession
+     */
+    public synchronized GephiSession acquireSession(String name) {
+        GephiSession session = getSession(name);
+        session.retain();
+        return session;
+    }
+
+    /**
+     * Like acquireSession, but fails if the session already exists, so the caller has it to itself
+     */
+    public synchronized GephiSession acquireNewSession(String name) throws Exception {
+        if (sessions.containsKey(name)) {
+            throw new Exception("Session already exists: " + name);
+        }
+        return acquireSession(name);
+    }
+
+    public synchronized void releaseSession(GephiSession session) {
+        session.release();
+        session.touch();
+    }
+
+    public synchronized GephiSession findSession(String name) {
+        return sessions.get(name == null || name.isEmpty() ? DEFAULT_SESSION : name);
+    }
+
+    public synchronized List<GephiSession> listSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    /**
+     * Swaps the session onto a fresh workspace, dropping the graph it held
+     */
+    public synchronized void resetSession(GephiSession session) {
+        Workspace old = session.getWorkspace();
+        session.attach(projectController.newWorkspace(projectController.getCurrentProject()));
+        projectController.deleteWorkspace(old);
+    }
+
+    public synchronized boolean closeSession(String name) {
+        GephiSession session = sessions.remove(name);
+        if (session == null) {
+            return false;
+        }
+        projectController.deleteWorkspace(session.getWorkspace());
+        return true;
+    }
+
+    /**
+     * Evicts least recently used sessions until the resident graphs fit the heap budget
+     */
+    public synchronized void enforceHeapBudget(GephiSession keep) {
+        long total = 0;
+        for (GephiSession session : sessions.values()) {
+            total += session.estimateHeapBytes();
+        }
+
+        Iterator<Map.Entry<String, GephiSession>> it = sessions.entrySet().iterator();
+        while ((total > heapBudgetBytes || sessions.size() > maxSessions) && it.hasNext()) {
+            GephiSession candidate = it.next().getValue();
+            if (candidate == keep || candidate.isBusy()) {
+                continue;
+            }
+            total -= candidate.estimateHeapBytes();
+            it.remove();
+            projectController.deleteWorkspace(candidate.getWorkspace());
+            System.err.println("Evicted idle session: " + candidate.getName());
+        }
+    }
+
+    public synchronized void reset() {
         // Create new project to reset state
+        sessions.clear();
         projectController.newProject();
-        workspace = projectController.getCurrentWorkspace();
-        
-        GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
-        graphModel = graphController.getGraphModel();
+        sessions.put(DEFAULT_SESSION, new GephiSession(DEFAULT_SESSION, projectController.getCurrentWorkspace()));
     }
-}
\ No newline at end of file
+}
@@ -1,95 +1,551 @@
 package com.gephi.mcp;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Persistent Gephi service that maintains graph state across operations
  */
 public class GephiService {
-    private static Gson gson = new Gson();
-    
+    // Operations that work on a session's graph and must not overlap on the same session
+    private static final Set<String> SESSION_OPERATIONS = new HashSet<>(Arrays.asList(
+        "load_graph", "get_graph_info", "apply_force_atlas2", "save_graph", "mutate_graph",
+        "compute_statistics", "detect_communities", "get_neighbourhood", "get_subgraph", "shortest_path",
+        "filter", "set_view", "get_nodes", "spatial_query", "remove_overlap"
+    ));
+
+    private static final Set<String> CONTROL_OPERATIONS = new HashSet<>(Arrays.asList(
+        "ping", "job_status", "cancel_job", "cancel_request", "metrics", "list_sessions"
+    ));
+
+    private static RequestDispatcher dispatcher;
+
     public static void main(String[] args) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
-             PrintWriter writer = new PrintWriter(System.out, true)) {
-            
-            String line;
-            while ((line = reader.readLine()) != null) {
-                try {
-                    JsonObject request = JsonParser.parseString(line).getAsJsonObject();
-                    String operation = request.get("operation").getAsString();
-                    JsonObject params = request.has("params") ? request.getAsJsonObject("params") : new JsonObject();
-                    
-                    JsonObject response = processOperation(operation, params);
-                    writer.println(gson.toJson(response));
-                    writer.flush();
-                    
-                } catch (Exception e) {
-                    JsonObject errorResponse = new JsonObject();
-                    errorResponse.addProperty("success", false);
-                    errorResponse.addProperty("error", e.getMessage());
-                    writer.println(gson.toJson(errorResponse));
-                    writer.flush();
-                }
+        // Used by the build to record loaded classes for the CDS archive: warm up, then exit. A
+        // failed step only leaves its classes out of the archive, so it does not fail the build.
+        if (args.length > 0 && "--warmup-only".equals(args[0])) {
+            List<String> errors = ServiceWarmup.run();
+            errors.forEach(error -> System.err.println("Warmup step failed: " + error));
+            System.exit(0);
+        }
+
+        boolean framed = Arrays.asList(args).contains("--framed");
+        // Only the channel writes to stdout; stray prints go to stderr rather than into a message
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+
+        try {
+            ServiceChannel channel = new ServiceChannel(System.in, stdout, framed);
+            dispatcher = new RequestDispatcher(channel);
+            announceReady();
+
+            String request;
+            while ((request = channel.read()) != null) {
+                dispatcher.submit(request);
             }
+
+            dispatcher.shutdown(5, TimeUnit.MINUTES);
         } catch (Exception e) {
             System.err.println("Service error: " + e.getMessage());
             e.printStackTrace();
         }
     }
-    
-    private static JsonObject processOperation(String operation, JsonObject params) {
+
+    /**
+     * Warms up Gephi, then tells the client it can send requests. Requests written before this
+     * wait in stdin until the read loop starts.
+     */
+    private static void announceReady() {
+        long start = System.nanoTime();
+        List<String> errors = ServiceWarmup.isEnabled() ? ServiceWarmup.run() : new ArrayList<>();
+        // The warmup calls would otherwise show up as the first requests
+        OperationMetrics.getInstance().reset();
+
+        JsonObject ready = new JsonObject();
+        ready.addProperty("event", "ready");
+        ready.addProperty("warmupMs", (System.nanoTime() - start) / 1_000_000);
+        if (!errors.isEmpty()) {
+            JsonArray warmupErrors = new JsonArray();
+            errors.forEach(warmupErrors::add);
+            ready.add("warmupErrors", warmupErrors);
+        }
+        dispatcher.send(ready);
+    }
+
+    /**
+     * Returns the session an operation has to be serialized on, or null if it can run right away
+     */
+    static String laneFor(String operation, JsonObject params) {
+        // A pipeline over inputs uses sessions of its own; otherwise it runs on one like its steps
+        boolean sessionPipeline = "pipeline".equals(operation) && !params.has("inputs");
+        if (!SESSION_OPERATIONS.contains(operation) && !"close_session".equals(operation) && !sessionPipeline) {
+            return null;
+        }
+        return params.has("session") ? params.get("session").getAsString() : GephiContext.DEFAULT_SESSION;
+    }
+
+    /**
+     * Operations that only read or signal service state; they never wait behind graph work
+     */
+    static boolean isControlOperation(String operation) {
+        return CONTROL_OPERATIONS.contains(operation);
+    }
+
+    static boolean isSessionOperation(String operation) {
+        return SESSION_OPERATIONS.contains(operation);
+    }
+
+    static JsonObject processOperation(String operation, JsonObject params) {
+        return processOperation(operation, params, null);
+    }
+
+    static JsonObject processOperation(String operation, JsonObject params, JsonElement requestId) {
         JsonObject response = new JsonObject();
-        
+        GephiContext context = GephiContext.getInstance();
+        String sessionName = params.has("session") ? params.get("session").getAsString() : GephiContext.DEFAULT_SESSION;
+        GephiSession session = null;
+        OperationMetrics.Call call = OperationMetrics.getInstance()
+            .start(operation, SESSION_OPERATIONS.contains(operation) ? sessionName : null, requestId);
+
         try {
+            if (SESSION_OPERATIONS.contains(operation)) {
+                // Pinned sessions are never evicted while the operation runs
+                session = context.acquireSession(sessionName);
+            }
+
             switch (operation) {
                 case "load_graph":
                     String filePath = params.get("filePath").getAsString();
                     String format = params.has("format") ? params.get("format").getAsString() : "auto";
-                    
-                    GraphLoader.GraphResult result = GraphLoader.loadGraph(filePath, format);
+
+                    GraphLoader.GraphResult result = GraphLoader.loadGraph(session, filePath, format, GraphLoader.LoadOptions.fromJson(params));
                     response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
                     response.addProperty("message", "Graph loaded successfully");
                     response.addProperty("nodeCount", result.getNodeCount());
                     response.addProperty("edgeCount", result.getEdgeCount());
+                    response.addProperty("fromCache", result.isFromCache());
+                    response.addProperty("positionsRestored", result.getPositionsRestored());
+                    response.addProperty("version", session.getVersion());
+                    break;
+
+                case "get_nodes":
+                    NodeStreamer.NodesOptions nodesOptions = NodeStreamer.NodesOptions.fromJson(params);
+                    NodeStreamer.NodesResult nodes = NodeStreamer.stream(session, nodesOptions, nodesEmitter(requestId));
+                    response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
+                    response.addProperty("nodeCount", nodes.getNodeCount());
+                    response.addProperty("totalNodes", nodes.getTotalNodes());
+                    response.addProperty("chunks", nodes.getChunks());
+                    JsonArray fields = new JsonArray();
+                    nodesOptions.fields.forEach(fields::add);
+                    response.add("fields", fields);
+                    JsonArray columns = new JsonArray();
+                    for (int i = 0; i < nodesOptions.columns.size(); i++) {
+                        JsonObject column = new JsonObject();
+                        column.addProperty("name", nodesOptions.columns.get(i));
+                        column.addProperty("type", nodes.getColumnTypes().get(i));
+                        columns.add(column);
+                    }
+                    response.add("columns", columns);
+                    response.addProperty("version", session.getVersion());
+                    response.addProperty("timeMs", nodes.getTimeMs());
+                    break;
+
+                case "mutate_graph":
+                    GraphMutator.MutationResult mutation = GraphMutator.apply(session, params);
+                    response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
+                    response.addProperty("message", "Graph updated");
+                    response.addProperty("nodesAdded", mutation.getNodesAdded());
+                    response.addProperty("nodesRemoved", mutation.getNodesRemoved());
+                    response.addProperty("edgesAdded", mutation.getEdgesAdded());
+                    response.addProperty("edgesRemoved", mutation.getEdgesRemoved());
+                    response.addProperty("nodesUpdated", mutation.getNodesUpdated());
+                    response.addProperty("edgesUpdated", mutation.getEdgesUpdated());
+                    response.addProperty("nodeCount", mutation.getNodeCount());
+                    response.addProperty("edgeCount", mutation.getEdgeCount());
+                    response.addProperty("version", mutation.getVersion());
                     break;
-                    
+
                 case "get_graph_info":
-                    GraphInfo.GraphInfoResult infoResult = GraphInfo.getGraphInfo();
+                    GraphInfo.GraphInfoResult infoResult = GraphInfo.getGraphInfo(session);
                     response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
                     response.addProperty("nodeCount", infoResult.getNodeCount());
                     response.addProperty("edgeCount", infoResult.getEdgeCount());
                     response.addProperty("directed", infoResult.isDirected());
                     response.addProperty("status", infoResult.getStatus());
+                    response.addProperty("version", session.getVersion());
+                    response.addProperty("structureVersion", infoResult.getStructureVersion());
+                    response.addProperty("filtered", infoResult.isFiltered());
+                    if (infoResult.getStats() != null) {
+                        response.add("stats", statsJson(infoResult.getStats()));
+                    }
                     break;
-                    
+
                 case "apply_force_atlas2":
-                    // Build args array for LayoutProcessor
-                    String[] layoutArgs = buildLayoutArgs(params);
-                    LayoutProcessor.LayoutResult layoutResult = LayoutProcessor.applyForceAtlas2(layoutArgs);
+                    LayoutProcessor.LayoutOptions layoutOptions = LayoutProcessor.LayoutOptions.fromJson(params);
+                    boolean async = params.has("async") && params.get("async").getAsBoolean();
+                    long progressInterval = params.has("progressIntervalMs") ? params.get("progressIntervalMs").getAsLong() : 1000;
+                    LayoutJob job = LayoutJob.create(sessionName, "ForceAtlas2", layoutOptions.iterations, progressInterval);
+                    job.setProgressListener(progressEmitter(requestId));
+
+                    if (async && dispatcher != null) {
+                        // Queue behind the current request so the session stays serialized
+                        // Pinned from now, so the session cannot be evicted while the job waits in the lane
+                        GephiSession pinned = context.acquireSession(sessionName);
+                        try {
+                            dispatcher.enqueueJob(sessionName, () -> runLayoutJob(job, pinned, layoutOptions));
+                        } catch (RuntimeException e) {
+                            context.releaseSession(pinned);
+                            throw e;
+                        }
+                        response.addProperty("success", true);
+                        response.addProperty("session", sessionName);
+                        response.addProperty("message", "Layout job started");
+                        response.addProperty("jobId", job.getId());
+                        break;
+                    }
+
+                    if (dispatcher != null) {
+                        // A client that times out stops the layout rather than leaving it to run unobserved
+                        dispatcher.onCancel(requestId, job::cancel);
+                    }
+                    LayoutProcessor.LayoutResult layoutResult;
+                    try {
+                        layoutResult = LayoutProcessor.applyForceAtlas2(session, layoutOptions, job);
+                    } catch (Exception e) {
+                        job.fail(e.getMessage());
+                        throw e;
+                    }
+                    job.complete(layoutResult);
                     response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
                     response.addProperty("message", "Layout applied successfully");
+                    response.addProperty("jobId", job.getId());
                     response.addProperty("iterations", layoutResult.getIterations());
+                    response.addProperty("maxIterations", layoutResult.getMaxIterations());
+                    response.addProperty("finalDisplacement", layoutResult.getFinalDisplacement());
+                    response.addProperty("status", layoutResult.getStatus());
+                    if (layoutResult.getLevels() > 1) {
+                        response.addProperty("levels", layoutResult.getLevels());
+                    }
+                    break;
+
+                case "compute_statistics":
+                    StatisticsProcessor.StatisticsResult statistics =
+                        StatisticsProcessor.compute(session, StatisticsProcessor.StatisticsOptions.fromJson(params));
+                    response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
+                    response.addProperty("message", "Statistics computed");
+                    response.addProperty("nodeCount", statistics.getNodeCount());
+                    response.addProperty("edgeCount", statistics.getEdgeCount());
+                    JsonArray metricResults = new JsonArray();
+                    for (StatisticsProcessor.MetricResult metric : statistics.getMetrics()) {
+                        metricResults.add(metricToJson(metric));
+                    }
+                    response.add("metrics", metricResults);
+                    response.addProperty("version", session.getVersion());
+                    break;
+
+                case "detect_communities":
+                    CommunityDetector.CommunityResult communities =
+                        CommunityDetector.detect(session, CommunityDetector.CommunityOptions.fromJson(params));
+                    response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
+                    response.addProperty("message", "Communities detected");
+                    response.addProperty("column", CommunityDetector.COMMUNITY_COLUMN);
+                    response.addProperty("communityCount", communities.getCommunityCount());
+                    response.addProperty("modularity", communities.getModularity());
+                    response.addProperty("levels", communities.getLevels());
+                    response.addProperty("sweeps", communities.getSweeps());
+                    JsonArray largest = new JsonArray();
+                    for (int communitySize : communities.getLargestSizes()) {
+                        largest.add(communitySize);
+                    }
+                    response.add("largestCommunities", largest);
+                    response.addProperty("timeMs", communities.getTimeMs());
+                    response.addProperty("version", session.getVersion());
+                    break;
+
+                case "get_neighbourhood":
+                case "get_subgraph":
+                case "shortest_path":
+                    GraphQuery.QueryResult query;
+                    if ("get_neighbourhood".equals(operation)) {
+                        query = GraphQuery.neighbourhood(session, params);
+                    } else if ("get_subgraph".equals(operation)) {
+                        query = GraphQuery.subgraph(session, params);
+                    } else {
+                        query = GraphQuery.shortestPath(session, params);
+                    }
+                    response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
+                    queryToJson(query, response);
+                    break;
+
+                case "filter":
+                    GraphFilter.FilterResult filtered = GraphFilter.apply(session, params);
+                    response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
+                    response.addProperty("message", "Filter applied");
+                    response.addProperty("view", filtered.getView());
+                    response.addProperty("nodeCount", filtered.getNodeCount());
+                    response.addProperty("edgeCount", filtered.getEdgeCount());
+                    response.addProperty("totalNodeCount", filtered.getTotalNodeCount());
+                    response.addProperty("totalEdgeCount", filtered.getTotalEdgeCount());
+                    JsonArray remaining = new JsonArray();
+                    for (int count : filtered.getRemainingAfterStep()) {
+                        remaining.add(count);
+                    }
+                    response.add("remainingAfterStep", remaining);
+                    response.addProperty("timeMs", filtered.getTimeMs());
+                    response.addProperty("version", session.getVersion());
                     break;
-                    
+
+                case "set_view":
+                    String activated = params.has("view") && !params.get("view").isJsonNull() ? params.get("view").getAsString() : null;
+                    GraphFilter.activate(session, activated);
+                    response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
+                    response.addProperty("message", activated == null ? "Showing the full graph" : "View activated");
+                    response.addProperty("nodeCount", session.getVisibleGraph().getNodeCount());
+                    response.addProperty("edgeCount", session.getVisibleGraph().getEdgeCount());
+                    response.addProperty("version", session.getVersion());
+                    break;
+
+                case "spatial_query":
+                    SpatialIndex spatialIndex = SpatialIndex.forSession(session);
+                    SpatialIndex.RangeResult spatial = spatialIndex.query(SpatialIndex.QueryOptions.fromJson(params));
+                    response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
+                    JsonArray hits = new JsonArray();
+                    for (SpatialIndex.Hit hit : spatial.getHits()) {
+                        JsonObject entry = new JsonObject();
+                        entry.addProperty("id", hit.getId());
+                        entry.addProperty("x", hit.getX());
+                        entry.addProperty("y", hit.getY());
+                        entry.addProperty("size", hit.getSize());
+                        if (params.has("point")) {
+                            entry.addProperty("distance", hit.getDistance());
+                        }
+                        hits.add(entry);
+                    }
+                    response.add("nodes", hits);
+                    response.addProperty("matches", spatial.getMatches());
+                    response.addProperty("truncated", spatial.getMatches() > spatial.getHits().size());
+                    response.addProperty("timeMicros", spatial.getTimeMicros());
+                    response.addProperty("version", session.getVersion());
+                    break;
+
+                case "remove_overlap":
+                    OverlapRemover.OverlapOptions overlapOptions = OverlapRemover.OverlapOptions.fromJson(params);
+                    OverlapRemover.OverlapResult overlap = OverlapRemover.remove(session, overlapOptions);
+                    response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
+                    response.addProperty("message", !overlapOptions.apply ? "Overlaps counted"
+                        : overlap.getOverlapsRemaining() == 0 ? "Overlaps removed" : "Overlaps reduced");
+                    response.addProperty("iterations", overlap.getIterations());
+                    response.addProperty("overlapsBefore", overlap.getOverlapsBefore());
+                    response.addProperty("overlapsRemaining", overlap.getOverlapsRemaining());
+                    response.addProperty("movedNodes", overlap.getMovedNodes());
+                    response.addProperty("maxDisplacement", overlap.getMaxDisplacement());
+                    if (!overlapOptions.apply) {
+                        JsonArray pairs = new JsonArray();
+                        for (String[] pair : overlap.getSamplePairs()) {
+                            JsonArray entry = new JsonArray();
+                            entry.add(pair[0]);
+                            entry.add(pair[1]);
+                            pairs.add(entry);
+                        }
+                        response.add("samplePairs", pairs);
+                    }
+                    response.addProperty("timeMs", overlap.getTimeMs());
+                    response.addProperty("version", session.getVersion());
+                    break;
+
+                case "job_status":
+                    if (params.has("jobId")) {
+                        LayoutJob found = LayoutJob.find(params.get("jobId").getAsString());
+                        if (found == null) {
+                            throw new Exception("Unknown job: " + params.get("jobId").getAsString());
+                        }
+                        response.addProperty("success", true);
+                        response.add("job", jobToJson(found));
+                    } else {
+                        JsonArray jobs = new JsonArray();
+                        for (LayoutJob listed : LayoutJob.list()) {
+                            jobs.add(jobToJson(listed));
+                        }
+                        response.addProperty("success", true);
+                        response.add("jobs", jobs);
+                    }
+                    break;
+
+                case "cancel_job":
+                    LayoutJob toCancel = LayoutJob.find(params.get("jobId").getAsString());
+                    if (toCancel == null) {
+                        throw new Exception("Unknown job: " + params.get("jobId").getAsString());
+                    }
+                    boolean cancelled = toCancel.cancel();
+                    response.addProperty("success", true);
+                    response.addProperty("cancelled", cancelled);
+                    response.addProperty("message", cancelled ? "Cancellation requested" : "Job already finished");
+                    response.add("job", jobToJson(toCancel));
+                    break;
+
+                case "cancel_request":
+                    boolean requestCancelled = dispatcher != null && dispatcher.cancelRequest(params.get("requestId"));
+                    response.addProperty("success", true);
+                    response.addProperty("cancelled", requestCancelled);
+                    response.addProperty("message", requestCancelled ? "Cancellation requested" : "Request already finished");
+                    break;
+
                 case "save_graph":
                     String outputPath = params.get("filePath").getAsString();
-                    String outputFormat = params.get("format").getAsString();
-                    
-                    GraphExporter.ExportResult exportResult = GraphExporter.exportGraph(outputPath, outputFormat);
+                    List<String> outputFormats = new ArrayList<>();
+                    if (params.has("formats")) {
+                        for (JsonElement requested : params.getAsJsonArray("formats")) {
+                            outputFormats.add(requested.getAsString().toLowerCase());
+                        }
+                    } else if (params.has("format")) {
+                        outputFormats.add(params.get("format").getAsString().toLowerCase());
+                    }
+                    if (outputFormats.isEmpty()) {
+                        throw new Exception("save_graph needs format or formats");
+                    }
+
+                    List<GraphExporter.ExportResult> exportResults =
+                        GraphExporter.exportGraph(session, outputPath, outputFormats, params);
                     response.addProperty("success", true);
+                    response.addProperty("session", sessionName);
                     response.addProperty("message", "Graph exported successfully");
+                    response.addProperty("version", session.getVersion());
+                    response.addProperty("fileSize", exportResults.get(0).getFileSize());
+                    JsonArray files = new JsonArray();
+                    for (GraphExporter.ExportResult exportResult : exportResults) {
+                        JsonObject fileJson = new JsonObject();
+                        fileJson.addProperty("filePath", exportResult.getFilePath());
+                        fileJson.addProperty("format", exportResult.getFormat());
+                        fileJson.addProperty("fileSize", exportResult.getFileSize());
+                        fileJson.addProperty("cached", exportResult.isCached());
+                        if (exportResult.getRender() != null) {
+                            TiledPngRenderer.RenderResult render = exportResult.getRender();
+                            JsonObject renderJson = new JsonObject();
+                            renderJson.addProperty("width", render.getWidth());
+                            renderJson.addProperty("height", render.getHeight());
+                            renderJson.addProperty("strips", render.getStrips());
+                            renderJson.addProperty("tiles", render.getTiles());
+                            renderJson.addProperty("timeMs", render.getTimeMs());
+                            fileJson.add("render", renderJson);
+                        }
+                        if (exportResult.getPositions() != null) {
+                            PositionsExporter.PositionsResult positions = exportResult.getPositions();
+                            // Ids are 63-bit, so send them as strings to keep JavaScript from rounding them
+                            fileJson.addProperty("exportId", Long.toString(positions.getExportId()));
+                            if (positions.isDelta()) {
+                                fileJson.addProperty("baseExportId", Long.toString(positions.getBaseExportId()));
+                            }
+                            fileJson.addProperty("delta", positions.isDelta());
+                            fileJson.addProperty("timeMs", positions.getTimeMs());
+                        }
+                        files.add(fileJson);
+                    }
+                    response.add("files", files);
                     break;
-                    
+
+                case "list_sessions":
+                    JsonArray sessions = new JsonArray();
+                    for (GephiSession resident : context.listSessions()) {
+                        JsonObject entry = new JsonObject();
+                        entry.addProperty("name", resident.getName());
+                        entry.addProperty("nodeCount", resident.getGraph().getNodeCount());
+                        entry.addProperty("edgeCount", resident.getGraph().getEdgeCount());
+                        entry.addProperty("estimatedBytes", resident.estimateHeapBytes());
+                        entry.addProperty("lastAccess", resident.getLastAccess());
+                        entry.addProperty("busy", resident.isBusy());
+                        JsonArray views = new JsonArray();
+                        for (String viewName : resident.getViewNames()) {
+                            views.add(viewName);
+                        }
+                        entry.add("views", views);
+                        sessions.add(entry);
+                    }
+                    response.addProperty("success", true);
+                    response.add("sessions", sessions);
+                    response.addProperty("heapBudgetBytes", context.getHeapBudgetBytes());
+                    break;
+
+                case "close_session":
+                    boolean closed = context.closeSession(sessionName);
+                    response.addProperty("success", closed);
+                    if (closed) {
+                        response.addProperty("message", "Session closed: " + sessionName);
+                    } else {
+                        response.addProperty("error", "Unknown session: " + sessionName);
+                    }
+                    break;
+
+                case "pipeline":
+                    PipelineRunner.PipelineResult pipeline = PipelineRunner.run(params, requestId, pipelineEmitter(requestId));
+                    response.addProperty("success", pipeline.isSuccess());
+                    response.addProperty("message", pipeline.isSuccess() ? "Pipeline completed" : "Pipeline failed");
+                    response.addProperty("timeMs", pipeline.getTimeMs());
+                    JsonArray runs = new JsonArray();
+                    for (PipelineRunner.RunResult run : pipeline.getRuns()) {
+                        JsonObject runJson = new JsonObject();
+                        if (run.getInput() != null) {
+                            runJson.addProperty("input", run.getInput());
+                        }
+                        runJson.addProperty("session", run.getSession());
+                        runJson.addProperty("success", run.isSuccess());
+                        if (run.getError() != null) {
+                            runJson.addProperty("error", run.getError());
+                        }
+                        runJson.addProperty("timeMs", run.getTimeMs());
+                        JsonArray stepResults = new JsonArray();
+                        for (PipelineRunner.StepResult step : run.getSteps()) {
+                            JsonObject stepJson = new JsonObject();
+                            stepJson.addProperty("operation", step.getOperation());
+                            stepJson.addProperty("timeMs", step.getTimeMs());
+                            stepJson.add("result", step.getResponse());
+                            stepResults.add(stepJson);
+                        }
+                        runJson.add("steps", stepResults);
+                        runs.add(runJson);
+                    }
+                    response.add("runs", runs);
+                    break;
+
+                case "metrics":
+                    OperationMetrics metrics = OperationMetrics.getInstance();
+                    String only = params.has("operation") ? params.get("operation").getAsString() : null;
+                    response.addProperty("success", true);
+                    response.addProperty("since", metrics.getSince());
+                    response.add("operations", metricsJson(metrics.snapshot(only)));
+                    response.add("heap", heapJson(metrics.heap()));
+                    if (params.has("reset") && params.get("reset").getAsBoolean()) {
+                        metrics.reset();
+                    }
+                    break;
+
                 case "ping":
                     response.addProperty("success", true);
                     response.addProperty("message", "Service is running");
                     break;
-                    
+
                 default:
                     response.addProperty("success", false);
                     response.addProperty("error", "Unknown operation: " + operation);
@@ -97,19 +553,249 @@ public class GephiService {
         } catch (Exception e) {
             response.addProperty("success", false);
             response.addProperty("error", e.getMessage());
+        } finally {
+            call.finish(response.has("success") && response.get("success").getAsBoolean(), session, params);
+            if (session != null) {
+                context.releaseSession(session);
+            }
         }
-        
+
         return response;
     }
-    
-    private static String[] buildLayoutArgs(JsonObject params) {
-        // First arg is unused (was originally algorithm name)
-        String iterations = String.valueOf(params.has("iterations") ? params.get("iterations").getAsInt() : 100);
-        String adjustSizes = String.valueOf(params.has("adjustSizes") ? params.get("adjustSizes").getAsBoolean() : false);
-        String barnesHut = String.valueOf(params.has("barnesHutOptimize") ? params.get("barnesHutOptimize").getAsBoolean() : true);
-        String gravity = String.valueOf(params.has("gravity") ? params.get("gravity").getAsDouble() : 1.0);
-        String scaling = String.valueOf(params.has("scalingRatio") ? params.get("scalingRatio").getAsDouble() : 2.0);
-        
-        return new String[]{"forceatlas2", iterations, adjustSizes, barnesHut, gravity, scaling};
+
+    /**
+     * Runs a queued layout on the session pinned when it was queued, and releases the pin
+     */
+    private static void runLayoutJob(LayoutJob job, GephiSession session, LayoutProcessor.LayoutOptions layoutOptions) {
+        GephiContext context = GephiContext.getInstance();
+        if (job.isCancelRequested()) {
+            context.releaseSession(session);
+            job.complete(null);
+            return;
+        }
+
+        try {
+            job.complete(LayoutProcessor.applyForceAtlas2(session, layoutOptions, job));
+        } catch (Exception e) {
+            job.fail(e.getMessage());
+        } finally {
+            context.releaseSession(session);
+        }
+    }
+
+    /**
+     * Reports each finished pipeline step, which also keeps the client's request alive
+     */
+    private static Consumer<JsonObject> pipelineEmitter(JsonElement requestId) {
+        return event -> {
+            if (dispatcher == null) {
+                return;
+            }
+            event.addProperty("event", "pipeline_progress");
+            if (requestId != null) {
+                event.add("requestId", requestId);
+            }
+            dispatcher.send(event);
+        };
+    }
+
+    /**
+     * Sends each get_nodes chunk as a nodes_chunk event carrying the packed arrays as its payload
+     */
+    private static BiConsumer<JsonObject, ByteBuffer> nodesEmitter(JsonElement requestId) {
+        return (header, payload) -> {
+            if (dispatcher == null) {
+                return;
+            }
+            header.addProperty("event", "nodes_chunk");
+            if (requestId != null) {
+                header.add("requestId", requestId);
+            }
+            dispatcher.send(header, payload);
+        };
+    }
+
+    /**
+     * Streams job progress to the client as unsolicited event messages
+     */
+    private static Consumer<LayoutJob> progressEmitter(JsonElement requestId) {
+        return job -> {
+            if (dispatcher == null) {
+                return;
+            }
+            JsonObject event = new JsonObject();
+            event.addProperty("event", "job_progress");
+            if (requestId != null) {
+                event.add("requestId", requestId);
+            }
+            event.add("job", jobToJson(job));
+            dispatcher.send(event);
+        };
+    }
+
+    private static JsonObject jobToJson(LayoutJob job) {
+        JsonObject json = new JsonObject();
+        json.addProperty("jobId", job.getId());
+        json.addProperty("session", job.getSession());
+        json.addProperty("algorithm", job.getAlgorithm());
+        json.addProperty("status", job.getStatus());
+        json.addProperty("iterations", job.getIterations());
+        json.addProperty("requestedIterations", job.getRequestedIterations());
+        json.addProperty("elapsedMs", job.getElapsedMillis());
+        if (!Double.isNaN(job.getEnergy())) {
+            json.addProperty("energy", job.getEnergy());
+        }
+        if (job.getResult() != null) {
+            json.addProperty("finalDisplacement", job.getResult().getFinalDisplacement());
+            json.addProperty("layoutStatus", job.getResult().getStatus());
+        }
+        if (job.getError() != null) {
+            json.addProperty("error", job.getError());
+        }
+        return json;
+    }
+
+    private static void queryToJson(GraphQuery.QueryResult query, JsonObject json) {
+        JsonArray nodes = new JsonArray();
+        for (GraphQuery.QueryNode node : query.getNodes()) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("id", node.getId());
+            if (node.getDistance() != null) {
+                entry.addProperty("distance", node.getDistance());
+            }
+            nodes.add(entry);
+        }
+        JsonArray edges = new JsonArray();
+        for (GraphQuery.QueryEdge edge : query.getEdges()) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("source", edge.getSource());
+            entry.addProperty("target", edge.getTarget());
+            entry.addProperty("weight", edge.getWeight());
+            edges.add(entry);
+        }
+        json.addProperty("nodeCount", query.getNodes().size());
+        json.addProperty("edgeCount", query.getEdges().size());
+        json.add("nodes", nodes);
+        json.add("edges", edges);
+        json.addProperty("truncated", query.isTruncated());
+        if (query.getView() != null) {
+            json.addProperty("view", query.getView());
+        }
+        json.addProperty("timeMicros", query.getTimeMicros());
+    }
+
+    private static JsonObject metricToJson(StatisticsProcessor.MetricResult metric) {
+        JsonObject json = new JsonObject();
+        json.addProperty("metric", metric.getMetric());
+        json.addProperty("column", metric.getColumn());
+        if (metric.getIterations() > 0) {
+            json.addProperty("iterations", metric.getIterations());
+        }
+        json.addProperty("converged", metric.isConverged());
+        if (metric.getSamples() > 0) {
+            json.addProperty("samples", metric.getSamples());
+        }
+        JsonArray top = new JsonArray();
+        for (StatisticsProcessor.RankedNode node : metric.getTop()) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("id", node.getId());
+            entry.addProperty("value", node.getValue());
+            top.add(entry);
+        }
+        json.add("top", top);
+        json.addProperty("timeMs", metric.getTimeMs());
+        return json;
+    }
+
+    private static JsonArray metricsJson(List<OperationMetrics.OperationStats> operations) {
+        JsonArray array = new JsonArray();
+        for (OperationMetrics.OperationStats stats : operations) {
+            JsonObject json = new JsonObject();
+            json.addProperty("operation", stats.getOperation());
+            json.addProperty("count", stats.getCount());
+            json.addProperty("errors", stats.getErrors());
+            json.add("latencyMs", percentilesJson(stats.getLatency()));
+            if (stats.getQueueWait() != null) {
+                json.add("queueWaitMs", percentilesJson(stats.getQueueWait()));
+            }
+            JsonObject allocated = new JsonObject();
+            allocated.addProperty("mean", stats.getAllocatedMean());
+            allocated.addProperty("max", stats.getAllocatedMax());
+            allocated.addProperty("total", stats.getAllocatedTotal());
+            json.add("allocatedBytes", allocated);
+            JsonObject gc = new JsonObject();
+            gc.addProperty("total", stats.getGcMsTotal());
+            gc.addProperty("max", stats.getGcMsMax());
+            json.add("gcMs", gc);
+            json.addProperty("maxNodeCount", stats.getMaxNodeCount());
+            json.addProperty("maxEdgeCount", stats.getMaxEdgeCount());
+            JsonArray slowest = new JsonArray();
+            for (OperationMetrics.SlowCall slow : stats.getSlowest()) {
+                JsonObject slowJson = new JsonObject();
+                slowJson.addProperty("timestamp", slow.getTimestamp());
+                slowJson.addProperty("timeMs", slow.getTimeMs());
+                if (slow.getSession() != null) {
+                    slowJson.addProperty("session", slow.getSession());
+                }
+                slowJson.addProperty("success", slow.isSuccess());
+                slowJson.addProperty("nodeCount", slow.getNodeCount());
+                slowJson.addProperty("edgeCount", slow.getEdgeCount());
+                slowJson.addProperty("allocatedBytes", slow.getAllocatedBytes());
+                slowJson.addProperty("gcMs", slow.getGcMs());
+                slowJson.addProperty("params", slow.getParams());
+                slowest.add(slowJson);
+            }
+            json.add("slowest", slowest);
+            array.add(json);
+        }
+        return array;
+    }
+
+    private static JsonObject percentilesJson(OperationMetrics.Percentiles percentiles) {
+        JsonObject json = new JsonObject();
+        json.addProperty("mean", percentiles.getMeanMs());
+        json.addProperty("p50", percentiles.getP50Ms());
+        json.addProperty("p90", percentiles.getP90Ms());
+        json.addProperty("p99", percentiles.getP99Ms());
+        json.addProperty("max", percentiles.getMaxMs());
+        return json;
+    }
+
+    private static JsonObject heapJson(OperationMetrics.HeapStats heap) {
+        JsonObject json = new JsonObject();
+        json.addProperty("usedBytes", heap.getUsedBytes());
+        json.addProperty("committedBytes", heap.getCommittedBytes());
+        json.addProperty("maxBytes", heap.getMaxBytes());
+        JsonArray collectors = new JsonArray();
+        for (OperationMetrics.CollectorStats collector : heap.getCollectors()) {
+            JsonObject collectorJson = new JsonObject();
+            collectorJson.addProperty("name", collector.getName());
+            collectorJson.addProperty("count", collector.getCount());
+            collectorJson.addProperty("timeMs", collector.getTimeMs());
+            collectors.add(collectorJson);
+        }
+        json.add("collectors", collectors);
+        return json;
+    }
+
+    private static JsonObject statsJson(GraphInfo.GraphStats stats) {
+        JsonObject json = new JsonObject();
+        json.addProperty("minDegree", stats.getMinDegree());
+        json.addProperty("maxDegree", stats.getMaxDegree());
+        json.addProperty("avgDegree", stats.getAvgDegree());
+        json.addProperty("totalDegree", stats.getTotalDegree());
+        json.addProperty("density", stats.getDensity());
+        json.addProperty("componentCount", stats.getComponentCount());
+        JsonArray histogram = new JsonArray();
+        for (GraphInfo.DegreeBin bin : stats.getDegreeHistogram()) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("min", bin.getMin());
+            entry.addProperty("max", bin.getMax());
+            entry.addProperty("count", bin.getCount());
+            histogram.add(entry);
+        }
+        json.add("degreeHistogram", histogram);
+        json.addProperty("computeTimeMs", stats.getComputeTimeMs());
+        return json;
     }
 }
\ No newline at end of file
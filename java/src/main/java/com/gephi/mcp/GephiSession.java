@@ -0,0 +1,339 @@
+package com.gephi.mcp;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphController;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.project.api.Workspace;
+import org.openide.util.Lookup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A named graph held in its own Gephi workspace
+ */
+public class GephiSession {
+    // Rough per-element footprint of the graph store, used for the heap budget
+    private static final long BASE_BYTES = 64L * 1024;
+    private static final long NODE_BYTES = 320;
+    private static final long EDGE_BYTES = 160;
+    private static final long ATTRIBUTE_BYTES = 32;
+    // Upper bound on exported file bytes kept for repeat exports
+    private static final long RENDER_CACHE_BYTES = 64L << 20;
+
+    private final String name;
+    private Workspace workspace;
+    private GraphModel graphModel;
+    private volatile long lastAccess;
+    private final AtomicInteger activeOperations = new AtomicInteger();
+
+    // Bumped on every change made through the service; structureVersion only when nodes, edges or weights change
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong structureVersion = new AtomicLong();
+
+    // Canonical path of the file the graph was loaded from, used to persist positions
+    private volatile String source;
+    // Ids of nodes that have no laid-out position yet; incremental layouts start from these
+    private final Set<Object> unplacedNodeIds = ConcurrentHashMap.newKeySet();
+
+    // Values derived from the graph structure, dropped whenever structureVersion moves
+    private volatile StructureCache structureCache = new StructureCache(-1);
+
+    // Named views over this session's graph model, e.g. materialized query results
+    private final Map<String, GraphView> views = new ConcurrentHashMap<>();
+
+    // Exported files for the current version, keyed on format and style, so a repeat export is a copy
+    private final Map<String, byte[]> renderCache = new HashMap<>();
+    private long renderCacheVersion = -1;
+    // Written under the session lock, read without it by the heap estimate
+    private volatile long renderCacheBytes;
+    // Version and style the workspace's preview was last refreshed for
+    private String preparedPreview;
+    // Positions as last written by a positions export, the base for the next delta
+    private volatile PositionsExporter.Baseline positionsBaseline;
+    // Grid over node positions for spatial queries, rebuilt once version moves past it
+    private volatile SpatialIndex spatialIndex;
+
+    GephiSession(String name, Workspace workspace) {
+        this.name = name;
+        attach(workspace);
+    }
+
+    void attach(Workspace workspace) {
+        this.workspace = workspace;
+        GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
+        this.graphModel = graphController.getGraphModel(workspace);
+        this.source = null;
+        unplacedNodeIds.clear();
+        // Views belong to the previous graph model
+        views.clear();
+        markStructureChanged();
+        touch();
+    }
+
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Workspace getWorkspace() {
+        return workspace;
+    }
+
+    public GraphModel getGraphModel() {
+        return graphModel;
+    }
+
+    public Graph getGraph() {
+        return graphModel.getGraph();
+    }
+
+    /**
+     * The graph as seen through the active view; the full graph unless a filter is active
+     */
+    public Graph getVisibleGraph() {
+        return graphModel.getGraphVisible();
+    }
+
+    public boolean isFiltered() {
+        return !graphModel.getVisibleView().isMainView();
+    }
+
+    /**
+     * Makes layout, statistics, queries and export work on the given view; null restores the full graph
+     */
+    void setActiveView(GraphView view) {
+        graphModel.setVisibleView(view);
+        // Everything derived from the working graph has to be rebuilt for the new view
+        markStructureChanged();
+    }
+
+    void retain() {
+        activeOperations.incrementAndGet();
+    }
+
+    void release() {
+        activeOperations.decrementAndGet();
+    }
+
+    public boolean isBusy() {
+        return activeOperations.get() > 0;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    void setSource(String source) {
+        this.source = source;
+    }
+
+    public Set<Object> getUnplacedNodeIds() {
+        return unplacedNodeIds;
+    }
+
+    /**
+     * CSR snapshot of the visible graph, rebuilt only after the structure or the active view changes
+     */
+    public CsrGraph getCsrGraph() {
+        return isFiltered() ? cached("csr", () -> CsrGraph.fromGraph(getVisibleGraph())) : getFullCsrGraph();
+    }
+
+    /**
+     * CSR snapshot of the full graph, ignoring the active view
+     */
+    public CsrGraph getFullCsrGraph() {
+        return cached("csrFull", () -> CsrGraph.fromGraph(getGraph()));
+    }
+
+    /**
+     * One-directional CSR rows (outgoing, or incoming when incoming is set) over the same node indices
+     */
+    public CsrGraph getDirectedCsrGraph(boolean incoming) {
+        return cached(incoming ? "csrIncoming" : "csrOutgoing", () -> getCsrGraph().directed(getVisibleGraph(), incoming));
+    }
+
+    /**
+     * Returns the value cached under key for the current structure version, computing it if needed.
+     * The first caller computes without holding any lock; concurrent callers for the same key wait for it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T cached(String key, Supplier<T> compute) {
+        StructureCache cache = currentStructureCache();
+        CompletableFuture<Object> pending = new CompletableFuture<>();
+        CompletableFuture<Object> existing = cache.values.putIfAbsent(key, pending);
+        if (existing != null) {
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        T value;
+        try {
+            value = compute.get();
+        } catch (RuntimeException | Error e) {
+            cache.values.remove(key, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+        pending.complete(value);
+        // Computed from a structure that has since moved on: hand it to the waiters, but don't keep it
+        if (structureVersion.get() != cache.version) {
+            cache.values.remove(key, pending);
+        } else if (value instanceof CsrGraph) {
+            cache.bytes.addAndGet(((CsrGraph) value).estimateBytes());
+            // A large snapshot may push other sessions over the heap budget
+            GephiContext.getInstance().enforceHeapBudget(this);
+        }
+        return value;
+    }
+
+    private StructureCache currentStructureCache() {
+        long current = structureVersion.get();
+        StructureCache cache = structureCache;
+        if (cache.version == current) {
+            return cache;
+        }
+        synchronized (this) {
+            if (structureCache.version != current) {
+                structureCache = new StructureCache(current);
+            }
+            return structureCache;
+        }
+    }
+
+    /**
+     * Returns the export cached under key for the current version, or null
+     */
+    public synchronized byte[] getRendered(String key) {
+        return renderCacheVersion == version.get() ? renderCache.get(key) : null;
+    }
+
+    /**
+     * Keeps an export for the current version while the cache has room for it
+     */
+    public synchronized void putRendered(String key, byte[] bytes) {
+        long current = version.get();
+        if (current != renderCacheVersion) {
+            renderCache.clear();
+            renderCacheBytes = 0;
+            renderCacheVersion = current;
+        }
+        byte[] previous = renderCache.remove(key);
+        if (previous != null) {
+            renderCacheBytes -= previous.length;
+        }
+        if (renderCacheBytes + bytes.length <= RENDER_CACHE_BYTES) {
+            renderCache.put(key, bytes);
+            renderCacheBytes += bytes.length;
+        }
+    }
+
+    PositionsExporter.Baseline getPositionsBaseline() {
+        return positionsBaseline;
+    }
+
+    void setPositionsBaseline(PositionsExporter.Baseline positionsBaseline) {
+        this.positionsBaseline = positionsBaseline;
+    }
+
+    SpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    void setSpatialIndex(SpatialIndex spatialIndex) {
+        this.spatialIndex = spatialIndex;
+    }
+
+    synchronized String getPreparedPreview() {
+        return preparedPreview;
+    }
+
+    synchronized void setPreparedPreview(String preparedPreview) {
+        this.preparedPreview = preparedPreview;
+    }
+
+    public GraphView getView(String viewName) {
+        return views.get(viewName);
+    }
+
+    public Set<String> getViewNames() {
+        return views.keySet();
+    }
+
+    /**
+     * Registers a view under a name, destroying the view it replaces
+     */
+    void putView(String viewName, GraphView view) {
+        GraphView previous = views.put(viewName, view);
+        if (previous != null && previous != view && !previous.isDestroyed()) {
+            if (previous == graphModel.getVisibleView()) {
+                setActiveView(null);
+            }
+            graphModel.destroyView(previous);
+        }
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public long getStructureVersion() {
+        return structureVersion.get();
+    }
+
+    long markChanged() {
+        return version.incrementAndGet();
+    }
+
+    long markStructureChanged() {
+        structureVersion.incrementAndGet();
+        return markChanged();
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    public long estimateHeapBytes() {
+        Graph graph = graphModel.getGraph();
+        long nodes = graph.getNodeCount();
+        long edges = graph.getEdgeCount();
+        long nodeColumns = graphModel.getNodeTable().countColumns();
+        long edgeColumns = graphModel.getEdgeTable().countColumns();
+
+        // Lock-free, so the budget check never waits behind an export or a cache fill
+        PositionsExporter.Baseline baseline = positionsBaseline;
+        SpatialIndex index = spatialIndex;
+        long rendered = renderCacheBytes + (baseline != null ? baseline.estimateBytes() : 0)
+            + (index != null ? index.estimateBytes() : 0) + structureCache.bytes.get();
+
+        return BASE_BYTES
+            + nodes * (NODE_BYTES + nodeColumns * ATTRIBUTE_BYTES)
+            + edges * (EDGE_BYTES + edgeColumns * ATTRIBUTE_BYTES)
+            + rendered;
+    }
+
+    private static class StructureCache {
+        final long version;
+        final Map<String, CompletableFuture<Object>> values = new ConcurrentHashMap<>();
+        // Heap held by the CSR snapshots among the values
+        final AtomicLong bytes = new AtomicLong();
+
+        StructureCache(long version) {
+            this.version = version;
+        }
+    }
+}
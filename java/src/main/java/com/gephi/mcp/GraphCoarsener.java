@@ -0,0 +1,185 @@
+package com.gephi.mcp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds the level hierarchy for multilevel layout by repeatedly collapsing matched node pairs.
+ * Each level is a CsrGraph whose nodes are groups of nodes of the level below; parallel
+ * edges between groups are merged with their weights summed and internal edges are dropped.
+ */
+public class GraphCoarsener {
+    // Stop once a round removes less than this share of the nodes
+    private static final double MIN_SHRINK = 0.1;
+    
+    private GraphCoarsener() {
+    }
+    
+    /**
+     * Coarsens until a level has at most targetSize nodes or stops shrinking.
+     * The first entry is the input graph itself; the last is the coarsest level.
+     */
+    public static List<Level> buildHierarchy(CsrGraph graph, float[] size, int targetSize) {
+        List<Level> levels = new ArrayList<>();
+        Level current = new Level(graph, size, null);
+        levels.add(current);
+        
+        while (current.graph.getNodeCount() > targetSize) {
+            Level coarser = coarsen(current.graph, current.size);
+            int before = current.graph.getNodeCount();
+            if (before - coarser.graph.getNodeCount() < before * MIN_SHRINK) {
+                break;
+            }
+            levels.add(coarser);
+            current = coarser;
+        }
+        return levels;
+    }
+    
+    /**
+     * One round of heavy-edge matching followed by contraction
+     */
+    public static Level coarsen(CsrGraph fine, float[] fineSize) {
+        int n = fine.getNodeCount();
+        int[] offsets = fine.getOffsets();
+        int[] targets = fine.getTargets();
+        float[] weights = fine.getWeights();
+        
+        // Visit low-degree nodes first so hubs do not swallow all their neighbours' partners;
+        // a counting sort keeps this linear
+        int maxDegree = 0;
+        for (int i = 0; i < n; i++) {
+            maxDegree = Math.max(maxDegree, fine.degree(i));
+        }
+        int[] degreeStart = new int[maxDegree + 2];
+        for (int i = 0; i < n; i++) {
+            degreeStart[fine.degree(i) + 1]++;
+        }
+        for (int d = 0; d <= maxDegree; d++) {
+            degreeStart[d + 1] += degreeStart[d];
+        }
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[degreeStart[fine.degree(i)]++] = i;
+        }
+        
+        int[] group = new int[n];
+        Arrays.fill(group, -1);
+        int groupCount = 0;
+        for (int u : order) {
+            if (group[u] >= 0) {
+                continue;
+            }
+            int partner = -1;
+            float best = Float.NEGATIVE_INFINITY;
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                if (v != u && group[v] < 0 && weights[e] > best) {
+                    best = weights[e];
+                    partner = v;
+                }
+            }
+            if (partner >= 0) {
+                group[u] = groupCount;
+                group[partner] = groupCount;
+                groupCount++;
+            }
+        }
+        
+        // Nodes whose neighbours were all taken join the heaviest neighbour's group,
+        // which lets stars and other low-matching structures still shrink
+        for (int u = 0; u < n; u++) {
+            if (group[u] >= 0) {
+                continue;
+            }
+            int host = -1;
+            float best = Float.NEGATIVE_INFINITY;
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                if (v != u && group[v] >= 0 && weights[e] > best) {
+                    best = weights[e];
+                    host = v;
+                }
+            }
+            group[u] = host >= 0 ? group[host] : groupCount++;
+        }
+        
+        // Group members as a CSR of their own
+        int[] memberOffsets = new int[groupCount + 1];
+        for (int u = 0; u < n; u++) {
+            memberOffsets[group[u] + 1]++;
+        }
+        for (int c = 0; c < groupCount; c++) {
+            memberOffsets[c + 1] += memberOffsets[c];
+        }
+        int[] members = new int[n];
+        int[] cursor = Arrays.copyOf(memberOffsets, groupCount);
+        for (int u = 0; u < n; u++) {
+            members[cursor[group[u]]++] = u;
+        }
+        
+        float[] coarseSize = new float[groupCount];
+        for (int c = 0; c < groupCount; c++) {
+            // Keep the total area of the members
+            double area = 0;
+            for (int k = memberOffsets[c]; k < memberOffsets[c + 1]; k++) {
+                float s = fineSize[members[k]];
+                area += s * s;
+            }
+            coarseSize[c] = (float) Math.sqrt(area);
+        }
+        
+        // Contract rows; lastRow/slot merge parallel edges within the row being built
+        int[] lastRow = new int[groupCount];
+        Arrays.fill(lastRow, -1);
+        int[] slot = new int[groupCount];
+        int[] coarseOffsets = new int[groupCount + 1];
+        int[] coarseTargets = new int[targets.length];
+        float[] coarseWeights = new float[targets.length];
+        int length = 0;
+        for (int c = 0; c < groupCount; c++) {
+            coarseOffsets[c] = length;
+            for (int k = memberOffsets[c]; k < memberOffsets[c + 1]; k++) {
+                int u = members[k];
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int target = group[targets[e]];
+                    if (target == c) {
+                        continue;
+                    }
+                    if (lastRow[target] != c) {
+                        lastRow[target] = c;
+                        slot[target] = length;
+                        coarseTargets[length] = target;
+                        coarseWeights[length] = weights[e];
+                        length++;
+                    } else {
+                        coarseWeights[slot[target]] += weights[e];
+                    }
+                }
+            }
+        }
+        coarseOffsets[groupCount] = length;
+        
+        CsrGraph coarse = new CsrGraph(groupCount, length / 2, coarseOffsets,
+            Arrays.copyOf(coarseTargets, length), Arrays.copyOf(coarseWeights, length));
+        return new Level(coarse, coarseSize, group);
+    }
+    
+    public static class Level {
+        private final CsrGraph graph;
+        private final float[] size;
+        // For each node of the next finer level, the node of this level it was collapsed into
+        private final int[] fineToCoarse;
+        
+        public Level(CsrGraph graph, float[] size, int[] fineToCoarse) {
+            this.graph = graph;
+            this.size = size;
+            this.fineToCoarse = fineToCoarse;
+        }
+        
+        public CsrGraph getGraph() { return graph; }
+        public float[] getSize() { return size; }
+        public int[] getFineToCoarse() { return fineToCoarse; }
+    }
+}
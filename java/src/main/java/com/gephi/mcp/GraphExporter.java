@@ -2,131 +2,292 @@ package com.gephi.mcp;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphModel;
 import org.gephi.io.exporter.api.ExportController;
 import org.gephi.io.exporter.plugin.ExporterGEXF;
 import org.gephi.io.exporter.plugin.ExporterGraphML;
+import org.gephi.io.exporter.spi.CharacterExporter;
+import org.gephi.preview.api.G2DTarget;
 import org.gephi.preview.api.PreviewController;
-import org.gephi.preview.api.PreviewModel;
+import org.gephi.preview.api.PreviewProperties;
 import org.gephi.preview.api.PreviewProperty;
+import org.gephi.preview.api.RenderTarget;
+import org.gephi.preview.api.SVGTarget;
 import org.gephi.io.exporter.preview.PDFExporter;
-import org.gephi.io.exporter.preview.PNGExporter;
 import org.openide.util.Lookup;
 
+import javax.imageio.ImageIO;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 public class GraphExporter {
-    
+    public static final List<String> FORMATS = Arrays.asList("gexf", "graphml", "pdf", "png", "svg", "positions");
+    // Formats drawn as images, the only ones that take render options
+    private static final List<String> RENDERED_FORMATS = Arrays.asList("pdf", "png", "svg");
+
+    // Above either limit the preview renderer gets slow and memory hungry, so auto switches to tiles
+    private static final int PREVIEW_MAX_NODES = 10_000;
+    private static final long PREVIEW_MAX_PIXELS = 4096L * 4096L;
+    // Larger files are not kept for repeat exports
+    private static final long MAX_CACHED_FILE = 16L << 20;
+    // Request fields that name the output rather than shape it
+    private static final List<String> NON_STYLE_PARAMS = Arrays.asList("filePath", "format", "formats", "session");
+
     public static void main(String[] args) {
         if (args.length < 2) {
             System.err.println("Usage: GraphExporter <filePath> <format>");
             System.exit(1);
         }
-        
+
         String filePath = args[0];
         String format = args[1].toLowerCase();
-        
+
         try {
             ExportResult result = exportGraph(filePath, format);
-            
+
             Gson gson = new GsonBuilder().setPrettyPrinting().create();
             System.out.println(gson.toJson(result));
-            
+
         } catch (Exception e) {
             System.err.println("Error exporting graph: " + e.getMessage());
             e.printStackTrace();
             System.exit(1);
         }
     }
-    
+
     public static ExportResult exportGraph(String filePath, String format) throws Exception {
+        return exportGraph(GephiContext.getInstance().getSession(GephiContext.DEFAULT_SESSION), filePath, format);
+    }
+
+    public static ExportResult exportGraph(GephiSession session, String filePath, String format) throws Exception {
+        return exportGraph(session, filePath, Collections.singletonList(format), new JsonObject()).get(0);
+    }
+
+    /**
+     * Exports the visible graph in each format. With several formats, filePath's extension is
+     * replaced by each format's. The preview is prepared once for all of them, and a format already
+     * exported with the same style since the graph last changed is copied from the session's cache.
+     */
+    public static List<ExportResult> exportGraph(GephiSession session, String filePath, List<String> formats,
+                                                 JsonObject params) throws Exception {
         GephiContext context = GephiContext.getInstance();
-        GraphModel graphModel = context.getGraphModel();
-        Graph graph = graphModel.getGraph();
-        
+        GraphModel graphModel = session.getGraphModel();
+        Graph graph = graphModel.getGraphVisible();
+
         if (graph.getNodeCount() == 0) {
             throw new Exception("No graph loaded. Please load a graph first.");
         }
-        
-        File file = new File(filePath);
-        ExportController exportController = context.getExportController();
-        
-        switch (format) {
-            case "gexf":
-                exportGEXF(exportController, graphModel, file);
-                break;
-            case "graphml":
-                exportGraphML(exportController, graphModel, file);
-                break;
-            case "pdf":
-                exportPDF(context, file);
-                break;
-            case "png":
-                exportPNG(context, file);
-                break;
-            default:
+        for (String format : formats) {
+            if (!FORMATS.contains(format)) {
                 throw new Exception("Unsupported export format: " + format);
+            }
+        }
+
+        boolean rendered = formats.stream().anyMatch(RENDERED_FORMATS::contains);
+        TiledPngRenderer.RenderOptions options = rendered ? TiledPngRenderer.RenderOptions.fromJson(params) : null;
+        // Gzip by default when the file name asks for it
+        boolean compress = params.has("compress") ? params.get("compress").getAsBoolean() : filePath.endsWith(".gz");
+        boolean attributes = !params.has("attributes") || params.get("attributes").getAsBoolean();
+        String style = styleKey(params);
+        ExportController exportController = context.getExportController();
+
+        List<ExportResult> results = new ArrayList<>();
+        for (String format : formats) {
+            File file = new File(formats.size() > 1 ? withExtension(filePath, format, compress) : filePath);
+            // compress can come from the file name, which the style key leaves out
+            String cacheKey = format + "|compress=" + compress + "|attributes=" + attributes + "|" + style;
+            // Pyramid tiles live next to the file and a positions export moves the delta base, so those always run
+            boolean cacheable = (options == null || !options.pyramid) && !format.equals("positions");
+
+            byte[] cached = cacheable ? session.getRendered(cacheKey) : null;
+            if (cached != null) {
+                Files.write(file.toPath(), cached);
+                results.add(new ExportResult(file.getPath(), format, graph.getNodeCount(), graph.getEdgeCount(),
+                    file.length(), "success", null, null, true));
+                continue;
+            }
+
+            TiledPngRenderer.RenderResult render = null;
+            PositionsExporter.PositionsResult positions = null;
+            switch (format) {
+                case "gexf":
+                    exportGEXF(exportController, session, file, attributes, compress);
+                    break;
+                case "graphml":
+                    exportGraphML(exportController, session, file, attributes, compress);
+                    break;
+                case "positions":
+                    positions = PositionsExporter.export(session, file,
+                        params.has("delta") && params.get("delta").getAsBoolean(),
+                        !params.has("sizes") || params.get("sizes").getAsBoolean(), compress);
+                    break;
+                case "pdf":
+                    exportPDF(exportController, session, options, file);
+                    break;
+                case "png":
+                    render = exportPNG(session, graph, file, options);
+                    break;
+                case "svg":
+                    exportSVG(session, options, file);
+                    break;
+            }
+
+            if (cacheable && file.length() <= MAX_CACHED_FILE) {
+                session.putRendered(cacheKey, Files.readAllBytes(file.toPath()));
+            }
+            results.add(new ExportResult(file.getPath(), format, graph.getNodeCount(), graph.getEdgeCount(),
+                file.length(), "success", render, positions, false));
         }
-        
-        return new ExportResult(
-            filePath,
-            format,
-            graph.getNodeCount(),
-            graph.getEdgeCount(),
-            file.length(),
-            "success"
-        );
+        return results;
     }
-    
-    private static void exportGEXF(ExportController exportController, GraphModel graphModel, File file) throws Exception {
+
+    private static void exportGEXF(ExportController exportController, GephiSession session, File file,
+                                   boolean attributes, boolean compress) throws Exception {
         ExporterGEXF exporter = new ExporterGEXF();
         exporter.setExportVisible(true);
-        exporter.setWorkspace(GephiContext.getInstance().getWorkspace());
-        exportController.exportFile(file, exporter);
+        exporter.setExportAttributes(attributes);
+        exporter.setWorkspace(session.getWorkspace());
+        exportXml(exportController, exporter, file, compress);
     }
-    
-    private static void exportGraphML(ExportController exportController, GraphModel graphModel, File file) throws Exception {
+
+    private static void exportGraphML(ExportController exportController, GephiSession session, File file,
+                                      boolean attributes, boolean compress) throws Exception {
         ExporterGraphML exporter = new ExporterGraphML();
         exporter.setExportVisible(true);
-        exporter.setWorkspace(GephiContext.getInstance().getWorkspace());
-        exportController.exportFile(file, exporter);
+        exporter.setExportAttributes(attributes);
+        exporter.setWorkspace(session.getWorkspace());
+        exportXml(exportController, exporter, file, compress);
     }
-    
-    private static void exportPDF(GephiContext context, File file) throws Exception {
-        // Configure preview
-        PreviewController previewController = Lookup.getDefault().lookup(PreviewController.class);
-        PreviewModel previewModel = previewController.getModel();
-        
-        previewModel.getProperties().putValue(PreviewProperty.SHOW_NODE_LABELS, Boolean.TRUE);
-        previewModel.getProperties().putValue(PreviewProperty.SHOW_EDGE_LABELS, Boolean.FALSE);
-        previewModel.getProperties().putValue(PreviewProperty.NODE_LABEL_FONT, new java.awt.Font("Arial", java.awt.Font.PLAIN, 8));
-        
-        // Export PDF
-        ExportController exportController = context.getExportController();
+
+    /**
+     * Streams a character exporter's output through a buffered writer over a file channel,
+     * gzip-compressed when asked, so the document is never held in memory
+     */
+    private static void exportXml(ExportController exportController, CharacterExporter exporter, File file,
+                                  boolean compress) throws Exception {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Writer writer = new OutputStreamWriter(PositionsExporter.open(channel, compress), StandardCharsets.UTF_8)) {
+            exportController.exportWriter(writer, exporter);
+        }
+    }
+
+    private static void exportPDF(ExportController exportController, GephiSession session,
+                                  TiledPngRenderer.RenderOptions options, File file) throws Exception {
+        preparePreview(session, options);
+        // The PDF target needs the exporter's page setup, so this one still refreshes the preview itself
         PDFExporter pdfExporter = (PDFExporter) exportController.getExporter("pdf");
-        pdfExporter.setWorkspace(context.getWorkspace());
+        pdfExporter.setWorkspace(session.getWorkspace());
         exportController.exportFile(file, pdfExporter);
     }
-    
-    private static void exportPNG(GephiContext context, File file) throws Exception {
-        // Configure preview
+
+    private static TiledPngRenderer.RenderResult exportPNG(GephiSession session, Graph graph, File file,
+                                                           TiledPngRenderer.RenderOptions options) throws Exception {
+        boolean tiled = options.renderer.equals("tiled") || (options.renderer.equals("auto")
+            && (graph.getNodeCount() > PREVIEW_MAX_NODES || (long) options.width * options.height > PREVIEW_MAX_PIXELS));
+        if (tiled || options.pyramid) {
+            return TiledPngRenderer.render(graph, file, options);
+        }
+
+        PreviewController previewController = preparePreview(session, options);
+        PreviewProperties properties = previewController.getModel(session.getWorkspace()).getProperties();
+        properties.putValue("width", options.width);
+        properties.putValue("height", options.height);
+        G2DTarget target = (G2DTarget) previewController.getRenderTarget(RenderTarget.G2D_TARGET, session.getWorkspace());
+        target.refresh();
+
+        BufferedImage image = new BufferedImage(options.width, options.height,
+            options.transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.drawImage(target.getImage(), 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        ImageIO.write(image, "png", file);
+        return null;
+    }
+
+    private static void exportSVG(GephiSession session, TiledPngRenderer.RenderOptions options, File file) throws Exception {
+        PreviewController previewController = preparePreview(session, options);
+        SVGTarget target = (SVGTarget) previewController.getRenderTarget(RenderTarget.SVG_TARGET, session.getWorkspace());
+        previewController.render(target, session.getWorkspace());
+
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        transformer.transform(new DOMSource(target.getDocument()), new StreamResult(file));
+    }
+
+    /**
+     * Sets the preview properties and refreshes the preview, unless that was already done for this
+     * graph version and style
+     */
+    private static PreviewController preparePreview(GephiSession session, TiledPngRenderer.RenderOptions options) {
         PreviewController previewController = Lookup.getDefault().lookup(PreviewController.class);
-        PreviewModel previewModel = previewController.getModel();
-        
-        previewModel.getProperties().putValue(PreviewProperty.SHOW_NODE_LABELS, Boolean.TRUE);
-        previewModel.getProperties().putValue(PreviewProperty.SHOW_EDGE_LABELS, Boolean.FALSE);
-        previewModel.getProperties().putValue(PreviewProperty.NODE_LABEL_FONT, new java.awt.Font("Arial", java.awt.Font.PLAIN, 8));
-        
-        // Export PNG
-        ExportController exportController = context.getExportController();
-        PNGExporter pngExporter = (PNGExporter) exportController.getExporter("png");
-        pngExporter.setWorkspace(context.getWorkspace());
-        pngExporter.setWidth(1024);
-        pngExporter.setHeight(768);
-        exportController.exportFile(file, pngExporter);
+        String prepared = session.getVersion() + "|labels=" + options.labels + "|background="
+            + (options.transparent ? "none" : Integer.toHexString(options.background.getRGB()));
+        if (prepared.equals(session.getPreparedPreview())) {
+            return previewController;
+        }
+
+        PreviewProperties properties = previewController.getModel(session.getWorkspace()).getProperties();
+        properties.putValue(PreviewProperty.SHOW_NODE_LABELS, options.labels);
+        properties.putValue(PreviewProperty.SHOW_EDGE_LABELS, Boolean.FALSE);
+        properties.putValue(PreviewProperty.NODE_LABEL_FONT, new java.awt.Font("Arial", java.awt.Font.PLAIN, 8));
+        properties.putValue(PreviewProperty.VISIBILITY_RATIO, 1.0f);
+        properties.putValue(PreviewProperty.BACKGROUND_COLOR, options.transparent ? null : options.background);
+        previewController.refreshPreview(session.getWorkspace());
+        session.setPreparedPreview(prepared);
+        return previewController;
+    }
+
+    /**
+     * Everything in the request that shapes the output, in a stable order
+     */
+    private static String styleKey(JsonObject params) {
+        Map<String, JsonElement> style = new TreeMap<>();
+        for (Map.Entry<String, JsonElement> entry : params.entrySet()) {
+            if (!NON_STYLE_PARAMS.contains(entry.getKey())) {
+                style.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return style.toString();
+    }
+
+    private static String withExtension(String filePath, String format, boolean compress) {
+        String base = filePath.endsWith(".gz") ? filePath.substring(0, filePath.length() - 3) : filePath;
+        for (String known : FORMATS) {
+            if (base.toLowerCase().endsWith("." + known)) {
+                base = base.substring(0, base.length() - known.length() - 1);
+                break;
+            }
+        }
+        // Images and PDFs are compressed already
+        boolean gzip = compress && (format.equals("gexf") || format.equals("graphml") || format.equals("positions"));
+        return base + "." + format + (gzip ? ".gz" : "");
     }
-    
+
     public static class ExportResult {
         private final String filePath;
         private final String format;
@@ -134,21 +295,39 @@ public class GraphExporter {
         private final int edgeCount;
         private final long fileSize;
         private final String status;
-        
+        // Set when the tiled renderer produced the file
+        private final TiledPngRenderer.RenderResult render;
+        // Set for positions exports
+        private final PositionsExporter.PositionsResult positions;
+        // True when the file was copied from an earlier export of the same version and style
+        private final boolean cached;
+
         public ExportResult(String filePath, String format, int nodeCount, int edgeCount, long fileSize, String status) {
+            this(filePath, format, nodeCount, edgeCount, fileSize, status, null, null, false);
+        }
+
+        public ExportResult(String filePath, String format, int nodeCount, int edgeCount, long fileSize, String status,
+                            TiledPngRenderer.RenderResult render, PositionsExporter.PositionsResult positions,
+                            boolean cached) {
             this.filePath = filePath;
             this.format = format;
             this.nodeCount = nodeCount;
             this.edgeCount = edgeCount;
             this.fileSize = fileSize;
             this.status = status;
+            this.render = render;
+            this.positions = positions;
+            this.cached = cached;
         }
-        
+
         public String getFilePath() { return filePath; }
         public String getFormat() { return format; }
         public int getNodeCount() { return nodeCount; }
         public int getEdgeCount() { return edgeCount; }
         public long getFileSize() { return fileSize; }
         public String getStatus() { return status; }
+        public TiledPngRenderer.RenderResult getRender() { return render; }
+        public PositionsExporter.PositionsResult getPositions() { return positions; }
+        public boolean isCached() { return cached; }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,308 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Subgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Narrows a session to a subgraph by running filter steps over the full graph's CSR snapshot
+ * and making the result the visible GraphView. A view only records which nodes and edges are
+ * in it, so nothing is copied; layout, statistics, queries and export then see just the view.
+ * Steps run in order and each one sees what the previous ones kept.
+ */
+public class GraphFilter {
+    public static final String DEFAULT_VIEW = "filter";
+    
+    private GraphFilter() {
+    }
+    
+    public static FilterResult apply(GephiSession session, JsonObject params) throws Exception {
+        GraphModel graphModel = session.getGraphModel();
+        Graph graph = graphModel.getGraph();
+        if (graph.getNodeCount() == 0) {
+            throw new Exception("No graph loaded. Please load a graph first.");
+        }
+        if (!params.has("filters") || params.getAsJsonArray("filters").size() == 0) {
+            throw new Exception("filter needs at least one entry in filters");
+        }
+        
+        long start = System.nanoTime();
+        ForkJoinPool pool = GephiContext.getInstance().getComputePool();
+        CsrGraph csr = session.getFullCsrGraph();
+        int n = csr.getNodeCount();
+        
+        State state = new State(n);
+        List<Integer> remaining = new ArrayList<>();
+        for (JsonElement element : params.getAsJsonArray("filters")) {
+            JsonObject step = element.getAsJsonObject();
+            String type = step.has("type") ? step.get("type").getAsString() : "";
+            switch (type) {
+                case "degree":
+                    filterDegree(csr, state, step, pool);
+                    break;
+                case "giantComponent":
+                    keepGiantComponent(csr, state, pool);
+                    break;
+                case "edgeWeight":
+                    if (step.has("min")) state.minWeight = Math.max(state.minWeight, step.get("min").getAsDouble());
+                    if (step.has("max")) state.maxWeight = Math.min(state.maxWeight, step.get("max").getAsDouble());
+                    break;
+                case "attribute":
+                    filterAttribute(graphModel, csr, state, step);
+                    break;
+                default:
+                    throw new Exception("Unknown filter type: " + type);
+            }
+            remaining.add(state.count());
+        }
+        
+        // One pass over the edges picks the ones the view keeps
+        Node[] nodes = csr.getNodes();
+        List<Node> keptNodes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (state.keep[i]) {
+                keptNodes.add(nodes[i]);
+            }
+        }
+        List<Edge> keptEdges = new ArrayList<>();
+        graph.readLock();
+        try {
+            for (Edge edge : graph.getEdges()) {
+                int source = csr.indexOf(edge.getSource());
+                int target = csr.indexOf(edge.getTarget());
+                if (source >= 0 && target >= 0 && state.keep[source] && state.keep[target]
+                        && state.weightKept(edge.getWeight())) {
+                    keptEdges.add(edge);
+                }
+            }
+        } finally {
+            graph.readUnlock();
+        }
+        
+        GraphView view = graphModel.createView();
+        Subgraph subgraph = graphModel.getGraph(view);
+        subgraph.addAllNodes(keptNodes);
+        subgraph.addAllEdges(keptEdges);
+        
+        String viewName = params.has("view") ? params.get("view").getAsString() : DEFAULT_VIEW;
+        session.setActiveView(view);
+        session.putView(viewName, view);
+        
+        return new FilterResult(viewName, keptNodes.size(), keptEdges.size(), n, csr.getEdgeCount(), remaining,
+            (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    /**
+     * Activates a named view, or the full graph when viewName is null
+     */
+    public static void activate(GephiSession session, String viewName) throws Exception {
+        if (viewName == null) {
+            session.setActiveView(null);
+            return;
+        }
+        GraphView view = session.getView(viewName);
+        if (view == null) {
+            throw new Exception("Unknown view: " + viewName);
+        }
+        session.setActiveView(view);
+    }
+    
+    /**
+     * Keeps nodes whose degree among the currently kept edges is within [min, max]
+     */
+    private static void filterDegree(CsrGraph csr, State state, JsonObject step, ForkJoinPool pool) {
+        int min = step.has("min") ? step.get("min").getAsInt() : 0;
+        int max = step.has("max") ? step.get("max").getAsInt() : Integer.MAX_VALUE;
+        int n = csr.getNodeCount();
+        int[] offsets = csr.getOffsets();
+        int[] targets = csr.getTargets();
+        float[] weights = csr.getWeights();
+        
+        // Decide from the state before this step, then apply
+        boolean[] next = new boolean[n];
+        ParallelChunks.forRange(pool, n, ParallelChunks.chunkCount(pool, n), (from, to) -> {
+            for (int u = from; u < to; u++) {
+                if (!state.keep[u]) {
+                    continue;
+                }
+                int degree = 0;
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    if (state.keep[targets[e]] && state.weightKept(weights[e])) {
+                        degree++;
+                    }
+                }
+                next[u] = degree >= min && degree <= max;
+            }
+        });
+        state.keep = next;
+    }
+    
+    /**
+     * Keeps the largest connected component of what is currently kept; ties go to the component
+     * holding the lowest node index
+     */
+    private static void keepGiantComponent(CsrGraph csr, State state, ForkJoinPool pool) {
+        int n = csr.getNodeCount();
+        int[] offsets = csr.getOffsets();
+        int[] targets = csr.getTargets();
+        float[] weights = csr.getWeights();
+        int chunks = ParallelChunks.chunkCount(pool, n);
+        
+        AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++) {
+            parent.set(i, i);
+        }
+        ParallelChunks.forRange(pool, n, chunks, (from, to) -> {
+            for (int u = from; u < to; u++) {
+                if (!state.keep[u]) {
+                    continue;
+                }
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int v = targets[e];
+                    if (v > u && state.keep[v] && state.weightKept(weights[e])) {
+                        GraphInfo.union(parent, u, v);
+                    }
+                }
+            }
+        });
+        
+        // Unions link towards the lower index, so every root is its component's lowest node
+        int[] root = new int[n];
+        int[] size = new int[n];
+        for (int i = 0; i < n; i++) {
+            if (state.keep[i]) {
+                root[i] = GraphInfo.find(parent, i);
+                size[root[i]]++;
+            }
+        }
+        int giant = -1;
+        for (int i = 0; i < n; i++) {
+            if (size[i] > 0 && (giant < 0 || size[i] > size[giant])) {
+                giant = i;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            state.keep[i] = state.keep[i] && root[i] == giant;
+        }
+    }
+    
+    /**
+     * Keeps nodes whose attribute is within [min, max], or equal to one of values
+     */
+    private static void filterAttribute(GraphModel graphModel, CsrGraph csr, State state, JsonObject step) throws Exception {
+        if (!step.has("column")) {
+            throw new Exception("attribute filter needs a column");
+        }
+        String name = step.get("column").getAsString();
+        Column column = graphModel.getNodeTable().getColumn(name);
+        if (column == null) {
+            throw new Exception("Unknown node column: " + name);
+        }
+        Double min = step.has("min") ? step.get("min").getAsDouble() : null;
+        Double max = step.has("max") ? step.get("max").getAsDouble() : null;
+        Set<String> values = null;
+        if (step.has("values")) {
+            values = new HashSet<>();
+            for (JsonElement value : step.getAsJsonArray("values")) {
+                values.add(value.getAsString());
+            }
+        }
+        if ((min != null || max != null) && !Number.class.isAssignableFrom(column.getTypeClass())) {
+            throw new Exception("Column " + name + " is not numeric");
+        }
+        
+        Node[] nodes = csr.getNodes();
+        Graph graph = graphModel.getGraph();
+        graph.readLock();
+        try {
+            for (int i = 0; i < nodes.length; i++) {
+                if (!state.keep[i]) {
+                    continue;
+                }
+                Object value = nodes[i].getAttribute(column);
+                boolean kept = value != null;
+                if (kept && min != null) {
+                    kept = ((Number) value).doubleValue() >= min;
+                }
+                if (kept && max != null) {
+                    kept = ((Number) value).doubleValue() <= max;
+                }
+                if (kept && values != null) {
+                    kept = values.contains(String.valueOf(value));
+                }
+                state.keep[i] = kept;
+            }
+        } finally {
+            graph.readUnlock();
+        }
+    }
+    
+    private static class State {
+        boolean[] keep;
+        double minWeight = Double.NEGATIVE_INFINITY;
+        double maxWeight = Double.POSITIVE_INFINITY;
+        
+        State(int nodeCount) {
+            keep = new boolean[nodeCount];
+            Arrays.fill(keep, true);
+        }
+        
+        boolean weightKept(double weight) {
+            return weight >= minWeight && weight <= maxWeight;
+        }
+        
+        int count() {
+            int count = 0;
+            for (boolean kept : keep) {
+                if (kept) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+    
+    public static class FilterResult {
+        private final String view;
+        private final int nodeCount;
+        private final int edgeCount;
+        private final int totalNodeCount;
+        private final int totalEdgeCount;
+        // Nodes left after each step, in step order
+        private final List<Integer> remainingAfterStep;
+        private final long timeMs;
+        
+        public FilterResult(String view, int nodeCount, int edgeCount, int totalNodeCount, int totalEdgeCount,
+                            List<Integer> remainingAfterStep, long timeMs) {
+            this.view = view;
+            this.nodeCount = nodeCount;
+            this.edgeCount = edgeCount;
+            this.totalNodeCount = totalNodeCount;
+            this.totalEdgeCount = totalEdgeCount;
+            this.remainingAfterStep = remainingAfterStep;
+            this.timeMs = timeMs;
+        }
+        
+        public String getView() { return view; }
+        public int getNodeCount() { return nodeCount; }
+        public int getEdgeCount() { return edgeCount; }
+        public int getTotalNodeCount() { return totalNodeCount; }
+        public int getTotalEdgeCount() { return totalEdgeCount; }
+        public List<Integer> getRemainingAfterStep() { return remainingAfterStep; }
+        public long getTimeMs() { return timeMs; }
+    }
+}
@@ -4,13 +4,15 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphModel;
-import org.gephi.graph.api.Node;
-import org.gephi.graph.api.Edge;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 public class GraphInfo {
+    // Degree 0 gets bin 0, then bin k holds degrees in [2^(k-1), 2^k)
+    private static final int HISTOGRAM_BINS = 33;
     
     public static void main(String[] args) {
         try {
@@ -27,12 +29,15 @@ public class GraphInfo {
     }
     
     public static GraphInfoResult getGraphInfo() throws Exception {
-        GephiContext context = GephiContext.getInstance();
-        GraphModel graphModel = context.getGraphModel();
-        Graph graph = graphModel.getGraph();
+        return getGraphInfo(GephiContext.getInstance().getSession(GephiContext.DEFAULT_SESSION));
+    }
+    
+    public static GraphInfoResult getGraphInfo(GephiSession session) throws Exception {
+        GraphModel graphModel = session.getGraphModel();
+        Graph graph = graphModel.getGraphVisible();
         
         if (graph.getNodeCount() == 0) {
-            return new GraphInfoResult(0, 0, false, "empty", null);
+            return new GraphInfoResult(0, 0, false, "empty", null, session.getStructureVersion(), session.isFiltered());
         }
         
         // Calculate basic statistics
@@ -40,40 +45,202 @@ public class GraphInfo {
         int edgeCount = graph.getEdgeCount();
         boolean isDirected = graphModel.isDirected();
         
-        // Calculate degree statistics
-        Map<String, Object> degreeStats = calculateDegreeStats(graph);
-        
+        // Only recomputed after nodes, edges or weights change
+        GraphStats stats = session.cached("graphStats",
+            () -> calculateStats(session.getCsrGraph(), isDirected, GephiContext.getInstance().getComputePool()));
+            
         return new GraphInfoResult(
             nodeCount,
             edgeCount,
             isDirected,
             "loaded",
-            degreeStats
+            stats,
+            session.getStructureVersion(),
+            session.isFiltered()
         );
     }
     
-    private static Map<String, Object> calculateDegreeStats(Graph graph) {
-        Map<String, Object> stats = new HashMap<>();
+    /**
+     * Degree statistics, density and connected components of a CSR snapshot, computed in chunks
+     * on the given pool. Components ignore edge direction.
+     */
+    public static GraphStats calculateStats(CsrGraph csr, boolean directed, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        int n = csr.getNodeCount();
+        int[] offsets = csr.getOffsets();
+        int chunks = ParallelChunks.chunkCount(pool, n);
+        
+        // Per-chunk partials, reduced in chunk order below
+        int[] chunkMin = new int[chunks];
+        int[] chunkMax = new int[chunks];
+        long[][] chunkHistogram = new long[chunks][HISTOGRAM_BINS];
+        ParallelChunks.forChunks(pool, n, chunks, (chunk, from, to) -> {
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            long[] histogram = chunkHistogram[chunk];
+            for (int i = from; i < to; i++) {
+                int degree = offsets[i + 1] - offsets[i];
+                min = Math.min(min, degree);
+                max = Math.max(max, degree);
+                histogram[32 - Integer.numberOfLeadingZeros(degree)]++;
+            }
+            chunkMin[chunk] = min;
+            chunkMax[chunk] = max;
+        });
         
         int minDegree = Integer.MAX_VALUE;
         int maxDegree = 0;
-        int totalDegree = 0;
+        long[] histogram = new long[HISTOGRAM_BINS];
+        for (int c = 0; c < chunks; c++) {
+            minDegree = Math.min(minDegree, chunkMin[c]);
+            maxDegree = Math.max(maxDegree, chunkMax[c]);
+            for (int b = 0; b < HISTOGRAM_BINS; b++) {
+                histogram[b] += chunkHistogram[c][b];
+            }
+        }
+        
+        List<DegreeBin> bins = new ArrayList<>();
+        for (int b = 0; b < HISTOGRAM_BINS; b++) {
+            if (histogram[b] > 0) {
+                int low = b == 0 ? 0 : 1 << (b - 1);
+                int high = b == 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, (1L << b) - 1);
+                bins.add(new DegreeBin(low, high, histogram[b]));
+            }
+        }
+        
+        // Rows hold both endpoints of every edge, so the offsets already sum the degrees
+        long totalDegree = offsets[n];
+        double avgDegree = n > 0 ? (double) totalDegree / n : 0;
+        long m = csr.getEdgeCount();
+        double pairs = (double) n * (n - 1);
+        double density = pairs > 0 ? (directed ? m : 2.0 * m) / pairs : 0;
+        
+        int components = countComponents(csr, pool, chunks);
+        
+        return new GraphStats(minDegree == Integer.MAX_VALUE ? 0 : minDegree, maxDegree, avgDegree, totalDegree,
+            density, components, bins, (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    /**
+     * Lock-free union-find: each union links the higher root below the lower one with a CAS,
+     * retrying when another thread moved either root first
+     */
+    private static int countComponents(CsrGraph csr, ForkJoinPool pool, int chunks) {
+        int n = csr.getNodeCount();
+        int[] offsets = csr.getOffsets();
+        int[] targets = csr.getTargets();
+        AtomicIntegerArray parent = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++) {
+            parent.set(i, i);
+        }
         
-        for (Node node : graph.getNodes()) {
-            int degree = graph.getDegree(node);
-            totalDegree += degree;
-            minDegree = Math.min(minDegree, degree);
-            maxDegree = Math.max(maxDegree, degree);
+        ParallelChunks.forRange(pool, n, chunks, (from, to) -> {
+            for (int u = from; u < to; u++) {
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    // Each edge appears in both rows; one direction is enough
+                    if (targets[e] > u) {
+                        union(parent, u, targets[e]);
+                    }
+                }
+            }
+        });
+        
+        int[] roots = new int[chunks];
+        ParallelChunks.forChunks(pool, n, chunks, (chunk, from, to) -> {
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                if (parent.get(i) == i) {
+                    count++;
+                }
+            }
+            roots[chunk] = count;
+        });
+        int total = 0;
+        for (int count : roots) {
+            total += count;
+        }
+        return total;
+    }
+    
+    static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b) {
+                return;
+            }
+            if (a < b) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            if (parent.compareAndSet(a, a, b)) {
+                return;
+            }
+        }
+    }
+    
+    static int find(AtomicIntegerArray parent, int x) {
+        while (true) {
+            int p = parent.get(x);
+            if (p == x) {
+                return x;
+            }
+            // Path halving; a lost CAS only means someone else shortened the path
+            int grandparent = parent.get(p);
+            if (grandparent != p) {
+                parent.compareAndSet(x, p, grandparent);
+            }
+            x = grandparent;
         }
+    }
+    
+    public static class GraphStats {
+        private final int minDegree;
+        private final int maxDegree;
+        private final double avgDegree;
+        private final long totalDegree;
+        private final double density;
+        private final int componentCount;
+        private final List<DegreeBin> degreeHistogram;
+        private final long computeTimeMs;
         
-        double avgDegree = graph.getNodeCount() > 0 ? (double) totalDegree / graph.getNodeCount() : 0;
+        public GraphStats(int minDegree, int maxDegree, double avgDegree, long totalDegree, double density,
+                          int componentCount, List<DegreeBin> degreeHistogram, long computeTimeMs) {
+            this.minDegree = minDegree;
+            this.maxDegree = maxDegree;
+            this.avgDegree = avgDegree;
+            this.totalDegree = totalDegree;
+            this.density = density;
+            this.componentCount = componentCount;
+            this.degreeHistogram = degreeHistogram;
+            this.computeTimeMs = computeTimeMs;
+        }
         
-        stats.put("minDegree", minDegree == Integer.MAX_VALUE ? 0 : minDegree);
-        stats.put("maxDegree", maxDegree);
-        stats.put("avgDegree", avgDegree);
-        stats.put("totalDegree", totalDegree);
+        public int getMinDegree() { return minDegree; }
+        public int getMaxDegree() { return maxDegree; }
+        public double getAvgDegree() { return avgDegree; }
+        public long getTotalDegree() { return totalDegree; }
+        public double getDensity() { return density; }
+        public int getComponentCount() { return componentCount; }
+        public List<DegreeBin> getDegreeHistogram() { return degreeHistogram; }
+        public long getComputeTimeMs() { return computeTimeMs; }
+    }
+    
+    public static class DegreeBin {
+        private final int min;
+        private final int max;
+        private final long count;
+        
+        public DegreeBin(int min, int max, long count) {
+            this.min = min;
+            this.max = max;
+            this.count = count;
+        }
         
-        return stats;
+        public int getMin() { return min; }
+        public int getMax() { return max; }
+        public long getCount() { return count; }
     }
     
     public static class GraphInfoResult {
@@ -81,20 +248,28 @@ public class GraphInfo {
         private final int edgeCount;
         private final boolean directed;
         private final String status;
-        private final Map<String, Object> degreeStats;
+        private final GraphStats stats;
+        private final long structureVersion;
+        // True when the counts and stats describe a filtered view rather than the full graph
+        private final boolean filtered;
         
-        public GraphInfoResult(int nodeCount, int edgeCount, boolean directed, String status, Map<String, Object> degreeStats) {
+        public GraphInfoResult(int nodeCount, int edgeCount, boolean directed, String status, GraphStats stats,
+                               long structureVersion, boolean filtered) {
             this.nodeCount = nodeCount;
             this.edgeCount = edgeCount;
             this.directed = directed;
             this.status = status;
-            this.degreeStats = degreeStats;
+            this.stats = stats;
+            this.structureVersion = structureVersion;
+            this.filtered = filtered;
         }
         
         public int getNodeCount() { return nodeCount; }
         public int getEdgeCount() { return edgeCount; }
         public boolean isDirected() { return directed; }
         public String getStatus() { return status; }
-        public Map<String, Object> getDegreeStats() { return degreeStats; }
+        public GraphStats getStats() { return stats; }
+        public long getStructureVersion() { return structureVersion; }
+        public boolean isFiltered() { return filtered; }
     }
-}
\ No newline at end of file
+}
@@ -2,15 +2,28 @@ package com.gephi.mcp;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Element;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
 import org.gephi.io.importer.api.Container;
 import org.gephi.io.importer.api.ImportController;
 import org.gephi.io.processor.plugin.DefaultProcessor;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class GraphLoader {
     
@@ -37,6 +50,10 @@ public class GraphLoader {
     }
     
     public static GraphResult loadGraph(String filePath, String format) throws Exception {
+        return loadGraph(GephiContext.getInstance().getSession(GephiContext.DEFAULT_SESSION), filePath, format, new LoadOptions());
+    }
+    
+    public static GraphResult loadGraph(GephiSession session, String filePath, String format, LoadOptions options) throws Exception {
         GephiContext context = GephiContext.getInstance();
         
         File file = new File(filePath);
@@ -44,6 +61,71 @@ public class GraphLoader {
             throw new Exception("File not found: " + filePath);
         }
         
+        boolean fromCache = false;
+        if (options.fastImport && EdgeListImporter.accepts(file, format)) {
+            // Plain edge lists skip the importer and the snapshot cache; they already load at disk speed
+            if (session.getGraph().getNodeCount() > 0) {
+                context.resetSession(session);
+            }
+            EdgeListImporter.importFile(file, session.getGraphModel(), options.directed);
+        } else {
+            // Unchanged files come straight from the binary snapshot cache
+            GraphSnapshotCache cache = GraphSnapshotCache.getInstance();
+            String cacheKey = options.cache && cache.isEnabled() ? cache.fingerprint(file, format + options.projectionKey()) : null;
+            if (cacheKey != null && cache.contains(cacheKey)) {
+                // A session holds one graph, so loading replaces whatever it had before
+                context.resetSession(session);
+                fromCache = cache.read(cacheKey, session.getGraphModel());
+                if (!fromCache) {
+                    context.resetSession(session);
+                }
+            }
+            
+            if (!fromCache) {
+                importFile(context, session, file);
+                projectColumns(session.getGraphModel(), options);
+                if (cacheKey != null) {
+                    cache.write(cacheKey, session.getGraphModel());
+                }
+            }
+            
+            if (options.internStrings) {
+                internStrings(session.getGraphModel());
+            }
+        }
+        
+        // Get graph statistics
+        GraphModel graphModel = session.getGraphModel();
+        Graph graph = graphModel.getGraph();
+        session.setSource(file.getCanonicalPath());
+        session.markStructureChanged();
+        
+        // Put nodes back where the last layout of this file left them
+        int positionsRestored = 0;
+        if (options.restorePositions) {
+            List<Node> unplaced = PositionStore.getInstance().restore(session.getSource(), graph);
+            if (unplaced != null) {
+                positionsRestored = graph.getNodeCount() - unplaced.size();
+                for (Node node : unplaced) {
+                    session.getUnplacedNodeIds().add(node.getId());
+                }
+            }
+        }
+        
+        // The new graph may push other sessions over the heap budget
+        context.enforceHeapBudget(session);
+        
+        return new GraphResult(
+            graph.getNodeCount(),
+            graph.getEdgeCount(),
+            graphModel.isDirected(),
+            filePath,
+            fromCache,
+            positionsRestored
+        );
+    }
+    
+    private static void importFile(GephiContext context, GephiSession session, File file) throws Exception {
         ImportController importController = context.getImportController();
         
         // Import the file
@@ -61,19 +143,126 @@ public class GraphLoader {
         // Process the container
         container.getLoader().setEdgeDefault(org.gephi.io.importer.api.EdgeDirectionDefault.MIXED);
         
-        // Apply to current workspace
-        importController.process(container, new DefaultProcessor(), context.getWorkspace());
+        // A session holds one graph, so loading replaces whatever it had before
+        if (session.getGraph().getNodeCount() > 0) {
+            context.resetSession(session);
+        }
         
-        // Get graph statistics
-        GraphModel graphModel = context.getGraphModel();
+        // Apply to the session workspace
+        importController.process(container, new DefaultProcessor(), session.getWorkspace());
+    }
+    
+    /**
+     * Drops the attribute columns the caller did not ask for
+     */
+    private static void projectColumns(GraphModel graphModel, LoadOptions options) {
+        if (options.nodeColumns != null) {
+            removeColumnsExcept(graphModel.getNodeTable(), options.nodeColumns);
+        }
+        if (options.edgeColumns != null) {
+            removeColumnsExcept(graphModel.getEdgeTable(), options.edgeColumns);
+        }
+    }
+    
+    private static void removeColumnsExcept(Table table, Set<String> keep) {
+        List<Column> drop = new ArrayList<>();
+        for (Column column : table) {
+            if (!column.isProperty() && !keep.contains(column.getId()) && !keep.contains(column.getTitle())) {
+                drop.add(column);
+            }
+        }
+        for (Column column : drop) {
+            table.removeColumn(column);
+        }
+    }
+    
+    /**
+     * Makes equal string attribute values share one instance, per column
+     */
+    private static void internStrings(GraphModel graphModel) {
         Graph graph = graphModel.getGraph();
+        graph.writeLock();
+        try {
+            Map<Column, Map<String, String>> pools = new HashMap<>();
+            List<Column> nodeColumns = stringColumns(graphModel.getNodeTable());
+            for (Node node : graph.getNodes()) {
+                internValues(node, nodeColumns, pools);
+            }
+            List<Column> edgeColumns = stringColumns(graphModel.getEdgeTable());
+            for (Edge edge : graph.getEdges()) {
+                internValues(edge, edgeColumns, pools);
+            }
+        } finally {
+            graph.writeUnlock();
+        }
+    }
+    
+    private static List<Column> stringColumns(Table table) {
+        List<Column> columns = new ArrayList<>();
+        for (Column column : table) {
+            if (!column.isProperty() && column.getTypeClass() == String.class) {
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+    
+    private static void internValues(Element element, List<Column> columns, Map<Column, Map<String, String>> pools) {
+        for (Column column : columns) {
+            Object value = element.getAttribute(column);
+            if (value == null) {
+                continue;
+            }
+            Map<String, String> pool = pools.computeIfAbsent(column, key -> new HashMap<>());
+            String canonical = pool.putIfAbsent((String) value, (String) value);
+            if (canonical != null && canonical != value) {
+                element.setAttribute(column, canonical);
+            }
+        }
+    }
+    
+    public static class LoadOptions {
+        // Use and fill the binary snapshot cache
+        public boolean cache = true;
+        // Read delimited edge lists with EdgeListImporter instead of the Gephi importer
+        public boolean fastImport = true;
+        // Edge direction for the fast path, which has no per-edge direction column
+        public boolean directed = true;
+        // Attribute columns to keep, by id or title; null keeps them all
+        public Set<String> nodeColumns;
+        public Set<String> edgeColumns;
+        // Share one instance among equal string values, e.g. category labels
+        public boolean internStrings = false;
+        // Re-apply positions saved by the last layout of the same file
+        public boolean restorePositions = true;
         
-        return new GraphResult(
-            graph.getNodeCount(),
-            graph.getEdgeCount(),
-            graphModel.isDirected(),
-            filePath
-        );
+        public static LoadOptions fromJson(JsonObject params) {
+            LoadOptions options = new LoadOptions();
+            if (params.has("cache")) options.cache = params.get("cache").getAsBoolean();
+            if (params.has("fastImport")) options.fastImport = params.get("fastImport").getAsBoolean();
+            if (params.has("directed")) options.directed = params.get("directed").getAsBoolean();
+            if (params.has("nodeColumns")) options.nodeColumns = stringSet(params.getAsJsonArray("nodeColumns"));
+            if (params.has("edgeColumns")) options.edgeColumns = stringSet(params.getAsJsonArray("edgeColumns"));
+            if (params.has("internStrings")) options.internStrings = params.get("internStrings").getAsBoolean();
+            if (params.has("restorePositions")) options.restorePositions = params.get("restorePositions").getAsBoolean();
+            return options;
+        }
+        
+        /**
+         * Part of the snapshot cache key, since projected graphs are cached as projected
+         */
+        String projectionKey() {
+            return "|nodes=" + (nodeColumns != null ? new TreeSet<>(nodeColumns) : "*")
+                + "|edges=" + (edgeColumns != null ? new TreeSet<>(edgeColumns) : "*");
+        }
+        
+        private static Set<String> stringSet(JsonArray array) {
+            Set<String> values = new HashSet<>();
+            for (JsonElement element : array) {
+                values.add(element.getAsString());
+            }
+            return values;
+        }
     }
     
     public static class GraphResult {
@@ -81,13 +270,22 @@ public class GraphLoader {
         private final int edgeCount;
         private final boolean directed;
         private final String source;
+        private final boolean fromCache;
+        private final int positionsRestored;
         private final String status;
         
         public GraphResult(int nodeCount, int edgeCount, boolean directed, String source) {
+            this(nodeCount, edgeCount, directed, source, false, 0);
+        }
+        
+        public GraphResult(int nodeCount, int edgeCount, boolean directed, String source, boolean fromCache,
+                           int positionsRestored) {
             this.nodeCount = nodeCount;
             this.edgeCount = edgeCount;
             this.directed = directed;
             this.source = source;
+            this.fromCache = fromCache;
+            this.positionsRestored = positionsRestored;
             this.status = "success";
         }
         
@@ -95,6 +293,8 @@ public class GraphLoader {
         public int getEdgeCount() { return edgeCount; }
         public boolean isDirected() { return directed; }
         public String getSource() { return source; }
+        public boolean isFromCache() { return fromCache; }
+        public int getPositionsRestored() { return positionsRestored; }
         public String getStatus() { return status; }
     }
 }
\ No newline at end of file
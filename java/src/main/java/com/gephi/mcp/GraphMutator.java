@@ -0,0 +1,423 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Element;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies a batch of node/edge additions, removals and updates to a session graph.
+ * The whole batch is checked first and then applied under one write lock, so it either
+ * applies completely or not at all. Work is proportional to the batch, not the graph.
+ */
+public class GraphMutator {
+
+    private GraphMutator() {
+    }
+
+    public static MutationResult apply(GephiSession session, JsonObject batch) throws Exception {
+        GraphModel graphModel = session.getGraphModel();
+        Graph graph = graphModel.getGraph();
+        GraphFactory factory = graphModel.factory();
+
+        JsonArray addNodes = array(batch, "addNodes");
+        JsonArray addEdges = array(batch, "addEdges");
+        JsonArray updateNodes = array(batch, "updateNodes");
+        JsonArray updateEdges = array(batch, "updateEdges");
+        JsonArray removeEdges = array(batch, "removeEdges");
+        JsonArray removeNodes = array(batch, "removeNodes");
+
+        MutationResult result;
+        graph.writeLock();
+        try {
+            // Validate everything before the first change so a bad entry leaves the graph untouched
+            Set<String> removedNodeIds = new HashSet<>();
+            for (JsonElement entry : removeNodes) {
+                String id = entry.getAsString();
+                if (graph.getNode(id) == null) {
+                    throw new Exception("Unknown node: " + id);
+                }
+                removedNodeIds.add(id);
+            }
+            Set<String> newNodeIds = new HashSet<>();
+            for (JsonElement entry : addNodes) {
+                String id = requireId(entry.getAsJsonObject(), "addNodes");
+                if ((graph.getNode(id) != null && !removedNodeIds.contains(id)) || !newNodeIds.add(id)) {
+                    throw new Exception("Node already exists: " + id);
+                }
+            }
+            List<Edge> edgesToRemove = new ArrayList<>();
+            for (JsonElement entry : removeEdges) {
+                edgesToRemove.add(entry.isJsonPrimitive()
+                    ? findEdge(graph, idObject(entry), "removeEdges")
+                    : findEdge(graph, entry.getAsJsonObject(), "removeEdges"));
+            }
+            // Edges gone by the time additions run, so their ids can be reused in the same batch
+            Set<Edge> removedEdges = new HashSet<>(edgesToRemove);
+            for (String id : removedNodeIds) {
+                removedEdges.addAll(graph.getEdges(graph.getNode(id)).toCollection());
+            }
+            Set<String> newEdgeIds = new HashSet<>();
+            for (JsonElement entry : addEdges) {
+                JsonObject edge = entry.getAsJsonObject();
+                for (String end : new String[] {"source", "target"}) {
+                    if (!edge.has(end)) {
+                        throw new Exception("addEdges entry is missing " + end);
+                    }
+                    String id = edge.get(end).getAsString();
+                    boolean kept = graph.getNode(id) != null && !removedNodeIds.contains(id);
+                    if (!kept && !newNodeIds.contains(id)) {
+                        throw new Exception("Unknown node: " + id);
+                    }
+                }
+                Edge existing = edge.has("id") ? graph.getEdge(edge.get("id").getAsString()) : null;
+                if (edge.has("id") && ((existing != null && !removedEdges.contains(existing))
+                        || !newEdgeIds.add(edge.get("id").getAsString()))) {
+                    throw new Exception("Edge already exists: " + edge.get("id").getAsString());
+                }
+            }
+            List<Node> nodesToUpdate = new ArrayList<>();
+            for (JsonElement entry : updateNodes) {
+                String id = requireId(entry.getAsJsonObject(), "updateNodes");
+                Node node = graph.getNode(id);
+                if (node == null || removedNodeIds.contains(id)) {
+                    throw new Exception("Unknown node: " + id);
+                }
+                nodesToUpdate.add(node);
+            }
+            List<Edge> edgesToUpdate = new ArrayList<>();
+            for (JsonElement entry : updateEdges) {
+                edgesToUpdate.add(findEdge(graph, entry.getAsJsonObject(), "updateEdges"));
+            }
+            Map<String, Class<?>> nodeTypes = planColumns(graphModel.getNodeTable(), addNodes, updateNodes);
+            Map<String, Class<?>> edgeTypes = planColumns(graphModel.getEdgeTable(), addEdges, updateEdges);
+            checkFields(addNodes, "x", "y", "size");
+            checkFields(updateNodes, "x", "y", "size");
+            checkFields(addEdges, "weight");
+            checkFields(updateEdges, "weight");
+
+            Map<String, Column> nodeColumns = createColumns(graphModel.getNodeTable(), nodeTypes);
+            Map<String, Column> edgeColumns = createColumns(graphModel.getEdgeTable(), edgeTypes);
+
+            // Removals first so a node removed and re-added in the same batch is replaced
+            int edgesRemoved = 0;
+            for (Edge edge : edgesToRemove) {
+                if (graph.contains(edge) && graph.removeEdge(edge)) {
+                    edgesRemoved++;
+                }
+            }
+            int nodesRemoved = 0;
+            for (String id : removedNodeIds) {
+                if (graph.removeNode(graph.getNode(id))) {
+                    nodesRemoved++;
+                }
+                session.getUnplacedNodeIds().remove(id);
+            }
+
+            List<Node> newNodes = new ArrayList<>(addNodes.size());
+            for (JsonElement entry : addNodes) {
+                JsonObject spec = entry.getAsJsonObject();
+                String id = spec.get("id").getAsString();
+                Node node = factory.newNode(id);
+                node.setLabel(spec.has("label") ? spec.get("label").getAsString() : id);
+                applyNode(node, spec, nodeColumns);
+                newNodes.add(node);
+            }
+            graph.addAllNodes(newNodes);
+
+            // Nodes added without coordinates are placed by the next incremental layout
+            for (JsonElement entry : addNodes) {
+                JsonObject spec = entry.getAsJsonObject();
+                if (!spec.has("x") || !spec.has("y")) {
+                    session.getUnplacedNodeIds().add(spec.get("id").getAsString());
+                }
+            }
+
+            List<Edge> newEdges = new ArrayList<>(addEdges.size());
+            for (JsonElement entry : addEdges) {
+                JsonObject spec = entry.getAsJsonObject();
+                Node source = graph.getNode(spec.get("source").getAsString());
+                Node target = graph.getNode(spec.get("target").getAsString());
+                double weight = spec.has("weight") ? spec.get("weight").getAsDouble() : 1.0;
+                boolean directed = spec.has("directed") ? spec.get("directed").getAsBoolean() : graphModel.isDirected();
+                Edge edge = spec.has("id")
+                    ? factory.newEdge(spec.get("id").getAsString(), source, target, 0, weight, directed)
+                    : factory.newEdge(source, target, 0, weight, directed);
+                if (spec.has("label")) {
+                    edge.setLabel(spec.get("label").getAsString());
+                }
+                applyAttributes(edge, spec, edgeColumns);
+                newEdges.add(edge);
+            }
+            graph.addAllEdges(newEdges);
+
+            for (int i = 0; i < nodesToUpdate.size(); i++) {
+                JsonObject spec = updateNodes.get(i).getAsJsonObject();
+                Node node = nodesToUpdate.get(i);
+                if (spec.has("label")) {
+                    node.setLabel(spec.get("label").getAsString());
+                }
+                applyNode(node, spec, nodeColumns);
+            }
+            for (int i = 0; i < edgesToUpdate.size(); i++) {
+                JsonObject spec = updateEdges.get(i).getAsJsonObject();
+                Edge edge = edgesToUpdate.get(i);
+                if (spec.has("label")) {
+                    edge.setLabel(spec.get("label").getAsString());
+                }
+                if (spec.has("weight")) {
+                    edge.setWeight(spec.get("weight").getAsDouble());
+                }
+                applyAttributes(edge, spec, edgeColumns);
+            }
+
+            // Edge weights are part of the CSR snapshots cached against the structure version
+            boolean weightsChanged = false;
+            for (JsonElement entry : updateEdges) {
+                weightsChanged |= entry.getAsJsonObject().has("weight");
+            }
+            boolean structural = !addNodes.isEmpty() || !addEdges.isEmpty() || nodesRemoved > 0 || edgesRemoved > 0
+                || weightsChanged;
+            long version = structural ? session.markStructureChanged() : session.markChanged();
+
+            result = new MutationResult(
+                newNodes.size(),
+                nodesRemoved,
+                newEdges.size(),
+                edgesRemoved,
+                nodesToUpdate.size(),
+                edgesToUpdate.size(),
+                graph.getNodeCount(),
+                graph.getEdgeCount(),
+                version
+            );
+        } finally {
+            graph.writeUnlock();
+        }
+
+        // A graph that grew may push other sessions over the heap budget
+        if (result.getNodesAdded() > 0 || result.getEdgesAdded() > 0) {
+            GephiContext.getInstance().enforceHeapBudget(session);
+        }
+        return result;
+    }
+
+    private static JsonArray array(JsonObject batch, String key) throws Exception {
+        if (!batch.has(key)) {
+            return new JsonArray();
+        }
+        if (!batch.get(key).isJsonArray()) {
+            throw new Exception(key + " must be an array");
+        }
+        return batch.getAsJsonArray(key);
+    }
+
+    private static String requireId(JsonObject spec, String list) throws Exception {
+        if (!spec.has("id")) {
+            throw new Exception(list + " entry is missing id");
+        }
+        return spec.get("id").getAsString();
+    }
+
+    private static JsonObject idObject(JsonElement id) {
+        JsonObject spec = new JsonObject();
+        spec.add("id", id);
+        return spec;
+    }
+
+    /**
+     * An edge is named by its id, or by source and target
+     */
+    private static Edge findEdge(Graph graph, JsonObject spec, String list) throws Exception {
+        Edge edge;
+        if (spec.has("id")) {
+            edge = graph.getEdge(spec.get("id").getAsString());
+        } else if (spec.has("source") && spec.has("target")) {
+            Node source = graph.getNode(spec.get("source").getAsString());
+            Node target = graph.getNode(spec.get("target").getAsString());
+            edge = source != null && target != null ? graph.getEdge(source, target) : null;
+        } else {
+            throw new Exception(list + " entry needs an id or a source and target");
+        }
+        if (edge == null) {
+            throw new Exception("Unknown edge: " + spec);
+        }
+        return edge;
+    }
+
+    /**
+     * Type of every attribute the batch writes: the existing column's, or inferred from the
+     * first value for new columns. Also checks that every value converts to that type.
+     */
+    private static Map<String, Class<?>> planColumns(Table table, JsonArray... lists) throws Exception {
+        Map<String, Class<?>> types = new HashMap<>();
+        for (JsonArray list : lists) {
+            for (JsonElement entry : list) {
+                JsonObject spec = entry.getAsJsonObject();
+                if (!spec.has("attributes")) {
+                    continue;
+                }
+                for (Map.Entry<String, JsonElement> attribute : spec.getAsJsonObject("attributes").entrySet()) {
+                    String key = attribute.getKey();
+                    JsonElement value = attribute.getValue();
+                    if (!value.isJsonPrimitive() && !value.isJsonNull()) {
+                        throw new Exception("Attribute " + key + " must be a string, number, boolean or null");
+                    }
+                    Class<?> type = types.get(key);
+                    if (type == null) {
+                        Column column = table.getColumn(key);
+                        if (column != null && (column.isProperty() || column.isReadOnly())) {
+                            throw new Exception("Attribute " + key + " cannot be written");
+                        } else if (column != null) {
+                            type = column.getTypeClass();
+                        } else if (value.isJsonNull()) {
+                            continue;
+                        } else {
+                            type = inferType(value.getAsJsonPrimitive());
+                        }
+                        types.put(key, type);
+                    }
+                    convert(value, type, key);
+                }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Checks the label, directed flag and the given numeric fields of every entry, which are
+     * only read once the graph has started to change
+     */
+    private static void checkFields(JsonArray list, String... numbers) throws Exception {
+        for (JsonElement entry : list) {
+            JsonObject spec = entry.getAsJsonObject();
+            for (String field : numbers) {
+                if (spec.has(field)) {
+                    checkValue(spec.get(field), Double.class, field);
+                }
+            }
+            if (spec.has("label")) {
+                checkValue(spec.get("label"), String.class, "label");
+            }
+            if (spec.has("directed")) {
+                checkValue(spec.get("directed"), Boolean.class, "directed");
+            }
+        }
+    }
+
+    private static void checkValue(JsonElement value, Class<?> type, String key) throws Exception {
+        if (!value.isJsonPrimitive()) {
+            throw new Exception("Invalid value for " + key + ": " + value);
+        }
+        convert(value, type, key);
+    }
+
+    private static Map<String, Column> createColumns(Table table, Map<String, Class<?>> types) {
+        Map<String, Column> columns = new HashMap<>();
+        for (Map.Entry<String, Class<?>> entry : types.entrySet()) {
+            Column column = table.getColumn(entry.getKey());
+            if (column == null) {
+                column = table.addColumn(entry.getKey(), entry.getValue());
+            }
+            columns.put(entry.getKey(), column);
+        }
+        return columns;
+    }
+
+    private static Class<?> inferType(JsonPrimitive value) {
+        if (value.isBoolean()) {
+            return Boolean.class;
+        } else if (value.isNumber()) {
+            return Double.class;
+        }
+        return String.class;
+    }
+
+    private static void applyNode(Node node, JsonObject spec, Map<String, Column> columns) throws Exception {
+        if (spec.has("x")) node.setX(spec.get("x").getAsFloat());
+        if (spec.has("y")) node.setY(spec.get("y").getAsFloat());
+        if (spec.has("size")) node.setSize(spec.get("size").getAsFloat());
+        applyAttributes(node, spec, columns);
+    }
+
+    private static void applyAttributes(Element element, JsonObject spec, Map<String, Column> columns) throws Exception {
+        if (!spec.has("attributes")) {
+            return;
+        }
+        for (Map.Entry<String, JsonElement> attribute : spec.getAsJsonObject("attributes").entrySet()) {
+            Column column = columns.get(attribute.getKey());
+            if (column == null) {
+                // Only nulls were given for a column that does not exist; nothing to clear
+                continue;
+            }
+            element.setAttribute(column, convert(attribute.getValue(), column.getTypeClass(), column.getId()));
+        }
+    }
+
+    private static Object convert(JsonElement value, Class<?> type, String key) throws Exception {
+        if (value.isJsonNull()) {
+            return null;
+        }
+        try {
+            if (type == String.class) return value.getAsString();
+            if (type == Double.class) return value.getAsDouble();
+            if (type == Float.class) return value.getAsFloat();
+            if (type == Integer.class) return value.getAsInt();
+            if (type == Long.class) return value.getAsLong();
+            if (type == Boolean.class) return value.getAsBoolean();
+        } catch (RuntimeException e) {
+            throw new Exception("Invalid value for " + key + ": " + value);
+        }
+        throw new Exception("Unsupported attribute type for " + key + ": " + type.getSimpleName());
+    }
+
+    public static class MutationResult {
+        private final int nodesAdded;
+        private final int nodesRemoved;
+        private final int edgesAdded;
+        private final int edgesRemoved;
+        private final int nodesUpdated;
+        private final int edgesUpdated;
+        private final int nodeCount;
+        private final int edgeCount;
+        private final long version;
+
+        public MutationResult(int nodesAdded, int nodesRemoved, int edgesAdded, int edgesRemoved,
+                              int nodesUpdated, int edgesUpdated, int nodeCount, int edgeCount, long version) {
+            this.nodesAdded = nodesAdded;
+            this.nodesRemoved = nodesRemoved;
+            this.edgesAdded = edgesAdded;
+            this.edgesRemoved = edgesRemoved;
+            this.nodesUpdated = nodesUpdated;
+            this.edgesUpdated = edgesUpdated;
+            this.nodeCount = nodeCount;
+            this.edgeCount = edgeCount;
+            this.version = version;
+        }
+
+        public int getNodesAdded() { return nodesAdded; }
+        public int getNodesRemoved() { return nodesRemoved; }
+        public int getEdgesAdded() { return edgesAdded; }
+        public int getEdgesRemoved() { return edgesRemoved; }
+        public int getNodesUpdated() { return nodesUpdated; }
+        public int getEdgesUpdated() { return edgesUpdated; }
+        public int getNodeCount() { return nodeCount; }
+        public int getEdgeCount() { return edgeCount; }
+        public long getVersion() { return version; }
+    }
+}
@@ -0,0 +1,416 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.GraphView;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Subgraph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Local queries (k-hop neighbourhoods, induced subgraphs, shortest paths) answered from the
+ * session's cached CSR rows and an id index built alongside them. Work is proportional to the
+ * part of the graph a query touches, not to the graph size. Results come back as compact lists
+ * and can also be materialized as a named GraphView over the session's graph.
+ */
+public class GraphQuery {
+
+    private GraphQuery() {
+    }
+
+    /**
+     * Nodes within depth hops of the seeds, in BFS order. direction is "both", "out" or "in";
+     * "out" and "in" need a directed graph.
+     */
+    public static QueryResult neighbourhood(GephiSession session, JsonObject params) throws Exception {
+        long start = System.nanoTime();
+        List<String> seeds = idList(params, "ids");
+        if (params.has("id")) {
+            seeds.add(0, params.get("id").getAsString());
+        }
+        if (seeds.isEmpty()) {
+            throw new Exception("neighbourhood needs id or ids");
+        }
+        int depth = params.has("depth") ? params.get("depth").getAsInt() : 1;
+        int maxNodes = params.has("maxNodes") ? params.get("maxNodes").getAsInt() : 10000;
+        String direction = params.has("direction") ? params.get("direction").getAsString() : "both";
+
+        CsrGraph csr = session.getCsrGraph();
+        CsrGraph rows = rows(session, direction);
+        int[] offsets = rows.getOffsets();
+        int[] targets = rows.getTargets();
+
+        // BFS distance per visited index; insertion order is the visiting order
+        Map<Integer, Integer> distance = new LinkedHashMap<>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (String id : seeds) {
+            int index = resolve(session, id);
+            if (distance.putIfAbsent(index, 0) == null) {
+                queue.add(index);
+            }
+        }
+        boolean truncated = false;
+        while (!queue.isEmpty() && !truncated) {
+            int u = queue.poll();
+            int d = distance.get(u);
+            if (d == depth) {
+                continue;
+            }
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                if (!distance.containsKey(v)) {
+                    if (distance.size() >= maxNodes) {
+                        truncated = true;
+                        break;
+                    }
+                    distance.put(v, d + 1);
+                    queue.add(v);
+                }
+            }
+        }
+
+        Node[] nodes = csr.getNodes();
+        List<QueryNode> resultNodes = new ArrayList<>(distance.size());
+        for (Map.Entry<Integer, Integer> entry : distance.entrySet()) {
+            resultNodes.add(new QueryNode(String.valueOf(nodes[entry.getKey()].getId()), entry.getValue()));
+        }
+        boolean includeEdges = !params.has("includeEdges") || params.get("includeEdges").getAsBoolean();
+        List<QueryEdge> edges = includeEdges ? inducedEdges(session, distance.keySet()) : Collections.emptyList();
+        String view = materialize(session, params, distance.keySet(), null);
+        return new QueryResult(resultNodes, edges, truncated, view, micros(start));
+    }
+
+    /**
+     * The given nodes and every edge between them
+     */
+    public static QueryResult subgraph(GephiSession session, JsonObject params) throws Exception {
+        long start = System.nanoTime();
+        List<String> ids = idList(params, "ids");
+        if (ids.isEmpty()) {
+            throw new Exception("subgraph needs ids");
+        }
+
+        Set<Integer> members = new HashSet<>();
+        List<QueryNode> resultNodes = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            if (members.add(resolve(session, id))) {
+                resultNodes.add(new QueryNode(id, null));
+            }
+        }
+        boolean includeEdges = !params.has("includeEdges") || params.get("includeEdges").getAsBoolean();
+        List<QueryEdge> edges = includeEdges ? inducedEdges(session, members) : Collections.emptyList();
+        String view = materialize(session, params, members, null);
+        return new QueryResult(resultNodes, edges, false, view, micros(start));
+    }
+
+    /**
+     * Fewest-hop path, or lightest path with weighted set (weights are read as lengths and
+     * must not be negative). Follows edge direction on directed graphs unless directed is false.
+     */
+    public static QueryResult shortestPath(GephiSession session, JsonObject params) throws Exception {
+        long start = System.nanoTime();
+        if (!params.has("source") || !params.has("target")) {
+            throw new Exception("shortest_path needs source and target");
+        }
+        int source = resolve(session, params.get("source").getAsString());
+        int target = resolve(session, params.get("target").getAsString());
+        boolean weighted = params.has("weighted") && params.get("weighted").getAsBoolean();
+        boolean directed = params.has("directed") ? params.get("directed").getAsBoolean()
+            : session.getGraphModel().isDirected();
+
+        CsrGraph rows = rows(session, directed ? "out" : "both");
+        int[] offsets = rows.getOffsets();
+        int[] targets = rows.getTargets();
+        float[] weights = rows.getWeights();
+
+        Map<Integer, Integer> parent = new HashMap<>();
+        Map<Integer, Double> distance = new HashMap<>();
+        parent.put(source, -1);
+        distance.put(source, 0.0);
+        if (weighted) {
+            // Dijkstra with lazy deletion; entries are {distance, node}
+            PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+            queue.add(new double[] {0, source});
+            while (!queue.isEmpty()) {
+                double[] head = queue.poll();
+                int u = (int) head[1];
+                if (head[0] > distance.get(u)) {
+                    continue;
+                }
+                if (u == target) {
+                    break;
+                }
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    if (weights[e] < 0) {
+                        throw new Exception("Negative edge weight; weighted shortest paths need non-negative weights");
+                    }
+                    int v = targets[e];
+                    double candidate = head[0] + weights[e];
+                    Double known = distance.get(v);
+                    if (known == null || candidate < known) {
+                        distance.put(v, candidate);
+                        parent.put(v, u);
+                        queue.add(new double[] {candidate, v});
+                    }
+                }
+            }
+        } else {
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            queue.add(source);
+            while (!queue.isEmpty() && !parent.containsKey(target)) {
+                int u = queue.poll();
+                double next = distance.get(u) + 1;
+                for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                    int v = targets[e];
+                    if (!parent.containsKey(v)) {
+                        parent.put(v, u);
+                        distance.put(v, next);
+                        queue.add(v);
+                    }
+                }
+            }
+        }
+
+        if (!parent.containsKey(target)) {
+            return new QueryResult(Collections.emptyList(), Collections.emptyList(), false, null, micros(start));
+        }
+        List<Integer> path = new ArrayList<>();
+        for (int at = target; at >= 0; at = parent.get(at)) {
+            path.add(at);
+        }
+        Collections.reverse(path);
+
+        Node[] nodes = session.getCsrGraph().getNodes();
+        List<QueryNode> resultNodes = new ArrayList<>(path.size());
+        List<QueryEdge> edges = new ArrayList<>(path.size());
+        for (int i = 0; i < path.size(); i++) {
+            int index = path.get(i);
+            Number length = weighted ? (Number) distance.get(index) : (Number) i;
+            resultNodes.add(new QueryNode(String.valueOf(nodes[index].getId()), length));
+            if (i > 0) {
+                int previous = path.get(i - 1);
+                // With parallel edges, report the lightest, which is the one a weighted search takes
+                edges.add(new QueryEdge(String.valueOf(nodes[previous].getId()), String.valueOf(nodes[index].getId()),
+                    lightest(offsets, targets, weights, previous, index)));
+            }
+        }
+        String view = materialize(session, params, new HashSet<>(path), path);
+        return new QueryResult(resultNodes, edges, false, view, micros(start));
+    }
+
+    private static float lightest(int[] offsets, int[] targets, float[] weights, int u, int v) {
+        float best = Float.POSITIVE_INFINITY;
+        for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+            if (targets[e] == v) {
+                best = Math.min(best, weights[e]);
+            }
+        }
+        return best;
+    }
+
+    private static CsrGraph rows(GephiSession session, String direction) throws Exception {
+        if ("both".equals(direction)) {
+            return session.getCsrGraph();
+        }
+        if (!"out".equals(direction) && !"in".equals(direction)) {
+            throw new Exception("Unknown direction: " + direction);
+        }
+        if (!session.getGraphModel().isDirected()) {
+            // An undirected graph has no out or in edges; answering with all of them would look directed
+            throw new Exception("Graph is undirected; use direction both");
+        }
+        return session.getDirectedCsrGraph("in".equals(direction));
+    }
+
+    /**
+     * Edges with both ends in members. Directed graphs list each edge once from its source's
+     * outgoing row; undirected rows hold every edge twice, so only the lower end reports it.
+     */
+    private static List<QueryEdge> inducedEdges(GephiSession session, Set<Integer> members) {
+        boolean directed = session.getGraphModel().isDirected();
+        CsrGraph rows = directed ? session.getDirectedCsrGraph(false) : session.getCsrGraph();
+        int[] offsets = rows.getOffsets();
+        int[] targets = rows.getTargets();
+        float[] weights = rows.getWeights();
+        Node[] nodes = rows.getNodes();
+
+        List<QueryEdge> edges = new ArrayList<>();
+        for (int u : members) {
+            String sourceId = String.valueOf(nodes[u].getId());
+            boolean loopSeen = false;
+            for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+                int v = targets[e];
+                if (!members.contains(v) || (!directed && v < u)) {
+                    continue;
+                }
+                if (!directed && v == u) {
+                    // A symmetric self loop sits in its row twice
+                    loopSeen = !loopSeen;
+                    if (!loopSeen) {
+                        continue;
+                    }
+                }
+                edges.add(new QueryEdge(sourceId, String.valueOf(nodes[v].getId()), weights[e]));
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Creates the view named by the "view" parameter, if any. With a path only the edges along it
+     * are kept, otherwise every edge between the members.
+     */
+    private static String materialize(GephiSession session, JsonObject params, Set<Integer> members,
+                                      List<Integer> path) throws Exception {
+        if (!params.has("view")) {
+            return null;
+        }
+        String viewName = params.get("view").getAsString();
+        GraphView active = session.getView(viewName);
+        if (active != null && active == session.getGraphModel().getVisibleView()) {
+            // Replacing it would destroy the view the query just ran on and fall back to the full graph
+            throw new Exception("View " + viewName + " is active; choose another name or switch views with set_view first");
+        }
+        GraphModel graphModel = session.getGraphModel();
+        Graph graph = graphModel.getGraphVisible();
+        Node[] nodes = session.getCsrGraph().getNodes();
+
+        List<Node> viewNodes = new ArrayList<>(members.size());
+        for (int index : members) {
+            viewNodes.add(nodes[index]);
+        }
+        Set<Edge> viewEdges = new HashSet<>();
+        graph.readLock();
+        try {
+            if (path != null) {
+                for (int i = 1; i < path.size(); i++) {
+                    Node a = nodes[path.get(i - 1)];
+                    Node b = nodes[path.get(i)];
+                    Edge edge = graph.getEdge(a, b);
+                    if (edge == null) {
+                        edge = graph.getEdge(b, a);
+                    }
+                    if (edge != null) {
+                        viewEdges.add(edge);
+                    }
+                }
+            } else {
+                Set<Node> inside = new HashSet<>(viewNodes);
+                for (Node node : viewNodes) {
+                    for (Edge edge : graph.getEdges(node)) {
+                        if (inside.contains(edge.getSource()) && inside.contains(edge.getTarget())) {
+                            viewEdges.add(edge);
+                        }
+                    }
+                }
+            }
+        } finally {
+            graph.readUnlock();
+        }
+
+        GraphView view = graphModel.createView();
+        Subgraph subgraph = graphModel.getGraph(view);
+        subgraph.addAllNodes(viewNodes);
+        subgraph.addAllEdges(viewEdges);
+        session.putView(viewName, view);
+        return viewName;
+    }
+
+    /**
+     * Index of a node id in the session's CSR rows; the id index is cached with them
+     */
+    private static int resolve(GephiSession session, String id) throws Exception {
+        Map<String, Integer> index = session.cached("nodeIndex", () -> {
+            Node[] nodes = session.getCsrGraph().getNodes();
+            Map<String, Integer> map = new HashMap<>(nodes.length * 4 / 3 + 1);
+            for (int i = 0; i < nodes.length; i++) {
+                map.put(String.valueOf(nodes[i].getId()), i);
+            }
+            return map;
+        });
+        Integer found = index.get(id);
+        if (found == null) {
+            throw new Exception("Unknown node: " + id);
+        }
+        return found;
+    }
+
+    private static List<String> idList(JsonObject params, String key) {
+        List<String> ids = new ArrayList<>();
+        if (params.has(key)) {
+            for (JsonElement element : params.getAsJsonArray(key)) {
+                ids.add(element.getAsString());
+            }
+        }
+        return ids;
+    }
+
+    private static long micros(long start) {
+        return (System.nanoTime() - start) / 1000;
+    }
+
+    public static class QueryNode {
+        private final String id;
+        // Hops (or weighted path length) from the query's start; null where it does not apply
+        private final Number distance;
+
+        public QueryNode(String id, Number distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        public String getId() { return id; }
+        public Number getDistance() { return distance; }
+    }
+
+    public static class QueryEdge {
+        private final String source;
+        private final String target;
+        private final float weight;
+
+        public QueryEdge(String source, String target, float weight) {
+            this.source = source;
+            this.target = target;
+            this.weight = weight;
+        }
+
+        public String getSource() { return source; }
+        public String getTarget() { return target; }
+        public float getWeight() { return weight; }
+    }
+
+    public static class QueryResult {
+        private final List<QueryNode> nodes;
+        private final List<QueryEdge> edges;
+        private final boolean truncated;
+        private final String view;
+        private final long timeMicros;
+
+        public QueryResult(List<QueryNode> nodes, List<QueryEdge> edges, boolean truncated, String view, long timeMicros) {
+            this.nodes = nodes;
+            this.edges = edges;
+            this.truncated = truncated;
+            this.view = view;
+            this.timeMicros = timeMicros;
+        }
+
+        public List<QueryNode> getNodes() { return nodes; }
+        public List<QueryEdge> getEdges() { return edges; }
+        public boolean isTruncated() { return truncated; }
+        public String getView() { return view; }
+        public long getTimeMicros() { return timeMicros; }
+    }
+}
@@ -0,0 +1,516 @@
+package com.gephi.mcp;
+
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Element;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Origin;
+import org.gephi.graph.api.Table;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk cache of imported graphs in a compact binary form.
+ * Entries are keyed by the source file's path, size, modification time and content checksum,
+ * so an edited file never hits a stale entry. Snapshots are read back through memory-mapped
+ * windows and inserted into the GraphModel in bulk, skipping the importer entirely.
+ */
+public class GraphSnapshotCache {
+    private static final int MAGIC = 0x474d4353; // "GMCS"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".gsnap";
+
+    // Snapshots larger than one mapping are read window by window
+    private static final long WINDOW_BYTES = 256L * 1024 * 1024;
+    private static final int CHECKSUM_CHUNK = 64 * 1024 * 1024;
+
+    // Attribute types the snapshot can carry; graphs with other column types are not cached
+    private static final Class<?>[] TYPES = {
+        String.class, Integer.class, Long.class, Float.class, Double.class, Boolean.class
+    };
+
+    private static GraphSnapshotCache instance;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    private GraphSnapshotCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    public static synchronized GraphSnapshotCache getInstance() {
+        if (instance == null) {
+            String dir = System.getProperty("gephi.mcp.cacheDir", System.getenv("GEPHI_MCP_CACHE_DIR"));
+            if (dir == null || dir.isEmpty()) {
+                dir = Paths.get(System.getProperty("java.io.tmpdir"), "gephi-mcp-cache").toString();
+            }
+            String maxMb = System.getProperty("gephi.mcp.cacheMaxMb", System.getenv("GEPHI_MCP_CACHE_MAX_MB"));
+            long maxBytes = (maxMb != null ? Long.parseLong(maxMb) : 1024) * 1024 * 1024;
+            instance = new GraphSnapshotCache(Paths.get(dir), maxBytes);
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Cache key for a file; variant covers load options that change what ends up in the graph
+     */
+    public String fingerprint(File file, String variant) throws IOException {
+        Path path = file.toPath().toRealPath();
+        long size = Files.size(path);
+        long modified = Files.getLastModifiedTime(path).toMillis();
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String header = path + "\n" + size + "\n" + modified + "\n" + checksum(path, size) + "\n" + variant;
+            digest.update(header.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * CRC32C over the whole file; mapped reads keep this close to disk speed
+     */
+    private static long checksum(Path path, long size) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            for (long position = 0; position < size; position += CHECKSUM_CHUNK) {
+                long length = Math.min(CHECKSUM_CHUNK, size - position);
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+        }
+        return crc.getValue();
+    }
+
+    public boolean contains(String key) {
+        return isEnabled() && Files.isRegularFile(directory.resolve(key + EXTENSION));
+    }
+
+    /**
+     * Loads a cached snapshot into an empty graph model; returns false on a miss.
+     * A corrupt entry may leave columns behind, so callers reset the model after a failed read.
+     */
+    public boolean read(String key, GraphModel graphModel) {
+        Path file = directory.resolve(key + EXTENSION);
+        if (!contains(key)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedInput in = new MappedInput(channel);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Files.deleteIfExists(file);
+                return false;
+            }
+            readGraph(in, graphModel);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt entry is just a miss; drop it so it gets rewritten
+            System.err.println("Discarding graph snapshot " + file + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Leave it for eviction
+            }
+            return false;
+        }
+
+        // Mark as recently used for eviction
+        file.toFile().setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Writes a snapshot of the graph; graphs with unsupported attribute types are skipped
+     */
+    public boolean write(String key, GraphModel graphModel) {
+        if (!isEnabled() || !isSupported(graphModel.getNodeTable()) || !isSupported(graphModel.getEdgeTable())) {
+            return false;
+        }
+
+        Path target = directory.resolve(key + EXTENSION);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, key, ".tmp");
+            try (OutputStream stream = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 20))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeGraph(out, graphModel);
+            }
+            // Readers only ever see complete entries
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not write graph snapshot: " + e.getMessage());
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException ignored) {
+                // Nothing more to do
+            }
+            return false;
+        }
+
+        evict(target);
+        return true;
+    }
+
+    /**
+     * Deletes least recently used entries until the cache fits its size cap
+     */
+    private synchronized void evict(Path keep) {
+        File[] files = directory.toFile().listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (file.toPath().equals(keep)) {
+                continue;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static boolean isSupported(Table table) {
+        for (Column column : table) {
+            if (!column.isProperty() && typeCode(column.getTypeClass()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int typeCode(Class<?> type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i] == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<Column> dataColumns(Table table) {
+        List<Column> columns = new ArrayList<>();
+        for (Column column : table) {
+            if (!column.isProperty()) {
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+
+    private static void writeGraph(DataOutputStream out, GraphModel graphModel) throws IOException {
+        Graph graph = graphModel.getGraph();
+        graph.readLock();
+        try {
+            List<Column> nodeColumns = dataColumns(graphModel.getNodeTable());
+            List<Column> edgeColumns = dataColumns(graphModel.getEdgeTable());
+            writeColumns(out, nodeColumns);
+            writeColumns(out, edgeColumns);
+
+            Node[] nodes = graph.getNodes().toArray();
+            int[] indexByStoreId = new int[maxStoreId(nodes) + 1];
+            out.writeInt(nodes.length);
+            for (int i = 0; i < nodes.length; i++) {
+                Node node = nodes[i];
+                indexByStoreId[node.getStoreId()] = i;
+                writeString(out, String.valueOf(node.getId()));
+                writeString(out, node.getLabel());
+                out.writeFloat(node.x());
+                out.writeFloat(node.y());
+                out.writeFloat(node.z());
+                out.writeFloat(node.size());
+                out.writeFloat(node.r());
+                out.writeFloat(node.g());
+                out.writeFloat(node.b());
+                out.writeFloat(node.alpha());
+                writeAttributes(out, node.getAttributes(), nodeColumns);
+            }
+
+            out.writeInt(graph.getEdgeCount());
+            for (Edge edge : graph.getEdges()) {
+                out.writeInt(indexByStoreId[edge.getSource().getStoreId()]);
+                out.writeInt(indexByStoreId[edge.getTarget().getStoreId()]);
+                writeString(out, String.valueOf(edge.getId()));
+                writeString(out, edge.getLabel());
+                Object typeLabel = graphModel.getEdgeTypeLabel(edge.getType());
+                writeString(out, typeLabel != null ? typeLabel.toString() : null);
+                out.writeDouble(edge.getWeight());
+                out.writeBoolean(edge.isDirected());
+                out.writeFloat(edge.r());
+                out.writeFloat(edge.g());
+                out.writeFloat(edge.b());
+                out.writeFloat(edge.alpha());
+                writeAttributes(out, edge.getAttributes(), edgeColumns);
+            }
+        } finally {
+            graph.readUnlock();
+        }
+    }
+
+    private static void readGraph(MappedInput in, GraphModel graphModel) {
+        List<Column> nodeColumns = readColumns(in, graphModel.getNodeTable());
+        List<Column> edgeColumns = readColumns(in, graphModel.getEdgeTable());
+        GraphFactory factory = graphModel.factory();
+
+        // Id, label and eight floats at least
+        int nodeCount = in.readCount(40);
+        Node[] nodes = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            Node node = factory.newNode(in.readString());
+            node.setLabel(in.readString());
+            node.setX(in.readFloat());
+            node.setY(in.readFloat());
+            node.setZ(in.readFloat());
+            node.setSize(in.readFloat());
+            node.setR(in.readFloat());
+            node.setG(in.readFloat());
+            node.setB(in.readFloat());
+            node.setAlpha(in.readFloat());
+            readAttributes(in, node, nodeColumns);
+            nodes[i] = node;
+        }
+
+        // Two endpoints, id, label, type, weight, directed and four floats at least
+        int edgeCount = in.readCount(45);
+        List<Edge> edges = new ArrayList<>(edgeCount);
+        for (int i = 0; i < edgeCount; i++) {
+            Node source = nodes[in.readInt()];
+            Node target = nodes[in.readInt()];
+            String id = in.readString();
+            String label = in.readString();
+            String typeLabel = in.readString();
+            double weight = in.readDouble();
+            boolean directed = in.readBoolean();
+            int type = typeLabel != null ? graphModel.addEdgeType(typeLabel) : 0;
+
+            Edge edge = factory.newEdge(id, source, target, type, weight, directed);
+            edge.setLabel(label);
+            edge.setR(in.readFloat());
+            edge.setG(in.readFloat());
+            edge.setB(in.readFloat());
+            edge.setAlpha(in.readFloat());
+            readAttributes(in, edge, edgeColumns);
+            edges.add(edge);
+        }
+
+        // One write lock for the whole insert
+        Graph graph = graphModel.getGraph();
+        graph.writeLock();
+        try {
+            graph.addAllNodes(Arrays.asList(nodes));
+            graph.addAllEdges(edges);
+        } finally {
+            graph.writeUnlock();
+        }
+    }
+
+    private static void writeColumns(DataOutputStream out, List<Column> columns) throws IOException {
+        out.writeInt(columns.size());
+        for (Column column : columns) {
+            writeString(out, column.getId());
+            writeString(out, column.getTitle());
+            out.writeByte(typeCode(column.getTypeClass()));
+        }
+    }
+
+    private static List<Column> readColumns(MappedInput in, Table table) {
+        int count = in.readCount(9);
+        List<Column> columns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = in.readString();
+            String title = in.readString();
+            Class<?> type = TYPES[in.readByte()];
+            Column column = table.getColumn(id);
+            if (column == null) {
+                column = table.addColumn(id, title, type, Origin.DATA, null, true);
+            }
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    private static void writeAttributes(DataOutputStream out, Object[] values, List<Column> columns) throws IOException {
+        for (Column column : columns) {
+            int index = column.getIndex();
+            Object value = index < values.length ? values[index] : null;
+            if (value == null) {
+                out.writeBoolean(false);
+                continue;
+            }
+            out.writeBoolean(true);
+            if (value instanceof String) {
+                writeString(out, (String) value);
+            } else if (value instanceof Integer) {
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.writeDouble((Double) value);
+            } else {
+                out.writeBoolean((Boolean) value);
+            }
+        }
+    }
+
+    private static void readAttributes(MappedInput in, Element element, List<Column> columns) {
+        for (Column column : columns) {
+            if (!in.readBoolean()) {
+                continue;
+            }
+            Class<?> type = column.getTypeClass();
+            Object value;
+            if (type == String.class) {
+                value = in.readString();
+            } else if (type == Integer.class) {
+                value = in.readInt();
+            } else if (type == Long.class) {
+                value = in.readLong();
+            } else if (type == Float.class) {
+                value = in.readFloat();
+            } else if (type == Double.class) {
+                value = in.readDouble();
+            } else {
+                value = in.readBoolean();
+            }
+            element.setAttribute(column, value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int maxStoreId(Node[] nodes) {
+        int max = -1;
+        for (Node node : nodes) {
+            max = Math.max(max, node.getStoreId());
+        }
+        return max;
+    }
+
+    /**
+     * Sequential reader over a file mapped one window at a time, so snapshots may exceed 2GB
+     */
+    private static class MappedInput {
+        private final FileChannel channel;
+        private final long size;
+        private long windowStart;
+        private MappedByteBuffer buffer;
+
+        MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(0);
+        }
+
+        private void map(long position) {
+            try {
+                windowStart = position;
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, size - position));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private ByteBuffer require(int bytes) {
+            if (buffer.remaining() < bytes) {
+                long position = windowStart + buffer.position();
+                if (size - position < bytes) {
+                    throw new IllegalStateException("Snapshot is truncated");
+                }
+                map(position);
+            }
+            return buffer;
+        }
+
+        int readInt() { return require(4).getInt(); }
+        long readLong() { return require(8).getLong(); }
+        float readFloat() { return require(4).getFloat(); }
+        double readDouble() { return require(8).getDouble(); }
+        byte readByte() { return require(1).get(); }
+        boolean readBoolean() { return require(1).get() != 0; }
+
+        private long remaining() {
+            return size - windowStart - buffer.position();
+        }
+
+        /**
+         * Reads a count of items taking at least itemBytes each, checked against what is left of the
+         * file so a corrupt count fails as a bad snapshot rather than a huge allocation
+         */
+        int readCount(int itemBytes) {
+            int count = readInt();
+            if (count < 0 || (long) count * itemBytes > remaining()) {
+                throw new IllegalStateException("Snapshot is corrupt: count " + count);
+            }
+            return count;
+        }
+
+        String readString() {
+            int length = readInt();
+            if (length == -1) {
+                return null;
+            }
+            if (length < 0 || length > remaining()) {
+                throw new IllegalStateException("Snapshot is corrupt: string length " + length);
+            }
+            byte[] bytes = new byte[length];
+            require(length).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.gephi.mcp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A layout run that can be polled and cancelled while it iterates
+ */
+public class LayoutJob {
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String COMPLETED = "completed";
+    public static final String CANCELLED = "cancelled";
+    public static final String FAILED = "failed";
+    
+    // Finished jobs are kept around for polling, up to this many
+    private static final int MAX_FINISHED_JOBS = 256;
+    
+    private static final Map<String, LayoutJob> jobs = new ConcurrentHashMap<>();
+    private static final AtomicLong counter = new AtomicLong();
+    
+    private final String id;
+    private final String session;
+    private final String algorithm;
+    private final long progressIntervalMillis;
+    private final long createdAt;
+    
+    private volatile int requestedIterations;
+    private volatile String status = QUEUED;
+    private volatile int iterations;
+    private volatile double energy = Double.NaN;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile boolean cancelRequested;
+    private volatile String error;
+    private volatile LayoutProcessor.LayoutResult result;
+    
+    private long lastReport;
+    private Consumer<LayoutJob> progressListener;
+    
+    private LayoutJob(String session, String algorithm, int requestedIterations, long progressIntervalMillis) {
+        this.id = "job-" + counter.incrementAndGet();
+        this.session = session;
+        this.algorithm = algorithm;
+        this.requestedIterations = requestedIterations;
+        this.progressIntervalMillis = progressIntervalMillis;
+        this.createdAt = System.currentTimeMillis();
+    }
+    
+    public static LayoutJob create(String session, String algorithm, int requestedIterations, long progressIntervalMillis) {
+        LayoutJob job = new LayoutJob(session, algorithm, requestedIterations, progressIntervalMillis);
+        jobs.put(job.id, job);
+        pruneFinished();
+        return job;
+    }
+    
+    public static LayoutJob find(String id) {
+        return jobs.get(id);
+    }
+    
+    public static List<LayoutJob> list() {
+        List<LayoutJob> all = new ArrayList<>(jobs.values());
+        all.sort(Comparator.comparingLong(job -> job.createdAt));
+        return all;
+    }
+    
+    private static void pruneFinished() {
+        List<LayoutJob> finished = new ArrayList<>();
+        for (LayoutJob job : jobs.values()) {
+            if (job.isFinished()) {
+                finished.add(job);
+            }
+        }
+        if (finished.size() <= MAX_FINISHED_JOBS) {
+            return;
+        }
+        finished.sort(Comparator.comparingLong(job -> job.finishedAt));
+        for (int i = 0; i < finished.size() - MAX_FINISHED_JOBS; i++) {
+            jobs.remove(finished.get(i).id);
+        }
+    }
+    
+    public void setProgressListener(Consumer<LayoutJob> progressListener) {
+        this.progressListener = progressListener;
+    }
+    
+    /**
+     * Replaces the requested iteration count once the real total is known, e.g. after coarsening
+     */
+    void plan(int requestedIterations) {
+        this.requestedIterations = requestedIterations;
+    }
+    
+    void start() {
+        startedAt = System.currentTimeMillis();
+        lastReport = startedAt;
+        status = RUNNING;
+    }
+    
+    /**
+     * Records a finished iteration; energy is only evaluated when a report is due
+     */
+    void progress(int iterations, DoubleSupplier energySupplier) {
+        this.iterations = iterations;
+        
+        long now = System.currentTimeMillis();
+        if (now - lastReport >= progressIntervalMillis) {
+            lastReport = now;
+            energy = energySupplier.getAsDouble();
+            if (progressListener != null) {
+                progressListener.accept(this);
+            }
+        }
+    }
+    
+    void complete(LayoutProcessor.LayoutResult result) {
+        this.result = result;
+        finish(cancelRequested ? CANCELLED : COMPLETED);
+    }
+    
+    void fail(String error) {
+        this.error = error;
+        finish(FAILED);
+    }
+    
+    private void finish(String finalStatus) {
+        finishedAt = System.currentTimeMillis();
+        if (startedAt == 0) {
+            startedAt = finishedAt;
+        }
+        status = finalStatus;
+        if (progressListener != null) {
+            progressListener.accept(this);
+        }
+    }
+    
+    /**
+     * Asks the job to stop; the layout loop checks this between iterations
+     */
+    public boolean cancel() {
+        if (isFinished()) {
+            return false;
+        }
+        cancelRequested = true;
+        return true;
+    }
+    
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+    
+    public boolean isFinished() {
+        return COMPLETED.equals(status) || CANCELLED.equals(status) || FAILED.equals(status);
+    }
+    
+    public long getElapsedMillis() {
+        if (startedAt == 0) {
+            return 0;
+        }
+        return (finishedAt != 0 ? finishedAt : System.currentTimeMillis()) - startedAt;
+    }
+    
+    public String getId() { return id; }
+    public String getSession() { return session; }
+    public String getAlgorithm() { return algorithm; }
+    public int getRequestedIterations() { return requestedIterations; }
+    public String getStatus() { return status; }
+    public int getIterations() { return iterations; }
+    public double getEnergy() { return energy; }
+    public String getError() { return error; }
+    public LayoutProcessor.LayoutResult getResult() { return result; }
+}
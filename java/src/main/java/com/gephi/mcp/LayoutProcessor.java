@@ -2,25 +2,33 @@ package com.gephi.mcp;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 import org.gephi.graph.api.Graph;
 import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.spi.LayoutData;
 import org.gephi.layout.plugin.forceAtlas2.ForceAtlas2;
 import org.gephi.layout.plugin.forceAtlas2.ForceAtlas2Builder;
-import org.gephi.layout.api.LayoutController;
+import org.gephi.layout.plugin.forceAtlas2.ForceAtlas2LayoutData;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 public class LayoutProcessor {
-    
+
     public static void main(String[] args) {
         if (args.length < 1) {
             System.err.println("Usage: LayoutProcessor <algorithm> [parameters...]");
             System.exit(1);
         }
-        
+
         String algorithm = args[0];
-        
+
         try {
             LayoutResult result;
-            
+
             switch (algorithm.toLowerCase()) {
                 case "forceatlas2":
                     result = applyForceAtlas2(args);
@@ -28,85 +36,700 @@ public class LayoutProcessor {
                 default:
                     throw new Exception("Unknown layout algorithm: " + algorithm);
             }
-            
+
             Gson gson = new GsonBuilder().setPrettyPrinting().create();
             System.out.println(gson.toJson(result));
-            
+
         } catch (Exception e) {
             System.err.println("Error applying layout: " + e.getMessage());
             e.printStackTrace();
             System.exit(1);
         }
     }
-    
+
     public static LayoutResult applyForceAtlas2(String[] args) throws Exception {
-        GephiContext context = GephiContext.getInstance();
-        GraphModel graphModel = context.getGraphModel();
-        Graph graph = graphModel.getGraph();
-        
+        return applyForceAtlas2(GephiContext.getInstance().getSession(GephiContext.DEFAULT_SESSION), LayoutOptions.fromArgs(args), null);
+    }
+
+    public static LayoutResult applyForceAtlas2(GephiSession session, LayoutOptions options, LayoutJob job) throws Exception {
+        GraphModel graphModel = session.getGraphModel();
+        Graph graph = graphModel.getGraphVisible();
+
         if (graph.getNodeCount() == 0) {
             throw new Exception("No graph loaded. Please load a graph first.");
         }
-        
-        // Parse parameters
-        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 100;
-        boolean adjustSizes = args.length > 2 ? Boolean.parseBoolean(args[2]) : false;
-        boolean barnesHutOptimize = args.length > 3 ? Boolean.parseBoolean(args[3]) : true;
-        double gravity = args.length > 4 ? Double.parseDouble(args[4]) : 1.0;
-        double scalingRatio = args.length > 5 ? Double.parseDouble(args[5]) : 2.0;
-        
+
+        // Positions change even when the run is cancelled or fails part way
+        LayoutResult result;
+        try {
+            if (options.incremental) {
+                result = applyIncrementalForceAtlas2(session, graph, options, job);
+            } else if ("parallel".equals(options.engine)) {
+                result = applyParallelForceAtlas2(graph, options, job);
+            } else if ("multilevel".equals(options.engine)) {
+                result = applyMultilevelForceAtlas2(graph, options, job);
+            } else {
+                result = applyGephiForceAtlas2(graphModel, options, job);
+            }
+        } finally {
+            session.markChanged();
+        }
+
+        if (!"cancelled".equals(result.getStatus())) {
+            if (session.isFiltered()) {
+                // Nodes outside the active view were not laid out and stay pending
+                for (Node node : session.getCsrGraph().getNodes()) {
+                    session.getUnplacedNodeIds().remove(node.getId());
+                }
+            } else {
+                session.getUnplacedNodeIds().clear();
+            }
+        }
+        if (options.persistPositions && session.getSource() != null) {
+            try {
+                // The store holds one file per source, so it is always written from the full graph
+                PositionStore.getInstance().save(session.getSource(), session.getGraph());
+            } catch (IOException e) {
+                // The layout itself succeeded; a later load just starts from imported positions
+                System.err.println("Could not save positions: " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Lays out only what changed: nodes without a position are seeded next to their placed
+     * neighbours and move freely, those neighbours move at a damped rate and every other
+     * node stays pinned. Only the free and damped nodes have forces computed.
+     */
+    private static LayoutResult applyIncrementalForceAtlas2(GephiSession session, Graph graph, LayoutOptions options, LayoutJob job) {
+        CsrGraph csr = CsrGraph.fromGraph(graph);
+        int n = csr.getNodeCount();
+        Node[] nodes = csr.getNodes();
+        int[] offsets = csr.getOffsets();
+        int[] targets = csr.getTargets();
+
+        boolean[] unplaced = new boolean[n];
+        int unplacedCount = 0;
+        for (Object id : session.getUnplacedNodeIds()) {
+            int index = csr.indexOf(graph.getNode(id));
+            if (index >= 0 && !nodes[index].isFixed()) {
+                unplaced[index] = true;
+                unplacedCount++;
+            }
+        }
+        if (job != null) {
+            job.start();
+        }
+        if (unplacedCount == 0) {
+            return new LayoutResult("ForceAtlas2", 0, options.iterations, n, csr.getEdgeCount(), 0, 0, 0, "unchanged");
+        }
+
+        ParallelForceAtlas2 engine = ParallelForceAtlas2.fromGraph(csr, GephiContext.getInstance().getComputePool());
+        configure(engine, options);
+        seedUnplaced(csr, unplaced, engine.getX(), engine.getY(), new Random(options.seed));
+
+        float[] mobility = new float[n];
+        for (int i = 0; i < n; i++) {
+            if (!unplaced[i]) {
+                continue;
+            }
+            mobility[i] = 1f;
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                int j = targets[k];
+                if (!unplaced[j] && !nodes[j].isFixed()) {
+                    mobility[j] = (float) options.neighbourMobility;
+                }
+            }
+        }
+        engine.setMobility(mobility);
+
+        ConvergenceTracker tracker = new ConvergenceTracker(unplacedCount, options);
+        int completed;
+        try {
+            completed = iterate(engine, options.iterations, 0, options, tracker, job, graph);
+        } finally {
+            engine.writePositions(graph);
+        }
+
+        return new LayoutResult(
+            "ForceAtlas2",
+            completed,
+            options.iterations,
+            n,
+            csr.getEdgeCount(),
+            tracker.getDisplacement(),
+            tracker.getSwinging(),
+            tracker.getTraction(),
+            finalStatus(tracker, completed, options, job)
+        );
+    }
+
+    /**
+     * Starts each unplaced node at the mean of its already placed neighbours, spreading outwards
+     * breadth-first; nodes with no placed node in reach go to a random spot in the placed area
+     */
+    private static void seedUnplaced(CsrGraph csr, boolean[] unplaced, float[] x, float[] y, Random random) {
+        int n = csr.getNodeCount();
+        int[] offsets = csr.getOffsets();
+        int[] targets = csr.getTargets();
+
+        boolean[] placed = new boolean[n];
+        float minX = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        int placedCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (!unplaced[i]) {
+                placed[i] = true;
+                placedCount++;
+                minX = Math.min(minX, x[i]);
+                maxX = Math.max(maxX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+        }
+        if (placedCount == 0) {
+            minX = minY = -10 * (float) Math.sqrt(n);
+            maxX = maxY = 10 * (float) Math.sqrt(n);
+        }
+        double spacing = Math.sqrt(Math.max(1e-6, (maxX - minX) * (double) (maxY - minY)) / Math.max(1, placedCount));
+
+        int[] queue = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            if (unplaced[i] && hasPlacedNeighbour(i, offsets, targets, placed)) {
+                queue[tail++] = i;
+            }
+        }
+        boolean[] queued = new boolean[n];
+        for (int k = 0; k < tail; k++) {
+            queued[queue[k]] = true;
+        }
+
+        while (head < tail) {
+            int i = queue[head++];
+            double sumX = 0;
+            double sumY = 0;
+            int count = 0;
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                int j = targets[k];
+                if (placed[j]) {
+                    sumX += x[j];
+                    sumY += y[j];
+                    count++;
+                } else if (!queued[j]) {
+                    queued[j] = true;
+                    queue[tail++] = j;
+                }
+            }
+            x[i] = (float) (sumX / count + (random.nextDouble() - 0.5) * spacing);
+            y[i] = (float) (sumY / count + (random.nextDouble() - 0.5) * spacing);
+            placed[i] = true;
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (!placed[i]) {
+                x[i] = (float) (minX + random.nextDouble() * (maxX - minX));
+                y[i] = (float) (minY + random.nextDouble() * (maxY - minY));
+            }
+        }
+    }
+
+    private static boolean hasPlacedNeighbour(int i, int[] offsets, int[] targets, boolean[] placed) {
+        for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+            if (placed[targets[k]]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static LayoutResult applyGephiForceAtlas2(GraphModel graphModel, LayoutOptions options, LayoutJob job) {
+        Graph graph = graphModel.getGraphVisible();
+
         // Create and configure ForceAtlas2
         ForceAtlas2Builder layoutBuilder = new ForceAtlas2Builder();
         ForceAtlas2 layout = layoutBuilder.buildLayout();
-        
+
         layout.setGraphModel(graphModel);
         layout.resetPropertiesValues();
-        
+
         // Set parameters
-        layout.setAdjustSizes(adjustSizes);
-        layout.setBarnesHutOptimize(barnesHutOptimize);
-        layout.setGravity(gravity);
-        layout.setScalingRatio(scalingRatio);
-        
+        layout.setAdjustSizes(options.adjustSizes);
+        layout.setBarnesHutOptimize(options.barnesHutOptimize);
+        layout.setGravity(options.gravity);
+        layout.setScalingRatio(options.scalingRatio);
+        if (options.barnesHutTheta != null) {
+            layout.setBarnesHutTheta(options.barnesHutTheta);
+        }
+        if (options.jitterTolerance != null) {
+            layout.setJitterTolerance(options.jitterTolerance);
+        }
+
         // Initialize layout
         layout.initAlgo();
-        
-        // Run layout for specified iterations
-        for (int i = 0; i < iterations && layout.canAlgo(); i++) {
-            layout.goAlgo();
-        }
-        
-        // Finish layout
-        layout.endAlgo();
-        
+        if (job != null) {
+            job.start();
+        }
+
+        Node[] nodes = graph.getNodes().toArray();
+        NodeMovement movement = new NodeMovement(nodes);
+        ConvergenceTracker tracker = new ConvergenceTracker(nodes.length, options);
+
+        // Run layout up to the iteration cap, stopping early once movement settles
+        // or between iterations if the job is cancelled
+        int completed = 0;
+        try {
+            while (completed < options.iterations && layout.canAlgo()) {
+                if (job != null && job.isCancelRequested()) {
+                    break;
+                }
+                movement.snapshot();
+                layout.goAlgo();
+                completed++;
+                movement.measure();
+                tracker.record(movement.getDisplacement(), movement.getSwinging(), movement.getTraction());
+                if (job != null) {
+                    job.progress(completed, () -> computeEnergy(nodes));
+                }
+                if (tracker.isConverged()) {
+                    break;
+                }
+            }
+        } finally {
+            // Finish layout
+            layout.endAlgo();
+        }
+
         return new LayoutResult(
             "ForceAtlas2",
-            iterations,
+            completed,
+            options.iterations,
             graph.getNodeCount(),
             graph.getEdgeCount(),
-            "completed"
+            tracker.getDisplacement(),
+            tracker.getSwinging(),
+            tracker.getTraction(),
+            finalStatus(tracker, completed, options, job)
+        );
+    }
+
+    /**
+     * Runs ForceAtlas2 on primitive arrays; positions reach the graph at checkpoints and at the end
+     */
+    private static LayoutResult applyParallelForceAtlas2(Graph graph, LayoutOptions options, LayoutJob job) {
+        CsrGraph csr = CsrGraph.fromGraph(graph);
+        ParallelForceAtlas2 engine = ParallelForceAtlas2.fromGraph(csr, GephiContext.getInstance().getComputePool());
+        configure(engine, options);
+
+        if (job != null) {
+            job.start();
+        }
+
+        ConvergenceTracker tracker = new ConvergenceTracker(csr.getNodeCount(), options);
+        int completed;
+        try {
+            completed = iterate(engine, options.iterations, 0, options, tracker, job, graph);
+        } finally {
+            engine.writePositions(graph);
+        }
+
+        return new LayoutResult(
+            "ForceAtlas2",
+            completed,
+            options.iterations,
+            csr.getNodeCount(),
+            csr.getEdgeCount(),
+            tracker.getDisplacement(),
+            tracker.getSwinging(),
+            tracker.getTraction(),
+            finalStatus(tracker, completed, options, job)
         );
     }
-    
+
+    /**
+     * Coarsens the graph down to a few hundred supernodes, lays out the coarsest level from
+     * scratch, then projects positions down one level at a time with a short refinement run
+     * on each. Only the finest level touches the Gephi graph.
+     */
+    private static LayoutResult applyMultilevelForceAtlas2(Graph graph, LayoutOptions options, LayoutJob job) {
+        ForkJoinPool pool = GephiContext.getInstance().getComputePool();
+        CsrGraph csr = CsrGraph.fromGraph(graph);
+        ParallelForceAtlas2 finest = ParallelForceAtlas2.fromGraph(csr, pool);
+
+        List<GraphCoarsener.Level> levels = GraphCoarsener.buildHierarchy(csr, finest.getSize(), options.coarsestSize);
+        int coarsest = levels.size() - 1;
+        int maxIterations = options.iterations + coarsest * options.refineIterations;
+        if (job != null) {
+            job.plan(maxIterations);
+            job.start();
+        }
+
+        Random random = new Random(options.seed);
+        ConvergenceTracker tracker = null;
+        ParallelForceAtlas2 engine = null;
+        int completed = 0;
+        boolean cancelled = false;
+        try {
+            for (int level = coarsest; level >= 0; level--) {
+                GraphCoarsener.Level current = levels.get(level);
+                CsrGraph levelGraph = current.getGraph();
+                int n = levelGraph.getNodeCount();
+
+                float[] x;
+                float[] y;
+                if (level == 0) {
+                    engine = finest;
+                    x = finest.getX();
+                    y = finest.getY();
+                } else {
+                    x = new float[n];
+                    y = new float[n];
+                }
+
+                if (level == coarsest && level > 0) {
+                    // Nothing to project from; start from a random spread like a fresh layout
+                    double spread = 10 * Math.sqrt(n);
+                    for (int i = 0; i < n; i++) {
+                        x[i] = (float) ((random.nextDouble() - 0.5) * spread);
+                        y[i] = (float) ((random.nextDouble() - 0.5) * spread);
+                    }
+                } else if (level < coarsest) {
+                    project(levels.get(level + 1), engine, current, x, y, level == 0 ? csr.getNodes() : null, random);
+                }
+
+                if (level > 0) {
+                    engine = new ParallelForceAtlas2(levelGraph, x, y, current.getSize(), pool);
+                }
+                configure(engine, options);
+
+                // A cancelled run still projects the remaining levels so every node gets a position
+                int budget = level == coarsest ? options.iterations : options.refineIterations;
+                tracker = new ConvergenceTracker(n, options);
+                if (!cancelled) {
+                    int ran = iterate(engine, budget, completed, options, tracker, job, level == 0 ? graph : null);
+                    completed += ran;
+                    cancelled = ran < budget && job != null && job.isCancelRequested();
+                }
+            }
+        } finally {
+            finest.writePositions(graph);
+        }
+
+        String status = cancelled ? "cancelled" : "completed";
+        return new LayoutResult(
+            "ForceAtlas2",
+            completed,
+            maxIterations,
+            csr.getNodeCount(),
+            csr.getEdgeCount(),
+            tracker.getDisplacement(),
+            tracker.getSwinging(),
+            tracker.getTraction(),
+            status,
+            levels.size()
+        );
+    }
+
+    /**
+     * Places each node of the finer level on its supernode, spread by a small jitter so
+     * collapsed pairs do not start on top of each other. Fixed nodes keep their position.
+     */
+    private static void project(GraphCoarsener.Level coarse, ParallelForceAtlas2 coarseEngine,
+                                GraphCoarsener.Level fine, float[] x, float[] y, Node[] nodes, Random random) {
+        float[] cx = coarseEngine.getX();
+        float[] cy = coarseEngine.getY();
+        int[] fineToCoarse = coarse.getFineToCoarse();
+
+        // Jitter relative to the average spacing of the coarse layout
+        float minX = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int c = 0; c < cx.length; c++) {
+            minX = Math.min(minX, cx[c]);
+            maxX = Math.max(maxX, cx[c]);
+            minY = Math.min(minY, cy[c]);
+            maxY = Math.max(maxY, cy[c]);
+        }
+        double spacing = Math.sqrt(Math.max(1e-6, (maxX - minX) * (double) (maxY - minY)) / Math.max(1, cx.length));
+        double jitter = 0.1 * Math.max(spacing, 1e-3);
+
+        int n = fine.getGraph().getNodeCount();
+        for (int i = 0; i < n; i++) {
+            if (nodes != null && nodes[i].isFixed()) {
+                continue;
+            }
+            int c = fineToCoarse[i];
+            x[i] = (float) (cx[c] + (random.nextDouble() - 0.5) * jitter);
+            y[i] = (float) (cy[c] + (random.nextDouble() - 0.5) * jitter);
+        }
+    }
+
+    private static void configure(ParallelForceAtlas2 engine, LayoutOptions options) {
+        // Same defaults as ForceAtlas2.resetPropertiesValues, then the caller's parameters
+        engine.setAdjustSizes(options.adjustSizes);
+        engine.setBarnesHutOptimize(options.barnesHutOptimize);
+        engine.setGravity(options.gravity);
+        engine.setScalingRatio(options.scalingRatio);
+        if (options.barnesHutTheta != null) {
+            engine.setBarnesHutTheta(options.barnesHutTheta);
+        }
+        if (options.jitterTolerance != null) {
+            engine.setJitterTolerance(options.jitterTolerance);
+        }
+    }
+
+    /**
+     * Steps the engine up to the given number of iterations; returns how many ran.
+     * Checkpoints are written to checkpointGraph when it is set.
+     */
+    private static int iterate(ParallelForceAtlas2 engine, int iterations, int completedBefore, LayoutOptions options,
+                               ConvergenceTracker tracker, LayoutJob job, Graph checkpointGraph) {
+        int completed = 0;
+        while (completed < iterations) {
+            if (job != null && job.isCancelRequested()) {
+                break;
+            }
+            engine.step();
+            completed++;
+            tracker.record(engine.getDisplacement(), engine.getSwinging(), engine.getTraction());
+            if (checkpointGraph != null && options.checkpointInterval > 0 && completed % options.checkpointInterval == 0) {
+                engine.writePositions(checkpointGraph);
+            }
+            if (job != null) {
+                job.progress(completedBefore + completed, engine::getEnergy);
+            }
+            if (tracker.isConverged()) {
+                break;
+            }
+        }
+        return completed;
+    }
+
+    private static String finalStatus(ConvergenceTracker tracker, int completed, LayoutOptions options, LayoutJob job) {
+        if (tracker.isConverged()) {
+            return "converged";
+        } else if (completed < options.iterations && job != null && job.isCancelRequested()) {
+            return "cancelled";
+        }
+        return "completed";
+    }
+
+    /**
+     * Sum of squared ForceAtlas2 forces from the last iteration
+     */
+    private static double computeEnergy(Node[] nodes) {
+        double energy = 0;
+        for (Node node : nodes) {
+            LayoutData data = node.getLayoutData();
+            if (data instanceof ForceAtlas2LayoutData) {
+                ForceAtlas2LayoutData fa2Data = (ForceAtlas2LayoutData) data;
+                energy += fa2Data.dx * fa2Data.dx + fa2Data.dy * fa2Data.dy;
+            }
+        }
+        return energy;
+    }
+
+    /**
+     * Measures how far Gephi's layout moved the nodes in one iteration, plus the
+     * swing/traction totals ForceAtlas2 uses for its adaptive speed
+     */
+    private static class NodeMovement {
+        private final Node[] nodes;
+        private final float[] previousX;
+        private final float[] previousY;
+
+        private double displacement;
+        private double swinging;
+        private double traction;
+
+        NodeMovement(Node[] nodes) {
+            this.nodes = nodes;
+            this.previousX = new float[nodes.length];
+            this.previousY = new float[nodes.length];
+        }
+
+        void snapshot() {
+            for (int i = 0; i < nodes.length; i++) {
+                previousX[i] = nodes[i].x();
+                previousY[i] = nodes[i].y();
+            }
+        }
+
+        void measure() {
+            displacement = 0;
+            swinging = 0;
+            traction = 0;
+            for (int i = 0; i < nodes.length; i++) {
+                Node node = nodes[i];
+                double dx = node.x() - previousX[i];
+                double dy = node.y() - previousY[i];
+                displacement += Math.sqrt(dx * dx + dy * dy);
+
+                LayoutData data = node.getLayoutData();
+                if (data instanceof ForceAtlas2LayoutData) {
+                    ForceAtlas2LayoutData fa2Data = (ForceAtlas2LayoutData) data;
+                    double swingX = fa2Data.old_dx - fa2Data.dx;
+                    double swingY = fa2Data.old_dy - fa2Data.dy;
+                    double tractionX = fa2Data.old_dx + fa2Data.dx;
+                    double tractionY = fa2Data.old_dy + fa2Data.dy;
+                    swinging += fa2Data.mass * Math.sqrt(swingX * swingX + swingY * swingY);
+                    traction += fa2Data.mass * Math.sqrt(tractionX * tractionX + tractionY * tractionY) / 2;
+                }
+            }
+        }
+
+        double getDisplacement() { return displacement; }
+        double getSwinging() { return swinging; }
+        double getTraction() { return traction; }
+    }
+
+    /**
+     * Decides when per-iteration movement has stayed under the tolerance long enough
+     */
+    private static class ConvergenceTracker {
+        private final int nodeCount;
+        private final double tolerance;
+        private final int window;
+
+        private double displacement;
+        private double swinging;
+        private double traction;
+        private int settledIterations;
+
+        ConvergenceTracker(int nodeCount, LayoutOptions options) {
+            this.nodeCount = nodeCount;
+            this.tolerance = options.convergenceTolerance;
+            this.window = Math.max(1, options.convergenceWindow);
+        }
+
+        void record(double displacement, double swinging, double traction) {
+            this.displacement = displacement;
+            this.swinging = swinging;
+            this.traction = traction;
+
+            // Tolerance is on the mean movement per node, so it does not depend on graph size
+            if (tolerance > 0 && nodeCount > 0 && displacement / nodeCount < tolerance) {
+                settledIterations++;
+            } else {
+                settledIterations = 0;
+            }
+        }
+
+        boolean isConverged() {
+            return tolerance > 0 && settledIterations >= window;
+        }
+
+        double getDisplacement() { return displacement; }
+        double getSwinging() { return swinging; }
+        double getTraction() { return traction; }
+    }
+
+    public static class LayoutOptions {
+        public int iterations = 100;
+        public boolean adjustSizes = false;
+        public boolean barnesHutOptimize = true;
+        public double gravity = 1.0;
+        public double scalingRatio = 2.0;
+        // Mean per-node displacement under which an iteration counts as settled; 0 disables early stop
+        public double convergenceTolerance = 0;
+        public int convergenceWindow = 5;
+        // "gephi" runs the toolkit's ForceAtlas2, "parallel" the primitive-array engine
+        public String engine = "gephi";
+        // Parallel and multilevel engines: write positions back every N iterations, 0 = only at the end
+        public int checkpointInterval = 0;
+        // Multilevel engine: stop coarsening at this many supernodes; iterations apply to that
+        // coarsest level and refineIterations to every level projected below it
+        public int coarsestSize = 300;
+        public int refineIterations = 30;
+        public long seed = 42;
+        // Only move nodes that have no position yet, plus their neighbours at neighbourMobility
+        public boolean incremental = false;
+        public double neighbourMobility = 0.25;
+        // Save positions per node id so reloading the same file restores them
+        public boolean persistPositions = true;
+        // Null keeps ForceAtlas2's own defaults
+        public Double barnesHutTheta;
+        public Double jitterTolerance;
+
+        public static LayoutOptions fromArgs(String[] args) {
+            // First arg is the algorithm name
+            LayoutOptions options = new LayoutOptions();
+            if (args.length > 1) options.iterations = Integer.parseInt(args[1]);
+            if (args.length > 2) options.adjustSizes = Boolean.parseBoolean(args[2]);
+            if (args.length > 3) options.barnesHutOptimize = Boolean.parseBoolean(args[3]);
+            if (args.length > 4) options.gravity = Double.parseDouble(args[4]);
+            if (args.length > 5) options.scalingRatio = Double.parseDouble(args[5]);
+            if (args.length > 6) options.convergenceTolerance = Double.parseDouble(args[6]);
+            if (args.length > 7) options.convergenceWindow = Integer.parseInt(args[7]);
+            return options;
+        }
+
+        public static LayoutOptions fromJson(JsonObject params) {
+            LayoutOptions options = new LayoutOptions();
+            if (params.has("iterations")) options.iterations = params.get("iterations").getAsInt();
+            if (params.has("adjustSizes")) options.adjustSizes = params.get("adjustSizes").getAsBoolean();
+            if (params.has("barnesHutOptimize")) options.barnesHutOptimize = params.get("barnesHutOptimize").getAsBoolean();
+            if (params.has("gravity")) options.gravity = params.get("gravity").getAsDouble();
+            if (params.has("scalingRatio")) options.scalingRatio = params.get("scalingRatio").getAsDouble();
+            if (params.has("convergenceTolerance")) options.convergenceTolerance = params.get("convergenceTolerance").getAsDouble();
+            if (params.has("convergenceWindow")) options.convergenceWindow = params.get("convergenceWindow").getAsInt();
+            if (params.has("engine")) options.engine = params.get("engine").getAsString();
+            if (params.has("checkpointInterval")) options.checkpointInterval = params.get("checkpointInterval").getAsInt();
+            if (params.has("barnesHutTheta")) options.barnesHutTheta = params.get("barnesHutTheta").getAsDouble();
+            if (params.has("jitterTolerance")) options.jitterTolerance = params.get("jitterTolerance").getAsDouble();
+            if (params.has("coarsestSize")) options.coarsestSize = params.get("coarsestSize").getAsInt();
+            if (params.has("refineIterations")) options.refineIterations = params.get("refineIterations").getAsInt();
+            if (params.has("seed")) options.seed = params.get("seed").getAsLong();
+            if (params.has("incremental")) options.incremental = params.get("incremental").getAsBoolean();
+            if (params.has("neighbourMobility")) options.neighbourMobility = params.get("neighbourMobility").getAsDouble();
+            if (params.has("persistPositions")) options.persistPositions = params.get("persistPositions").getAsBoolean();
+
+            if (!"gephi".equals(options.engine) && !"parallel".equals(options.engine) && !"multilevel".equals(options.engine)) {
+                throw new IllegalArgumentException("Unknown layout engine: " + options.engine);
+            }
+            return options;
+        }
+    }
+
     public static class LayoutResult {
         private final String algorithm;
         private final int iterations;
+        private final int maxIterations;
         private final int nodeCount;
         private final int edgeCount;
+        private final double finalDisplacement;
+        private final double swinging;
+        private final double traction;
         private final String status;
-        
-        public LayoutResult(String algorithm, int iterations, int nodeCount, int edgeCount, String status) {
+        private final int levels;
+
+        public LayoutResult(String algorithm, int iterations, int maxIterations, int nodeCount, int edgeCount,
+                            double finalDisplacement, double swinging, double traction, String status) {
+            this(algorithm, iterations, maxIterations, nodeCount, edgeCount, finalDisplacement, swinging, traction, status, 1);
+        }
+
+        public LayoutResult(String algorithm, int iterations, int maxIterations, int nodeCount, int edgeCount,
+                            double finalDisplacement, double swinging, double traction, String status, int levels) {
             this.algorithm = algorithm;
             this.iterations = iterations;
+            this.maxIterations = maxIterations;
             this.nodeCount = nodeCount;
             this.edgeCount = edgeCount;
+            this.finalDisplacement = finalDisplacement;
+            this.swinging = swinging;
+            this.traction = traction;
             this.status = status;
+            this.levels = levels;
         }
-        
+
         public String getAlgorithm() { return algorithm; }
         public int getIterations() { return iterations; }
+        public int getMaxIterations() { return maxIterations; }
         public int getNodeCount() { return nodeCount; }
         public int getEdgeCount() { return edgeCount; }
+        public double getFinalDisplacement() { return finalDisplacement; }
+        public double getSwinging() { return swinging; }
+        public double getTraction() { return traction; }
         public String getStatus() { return status; }
+        public int getLevels() { return levels; }
     }
-}
\ No newline at end of file
+}
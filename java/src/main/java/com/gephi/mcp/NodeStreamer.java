@@ -0,0 +1,327 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Streams node data of the visible graph as packed little-endian arrays, a chunk of nodes at a
+ * time, without building a JSON object per node. Each chunk is one column-major buffer with a
+ * section per field, every section starting on an 8-byte boundary:
+ * <pre>
+ * float32  x, y, z, size, and numeric columns as float64 (NaN when missing)
+ * rgba8    color, 4 bytes per node
+ * uint8    boolean columns: 0, 1, or 255 when missing
+ * utf8     id and other columns: uint32 byte length per node (0xFFFFFFFF when missing), then the bytes
+ * </pre>
+ * The chunk header lists each section's name, type, byte offset and byte length.
+ */
+public class NodeStreamer {
+    public static final List<String> FIELDS = Arrays.asList("id", "x", "y", "z", "size", "color");
+    
+    private static final int MISSING_LENGTH = -1;
+    private static final byte MISSING_BOOLEAN = (byte) 255;
+    
+    private NodeStreamer() {
+    }
+    
+    /**
+     * Hands each chunk's header and payload to sink. The payload buffer is reused for the next
+     * chunk, so sink has to be done with it when it returns.
+     */
+    public static NodesResult stream(GephiSession session, NodesOptions options, BiConsumer<JsonObject, ByteBuffer> sink)
+            throws Exception {
+        long start = System.nanoTime();
+        Graph graph = session.getVisibleGraph();
+        Table table = session.getGraphModel().getNodeTable();
+        List<Column> columns = new ArrayList<>();
+        for (String name : options.columns) {
+            Column column = table.getColumn(name);
+            if (column == null) {
+                throw new Exception("Unknown node column: " + name);
+            }
+            columns.add(column);
+        }
+        
+        Node[] nodes = session.getCsrGraph().getNodes();
+        int from = Math.min(options.offset, nodes.length);
+        int to = options.limit >= 0 ? (int) Math.min((long) from + options.limit, nodes.length) : nodes.length;
+        
+        ByteBuffer buffer = ByteBuffer.allocate(0);
+        int chunks = 0;
+        for (int chunkStart = from; chunkStart < to; chunkStart += options.chunkSize) {
+            int count = Math.min(options.chunkSize, to - chunkStart);
+            JsonArray sections = new JsonArray();
+            graph.readLock();
+            try {
+                // Strings are encoded first, since their lengths decide the buffer size
+                List<byte[][]> encoded = new ArrayList<>();
+                long size = 0;
+                for (String field : options.fields) {
+                    byte[][] strings = field.equals("id") ? encodeIds(nodes, chunkStart, count) : null;
+                    encoded.add(strings);
+                    size = align(size + sectionBytes(fieldType(field), count, strings));
+                }
+                for (Column column : columns) {
+                    String type = columnType(column);
+                    byte[][] strings = type.equals("utf8") ? encodeColumn(nodes, chunkStart, count, column) : null;
+                    encoded.add(strings);
+                    size = align(size + sectionBytes(type, count, strings));
+                }
+                if (size > Integer.MAX_VALUE) {
+                    throw new Exception("Chunk too large, lower chunkSize");
+                }
+                if (buffer.capacity() < size) {
+                    buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                buffer.clear();
+                
+                int section = 0;
+                for (String field : options.fields) {
+                    int offset = buffer.position();
+                    writeField(buffer, field, nodes, chunkStart, count, encoded.get(section++));
+                    sections.add(sectionJson(field, fieldType(field), offset, buffer.position() - offset));
+                    pad(buffer);
+                }
+                for (int c = 0; c < columns.size(); c++) {
+                    int offset = buffer.position();
+                    String type = columnType(columns.get(c));
+                    writeColumn(buffer, type, columns.get(c), nodes, chunkStart, count, encoded.get(section++));
+                    sections.add(sectionJson(options.columns.get(c), type, offset, buffer.position() - offset));
+                    pad(buffer);
+                }
+                buffer.flip();
+            } finally {
+                graph.readUnlock();
+            }
+            
+            JsonObject header = new JsonObject();
+            header.addProperty("offset", chunkStart);
+            header.addProperty("count", count);
+            header.addProperty("byteLength", buffer.remaining());
+            header.add("sections", sections);
+            sink.accept(header, buffer);
+            chunks++;
+        }
+        
+        List<String> columnTypes = new ArrayList<>();
+        for (Column column : columns) {
+            columnTypes.add(columnType(column));
+        }
+        return new NodesResult(Math.max(0, to - from), nodes.length, chunks, columnTypes,
+            (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    static String fieldType(String field) {
+        switch (field) {
+            case "id":
+                return "utf8";
+            case "color":
+                return "rgba8";
+            default:
+                return "float32";
+        }
+    }
+    
+    static String columnType(Column column) {
+        Class<?> type = column.getTypeClass();
+        if (Number.class.isAssignableFrom(type)) {
+            return "float64";
+        }
+        if (type == Boolean.class) {
+            return "uint8";
+        }
+        return "utf8";
+    }
+    
+    private static long sectionBytes(String type, int count, byte[][] strings) {
+        switch (type) {
+            case "float32":
+            case "rgba8":
+                return 4L * count;
+            case "float64":
+                return 8L * count;
+            case "uint8":
+                return count;
+            default:
+                long bytes = 4L * count;
+                for (byte[] string : strings) {
+                    bytes += string != null ? string.length : 0;
+                }
+                return bytes;
+        }
+    }
+    
+    private static void writeField(ByteBuffer buffer, String field, Node[] nodes, int start, int count, byte[][] ids) {
+        if (ids != null) {
+            writeStrings(buffer, ids);
+            return;
+        }
+        for (int i = start; i < start + count; i++) {
+            Node node = nodes[i];
+            switch (field) {
+                case "x":
+                    buffer.putFloat(node.x());
+                    break;
+                case "y":
+                    buffer.putFloat(node.y());
+                    break;
+                case "z":
+                    buffer.putFloat(node.z());
+                    break;
+                case "size":
+                    buffer.putFloat(node.size());
+                    break;
+                case "color":
+                    buffer.put(toByte(node.r())).put(toByte(node.g())).put(toByte(node.b())).put(toByte(node.alpha()));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    
+    private static void writeColumn(ByteBuffer buffer, String type, Column column, Node[] nodes, int start, int count,
+                                    byte[][] strings) {
+        if (strings != null) {
+            writeStrings(buffer, strings);
+            return;
+        }
+        for (int i = start; i < start + count; i++) {
+            Object value = nodes[i].getAttribute(column);
+            if (type.equals("float64")) {
+                buffer.putDouble(value instanceof Number ? ((Number) value).doubleValue() : Double.NaN);
+            } else {
+                buffer.put(value instanceof Boolean ? (byte) ((Boolean) value ? 1 : 0) : MISSING_BOOLEAN);
+            }
+        }
+    }
+    
+    private static void writeStrings(ByteBuffer buffer, byte[][] strings) {
+        for (byte[] string : strings) {
+            buffer.putInt(string != null ? string.length : MISSING_LENGTH);
+        }
+        for (byte[] string : strings) {
+            if (string != null) {
+                buffer.put(string);
+            }
+        }
+    }
+    
+    private static byte[][] encodeIds(Node[] nodes, int start, int count) {
+        byte[][] strings = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            strings[i] = String.valueOf(nodes[start + i].getId()).getBytes(StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+    
+    private static byte[][] encodeColumn(Node[] nodes, int start, int count, Column column) {
+        byte[][] strings = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            Object value = nodes[start + i].getAttribute(column);
+            strings[i] = value != null ? value.toString().getBytes(StandardCharsets.UTF_8) : null;
+        }
+        return strings;
+    }
+    
+    private static byte toByte(float channel) {
+        return (byte) Math.round(Math.max(0, Math.min(1, channel)) * 255);
+    }
+    
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+    
+    private static void pad(ByteBuffer buffer) {
+        while ((buffer.position() & 7) != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+    
+    private static JsonObject sectionJson(String name, String type, int offset, int length) {
+        JsonObject json = new JsonObject();
+        json.addProperty("name", name);
+        json.addProperty("type", type);
+        json.addProperty("byteOffset", offset);
+        json.addProperty("byteLength", length);
+        return json;
+    }
+    
+    public static class NodesOptions {
+        public List<String> fields = Arrays.asList("id", "x", "y", "size", "color");
+        // Node attribute columns to add, by id
+        public List<String> columns = new ArrayList<>();
+        public int chunkSize = 65536;
+        public int offset = 0;
+        // Negative streams every node from offset on
+        public int limit = -1;
+        
+        public static NodesOptions fromJson(JsonObject params) {
+            NodesOptions options = new NodesOptions();
+            if (params.has("fields")) options.fields = strings(params.getAsJsonArray("fields"));
+            if (params.has("columns")) options.columns = strings(params.getAsJsonArray("columns"));
+            if (params.has("chunkSize")) options.chunkSize = params.get("chunkSize").getAsInt();
+            if (params.has("offset")) options.offset = params.get("offset").getAsInt();
+            if (params.has("limit")) options.limit = params.get("limit").getAsInt();
+            
+            for (String field : options.fields) {
+                if (!FIELDS.contains(field)) {
+                    throw new IllegalArgumentException("Unknown node field: " + field);
+                }
+            }
+            if (options.chunkSize < 1 || options.chunkSize > 1 << 20) {
+                throw new IllegalArgumentException("chunkSize must be between 1 and 1048576");
+            }
+            if (options.offset < 0) {
+                throw new IllegalArgumentException("offset must not be negative");
+            }
+            if (options.fields.isEmpty() && options.columns.isEmpty()) {
+                throw new IllegalArgumentException("get_nodes needs at least one field or column");
+            }
+            return options;
+        }
+        
+        private static List<String> strings(JsonArray array) {
+            List<String> values = new ArrayList<>();
+            for (JsonElement element : array) {
+                values.add(element.getAsString());
+            }
+            return values;
+        }
+    }
+    
+    public static class NodesResult {
+        private final int nodeCount;
+        private final int totalNodes;
+        private final int chunks;
+        private final List<String> columnTypes;
+        private final long timeMs;
+        
+        public NodesResult(int nodeCount, int totalNodes, int chunks, List<String> columnTypes, long timeMs) {
+            this.nodeCount = nodeCount;
+            this.totalNodes = totalNodes;
+            this.chunks = chunks;
+            this.columnTypes = columnTypes;
+            this.timeMs = timeMs;
+        }
+        
+        public int getNodeCount() { return nodeCount; }
+        public int getTotalNodes() { return totalNodes; }
+        public int getChunks() { return chunks; }
+        public List<String> getColumnTypes() { return columnTypes; }
+        public long getTimeMs() { return timeMs; }
+    }
+}
@@ -0,0 +1,53 @@
+package com.gephi.mcp;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR event for a service operation that ran longer than the threshold. Recorded whenever a flight
+ * recording is running, e.g. -XX:StartFlightRecording or jcmd &lt;pid&gt; JFR.start; lower the
+ * threshold with com.gephi.mcp.Operation#threshold=0 ms in the recording settings.
+ */
+@Name("com.gephi.mcp.Operation")
+@Label("Gephi MCP Operation")
+@Category({"Gephi MCP"})
+@Description("A service operation, with the graph it ran on and what it cost")
+@Threshold("100 ms")
+@StackTrace(false)
+class OperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+    
+    @Label("Session")
+    String session;
+    
+    @Label("Request Id")
+    String requestId;
+    
+    @Label("Success")
+    boolean success;
+    
+    @Label("Node Count")
+    int nodeCount;
+    
+    @Label("Edge Count")
+    int edgeCount;
+    
+    @Label("Allocated")
+    @Description("Bytes allocated by the request thread during the operation")
+    @DataAmount
+    long allocatedBytes;
+    
+    @Label("GC Time")
+    @Description("Collector time in milliseconds reported while the operation ran")
+    long gcMs;
+    
+    @Label("Parameters")
+    String params;
+}
@@ -0,0 +1,453 @@
+package com.gephi.mcp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-operation figures for the metrics operation: latency and queue-wait histograms, bytes
+ * allocated, collector time and the size of the graph each call ran on, plus the slowest calls
+ * with their parameters. Calls over the threshold of OperationEvent are also written to JFR.
+ */
+public class OperationMetrics {
+    // Slowest calls kept per operation
+    private static final int SLOWEST = 5;
+    // Parameters are cut to this many characters in slow-call records and JFR events
+    private static final int PARAMS_CHARS = 256;
+    
+    private static final Gson gson = new Gson();
+    
+    private static OperationMetrics instance;
+    
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<GarbageCollectorMXBean> collectors;
+    private final Map<String, Stats> stats = new TreeMap<>();
+    private long since = System.currentTimeMillis();
+    
+    private OperationMetrics() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocating = null;
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            allocating = (com.sun.management.ThreadMXBean) bean;
+            allocating.setThreadAllocatedMemoryEnabled(true);
+        }
+        this.threads = allocating;
+        this.collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    }
+    
+    public static synchronized OperationMetrics getInstance() {
+        if (instance == null) {
+            instance = new OperationMetrics();
+        }
+        return instance;
+    }
+    
+    /**
+     * Starts timing a call on the current thread; finish it on the same thread
+     */
+    public Call start(String operation, String session, JsonElement requestId) {
+        return new Call(operation, session, requestId);
+    }
+    
+    /**
+     * Records how long a request waited behind others on its session before it started
+     */
+    public synchronized void recordQueueWait(String operation, long nanos) {
+        statsFor(operation).queue.record(nanos);
+    }
+    
+    public synchronized List<OperationStats> snapshot(String operation) {
+        List<OperationStats> result = new ArrayList<>();
+        for (Stats entry : stats.values()) {
+            if (operation == null || operation.equals(entry.operation)) {
+                result.add(entry.toStats());
+            }
+        }
+        return result;
+    }
+    
+    public synchronized void reset() {
+        stats.clear();
+        since = System.currentTimeMillis();
+    }
+    
+    public synchronized long getSince() {
+        return since;
+    }
+    
+    public HeapStats heap() {
+        MemoryUsage usage = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        List<CollectorStats> collectorStats = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : collectors) {
+            collectorStats.add(new CollectorStats(collector.getName(), collector.getCollectionCount(),
+                collector.getCollectionTime()));
+        }
+        return new HeapStats(usage.getUsed(), usage.getCommitted(), usage.getMax(), collectorStats);
+    }
+    
+    private long allocatedBytes() {
+        return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+    
+    private long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+    
+    private synchronized void record(Call call, long nanos, long allocated, long gcMs, boolean success,
+                                     int nodeCount, int edgeCount, JsonObject params) {
+        Stats entry = statsFor(call.operation);
+        entry.count++;
+        if (!success) {
+            entry.errors++;
+        }
+        entry.latency.record(nanos);
+        entry.allocatedTotal += allocated;
+        entry.allocatedMax = Math.max(entry.allocatedMax, allocated);
+        entry.gcMsTotal += gcMs;
+        entry.gcMsMax = Math.max(entry.gcMsMax, gcMs);
+        entry.maxNodeCount = Math.max(entry.maxNodeCount, nodeCount);
+        entry.maxEdgeCount = Math.max(entry.maxEdgeCount, edgeCount);
+        
+        double timeMs = nanos / 1e6;
+        if (entry.slowest.size() < SLOWEST || timeMs > entry.slowest.get(entry.slowest.size() - 1).getTimeMs()) {
+            entry.slowest.add(new SlowCall(System.currentTimeMillis(), timeMs, call.session, success, nodeCount,
+                edgeCount, allocated, gcMs, summarize(params)));
+            entry.slowest.sort(Comparator.comparingDouble(SlowCall::getTimeMs).reversed());
+            if (entry.slowest.size() > SLOWEST) {
+                entry.slowest.remove(SLOWEST);
+            }
+        }
+    }
+    
+    private Stats statsFor(String operation) {
+        return stats.computeIfAbsent(operation, Stats::new);
+    }
+    
+    /**
+     * The first PARAMS_CHARS characters of the parameters as JSON. Serializing stops there, so a
+     * mutation batch of a million entries costs no more than a small request.
+     */
+    static String summarize(JsonObject params) {
+        StringBuilder text = new StringBuilder();
+        Writer limited = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                int room = PARAMS_CHARS - text.length();
+                text.append(buffer, offset, Math.min(room, length));
+                if (length > room) {
+                    throw new EOFException();
+                }
+            }
+            
+            @Override
+            public void flush() {
+            }
+            
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            gson.toJson(params, new JsonWriter(limited));
+        } catch (JsonIOException e) {
+            text.append("...");
+        }
+        return text.toString();
+    }
+    
+    /**
+     * One operation call in progress
+     */
+    public class Call {
+        private final String operation;
+        private final String session;
+        private final JsonElement requestId;
+        private final long start = System.nanoTime();
+        private final long allocatedAtStart = allocatedBytes();
+        private final long gcAtStart = gcMillis();
+        private final OperationEvent event = new OperationEvent();
+        
+        private Call(String operation, String session, JsonElement requestId) {
+            this.operation = operation;
+            this.session = session;
+            this.requestId = requestId;
+            event.begin();
+        }
+        
+        /**
+         * Records the call; session may be null for operations that do not run on a graph, and
+         * its size is taken as the call ends, so a load counts the graph it loaded
+         */
+        public void finish(boolean success, GephiSession session, JsonObject params) {
+            long nanos = System.nanoTime() - start;
+            long allocated = Math.max(0, allocatedBytes() - allocatedAtStart);
+            long gcMs = gcMillis() - gcAtStart;
+            int nodeCount = session != null ? session.getGraph().getNodeCount() : 0;
+            int edgeCount = session != null ? session.getGraph().getEdgeCount() : 0;
+            record(this, nanos, allocated, gcMs, success, nodeCount, edgeCount, params);
+            
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation;
+                event.session = this.session;
+                event.requestId = requestId != null ? requestId.toString() : null;
+                event.success = success;
+                event.nodeCount = nodeCount;
+                event.edgeCount = edgeCount;
+                event.allocatedBytes = allocated;
+                event.gcMs = gcMs;
+                event.params = summarize(params);
+                event.commit();
+            }
+        }
+    }
+    
+    /**
+     * Log-linear histogram of nanosecond values at microsecond resolution: eight buckets per power
+     * of two, so any percentile is within 12.5% of the true value, in a few kilobytes
+     */
+    static class Histogram {
+        private static final int SUB_BUCKETS = 8;
+        
+        private final long[] counts = new long[64 * SUB_BUCKETS];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+        
+        void record(long nanos) {
+            long micros = Math.max(0, nanos / 1000);
+            counts[bucket(micros)]++;
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+        
+        static int bucket(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >> (exponent - 3)) & (SUB_BUCKETS - 1);
+            return (exponent - 2) * SUB_BUCKETS + sub;
+        }
+        
+        /**
+         * Highest value in a bucket, in microseconds
+         */
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + 2;
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 3);
+            return lower + (1L << (exponent - 3)) - 1;
+        }
+        
+        /**
+         * Value at the given percentile, in milliseconds, never above the largest value recorded
+         */
+        double percentileMs(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i) / 1e3, maxNanos / 1e6);
+                }
+            }
+            return maxNanos / 1e6;
+        }
+        
+        Percentiles toPercentiles() {
+            return new Percentiles(count > 0 ? totalNanos / 1e6 / count : 0, percentileMs(50), percentileMs(90),
+                percentileMs(99), maxNanos / 1e6);
+        }
+    }
+    
+    private static class Stats {
+        final String operation;
+        final Histogram latency = new Histogram();
+        final Histogram queue = new Histogram();
+        final List<SlowCall> slowest = new ArrayList<>();
+        long count;
+        long errors;
+        long allocatedTotal;
+        long allocatedMax;
+        long gcMsTotal;
+        long gcMsMax;
+        int maxNodeCount;
+        int maxEdgeCount;
+        
+        Stats(String operation) {
+            this.operation = operation;
+        }
+        
+        OperationStats toStats() {
+            return new OperationStats(operation, count, errors, latency.toPercentiles(),
+                queue.count > 0 ? queue.toPercentiles() : null, allocatedTotal, allocatedMax, gcMsTotal, gcMsMax,
+                maxNodeCount, maxEdgeCount, new ArrayList<>(slowest));
+        }
+    }
+    
+    public static class Percentiles {
+        private final double meanMs;
+        private final double p50Ms;
+        private final double p90Ms;
+        private final double p99Ms;
+        private final double maxMs;
+        
+        public Percentiles(double meanMs, double p50Ms, double p90Ms, double p99Ms, double maxMs) {
+            this.meanMs = meanMs;
+            this.p50Ms = p50Ms;
+            this.p90Ms = p90Ms;
+            this.p99Ms = p99Ms;
+            this.maxMs = maxMs;
+        }
+        
+        public double getMeanMs() { return meanMs; }
+        public double getP50Ms() { return p50Ms; }
+        public double getP90Ms() { return p90Ms; }
+        public double getP99Ms() { return p99Ms; }
+        public double getMaxMs() { return maxMs; }
+    }
+    
+    public static class SlowCall {
+        private final long timestamp;
+        private final double timeMs;
+        private final String session;
+        private final boolean success;
+        private final int nodeCount;
+        private final int edgeCount;
+        private final long allocatedBytes;
+        private final long gcMs;
+        private final String params;
+        
+        public SlowCall(long timestamp, double timeMs, String session, boolean success, int nodeCount, int edgeCount,
+                        long allocatedBytes, long gcMs, String params) {
+            this.timestamp = timestamp;
+            this.timeMs = timeMs;
+            this.session = session;
+            this.success = success;
+            this.nodeCount = nodeCount;
+            this.edgeCount = edgeCount;
+            this.allocatedBytes = allocatedBytes;
+            this.gcMs = gcMs;
+            this.params = params;
+        }
+        
+        public long getTimestamp() { return timestamp; }
+        public double getTimeMs() { return timeMs; }
+        public String getSession() { return session; }
+        public boolean isSuccess() { return success; }
+        public int getNodeCount() { return nodeCount; }
+        public int getEdgeCount() { return edgeCount; }
+        public long getAllocatedBytes() { return allocatedBytes; }
+        public long getGcMs() { return gcMs; }
+        public String getParams() { return params; }
+    }
+    
+    public static class OperationStats {
+        private final String operation;
+        private final long count;
+        private final long errors;
+        private final Percentiles latency;
+        // Null for operations that never waited on a session lane
+        private final Percentiles queueWait;
+        private final long allocatedTotal;
+        private final long allocatedMax;
+        private final long gcMsTotal;
+        private final long gcMsMax;
+        private final int maxNodeCount;
+        private final int maxEdgeCount;
+        private final List<SlowCall> slowest;
+        
+        public OperationStats(String operation, long count, long errors, Percentiles latency, Percentiles queueWait,
+                              long allocatedTotal, long allocatedMax, long gcMsTotal, long gcMsMax,
+                              int maxNodeCount, int maxEdgeCount, List<SlowCall> slowest) {
+            this.operation = operation;
+            this.count = count;
+            this.errors = errors;
+            this.latency = latency;
+            this.queueWait = queueWait;
+            this.allocatedTotal = allocatedTotal;
+            this.allocatedMax = allocatedMax;
+            this.gcMsTotal = gcMsTotal;
+            this.gcMsMax = gcMsMax;
+            this.maxNodeCount = maxNodeCount;
+            this.maxEdgeCount = maxEdgeCount;
+            this.slowest = slowest;
+        }
+        
+        public String getOperation() { return operation; }
+        public long getCount() { return count; }
+        public long getErrors() { return errors; }
+        public Percentiles getLatency() { return latency; }
+        public Percentiles getQueueWait() { return queueWait; }
+        public long getAllocatedTotal() { return allocatedTotal; }
+        public long getAllocatedMax() { return allocatedMax; }
+        public long getAllocatedMean() { return count > 0 ? allocatedTotal / count : 0; }
+        public long getGcMsTotal() { return gcMsTotal; }
+        public long getGcMsMax() { return gcMsMax; }
+        public int getMaxNodeCount() { return maxNodeCount; }
+        public int getMaxEdgeCount() { return maxEdgeCount; }
+        public List<SlowCall> getSlowest() { return slowest; }
+    }
+    
+    public static class CollectorStats {
+        private final String name;
+        private final long count;
+        private final long timeMs;
+        
+        public CollectorStats(String name, long count, long timeMs) {
+            this.name = name;
+            this.count = count;
+            this.timeMs = timeMs;
+        }
+        
+        public String getName() { return name; }
+        public long getCount() { return count; }
+        public long getTimeMs() { return timeMs; }
+    }
+    
+    public static class HeapStats {
+        private final long usedBytes;
+        private final long committedBytes;
+        private final long maxBytes;
+        private final List<CollectorStats> collectors;
+        
+        public HeapStats(long usedBytes, long committedBytes, long maxBytes, List<CollectorStats> collectors) {
+            this.usedBytes = usedBytes;
+            this.committedBytes = committedBytes;
+            this.maxBytes = maxBytes;
+            this.collectors = collectors;
+        }
+        
+        public long getUsedBytes() { return usedBytes; }
+        public long getCommittedBytes() { return committedBytes; }
+        public long getMaxBytes() { return maxBytes; }
+        public List<CollectorStats> getCollectors() { return collectors; }
+    }
+}
@@ -0,0 +1,319 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonObject;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pushes overlapping nodes, or their labels, apart with as little movement as it can. Each pass
+ * buckets every item's bounding box into a uniform grid and only tests items sharing a cell, so a
+ * pass is close to linear in the node count instead of quadratic. Overlapping discs separate
+ * along the line between their centres, overlapping label boxes along the axis that needs the
+ * shorter move. Passes repeat until nothing overlaps or maxIterations is reached.
+ */
+public class OverlapRemover {
+    private static final int MAX_SAMPLE_PAIRS = 100;
+    private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+    // Relative overlap treated as touching, and the extra push that keeps rounding from undoing a separation
+    private static final double TOLERANCE = 1e-6;
+    
+    private OverlapRemover() {
+    }
+    
+    public static OverlapResult remove(GephiSession session, OverlapOptions options) throws Exception {
+        long start = System.nanoTime();
+        Graph graph = session.getVisibleGraph();
+        Node[] nodes = session.getCsrGraph().getNodes();
+        int n = nodes.length;
+        if (n == 0) {
+            throw new Exception("No graph loaded. Please load a graph first.");
+        }
+        
+        double[] x = new double[n];
+        double[] y = new double[n];
+        // Half extents of each item's box; for discs both are the radius
+        double[] halfWidth = new double[n];
+        double[] halfHeight = new double[n];
+        boolean[] fixed = new boolean[n];
+        boolean labels = "labels".equals(options.mode);
+        graph.readLock();
+        try {
+            for (int i = 0; i < n; i++) {
+                Node node = nodes[i];
+                x[i] = node.x();
+                y[i] = node.y();
+                fixed[i] = node.isFixed();
+                if (labels) {
+                    String label = node.getLabel() != null ? node.getLabel() : String.valueOf(node.getId());
+                    halfWidth[i] = label.length() * options.fontSize * 0.6 / 2 + options.margin / 2;
+                    halfHeight[i] = options.fontSize / 2 + options.margin / 2;
+                } else {
+                    halfWidth[i] = halfHeight[i] = node.size() + options.margin / 2;
+                }
+            }
+        } finally {
+            graph.readUnlock();
+        }
+        
+        double[] originalX = x.clone();
+        double[] originalY = y.clone();
+        double[] dispX = new double[n];
+        double[] dispY = new double[n];
+        List<String[]> samples = new ArrayList<>();
+        int maxIterations = options.apply ? options.maxIterations : 0;
+        int overlapsBefore = 0;
+        int overlaps;
+        int iterations = 0;
+        while (true) {
+            Arrays.fill(dispX, 0);
+            Arrays.fill(dispY, 0);
+            overlaps = pass(x, y, halfWidth, halfHeight, fixed, labels, dispX, dispY,
+                iterations == 0 && !options.apply ? samples : null, nodes);
+            if (iterations == 0) {
+                overlapsBefore = overlaps;
+            }
+            if (overlaps == 0 || iterations >= maxIterations) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                x[i] += dispX[i];
+                y[i] += dispY[i];
+            }
+            iterations++;
+        }
+        
+        int moved = 0;
+        double maxDisplacement = 0;
+        for (int i = 0; i < n; i++) {
+            double distance = Math.hypot(x[i] - originalX[i], y[i] - originalY[i]);
+            if (distance > 0) {
+                moved++;
+                maxDisplacement = Math.max(maxDisplacement, distance);
+            }
+        }
+        
+        if (moved > 0) {
+            graph.writeLock();
+            try {
+                for (int i = 0; i < n; i++) {
+                    if (x[i] != originalX[i] || y[i] != originalY[i]) {
+                        nodes[i].setX((float) x[i]);
+                        nodes[i].setY((float) y[i]);
+                    }
+                }
+            } finally {
+                graph.writeUnlock();
+                session.markChanged();
+            }
+            if (options.persistPositions && session.getSource() != null) {
+                try {
+                    PositionStore.getInstance().save(session.getSource(), session.getGraph());
+                } catch (IOException e) {
+                    System.err.println("Could not save positions: " + e.getMessage());
+                }
+            }
+        }
+        
+        return new OverlapResult(iterations, overlapsBefore, overlaps, moved, maxDisplacement, samples,
+            (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    /**
+     * Finds every overlapping pair once, adding the moves that would separate it to dispX/dispY.
+     * Returns the number of overlapping pairs.
+     */
+    private static int pass(double[] x, double[] y, double[] halfWidth, double[] halfHeight, boolean[] fixed,
+                            boolean labels, double[] dispX, double[] dispY, List<String[]> samples, Node[] nodes) {
+        int n = x.length;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double extent = 0;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i] - halfWidth[i]);
+            minY = Math.min(minY, y[i] - halfHeight[i]);
+            maxX = Math.max(maxX, x[i] + halfWidth[i]);
+            maxY = Math.max(maxY, y[i] + halfHeight[i]);
+            extent += Math.max(halfWidth[i], halfHeight[i]);
+        }
+        
+        // Cells about as large as a typical item, but never many more cells than items
+        double width = Math.max(maxX - minX, 1e-9);
+        double height = Math.max(maxY - minY, 1e-9);
+        double cellSize = Math.max(2 * extent / n, Math.sqrt(width * height / (2.0 * n)));
+        int columns = (int) Math.min(Math.floor(width / cellSize) + 1, 1 << 15);
+        int rows = (int) Math.min(Math.floor(height / cellSize) + 1, 1 << 15);
+        cellSize = Math.max(width / columns, height / rows);
+        
+        // CSR buckets: an item is listed in every cell its box touches
+        int cells = columns * rows;
+        int[] itemCells = new int[cells + 1];
+        int[] fromColumn = new int[n];
+        int[] toColumn = new int[n];
+        int[] fromRow = new int[n];
+        int[] toRow = new int[n];
+        for (int i = 0; i < n; i++) {
+            fromColumn[i] = clamp((x[i] - halfWidth[i] - minX) / cellSize, columns);
+            toColumn[i] = clamp((x[i] + halfWidth[i] - minX) / cellSize, columns);
+            fromRow[i] = clamp((y[i] - halfHeight[i] - minY) / cellSize, rows);
+            toRow[i] = clamp((y[i] + halfHeight[i] - minY) / cellSize, rows);
+            for (int row = fromRow[i]; row <= toRow[i]; row++) {
+                for (int column = fromColumn[i]; column <= toColumn[i]; column++) {
+                    itemCells[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            itemCells[c + 1] += itemCells[c];
+        }
+        int[] cellItems = new int[itemCells[cells]];
+        int[] cursor = Arrays.copyOf(itemCells, cells);
+        for (int i = 0; i < n; i++) {
+            for (int row = fromRow[i]; row <= toRow[i]; row++) {
+                for (int column = fromColumn[i]; column <= toColumn[i]; column++) {
+                    cellItems[cursor[row * columns + column]++] = i;
+                }
+            }
+        }
+        
+        int overlaps = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            int cellColumn = cell % columns;
+            int cellRow = cell / columns;
+            for (int a = itemCells[cell]; a < itemCells[cell + 1]; a++) {
+                int i = cellItems[a];
+                for (int b = a + 1; b < itemCells[cell + 1]; b++) {
+                    int j = cellItems[b];
+                    double dx = x[j] - x[i];
+                    double dy = y[j] - y[i];
+                    double overlapX = halfWidth[i] + halfWidth[j] - Math.abs(dx);
+                    double overlapY = halfHeight[i] + halfHeight[j] - Math.abs(dy);
+                    double tolerance = TOLERANCE * (halfWidth[i] + halfWidth[j] + halfHeight[i] + halfHeight[j]);
+                    if (overlapX <= tolerance || overlapY <= tolerance) {
+                        continue;
+                    }
+                    // Boxes sharing several cells are handled in the one holding their intersection's low corner
+                    if (Math.max(fromColumn[i], fromColumn[j]) != cellColumn || Math.max(fromRow[i], fromRow[j]) != cellRow) {
+                        continue;
+                    }
+                    
+                    double pushX;
+                    double pushY;
+                    if (labels) {
+                        if (overlapX < overlapY) {
+                            pushX = dx > 0 || (dx == 0 && i < j) ? overlapX + tolerance : -overlapX - tolerance;
+                            pushY = 0;
+                        } else {
+                            pushX = 0;
+                            pushY = dy > 0 || (dy == 0 && i < j) ? overlapY + tolerance : -overlapY - tolerance;
+                        }
+                    } else {
+                        double distance = Math.hypot(dx, dy);
+                        double overlap = halfWidth[i] + halfWidth[j] - distance + tolerance;
+                        if (overlap <= 2 * tolerance) {
+                            continue;
+                        }
+                        if (distance == 0) {
+                            // Coincident nodes: split them along a direction that differs per pair
+                            double angle = GOLDEN_ANGLE * (i + 31L * j);
+                            pushX = Math.cos(angle) * overlap;
+                            pushY = Math.sin(angle) * overlap;
+                        } else {
+                            pushX = dx / distance * overlap;
+                            pushY = dy / distance * overlap;
+                        }
+                    }
+                    overlaps++;
+                    if (samples != null && samples.size() < MAX_SAMPLE_PAIRS) {
+                        samples.add(new String[]{String.valueOf(nodes[i].getId()), String.valueOf(nodes[j].getId())});
+                    }
+                    
+                    // A fixed node stays put and its partner takes the whole move
+                    double shareI = fixed[i] ? 0 : fixed[j] ? 1 : 0.5;
+                    double shareJ = fixed[j] ? 0 : fixed[i] ? 1 : 0.5;
+                    dispX[i] -= pushX * shareI;
+                    dispY[i] -= pushY * shareI;
+                    dispX[j] += pushX * shareJ;
+                    dispY[j] += pushY * shareJ;
+                }
+            }
+        }
+        return overlaps;
+    }
+    
+    private static int clamp(double cell, int count) {
+        return (int) Math.max(0, Math.min(count - 1, Math.floor(cell)));
+    }
+    
+    public static class OverlapOptions {
+        // "nodes" separates node discs, "labels" separates label boxes centred on the nodes
+        public String mode = "nodes";
+        // Extra gap to leave between items, in layout units
+        public double margin = 0;
+        // Label height in layout units; label width is estimated from its character count
+        public double fontSize = 12;
+        public int maxIterations = 50;
+        // False only counts overlaps and reports a sample of the pairs
+        public boolean apply = true;
+        public boolean persistPositions = true;
+        
+        public static OverlapOptions fromJson(JsonObject params) {
+            OverlapOptions options = new OverlapOptions();
+            if (params.has("mode")) options.mode = params.get("mode").getAsString();
+            if (params.has("margin")) options.margin = params.get("margin").getAsDouble();
+            if (params.has("fontSize")) options.fontSize = params.get("fontSize").getAsDouble();
+            if (params.has("maxIterations")) options.maxIterations = params.get("maxIterations").getAsInt();
+            if (params.has("apply")) options.apply = params.get("apply").getAsBoolean();
+            if (params.has("persistPositions")) options.persistPositions = params.get("persistPositions").getAsBoolean();
+            
+            if (!"nodes".equals(options.mode) && !"labels".equals(options.mode)) {
+                throw new IllegalArgumentException("mode must be nodes or labels");
+            }
+            if (options.margin < 0) {
+                throw new IllegalArgumentException("margin must not be negative");
+            }
+            if (options.fontSize <= 0) {
+                throw new IllegalArgumentException("fontSize must be positive");
+            }
+            if (options.maxIterations < 1) {
+                throw new IllegalArgumentException("maxIterations must be at least 1");
+            }
+            return options;
+        }
+    }
+    
+    public static class OverlapResult {
+        private final int iterations;
+        private final int overlapsBefore;
+        private final int overlapsRemaining;
+        private final int movedNodes;
+        private final double maxDisplacement;
+        private final List<String[]> samplePairs;
+        private final long timeMs;
+        
+        public OverlapResult(int iterations, int overlapsBefore, int overlapsRemaining, int movedNodes,
+                             double maxDisplacement, List<String[]> samplePairs, long timeMs) {
+            this.iterations = iterations;
+            this.overlapsBefore = overlapsBefore;
+            this.overlapsRemaining = overlapsRemaining;
+            this.movedNodes = movedNodes;
+            this.maxDisplacement = maxDisplacement;
+            this.samplePairs = samplePairs;
+            this.timeMs = timeMs;
+        }
+        
+        public int getIterations() { return iterations; }
+        public int getOverlapsBefore() { return overlapsBefore; }
+        public int getOverlapsRemaining() { return overlapsRemaining; }
+        public int getMovedNodes() { return movedNodes; }
+        public double getMaxDisplacement() { return maxDisplacement; }
+        public List<String[]> getSamplePairs() { return samplePairs; }
+        public long getTimeMs() { return timeMs; }
+    }
+}
@@ -0,0 +1,68 @@
+package com.gephi.mcp;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits an index range into a fixed number of chunks and runs them on a fork/join pool.
+ * Chunk boundaries only depend on the range and the chunk count, so per-chunk partial
+ * results reduced in chunk order are the same on every run.
+ */
+public class ParallelChunks {
+    private static final int MIN_CHUNK = 256;
+    
+    public interface RangeBody {
+        void run(int from, int to);
+    }
+    
+    public interface ChunkBody {
+        void run(int chunk, int from, int to);
+    }
+    
+    private ParallelChunks() {
+    }
+    
+    /**
+     * A few chunks per worker for load balancing, but none smaller than MIN_CHUNK items
+     */
+    public static int chunkCount(ForkJoinPool pool, int size) {
+        return Math.max(1, Math.min(pool.getParallelism() * 8, (size + MIN_CHUNK - 1) / MIN_CHUNK));
+    }
+    
+    public static void forRange(ForkJoinPool pool, int size, int chunks, RangeBody body) {
+        forChunks(pool, size, chunks, (chunk, from, to) -> body.run(from, to));
+    }
+    
+    public static void forChunks(ForkJoinPool pool, int size, int chunks, ChunkBody body) {
+        pool.invoke(new ChunkTask(body, size, chunks, 0, chunks));
+    }
+    
+    private static class ChunkTask extends RecursiveAction {
+        private final ChunkBody body;
+        private final int size;
+        private final int chunks;
+        private final int firstChunk;
+        private final int lastChunk;
+        
+        ChunkTask(ChunkBody body, int size, int chunks, int firstChunk, int lastChunk) {
+            this.body = body;
+            this.size = size;
+            this.chunks = chunks;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+        }
+        
+        @Override
+        protected void compute() {
+            if (lastChunk - firstChunk > 1) {
+                int mid = (firstChunk + lastChunk) >>> 1;
+                invokeAll(new ChunkTask(body, size, chunks, firstChunk, mid),
+                    new ChunkTask(body, size, chunks, mid, lastChunk));
+                return;
+            }
+            int from = (int) ((long) size * firstChunk / chunks);
+            int to = (int) ((long) size * lastChunk / chunks);
+            body.run(firstChunk, from, to);
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package com.gephi.mcp;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ForceAtlas2 over primitive arrays.
+ * Follows the force model of Gephi's ForceAtlas2 (linear repulsion and attraction, gravity,
+ * adaptive speed from swinging/traction) but keeps positions and forces in float arrays,
+ * the adjacency in a CsrGraph and the Barnes-Hut tree in flat arrays reused every iteration.
+ * Forces are computed node-parallel on a fork/join pool; each node only writes its own slots.
+ */
+public class ParallelForceAtlas2 {
+    private final CsrGraph graph;
+    private final int n;
+    private final ForkJoinPool pool;
+    private final int chunks;
+    
+    // Settings, same meaning and defaults as Gephi's ForceAtlas2
+    private double scalingRatio = 2.0;
+    private double gravity = 1.0;
+    private boolean strongGravityMode = false;
+    private boolean adjustSizes = false;
+    private boolean barnesHutOptimize = true;
+    private double barnesHutTheta = 1.2;
+    private double jitterTolerance = 1.0;
+    private double edgeWeightInfluence = 1.0;
+    
+    // Node state
+    private final float[] x;
+    private final float[] y;
+    private final float[] size;
+    private final float[] mass;
+    private final float[] dx;
+    private final float[] dy;
+    private final float[] oldDx;
+    private final float[] oldDy;
+    // Per-node share of the computed move, 1 = free, 0 = pinned; null means all free
+    private float[] mobility;
+    
+    private double speed = 1.0;
+    private double speedEfficiency = 1.0;
+    
+    // Per-chunk partial sums, reduced in chunk order so runs are reproducible
+    private final double[] chunkSwinging;
+    private final double[] chunkTraction;
+    private final double[] chunkDisplacement;
+    private final double[] chunkEnergy;
+    
+    private double displacement;
+    private double swinging;
+    private double traction;
+    private double energy;
+    
+    private final QuadTree tree;
+    
+    public ParallelForceAtlas2(CsrGraph graph, float[] x, float[] y, float[] size, ForkJoinPool pool) {
+        this.graph = graph;
+        this.n = graph.getNodeCount();
+        this.x = x;
+        this.y = y;
+        this.size = size;
+        this.pool = pool;
+        this.chunks = ParallelChunks.chunkCount(pool, n);
+        
+        this.mass = new float[n];
+        this.dx = new float[n];
+        this.dy = new float[n];
+        this.oldDx = new float[n];
+        this.oldDy = new float[n];
+        for (int i = 0; i < n; i++) {
+            mass[i] = 1 + graph.degree(i);
+        }
+        
+        this.chunkSwinging = new double[chunks];
+        this.chunkTraction = new double[chunks];
+        this.chunkDisplacement = new double[chunks];
+        this.chunkEnergy = new double[chunks];
+        this.tree = new QuadTree(n);
+    }
+    
+    /**
+     * Snapshots a Gephi graph's positions and sizes into a new engine
+     */
+    public static ParallelForceAtlas2 fromGraph(CsrGraph graph, ForkJoinPool pool) {
+        Node[] nodes = graph.getNodes();
+        float[] x = new float[nodes.length];
+        float[] y = new float[nodes.length];
+        float[] size = new float[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            x[i] = nodes[i].x();
+            y[i] = nodes[i].y();
+            size[i] = nodes[i].size();
+        }
+        ParallelForceAtlas2 engine = new ParallelForceAtlas2(graph, x, y, size, pool);
+        
+        // Fixed nodes stay where they are, as in Gephi's layout
+        float[] mobility = null;
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i].isFixed()) {
+                if (mobility == null) {
+                    mobility = new float[nodes.length];
+                    Arrays.fill(mobility, 1f);
+                }
+                mobility[i] = 0f;
+            }
+        }
+        engine.setMobility(mobility);
+        return engine;
+    }
+    
+    /**
+     * Copies the current positions back onto the snapshot's Gephi nodes
+     */
+    public void writePositions(Graph target) {
+        Node[] nodes = graph.getNodes();
+        target.writeLock();
+        try {
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i].setX(x[i]);
+                nodes[i].setY(y[i]);
+            }
+        } finally {
+            target.writeUnlock();
+        }
+    }
+    
+    public void step() {
+        // Reset forces, keeping the previous ones for the swinging estimate
+        parallelFor((from, to) -> {
+            for (int i = from; i < to; i++) {
+                oldDx[i] = dx[i];
+                oldDy[i] = dy[i];
+                dx[i] = 0;
+                dy[i] = 0;
+            }
+        });
+        
+        if (barnesHutOptimize) {
+            tree.build(x, y, mass);
+        }
+        
+        // Repulsion and gravity; pinned nodes never move, so their forces are skipped
+        parallelFor((from, to) -> {
+            int[] stack = barnesHutOptimize ? new int[tree.maxDepthStack()] : null;
+            for (int i = from; i < to; i++) {
+                if (mobility != null && mobility[i] <= 0f) {
+                    continue;
+                }
+                if (barnesHutOptimize) {
+                    applyTreeRepulsion(i, stack);
+                } else {
+                    applyExactRepulsion(i);
+                }
+                applyGravity(i);
+            }
+        });
+        
+        // Attraction, gathered over each node's row so no two tasks write the same slot
+        parallelFor((from, to) -> {
+            int[] offsets = graph.getOffsets();
+            int[] targets = graph.getTargets();
+            float[] weights = graph.getWeights();
+            for (int i = from; i < to; i++) {
+                if (mobility != null && mobility[i] <= 0f) {
+                    continue;
+                }
+                double fx = 0;
+                double fy = 0;
+                for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                    int j = targets[k];
+                    double xDist = x[i] - x[j];
+                    double yDist = y[i] - y[j];
+                    double factor = -edgeWeight(weights[k]);
+                    if (adjustSizes) {
+                        double distance = Math.sqrt(xDist * xDist + yDist * yDist) - size[i] - size[j];
+                        if (distance <= 0) {
+                            continue;
+                        }
+                    }
+                    fx += xDist * factor;
+                    fy += yDist * factor;
+                }
+                dx[i] += (float) fx;
+                dy[i] += (float) fy;
+            }
+        });
+        
+        // Swinging and traction totals drive the adaptive speed
+        parallelForChunks((chunk, from, to) -> {
+            double swing = 0;
+            double tract = 0;
+            for (int i = from; i < to; i++) {
+                double sx = oldDx[i] - dx[i];
+                double sy = oldDy[i] - dy[i];
+                double tx = oldDx[i] + dx[i];
+                double ty = oldDy[i] + dy[i];
+                swing += mass[i] * Math.sqrt(sx * sx + sy * sy);
+                tract += 0.5 * mass[i] * Math.sqrt(tx * tx + ty * ty);
+            }
+            chunkSwinging[chunk] = swing;
+            chunkTraction[chunk] = tract;
+        });
+        swinging = sum(chunkSwinging);
+        traction = sum(chunkTraction);
+        adaptSpeed();
+        
+        // Apply displacements
+        final double currentSpeed = speed;
+        parallelForChunks((chunk, from, to) -> {
+            double moved = 0;
+            double force = 0;
+            for (int i = from; i < to; i++) {
+                float share = mobility == null ? 1f : mobility[i];
+                force += dx[i] * (double) dx[i] + dy[i] * (double) dy[i];
+                if (share <= 0f) {
+                    continue;
+                }
+                
+                double sx = oldDx[i] - dx[i];
+                double sy = oldDy[i] - dy[i];
+                double nodeSwinging = mass[i] * Math.sqrt(sx * sx + sy * sy);
+                double factor;
+                if (adjustSizes) {
+                    factor = 0.1 * currentSpeed / (1.0 + Math.sqrt(currentSpeed * nodeSwinging));
+                    double df = Math.sqrt(dx[i] * (double) dx[i] + dy[i] * (double) dy[i]);
+                    factor = df > 0 ? Math.min(factor * df, 10.0) / df : 0;
+                } else {
+                    factor = currentSpeed / (1.0 + Math.sqrt(currentSpeed * nodeSwinging));
+                }
+                factor *= share;
+                
+                double moveX = dx[i] * factor;
+                double moveY = dy[i] * factor;
+                x[i] += (float) moveX;
+                y[i] += (float) moveY;
+                moved += Math.sqrt(moveX * moveX + moveY * moveY);
+            }
+            chunkDisplacement[chunk] = moved;
+            chunkEnergy[chunk] = force;
+        });
+        displacement = sum(chunkDisplacement);
+        energy = sum(chunkEnergy);
+    }
+    
+    private void adaptSpeed() {
+        // Same tuning as Gephi's ForceAtlas2.goAlgo
+        double estimatedOptimalJitterTolerance = 0.05 * Math.sqrt(n);
+        double minJT = Math.sqrt(estimatedOptimalJitterTolerance);
+        double maxJT = 10;
+        double jt = jitterTolerance * Math.max(minJT,
+            Math.min(maxJT, estimatedOptimalJitterTolerance * traction / ((double) n * n)));
+            
+        double minSpeedEfficiency = 0.05;
+        
+        // Protection against erratic behavior
+        if (traction > 0 && swinging / traction > 2.0) {
+            if (speedEfficiency > minSpeedEfficiency) {
+                speedEfficiency *= 0.5;
+            }
+            jt = Math.max(jt, jitterTolerance);
+        }
+        
+        double targetSpeed = swinging > 0 ? jt * speedEfficiency * traction / swinging : speed;
+        
+        if (swinging > jt * traction) {
+            if (speedEfficiency > minSpeedEfficiency) {
+                speedEfficiency *= 0.7;
+            }
+        } else if (speed < 1000) {
+            speedEfficiency *= 1.3;
+        }
+        
+        // But the speed shouldn't rise too much too quickly
+        double maxRise = 0.5;
+        speed = speed + Math.min(targetSpeed - speed, maxRise * speed);
+    }
+    
+    private void applyExactRepulsion(int i) {
+        double fx = 0;
+        double fy = 0;
+        for (int j = 0; j < n; j++) {
+            if (j == i) {
+                continue;
+            }
+            double xDist = x[i] - x[j];
+            double yDist = y[i] - y[j];
+            double factor = repulsionFactor(i, xDist, yDist, mass[j], size[j]);
+            fx += xDist * factor;
+            fy += yDist * factor;
+        }
+        dx[i] += (float) fx;
+        dy[i] += (float) fy;
+    }
+    
+    private void applyTreeRepulsion(int i, int[] stack) {
+        double fx = 0;
+        double fy = 0;
+        int top = 0;
+        stack[top++] = 0;
+        
+        while (top > 0) {
+            int region = stack[--top];
+            int count = tree.end[region] - tree.start[region];
+            
+            if (count == 1) {
+                int j = tree.order[tree.start[region]];
+                if (j != i) {
+                    // Gephi's region code applies leaf forces to both nodes of the pair, so each
+                    // near pair is counted once from either side; gathering per node, we count it twice
+                    double xDist = x[i] - x[j];
+                    double yDist = y[i] - y[j];
+                    double factor = 2 * repulsionFactor(i, xDist, yDist, mass[j], size[j]);
+                    fx += xDist * factor;
+                    fy += yDist * factor;
+                }
+                continue;
+            }
+            
+            double xDist = x[i] - tree.centerX[region];
+            double yDist = y[i] - tree.centerY[region];
+            double distance = Math.sqrt(xDist * xDist + yDist * yDist);
+            if (distance * barnesHutTheta > tree.size[region]) {
+                if (distance > 0) {
+                    double factor = scalingRatio * mass[i] * tree.mass[region] / (distance * distance);
+                    fx += xDist * factor;
+                    fy += yDist * factor;
+                }
+            } else {
+                int first = tree.firstChild[region];
+                for (int c = 0; c < tree.childCount[region]; c++) {
+                    stack[top++] = first + c;
+                }
+            }
+        }
+        
+        dx[i] += (float) fx;
+        dy[i] += (float) fy;
+    }
+    
+    private double repulsionFactor(int i, double xDist, double yDist, double otherMass, double otherSize) {
+        double distanceSquared = xDist * xDist + yDist * yDist;
+        if (adjustSizes) {
+            double distance = Math.sqrt(distanceSquared) - size[i] - otherSize;
+            if (distance > 0) {
+                return scalingRatio * mass[i] * otherMass / (distance * distance);
+            } else if (distance < 0) {
+                return 100 * scalingRatio * mass[i] * otherMass;
+            }
+            return 0;
+        }
+        return distanceSquared > 0 ? scalingRatio * mass[i] * otherMass / distanceSquared : 0;
+    }
+    
+    private void applyGravity(int i) {
+        double distance = Math.sqrt(x[i] * (double) x[i] + y[i] * (double) y[i]);
+        double factor;
+        if (strongGravityMode) {
+            factor = distance > 0 ? mass[i] * gravity : 0;
+        } else {
+            factor = distance > 0 ? mass[i] * gravity / distance : 0;
+        }
+        dx[i] -= (float) (x[i] * factor);
+        dy[i] -= (float) (y[i] * factor);
+    }
+    
+    private double edgeWeight(float weight) {
+        if (edgeWeightInfluence == 0) {
+            return 1;
+        } else if (edgeWeightInfluence == 1) {
+            return weight;
+        }
+        return Math.pow(weight, edgeWeightInfluence);
+    }
+    
+    private static double sum(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total;
+    }
+    
+    private void parallelFor(ParallelChunks.RangeBody body) {
+        ParallelChunks.forRange(pool, n, chunks, body);
+    }
+    
+    private void parallelForChunks(ParallelChunks.ChunkBody body) {
+        ParallelChunks.forChunks(pool, n, chunks, body);
+    }
+    
+    /**
+     * Barnes-Hut tree in flat arrays. Each region owns a contiguous range of the order array,
+     * children of a region are stored next to each other, and nodes are split around the
+     * region's mass center the same way Gephi's Region does.
+     */
+    private static class QuadTree {
+        final int[] order;
+        final int[] start;
+        final int[] end;
+        final int[] firstChild;
+        final int[] childCount;
+        final float[] centerX;
+        final float[] centerY;
+        final float[] mass;
+        final float[] size;
+        private final int nodeCount;
+        private final int[] level;
+        private final int[] pending;
+        private final int[] bounds = new int[5];
+        private int regionCount;
+        private int depthBound;
+        
+        QuadTree(int nodeCount) {
+            // A tree whose inner regions have at least two children has fewer than 2n regions
+            int capacity = Math.max(1, 2 * nodeCount);
+            this.nodeCount = nodeCount;
+            order = new int[nodeCount];
+            level = new int[capacity];
+            start = new int[capacity];
+            end = new int[capacity];
+            firstChild = new int[capacity];
+            childCount = new int[capacity];
+            centerX = new float[capacity];
+            centerY = new float[capacity];
+            mass = new float[capacity];
+            size = new float[capacity];
+            pending = new int[capacity];
+        }
+        
+        /**
+         * Upper bound on the traversal stack a query can need
+         */
+        int maxDepthStack() {
+            return depthBound;
+        }
+        
+        void build(float[] x, float[] y, float[] nodeMass) {
+            int n = nodeCount;
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            
+            regionCount = 1;
+            start[0] = 0;
+            end[0] = n;
+            level[0] = 0;
+            int pendingCount = 0;
+            pending[pendingCount++] = 0;
+            int maxChildren = 1;
+            int deepest = 0;
+            
+            while (pendingCount > 0) {
+                int region = pending[--pendingCount];
+                int from = start[region];
+                int to = end[region];
+                childCount[region] = 0;
+                deepest = Math.max(deepest, level[region]);
+                
+                // Mass center and extent
+                double m = 0;
+                double cx = 0;
+                double cy = 0;
+                for (int k = from; k < to; k++) {
+                    int node = order[k];
+                    m += nodeMass[node];
+                    cx += x[node] * nodeMass[node];
+                    cy += y[node] * nodeMass[node];
+                }
+                cx /= m;
+                cy /= m;
+                double extent = 0;
+                for (int k = from; k < to; k++) {
+                    int node = order[k];
+                    double ddx = x[node] - cx;
+                    double ddy = y[node] - cy;
+                    extent = Math.max(extent, 2 * Math.sqrt(ddx * ddx + ddy * ddy));
+                }
+                mass[region] = (float) m;
+                centerX[region] = (float) cx;
+                centerY[region] = (float) cy;
+                size[region] = (float) extent;
+                
+                if (to - from < 2) {
+                    continue;
+                }
+                
+                // Split left/right of the mass center, then each half top/bottom
+                int midX = partition(x, from, to, (float) cx);
+                int midLeft = partition(y, from, midX, (float) cy);
+                int midRight = partition(y, midX, to, (float) cy);
+                bounds[0] = from;
+                bounds[1] = midLeft;
+                bounds[2] = midX;
+                bounds[3] = midRight;
+                bounds[4] = to;
+                
+                boolean degenerate = false;
+                for (int q = 0; q < 4; q++) {
+                    if (bounds[q + 1] - bounds[q] == to - from) {
+                        degenerate = true;
+                    }
+                }
+                
+                firstChild[region] = regionCount;
+                if (degenerate) {
+                    // All nodes share a quadrant (e.g. identical positions): one leaf per node
+                    for (int k = from; k < to; k++) {
+                        int child = regionCount++;
+                        start[child] = k;
+                        end[child] = k + 1;
+                        level[child] = level[region] + 1;
+                        pending[pendingCount++] = child;
+                    }
+                    childCount[region] = to - from;
+                } else {
+                    for (int q = 0; q < 4; q++) {
+                        if (bounds[q + 1] > bounds[q]) {
+                            int child = regionCount++;
+                            start[child] = bounds[q];
+                            end[child] = bounds[q + 1];
+                            level[child] = level[region] + 1;
+                            pending[pendingCount++] = child;
+                            childCount[region]++;
+                        }
+                    }
+                }
+                maxChildren = Math.max(maxChildren, childCount[region]);
+            }
+            
+            // Depth-first traversal keeps at most one set of siblings per level on the stack
+            depthBound = Math.min(regionCount, maxChildren * (deepest + 1) + 1);
+        }
+        
+        private int partition(float[] key, int from, int to, float pivot) {
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                if (key[order[i]] < pivot) {
+                    i++;
+                } else {
+                    int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    j--;
+                }
+            }
+            return i;
+        }
+    }
+    
+    public void setScalingRatio(double scalingRatio) { this.scalingRatio = scalingRatio; }
+    public void setGravity(double gravity) { this.gravity = gravity; }
+    public void setStrongGravityMode(boolean strongGravityMode) { this.strongGravityMode = strongGravityMode; }
+    public void setAdjustSizes(boolean adjustSizes) { this.adjustSizes = adjustSizes; }
+    public void setBarnesHutOptimize(boolean barnesHutOptimize) { this.barnesHutOptimize = barnesHutOptimize; }
+    public void setBarnesHutTheta(double barnesHutTheta) { this.barnesHutTheta = barnesHutTheta; }
+    public void setJitterTolerance(double jitterTolerance) { this.jitterTolerance = jitterTolerance; }
+    public void setEdgeWeightInfluence(double edgeWeightInfluence) { this.edgeWeightInfluence = edgeWeightInfluence; }
+    public void setMobility(float[] mobility) { this.mobility = mobility; }
+    
+    public float[] getX() { return x; }
+    public float[] getY() { return y; }
+    public float[] getSize() { return size; }
+    public double getDisplacement() { return displacement; }
+    public double getSwinging() { return swinging; }
+    public double getTraction() { return traction; }
+    public double getEnergy() { return energy; }
+}
@@ -0,0 +1,242 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs an ordered list of operations inside the service, without a client round trip between
+ * steps. With inputs, the same steps run once per input file, each in its own session and at most
+ * concurrency at a time; "{input}", "{name}" and "{index}" in step parameters are replaced by the
+ * input path, its file name without extension and its position in the list.
+ */
+public class PipelineRunner {
+    // Numbers each run, so concurrent runs get their own default session names
+    private static final AtomicLong runs = new AtomicLong();
+    
+    private PipelineRunner() {
+    }
+    
+    public static PipelineResult run(JsonObject params, JsonElement requestId, Consumer<JsonObject> events) throws Exception {
+        long start = System.nanoTime();
+        if (!params.has("steps") || params.getAsJsonArray("steps").size() == 0) {
+            throw new Exception("pipeline needs at least one step");
+        }
+        JsonArray steps = params.getAsJsonArray("steps");
+        for (JsonElement element : steps) {
+            JsonObject step = element.getAsJsonObject();
+            String operation = step.has("operation") ? step.get("operation").getAsString() : "";
+            if (!GephiService.isSessionOperation(operation)) {
+                throw new Exception("Operation cannot run in a pipeline: " + operation);
+            }
+        }
+        
+        if (!params.has("inputs")) {
+            String session = params.has("session") ? params.get("session").getAsString() : GephiContext.DEFAULT_SESSION;
+            List<RunResult> results = new ArrayList<>();
+            results.add(runSteps(steps, GephiContext.getInstance().acquireSession(session), null, -1, true,
+                requestId, events));
+            return new PipelineResult(results, (System.nanoTime() - start) / 1_000_000);
+        }
+        
+        JsonArray inputs = params.getAsJsonArray("inputs");
+        String prefix = params.has("sessionPrefix") ? params.get("sessionPrefix").getAsString()
+            : "pipeline-" + runs.incrementAndGet();
+        boolean keepSessions = params.has("keepSessions") && params.get("keepSessions").getAsBoolean();
+        int concurrency = params.has("concurrency") ? params.get("concurrency").getAsInt()
+            : Runtime.getRuntime().availableProcessors();
+        concurrency = Math.max(1, Math.min(concurrency, inputs.size()));
+        
+        // Own threads: the request workers may all be busy, and this request is holding one of them
+        // Per-input sessions run outside the dispatcher's session lanes, so they must be new ones
+        GephiContext context = GephiContext.getInstance();
+        List<GephiSession> sessions = new ArrayList<>();
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                sessions.add(context.acquireNewSession(prefix + "-" + i));
+            }
+        } catch (Exception e) {
+            for (GephiSession reserved : sessions) {
+                context.releaseSession(reserved);
+                context.closeSession(reserved.getName());
+            }
+            throw e;
+        }
+        
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "gephi-pipeline-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<RunResult>> futures = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                String input = inputs.get(i).getAsString();
+                int index = i;
+                futures.add(executor.submit(() ->
+                    runSteps(steps, sessions.get(index), input, index, keepSessions, requestId, events)));
+            }
+            List<RunResult> results = new ArrayList<>();
+            for (Future<RunResult> future : futures) {
+                results.add(future.get());
+            }
+            return new PipelineResult(results, (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Runs every step on one session, stopping at the first failure. The session comes pinned, so
+     * other sessions' loads cannot evict it between steps, and is released here.
+     */
+    private static RunResult runSteps(JsonArray steps, GephiSession session, String input, int index, boolean keepSession,
+                                      JsonElement requestId, Consumer<JsonObject> events) {
+        long start = System.nanoTime();
+        GephiContext context = GephiContext.getInstance();
+        String sessionName = session.getName();
+        List<StepResult> results = new ArrayList<>();
+        String error = null;
+        try {
+            for (int i = 0; i < steps.size(); i++) {
+                JsonObject step = steps.get(i).getAsJsonObject();
+                String operation = step.get("operation").getAsString();
+                JsonObject stepParams = step.has("params") ? step.getAsJsonObject("params").deepCopy() : new JsonObject();
+                if (input != null) {
+                    stepParams = substitute(stepParams, input, index).getAsJsonObject();
+                }
+                stepParams.addProperty("session", sessionName);
+                // Steps run in order, so a layout never detaches into a background job
+                stepParams.remove("async");
+                
+                long stepStart = System.nanoTime();
+                JsonObject response = GephiService.processOperation(operation, stepParams, requestId);
+                long stepMs = (System.nanoTime() - stepStart) / 1_000_000;
+                boolean success = response.has("success") && response.get("success").getAsBoolean();
+                results.add(new StepResult(operation, stepMs, response));
+                
+                JsonObject event = new JsonObject();
+                event.addProperty("session", sessionName);
+                if (input != null) {
+                    event.addProperty("input", input);
+                }
+                event.addProperty("step", i);
+                event.addProperty("operation", operation);
+                event.addProperty("success", success);
+                event.addProperty("timeMs", stepMs);
+                events.accept(event);
+                
+                if (!success) {
+                    error = response.has("error") ? response.get("error").getAsString() : operation + " failed";
+                    break;
+                }
+            }
+        } finally {
+            context.releaseSession(session);
+            if (!keepSession) {
+                context.closeSession(sessionName);
+            }
+        }
+        return new RunResult(input, sessionName, results, error, (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    private static JsonElement substitute(JsonElement element, String input, int index) {
+        if (element.isJsonObject()) {
+            JsonObject copy = new JsonObject();
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                copy.add(entry.getKey(), substitute(entry.getValue(), input, index));
+            }
+            return copy;
+        }
+        if (element.isJsonArray()) {
+            JsonArray copy = new JsonArray();
+            for (JsonElement item : element.getAsJsonArray()) {
+                copy.add(substitute(item, input, index));
+            }
+            return copy;
+        }
+        if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+            String name = new File(input).getName().replaceFirst("\\.[^.]+$", "");
+            return new JsonPrimitive(element.getAsString()
+                .replace("{input}", input)
+                .replace("{name}", name)
+                .replace("{index}", String.valueOf(index)));
+        }
+        return element;
+    }
+    
+    public static class StepResult {
+        private final String operation;
+        private final long timeMs;
+        private final JsonObject response;
+        
+        public StepResult(String operation, long timeMs, JsonObject response) {
+            this.operation = operation;
+            this.timeMs = timeMs;
+            this.response = response;
+        }
+        
+        public String getOperation() { return operation; }
+        public long getTimeMs() { return timeMs; }
+        public JsonObject getResponse() { return response; }
+    }
+    
+    public static class RunResult {
+        private final String input;
+        private final String session;
+        private final List<StepResult> steps;
+        // Message of the step that failed, null when every step succeeded
+        private final String error;
+        private final long timeMs;
+        
+        public RunResult(String input, String session, List<StepResult> steps, String error, long timeMs) {
+            this.input = input;
+            this.session = session;
+            this.steps = steps;
+            this.error = error;
+            this.timeMs = timeMs;
+        }
+        
+        public String getInput() { return input; }
+        public String getSession() { return session; }
+        public List<StepResult> getSteps() { return steps; }
+        public String getError() { return error; }
+        public boolean isSuccess() { return error == null; }
+        public long getTimeMs() { return timeMs; }
+    }
+    
+    public static class PipelineResult {
+        private final List<RunResult> runs;
+        private final long timeMs;
+        
+        public PipelineResult(List<RunResult> runs, long timeMs) {
+            this.runs = runs;
+            this.timeMs = timeMs;
+        }
+        
+        public List<RunResult> getRuns() { return runs; }
+        public long getTimeMs() { return timeMs; }
+        
+        public boolean isSuccess() {
+            for (RunResult run : runs) {
+                if (!run.isSuccess()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
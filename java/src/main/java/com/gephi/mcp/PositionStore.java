@@ -0,0 +1,132 @@
+package com.gephi.mcp;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Side files holding the last laid-out position of every node, keyed by the graph's source file.
+ * Reloading the same graph puts nodes back where the previous layout left them.
+ */
+public class PositionStore {
+    private static final int MAGIC = 0x474d5053; // "GMPS"
+    private static final String EXTENSION = ".positions";
+    
+    private static PositionStore instance;
+    
+    private final Path directory;
+    
+    private PositionStore(Path directory) {
+        this.directory = directory;
+    }
+    
+    public static synchronized PositionStore getInstance() {
+        if (instance == null) {
+            String dir = System.getProperty("gephi.mcp.positionsDir", System.getenv("GEPHI_MCP_POSITIONS_DIR"));
+            if (dir == null || dir.isEmpty()) {
+                dir = Paths.get(System.getProperty("java.io.tmpdir"), "gephi-mcp-positions").toString();
+            }
+            instance = new PositionStore(Paths.get(dir));
+        }
+        return instance;
+    }
+    
+    /**
+     * Writes the positions of all nodes; ids are stored as strings
+     */
+    public void save(String source, Graph graph) throws IOException {
+        Files.createDirectories(directory);
+        Path target = fileFor(source);
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            graph.readLock();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 20))) {
+                out.writeInt(MAGIC);
+                out.writeInt(graph.getNodeCount());
+                for (Node node : graph.getNodes()) {
+                    out.writeUTF(String.valueOf(node.getId()));
+                    out.writeFloat(node.x());
+                    out.writeFloat(node.y());
+                }
+            } finally {
+                graph.readUnlock();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    /**
+     * Moves nodes to their stored positions. Returns the nodes that had no stored position,
+     * or null when nothing is stored for this source.
+     */
+    public List<Node> restore(String source, Graph graph) throws IOException {
+        Path file = fileFor(source);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        
+        Map<String, float[]> positions;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 20))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int count = in.readInt();
+            positions = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                positions.put(in.readUTF(), new float[] {in.readFloat(), in.readFloat()});
+            }
+        } catch (EOFException e) {
+            // Truncated file; treat it as nothing stored
+            return null;
+        }
+        
+        List<Node> missing = new ArrayList<>();
+        graph.writeLock();
+        try {
+            for (Node node : graph.getNodes()) {
+                float[] position = positions.get(String.valueOf(node.getId()));
+                if (position != null) {
+                    node.setX(position[0]);
+                    node.setY(position[1]);
+                } else {
+                    missing.add(node);
+                }
+            }
+        } finally {
+            graph.writeUnlock();
+        }
+        return missing;
+    }
+    
+    private Path fileFor(String source) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(source.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return directory.resolve(hex + EXTENSION);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
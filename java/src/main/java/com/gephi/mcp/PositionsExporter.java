@@ -0,0 +1,185 @@
+package com.gephi.mcp;
+
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Binary export of node positions only, for handing a finished layout to another process without
+ * re-sending the graph. All values are big-endian:
+ * <pre>
+ * int   magic "GMPX"
+ * byte  format version (1)
+ * byte  flags: 1 = sizes included, 2 = delta
+ * long  id of this export
+ * long  id of the export a delta applies to, 0 for raw
+ * int   node count
+ * raw:   per node: UTF id, float x, float y [, float size]
+ * delta: per node, in the order of the base export: varint dx, dy [, dsize]
+ * </pre>
+ * Delta values are zigzag varints of the difference between the IEEE-754 bit patterns, so they are
+ * lossless and a node that did not move costs one byte per value. A delta is only written when the
+ * graph has exactly the nodes of the session's previous positions export; otherwise the export
+ * falls back to raw.
+ */
+public class PositionsExporter {
+    private static final int MAGIC = 0x474d5058; // "GMPX"
+    private static final int FORMAT_VERSION = 1;
+    private static final int FLAG_SIZES = 1;
+    private static final int FLAG_DELTA = 2;
+    
+    private PositionsExporter() {
+    }
+    
+    public static PositionsResult export(GephiSession session, File file, boolean delta, boolean sizes, boolean compress)
+            throws IOException {
+        long start = System.nanoTime();
+        Graph graph = session.getVisibleGraph();
+        Baseline base = session.getPositionsBaseline();
+        long exportId = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE | 1;
+        
+        graph.readLock();
+        try {
+            // Baseline order when every node is still there, so the delta needs no ids
+            Node[] nodes = null;
+            if (delta && base != null && base.sizes == sizes && base.ids.length == graph.getNodeCount()) {
+                nodes = new Node[base.ids.length];
+                for (int i = 0; i < nodes.length; i++) {
+                    nodes[i] = graph.getNode(base.ids[i]);
+                    if (nodes[i] == null) {
+                        nodes = null;
+                        break;
+                    }
+                }
+            }
+            boolean writeDelta = nodes != null;
+            if (!writeDelta) {
+                nodes = graph.getNodes().toArray();
+            }
+            
+            int n = nodes.length;
+            Object[] ids = new Object[n];
+            int[] x = new int[n];
+            int[] y = new int[n];
+            int[] size = sizes ? new int[n] : null;
+            for (int i = 0; i < n; i++) {
+                ids[i] = nodes[i].getId();
+                x[i] = Float.floatToIntBits(nodes[i].x());
+                y[i] = Float.floatToIntBits(nodes[i].y());
+                if (sizes) {
+                    size[i] = Float.floatToIntBits(nodes[i].size());
+                }
+            }
+            
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 DataOutputStream out = new DataOutputStream(open(channel, compress))) {
+                out.writeInt(MAGIC);
+                out.writeByte(FORMAT_VERSION);
+                out.writeByte((sizes ? FLAG_SIZES : 0) | (writeDelta ? FLAG_DELTA : 0));
+                out.writeLong(exportId);
+                out.writeLong(writeDelta ? base.exportId : 0);
+                out.writeInt(n);
+                for (int i = 0; i < n; i++) {
+                    if (writeDelta) {
+                        writeVarint(out, x[i] - base.x[i]);
+                        writeVarint(out, y[i] - base.y[i]);
+                        if (sizes) {
+                            writeVarint(out, size[i] - base.size[i]);
+                        }
+                    } else {
+                        out.writeUTF(String.valueOf(ids[i]));
+                        out.writeInt(x[i]);
+                        out.writeInt(y[i]);
+                        if (sizes) {
+                            out.writeInt(size[i]);
+                        }
+                    }
+                }
+            }
+            
+            session.setPositionsBaseline(new Baseline(exportId, ids, x, y, size, sizes));
+            return new PositionsResult(exportId, writeDelta ? base.exportId : 0, writeDelta, n,
+                (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            graph.readUnlock();
+        }
+    }
+    
+    /**
+     * Buffered stream over a file channel, gzip-compressed when asked
+     */
+    static OutputStream open(FileChannel channel, boolean compress) throws IOException {
+        OutputStream out = Channels.newOutputStream(channel);
+        if (compress) {
+            out = new GZIPOutputStream(out, 1 << 16);
+        }
+        return new BufferedOutputStream(out, 1 << 20);
+    }
+    
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7f) != 0) {
+            out.writeByte((zigzag & 0x7f) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.writeByte(zigzag);
+    }
+    
+    /**
+     * What the session's last positions export contained, in file order
+     */
+    static class Baseline {
+        final long exportId;
+        final Object[] ids;
+        final int[] x;
+        final int[] y;
+        final int[] size;
+        final boolean sizes;
+        
+        Baseline(long exportId, Object[] ids, int[] x, int[] y, int[] size, boolean sizes) {
+            this.exportId = exportId;
+            this.ids = ids;
+            this.x = x;
+            this.y = y;
+            this.size = size;
+            this.sizes = sizes;
+        }
+        
+        long estimateBytes() {
+            return ids.length * (sizes ? 28L : 24L);
+        }
+    }
+    
+    public static class PositionsResult {
+        private final long exportId;
+        private final long baseExportId;
+        private final boolean delta;
+        private final int nodeCount;
+        private final long timeMs;
+        
+        public PositionsResult(long exportId, long baseExportId, boolean delta, int nodeCount, long timeMs) {
+            this.exportId = exportId;
+            this.baseExportId = baseExportId;
+            this.delta = delta;
+            this.nodeCount = nodeCount;
+            this.timeMs = timeMs;
+        }
+        
+        public long getExportId() { return exportId; }
+        public long getBaseExportId() { return baseExportId; }
+        public boolean isDelta() { return delta; }
+        public int getNodeCount() { return nodeCount; }
+        public long getTimeMs() { return timeMs; }
+    }
+}
@@ -0,0 +1,276 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs service requests on a worker pool, one at a time per session and in parallel across sessions.
+ * Control requests (ping, job status, cancellation, metrics) have a small pool of their own and
+ * background layout jobs another, so neither can be stuck behind the work the other pools run.
+ * While a request is queued or running it sends heartbeat events, so the client can tell a long
+ * operation from a service that stopped answering.
+ */
+public class RequestDispatcher {
+    private static final int CONTROL_THREADS = 2;
+
+    private final ExecutorService workers;
+    private final ExecutorService control;
+    private final ExecutorService jobs;
+    private final ScheduledExecutorService heartbeats;
+    private final long heartbeatMillis;
+    private final ServiceChannel channel;
+
+    // Tail of the pending work for each session; new requests chain onto it
+    private final Map<String, CompletableFuture<Void>> lanes = new HashMap<>();
+    // Requests that have not answered yet, keyed on their id, so they can be cancelled
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    public RequestDispatcher(ServiceChannel channel) {
+        this(channel, Integer.getInteger("gephi.mcp.workers", Runtime.getRuntime().availableProcessors()),
+            Integer.getInteger("gephi.mcp.jobWorkers", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+    }
+
+    public RequestDispatcher(ServiceChannel channel, int threads, int jobThreads) {
+        this.channel = channel;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), new WorkerThreadFactory("gephi-worker-"));
+        this.control = Executors.newFixedThreadPool(CONTROL_THREADS, new WorkerThreadFactory("gephi-control-"));
+        this.jobs = Executors.newFixedThreadPool(Math.max(1, jobThreads), new WorkerThreadFactory("gephi-job-"));
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(new WorkerThreadFactory("gephi-heartbeat-"));
+        this.heartbeatMillis = Long.getLong("gephi.mcp.heartbeatMs", 3000);
+    }
+
+    public void submit(String line) {
+        JsonObject request;
+        try {
+            request = JsonParser.parseString(line).getAsJsonObject();
+        } catch (Exception e) {
+            send(errorResponse(null, "Invalid request: " + e.getMessage()));
+            return;
+        }
+
+        JsonElement id = request.get("id");
+        if (!request.has("operation")) {
+            send(errorResponse(id, "Missing operation"));
+            return;
+        }
+
+        String operation = request.get("operation").getAsString();
+        JsonObject params = request.has("params") ? request.getAsJsonObject("params") : new JsonObject();
+
+        long received = System.nanoTime();
+        if (GephiService.isControlOperation(operation)) {
+            control.execute(() -> {
+                OperationMetrics.getInstance().recordQueueWait(operation, System.nanoTime() - received);
+                respond(id, GephiService.processOperation(operation, params, id));
+            });
+            return;
+        }
+
+        InFlight tracked = track(id, received);
+        Runnable task = () -> {
+            try {
+                if (tracked != null && !tracked.start()) {
+                    respond(id, errorResponse(null, "Request cancelled"));
+                    return;
+                }
+                OperationMetrics.getInstance().recordQueueWait(operation, System.nanoTime() - received);
+                respond(id, GephiService.processOperation(operation, params, id));
+            } finally {
+                if (tracked != null) {
+                    tracked.heartbeat.cancel(false);
+                    inFlight.remove(tracked.key, tracked);
+                }
+            }
+        };
+
+        String lane = GephiService.laneFor(operation, params);
+        if (lane == null) {
+            workers.execute(task);
+        } else {
+            enqueue(lane, task, workers);
+        }
+    }
+
+    private void respond(JsonElement id, JsonObject response) {
+        if (id != null) {
+            response.add("id", id);
+        }
+        send(response);
+    }
+
+    /**
+     * Registers a request and starts its heartbeat; requests without an id get no answer and are not tracked
+     */
+    private InFlight track(JsonElement id, long received) {
+        if (id == null || id.isJsonNull()) {
+            return null;
+        }
+        InFlight request = new InFlight(id.toString());
+        inFlight.put(request.key, request);
+        request.heartbeat = heartbeats.scheduleAtFixedRate(() -> {
+            JsonObject event = new JsonObject();
+            event.addProperty("event", "heartbeat");
+            event.add("requestId", id);
+            event.addProperty("state", request.started ? "running" : "queued");
+            event.addProperty("elapsedMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - received));
+            send(event);
+        }, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        return request;
+    }
+
+    /**
+     * Cancels a request the client gave up on: a queued request is answered with an error instead of
+     * running, a running one only stops if it registered a cancel hook (e.g. a layout)
+     */
+    boolean cancelRequest(JsonElement id) {
+        InFlight request = inFlight.get(id.toString());
+        if (request == null) {
+            return false;
+        }
+        request.cancel();
+        return true;
+    }
+
+    /**
+     * Sets what cancelRequest does for a request that is already running
+     */
+    void onCancel(JsonElement id, Runnable hook) {
+        InFlight request = id != null ? inFlight.get(id.toString()) : null;
+        if (request != null) {
+            request.setCancelHook(hook);
+        }
+    }
+
+    /**
+     * Queues a background layout job on its session lane, to run on the job pool
+     */
+    void enqueueJob(String lane, Runnable task) {
+        enqueue(lane, task, jobs);
+    }
+
+    /**
+     * Appends work to a session lane; it starts once everything queued before it has finished
+     */
+    private synchronized void enqueue(String lane, Runnable task, ExecutorService executor) {
+        CompletableFuture<Void> tail = lanes.getOrDefault(lane, CompletableFuture.completedFuture(null));
+        CompletableFuture<Void> next = tail.handleAsync((ignored, error) -> {
+            task.run();
+            return null;
+        }, executor);
+        lanes.put(lane, next);
+
+        // Drop the lane once it drains so idle sessions do not pin futures
+        next.whenComplete((ignored, error) -> {
+            synchronized (this) {
+                lanes.remove(lane, next);
+            }
+        });
+    }
+
+    public void send(JsonObject message) {
+        channel.send(message);
+    }
+
+    /**
+     * Sends a message with binary data, framed as is or base64 in line mode
+     */
+    public void send(JsonObject message, ByteBuffer payload) {
+        channel.send(message, payload);
+    }
+
+    /**
+     * Waits for in-flight requests to finish, e.g. once stdin is closed
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<?>[] pending;
+        synchronized (this) {
+            pending = lanes.values().toArray(new CompletableFuture<?>[0]);
+        }
+        try {
+            CompletableFuture.allOf(pending).get(timeout, unit);
+        } catch (Exception e) {
+            // Fall through to the pool shutdown, which still waits for running tasks
+        }
+        for (ExecutorService pool : new ExecutorService[] {workers, jobs, control}) {
+            pool.shutdown();
+        }
+        for (ExecutorService pool : new ExecutorService[] {workers, jobs, control}) {
+            pool.awaitTermination(timeout, unit);
+        }
+        heartbeats.shutdownNow();
+    }
+
+    private static JsonObject errorResponse(JsonElement id, String message) {
+        JsonObject response = new JsonObject();
+        if (id != null) {
+            response.add("id", id);
+        }
+        response.addProperty("success", false);
+        response.addProperty("error", message);
+        return response;
+    }
+
+    private static class InFlight {
+        final String key;
+        volatile ScheduledFuture<?> heartbeat;
+        volatile boolean started;
+        private boolean cancelled;
+        private Runnable cancelHook;
+
+        InFlight(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Marks the request as running, unless it was cancelled while queued
+         */
+        synchronized boolean start() {
+            started = !cancelled;
+            return started;
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (cancelHook != null) {
+                cancelHook.run();
+            }
+        }
+
+        synchronized void setCancelHook(Runnable hook) {
+            cancelHook = hook;
+            if (cancelled) {
+                hook.run();
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        WorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.gephi.mcp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * The service's stdin/stdout protocol. In line mode every message is one JSON object per line.
+ * In framed mode every message is a frame:
+ * <pre>
+ * uint32 header length   (little-endian)
+ * uint32 payload length  (little-endian, 0 when there is none)
+ * header  UTF-8 JSON
+ * payload raw bytes
+ * </pre>
+ * so messages of any size arrive whole and binary data needs no encoding. Line mode sends a
+ * payload as base64 in the header's "payload" field instead.
+ */
+public class ServiceChannel {
+    private static final Gson gson = new Gson();
+    
+    private final boolean framed;
+    private final BufferedReader lines;
+    private final DataInputStream frames;
+    private final OutputStream out;
+    private final WritableByteChannel outChannel;
+    
+    public ServiceChannel(InputStream in, OutputStream out, boolean framed) {
+        this.framed = framed;
+        this.lines = framed ? null : new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        this.frames = framed ? new DataInputStream(new BufferedInputStream(in, 1 << 16)) : null;
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        this.outChannel = Channels.newChannel(this.out);
+    }
+    
+    public boolean isFramed() {
+        return framed;
+    }
+    
+    /**
+     * Returns the next request's JSON text, or null once the client has closed stdin. Request
+     * payloads are read and dropped; no operation takes one yet.
+     */
+    public String read() throws IOException {
+        if (!framed) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    return line;
+                }
+            }
+            return null;
+        }
+        
+        byte[] prefix = new byte[8];
+        try {
+            frames.readFully(prefix);
+        } catch (EOFException e) {
+            return null;
+        }
+        ByteBuffer lengths = ByteBuffer.wrap(prefix).order(ByteOrder.LITTLE_ENDIAN);
+        int headerLength = lengths.getInt();
+        int payloadLength = lengths.getInt();
+        if (headerLength < 0 || payloadLength < 0) {
+            throw new IOException("Frame too large: " + Integer.toUnsignedString(headerLength) + " + "
+                + Integer.toUnsignedString(payloadLength) + " bytes");
+        }
+        byte[] header = new byte[headerLength];
+        frames.readFully(header);
+        // Read rather than skipped: stdin is usually a pipe, which cannot seek
+        byte[] scratch = new byte[Math.min(payloadLength, 1 << 16)];
+        for (int remaining = payloadLength; remaining > 0; ) {
+            int read = Math.min(remaining, scratch.length);
+            frames.readFully(scratch, 0, read);
+            remaining -= read;
+        }
+        return new String(header, StandardCharsets.UTF_8);
+    }
+    
+    public void send(JsonObject message) {
+        send(message, null);
+    }
+    
+    /**
+     * Writes one message; concurrent senders never interleave
+     */
+    public synchronized void send(JsonObject header, ByteBuffer payload) {
+        try {
+            if (!framed) {
+                if (payload != null) {
+                    header.addProperty("payload", Base64.getEncoder().encodeToString(toArray(payload)));
+                }
+                out.write(gson.toJson(header).getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+            } else {
+                byte[] headerBytes = gson.toJson(header).getBytes(StandardCharsets.UTF_8);
+                ByteBuffer prefix = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                prefix.putInt(headerBytes.length).putInt(payload != null ? payload.remaining() : 0);
+                out.write(prefix.array());
+                out.write(headerBytes);
+                if (payload != null) {
+                    ByteBuffer data = payload.duplicate();
+                    while (data.hasRemaining()) {
+                        outChannel.write(data);
+                    }
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // The client is gone; the read loop sees stdin close and shuts the service down
+            System.err.println("Failed to send message: " + e.getMessage());
+        }
+    }
+    
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
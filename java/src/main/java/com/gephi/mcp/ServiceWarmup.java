@@ -0,0 +1,156 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Runs a tiny graph through the import, layout, statistics and export paths at boot, so the
+ * Lookup scan, controller setup and plugin class loading happen before the first real request
+ * rather than during it. Goes through GephiService.processOperation to warm the request path too.
+ */
+public class ServiceWarmup {
+    private static final String SESSION = "__warmup";
+    private static final int NODES = 64;
+    
+    private ServiceWarmup() {
+    }
+    
+    public static boolean isEnabled() {
+        String configured = System.getProperty("gephi.mcp.warmup", System.getenv("GEPHI_MCP_WARMUP"));
+        return configured == null || configured.isEmpty() || Boolean.parseBoolean(configured) || "1".equals(configured);
+    }
+    
+    /**
+     * Runs every warmup step and returns the errors of those that failed; a failed step only
+     * means the first real call of that kind pays its own start-up cost
+     */
+    public static List<String> run() {
+        List<String> errors = new ArrayList<>();
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("gephi-mcp-warmup");
+            Path gexf = directory.resolve("warmup.gexf");
+            Path edges = directory.resolve("warmup.csv");
+            Files.write(gexf, sampleGexf().getBytes(StandardCharsets.UTF_8));
+            Files.write(edges, sampleEdgeList().getBytes(StandardCharsets.UTF_8));
+            
+            JsonObject load = new JsonObject();
+            load.addProperty("filePath", gexf.toString());
+            load.addProperty("cache", false);
+            load.addProperty("restorePositions", false);
+            step("load_graph", load, errors);
+            
+            JsonObject layout = new JsonObject();
+            layout.addProperty("iterations", 20);
+            layout.addProperty("persistPositions", false);
+            step("apply_force_atlas2", layout, errors);
+            layout.addProperty("engine", "parallel");
+            step("apply_force_atlas2", layout, errors);
+            
+            step("get_graph_info", new JsonObject(), errors);
+            step("compute_statistics", new JsonObject(), errors);
+            step("detect_communities", new JsonObject(), errors);
+            
+            JsonObject save = new JsonObject();
+            save.addProperty("filePath", directory.resolve("warmup").toString());
+            JsonArray formats = new JsonArray();
+            for (String format : GraphExporter.FORMATS) {
+                formats.add(format);
+            }
+            save.add("formats", formats);
+            step("save_graph", save, errors);
+            // The tiled renderer is a separate path from the preview one
+            save.remove("formats");
+            save.addProperty("filePath", directory.resolve("warmup-tiled.png").toString());
+            save.addProperty("format", "png");
+            save.addProperty("renderer", "tiled");
+            step("save_graph", save, errors);
+            
+            JsonObject loadEdges = new JsonObject();
+            loadEdges.addProperty("filePath", edges.toString());
+            loadEdges.addProperty("restorePositions", false);
+            step("load_graph", loadEdges, errors);
+        } catch (IOException e) {
+            errors.add(e.getMessage());
+        } finally {
+            GephiContext.getInstance().closeSession(SESSION);
+            if (directory != null) {
+                deleteRecursively(directory);
+            }
+        }
+        return errors;
+    }
+    
+    private static void step(String operation, JsonObject params, List<String> errors) {
+        params.addProperty("session", SESSION);
+        JsonObject response = GephiService.processOperation(operation, params);
+        if (!response.has("success") || !response.get("success").getAsBoolean()) {
+            errors.add(operation + ": " + (response.has("error") ? response.get("error").getAsString() : "failed"));
+        }
+    }
+    
+    /**
+     * A ring with chords, with labels, sizes, colours and positions so every exporter has work
+     */
+    private static String sampleGexf() {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+            .append("<gexf xmlns=\"http://gexf.net/1.3\" xmlns:viz=\"http://gexf.net/1.3/viz\" version=\"1.3\">\n")
+            .append("  <graph defaultedgetype=\"undirected\">\n")
+            .append("    <attributes class=\"node\"><attribute id=\"group\" title=\"group\" type=\"integer\"/></attributes>\n")
+            .append("    <nodes>\n");
+        for (int i = 0; i < NODES; i++) {
+            double angle = 2 * Math.PI * i / NODES;
+            xml.append("      <node id=\"n").append(i).append("\" label=\"Node ").append(i).append("\">")
+                .append("<attvalues><attvalue for=\"group\" value=\"").append(i % 4).append("\"/></attvalues>")
+                .append("<viz:size value=\"").append(4 + i % 5).append("\"/>")
+                .append("<viz:position x=\"").append((float) (100 * Math.cos(angle)))
+                .append("\" y=\"").append((float) (100 * Math.sin(angle))).append("\" z=\"0\"/>")
+                .append("<viz:color r=\"").append(60 * (i % 4)).append("\" g=\"120\" b=\"200\"/>")
+                .append("</node>\n");
+        }
+        xml.append("    </nodes>\n    <edges>\n");
+        int id = 0;
+        for (int i = 0; i < NODES; i++) {
+            xml.append("      <edge id=\"e").append(id++).append("\" source=\"n").append(i)
+                .append("\" target=\"n").append((i + 1) % NODES).append("\" weight=\"1\"/>\n");
+            if (i % 4 == 0 && i < NODES / 2) {
+                xml.append("      <edge id=\"e").append(id++).append("\" source=\"n").append(i)
+                    .append("\" target=\"n").append((i + NODES / 2) % NODES).append("\" weight=\"2\"/>\n");
+            }
+        }
+        xml.append("    </edges>\n  </graph>\n</gexf>\n");
+        return xml.toString();
+    }
+    
+    private static String sampleEdgeList() {
+        StringBuilder csv = new StringBuilder("source,target,weight\n");
+        for (int i = 0; i < NODES; i++) {
+            csv.append('n').append(i).append(",n").append((i + 1) % NODES).append(",1\n");
+        }
+        return csv.toString();
+    }
+    
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    // Left for the OS to clean out of the temp directory
+                }
+            });
+        } catch (IOException e) {
+            // Same as above
+        }
+    }
+}
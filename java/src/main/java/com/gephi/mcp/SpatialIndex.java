@@ -0,0 +1,442 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonObject;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid over the visible graph's node positions, for viewport and nearest-node queries.
+ * Cells hold about two nodes each and are stored CSR-style, so the index is three flat arrays
+ * built in two passes. A session keeps its index until its version changes, which every layout,
+ * mutation and view switch does; an async layout's checkpoints are only picked up once it ends.
+ */
+public class SpatialIndex {
+    private static final double NODES_PER_CELL = 2;
+
+    private final long version;
+    private final Node[] nodes;
+    private final float[] x;
+    private final float[] y;
+    private final float[] radius;
+    private final float maxRadius;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    // Nodes of cell c are cellNodes[nodeCells[c]] up to cellNodes[nodeCells[c + 1]]
+    private final int[] nodeCells;
+    private final int[] cellNodes;
+
+    private SpatialIndex(long version, Node[] nodes, float[] x, float[] y, float[] radius) {
+        this.version = version;
+        this.nodes = nodes;
+        this.x = x;
+        this.y = y;
+        this.radius = radius;
+
+        int n = nodes.length;
+        double lowX = Double.POSITIVE_INFINITY;
+        double lowY = Double.POSITIVE_INFINITY;
+        double highX = Double.NEGATIVE_INFINITY;
+        double highY = Double.NEGATIVE_INFINITY;
+        float largest = 0;
+        for (int i = 0; i < n; i++) {
+            lowX = Math.min(lowX, x[i]);
+            lowY = Math.min(lowY, y[i]);
+            highX = Math.max(highX, x[i]);
+            highY = Math.max(highY, y[i]);
+            largest = Math.max(largest, radius[i]);
+        }
+        if (n == 0) {
+            lowX = lowY = highX = highY = 0;
+        }
+        this.minX = lowX;
+        this.minY = lowY;
+        this.maxX = highX;
+        this.maxY = highY;
+        this.maxRadius = largest;
+
+        double width = Math.max(highX - lowX, 1e-9);
+        double height = Math.max(highY - lowY, 1e-9);
+        double cell = Math.sqrt(width * height * NODES_PER_CELL / Math.max(1, n));
+        // Degenerate extents (all nodes on a line) would otherwise make one huge axis of cells
+        cell = Math.max(cell, Math.max(width, height) / Math.max(1, 2 * n));
+        this.cellSize = cell;
+        this.columns = (int) Math.floor(width / cell) + 1;
+        this.rows = (int) Math.floor(height / cell) + 1;
+
+        int cells = columns * rows;
+        nodeCells = new int[cells + 1];
+        int[] cellOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = cell(x[i], y[i]);
+            nodeCells[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            nodeCells[c + 1] += nodeCells[c];
+        }
+        cellNodes = new int[n];
+        int[] cursor = Arrays.copyOf(nodeCells, cells);
+        for (int i = 0; i < n; i++) {
+            cellNodes[cursor[cellOf[i]]++] = i;
+        }
+    }
+
+    /**
+     * Returns the session's index, building it if positions may have changed since the last one
+     */
+    public static SpatialIndex forSession(GephiSession session) {
+        SpatialIndex index = session.getSpatialIndex();
+        long version = session.getVersion();
+        if (index != null && index.version == version) {
+            return index;
+        }
+
+        Node[] nodes = session.getCsrGraph().getNodes();
+        float[] x = new float[nodes.length];
+        float[] y = new float[nodes.length];
+        float[] radius = new float[nodes.length];
+        Graph graph = session.getVisibleGraph();
+        graph.readLock();
+        try {
+            for (int i = 0; i < nodes.length; i++) {
+                x[i] = nodes[i].x();
+                y[i] = nodes[i].y();
+                radius[i] = nodes[i].size();
+            }
+        } finally {
+            graph.readUnlock();
+        }
+        index = new SpatialIndex(version, nodes, x, y, radius);
+        session.setSpatialIndex(index);
+        return index;
+    }
+
+    /**
+     * Nodes inside [minX, maxX] x [minY, maxY], by centre or, with includeSize, by any part of
+     * their disc. Stops collecting after limit matches but still counts them all.
+     */
+    public RangeResult range(double queryMinX, double queryMinY, double queryMaxX, double queryMaxY,
+                             boolean includeSize, int limit) {
+        long start = System.nanoTime();
+        double pad = includeSize ? maxRadius : 0;
+        int fromColumn = column(queryMinX - pad);
+        int toColumn = column(queryMaxX + pad);
+        int fromRow = row(queryMinY - pad);
+        int toRow = row(queryMaxY + pad);
+
+        List<Hit> hits = new ArrayList<>();
+        int matches = 0;
+        if (nodes.length > 0 && queryMaxX + pad >= minX && queryMinX - pad <= maxX
+                && queryMaxY + pad >= minY && queryMinY - pad <= maxY) {
+            for (int row = fromRow; row <= toRow; row++) {
+                for (int column = fromColumn; column <= toColumn; column++) {
+                    int cell = row * columns + column;
+                    for (int k = nodeCells[cell]; k < nodeCells[cell + 1]; k++) {
+                        int i = cellNodes[k];
+                        // Distance from the centre to the rectangle; zero inside it
+                        double dx = Math.max(0, Math.max(queryMinX - x[i], x[i] - queryMaxX));
+                        double dy = Math.max(0, Math.max(queryMinY - y[i], y[i] - queryMaxY));
+                        double r = includeSize ? radius[i] : 0;
+                        if (dx * dx + dy * dy <= r * r) {
+                            if (matches++ < limit) {
+                                hits.add(hit(i, 0));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new RangeResult(hits, matches, (System.nanoTime() - start) / 1_000);
+    }
+
+    /**
+     * The k nodes nearest to (px, py), closest first, optionally within maxDistance. With
+     * includeSize, distance is measured to the edge of each node's disc, so a point inside a node
+     * is at distance 0 from it. Searches rings of cells outwards until no unvisited cell can hold
+     * anything closer than the k-th best.
+     */
+    public RangeResult nearest(double px, double py, int k, double maxDistance, boolean includeSize) {
+        long start = System.nanoTime();
+        if (nodes.length == 0 || k <= 0) {
+            return new RangeResult(new ArrayList<>(), 0, 0);
+        }
+        int centreColumn = column(px);
+        int centreRow = row(py);
+        double slack = includeSize ? maxRadius : 0;
+        double clampedX = Math.max(minX, Math.min(minX + columns * cellSize, px));
+        double clampedY = Math.max(minY, Math.min(minY + rows * cellSize, py));
+        double outsideGrid = Math.hypot(px - clampedX, py - clampedY);
+        Heap best = new Heap(k);
+
+        for (int ring = 0; ; ring++) {
+            int fromColumn = centreColumn - ring;
+            int toColumn = centreColumn + ring;
+            int fromRow = centreRow - ring;
+            int toRow = centreRow + ring;
+            for (int row = Math.max(0, fromRow); row <= Math.min(rows - 1, toRow); row++) {
+                boolean edgeRow = row == fromRow || row == toRow;
+                // Inner rows only contribute their two end cells; the rest were visited in earlier rings
+                int step = edgeRow ? 1 : Math.max(1, toColumn - fromColumn);
+                for (int column = fromColumn; column <= toColumn; column += step) {
+                    if (column < 0 || column >= columns) {
+                        continue;
+                    }
+                    int cell = row * columns + column;
+                    for (int j = nodeCells[cell]; j < nodeCells[cell + 1]; j++) {
+                        int i = cellNodes[j];
+                        double distance = Math.hypot(x[i] - px, y[i] - py);
+                        if (includeSize) {
+                            distance = Math.max(0, distance - radius[i]);
+                        }
+                        if (distance <= maxDistance) {
+                            best.offer(i, distance);
+                        }
+                    }
+                }
+            }
+
+            boolean coversGrid = fromColumn <= 0 && fromRow <= 0 && toColumn >= columns - 1 && toRow >= rows - 1;
+            if (coversGrid) {
+                break;
+            }
+            // Unvisited cells lie inside the grid but beyond one of this ring's sides that has cells
+            // past it. Measured from the point clamped to the grid, plus the point's distance to
+            // the grid, that gives a lower bound on anything a later ring can hold.
+            double inner = Double.POSITIVE_INFINITY;
+            if (fromColumn > 0) {
+                inner = Math.min(inner, clampedX - (minX + fromColumn * cellSize));
+            }
+            if (toColumn < columns - 1) {
+                inner = Math.min(inner, minX + (toColumn + 1) * cellSize - clampedX);
+            }
+            if (fromRow > 0) {
+                inner = Math.min(inner, clampedY - (minY + fromRow * cellSize));
+            }
+            if (toRow < rows - 1) {
+                inner = Math.min(inner, minY + (toRow + 1) * cellSize - clampedY);
+            }
+            double bound = Math.hypot(outsideGrid, inner) - slack;
+            if (bound > maxDistance || (best.isFull() && best.worst() <= bound)) {
+                break;
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        int[] order = best.sorted();
+        for (int i : order) {
+            hits.add(hit(best.index[i], best.distance[i]));
+        }
+        return new RangeResult(hits, hits.size(), (System.nanoTime() - start) / 1_000);
+    }
+
+    private Hit hit(int i, double distance) {
+        return new Hit(String.valueOf(nodes[i].getId()), x[i], y[i], radius[i], distance);
+    }
+
+    private int cell(float px, float py) {
+        return row(py) * columns + column(px);
+    }
+
+    private int column(double px) {
+        return (int) Math.max(0, Math.min(columns - 1, Math.floor((px - minX) / cellSize)));
+    }
+
+    private int row(double py) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((py - minY) / cellSize)));
+    }
+
+    long estimateBytes() {
+        return nodes.length * 24L + nodeCells.length * 4L;
+    }
+
+    public int getNodeCount() { return nodes.length; }
+    public double getCellSize() { return cellSize; }
+    public int getColumns() { return columns; }
+    public int getRows() { return rows; }
+
+    /**
+     * Runs the range or nearest query the options describe
+     */
+    public RangeResult query(QueryOptions options) {
+        if (options.rect != null) {
+            return range(options.rect[0], options.rect[1], options.rect[2], options.rect[3],
+                options.includeSize, options.limit);
+        }
+        return nearest(options.point[0], options.point[1], options.k, options.maxDistance, options.includeSize);
+    }
+
+    /**
+     * Bounded max-heap of the k best candidates so far
+     */
+    private static class Heap {
+        final int[] index;
+        final double[] distance;
+        int size;
+
+        Heap(int capacity) {
+            index = new int[capacity];
+            distance = new double[capacity];
+        }
+
+        boolean isFull() {
+            return size == index.length;
+        }
+
+        double worst() {
+            return distance[0];
+        }
+
+        void offer(int node, double value) {
+            if (!isFull()) {
+                index[size] = node;
+                distance[size] = value;
+                siftUp(size++);
+            } else if (value < distance[0]) {
+                index[0] = node;
+                distance[0] = value;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Positions of the heap entries, nearest first
+         */
+        int[] sorted() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(distance[a], distance[b]));
+            return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (distance[parent] >= distance[i]) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && distance[left] > distance[largest]) {
+                    largest = left;
+                }
+                if (right < size && distance[right] > distance[largest]) {
+                    largest = right;
+                }
+                if (largest == i) {
+                    return;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int node = index[a];
+            index[a] = index[b];
+            index[b] = node;
+            double value = distance[a];
+            distance[a] = distance[b];
+            distance[b] = value;
+        }
+    }
+
+    public static class QueryOptions {
+        // minX, minY, maxX, maxY of a viewport; set for a range query
+        public double[] rect;
+        // x, y to search around; set for a nearest query
+        public double[] point;
+        public int k = 10;
+        public double maxDistance = Double.POSITIVE_INFINITY;
+        // Match nodes by their whole disc rather than their centre
+        public boolean includeSize = true;
+        public int limit = 1000;
+
+        public static QueryOptions fromJson(JsonObject params) {
+            QueryOptions options = new QueryOptions();
+            if (params.has("rect")) {
+                JsonObject rect = params.getAsJsonObject("rect");
+                options.rect = new double[]{rect.get("minX").getAsDouble(), rect.get("minY").getAsDouble(),
+                    rect.get("maxX").getAsDouble(), rect.get("maxY").getAsDouble()};
+            }
+            if (params.has("point")) {
+                JsonObject point = params.getAsJsonObject("point");
+                options.point = new double[]{point.get("x").getAsDouble(), point.get("y").getAsDouble()};
+            }
+            if (params.has("k")) options.k = params.get("k").getAsInt();
+            if (params.has("maxDistance")) options.maxDistance = params.get("maxDistance").getAsDouble();
+            if (params.has("includeSize")) options.includeSize = params.get("includeSize").getAsBoolean();
+            if (params.has("limit")) options.limit = params.get("limit").getAsInt();
+
+            if ((options.rect == null) == (options.point == null)) {
+                throw new IllegalArgumentException("spatial_query needs exactly one of rect or point");
+            }
+            if (options.rect != null && (options.rect[0] > options.rect[2] || options.rect[1] > options.rect[3])) {
+                throw new IllegalArgumentException("rect minX/minY must not exceed maxX/maxY");
+            }
+            if (options.k < 1 || options.k > 100000) {
+                throw new IllegalArgumentException("k must be between 1 and 100000");
+            }
+            if (options.limit < 0) {
+                throw new IllegalArgumentException("limit must not be negative");
+            }
+            return options;
+        }
+    }
+
+    public static class Hit {
+        private final String id;
+        private final float x;
+        private final float y;
+        private final float size;
+        private final double distance;
+
+        public Hit(String id, float x, float y, float size, double distance) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.size = size;
+            this.distance = distance;
+        }
+
+        public String getId() { return id; }
+        public float getX() { return x; }
+        public float getY() { return y; }
+        public float getSize() { return size; }
+        public double getDistance() { return distance; }
+    }
+
+    public static class RangeResult {
+        private final List<Hit> hits;
+        private final int matches;
+        private final long timeMicros;
+
+        public RangeResult(List<Hit> hits, int matches, long timeMicros) {
+            this.hits = hits;
+            this.matches = matches;
+            this.timeMicros = timeMicros;
+        }
+
+        public List<Hit> getHits() { return hits; }
+        public int getMatches() { return matches; }
+        public long getTimeMicros() { return timeMicros; }
+    }
+}
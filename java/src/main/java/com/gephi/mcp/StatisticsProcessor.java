@@ -0,0 +1,582 @@
+package com.gephi.mcp;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.gephi.graph.api.Column;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Network statistics computed on the session's CSR snapshot with primitive arrays and the
+ * shared compute pool, then written back as node columns. Column names follow Gephi's own
+ * statistics plugins so the results work with the rest of the toolkit.
+ */
+public class StatisticsProcessor {
+    public static final String PAGERANK_COLUMN = "pageranks";
+    public static final String BETWEENNESS_COLUMN = "betweenesscentrality";
+    public static final String KCORE_COLUMN = "kcore";
+    
+    // Per-worker Brandes state: distance, order, path count, dependency and accumulator
+    private static final long BETWEENNESS_BYTES_PER_NODE = 4 + 4 + 8 + 8 + 8;
+    
+    public static void main(String[] args) {
+        try {
+            JsonObject params = new JsonObject();
+            if (args.length > 0) {
+                params.add("metrics", new Gson().toJsonTree(args[0].split(",")));
+            }
+            StatisticsResult result = compute(GephiContext.getInstance().getSession(GephiContext.DEFAULT_SESSION),
+                StatisticsOptions.fromJson(params));
+                
+            Gson gson = new GsonBuilder().setPrettyPrinting().create();
+            System.out.println(gson.toJson(result));
+            
+        } catch (Exception e) {
+            System.err.println("Error computing statistics: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+    
+    public static StatisticsResult compute(GephiSession session, StatisticsOptions options) throws Exception {
+        GraphModel graphModel = session.getGraphModel();
+        Graph graph = graphModel.getGraphVisible();
+        
+        if (graph.getNodeCount() == 0) {
+            throw new Exception("No graph loaded. Please load a graph first.");
+        }
+        
+        ForkJoinPool pool = GephiContext.getInstance().getComputePool();
+        boolean directed = graphModel.isDirected();
+        CsrGraph csr = session.getCsrGraph();
+        List<MetricResult> metrics = new ArrayList<>();
+        
+        if (options.metrics.contains("pagerank")) {
+            long start = System.nanoTime();
+            // Rank flows along incoming edges; undirected graphs can use the symmetric rows
+            CsrGraph in = directed ? session.getDirectedCsrGraph(true) : csr;
+            double[] outWeight = outWeights(in, options.weighted, pool);
+            double[] rank = new double[csr.getNodeCount()];
+            int[] iterations = new int[1];
+            boolean converged = pageRank(in, outWeight, options, pool, rank, iterations);
+            writeColumn(session, graphModel.getNodeTable(), PAGERANK_COLUMN, Double.class, csr, i -> rank[i]);
+            metrics.add(new MetricResult("pagerank", PAGERANK_COLUMN, iterations[0], converged, 0,
+                top(csr, rank, options.topK), elapsed(start)));
+        }
+        
+        if (options.metrics.contains("betweenness")) {
+            long start = System.nanoTime();
+            CsrGraph out = directed ? session.getDirectedCsrGraph(false) : csr;
+            int[] samples = new int[1];
+            double[] betweenness = betweenness(out, directed, options, pool, samples);
+            writeColumn(session, graphModel.getNodeTable(), BETWEENNESS_COLUMN, Double.class, csr, i -> betweenness[i]);
+            metrics.add(new MetricResult("betweenness", BETWEENNESS_COLUMN, 0, true, samples[0],
+                top(csr, betweenness, options.topK), elapsed(start)));
+        }
+        
+        if (options.metrics.contains("kcore")) {
+            long start = System.nanoTime();
+            int[] core = coreNumbers(csr, pool);
+            writeColumn(session, graphModel.getNodeTable(), KCORE_COLUMN, Integer.class, csr, i -> core[i]);
+            double[] asDouble = new double[core.length];
+            for (int i = 0; i < core.length; i++) {
+                asDouble[i] = core[i];
+            }
+            metrics.add(new MetricResult("kcore", KCORE_COLUMN, 0, true, 0, top(csr, asDouble, options.topK), elapsed(start)));
+        }
+        
+        return new StatisticsResult(csr.getNodeCount(), csr.getEdgeCount(), metrics);
+    }
+    
+    /**
+     * Total weight (or count) of each node's outgoing edges, from the incoming rows
+     */
+    private static double[] outWeights(CsrGraph in, boolean weighted, ForkJoinPool pool) {
+        int n = in.getNodeCount();
+        int[] offsets = in.getOffsets();
+        int[] sources = in.getTargets();
+        float[] weights = in.getWeights();
+        double[] out = new double[n];
+        // Sequential scatter; a parallel one would need atomic doubles for no real gain
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                out[sources[e]] += weighted ? weights[e] : 1;
+            }
+        }
+        return out;
+    }
+    
+    /**
+     * Pull-based power iteration: every node reads its in-neighbours' previous ranks, so the
+     * chunks never write to shared slots. Dangling nodes spread their rank uniformly.
+     */
+    private static boolean pageRank(CsrGraph in, double[] outWeight, StatisticsOptions options, ForkJoinPool pool,
+                                    double[] rank, int[] iterations) {
+        int n = in.getNodeCount();
+        int[] offsets = in.getOffsets();
+        int[] sources = in.getTargets();
+        float[] weights = in.getWeights();
+        double damping = options.damping;
+        boolean weighted = options.weighted;
+        int chunks = ParallelChunks.chunkCount(pool, n);
+        
+        double[] previous = new double[n];
+        Arrays.fill(previous, 1.0 / n);
+        double[] next = rank;
+        double[] chunkDangling = new double[chunks];
+        double[] chunkDelta = new double[chunks];
+        boolean converged = false;
+        
+        for (int iteration = 1; iteration <= options.maxIterations; iteration++) {
+            double[] current = previous;
+            ParallelChunks.forChunks(pool, n, chunks, (chunk, from, to) -> {
+                double sum = 0;
+                for (int u = from; u < to; u++) {
+                    if (outWeight[u] == 0) {
+                        sum += current[u];
+                    }
+                }
+                chunkDangling[chunk] = sum;
+            });
+            double dangling = 0;
+            for (double value : chunkDangling) {
+                dangling += value;
+            }
+            
+            double base = (1 - damping) / n + damping * dangling / n;
+            double[] target = next;
+            ParallelChunks.forChunks(pool, n, chunks, (chunk, from, to) -> {
+                double delta = 0;
+                for (int v = from; v < to; v++) {
+                    double sum = 0;
+                    for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                        int u = sources[e];
+                        sum += current[u] * (weighted ? weights[e] : 1) / outWeight[u];
+                    }
+                    double value = base + damping * sum;
+                    delta += Math.abs(value - current[v]);
+                    target[v] = value;
+                }
+                chunkDelta[chunk] = delta;
+            });
+            double delta = 0;
+            for (double value : chunkDelta) {
+                delta += value;
+            }
+            
+            next = previous;
+            previous = target;
+            iterations[0] = iteration;
+            if (delta < options.pageRankEpsilon) {
+                converged = true;
+                break;
+            }
+        }
+        
+        if (previous != rank) {
+            System.arraycopy(previous, 0, rank, 0, n);
+        }
+        return converged;
+    }
+    
+    /**
+     * Hop-count betweenness from Brandes' dependency accumulation over a uniform sample of
+     * sources, scaled by n / samples. With k = ln(2n / delta) / (2 epsilon^2) sources every
+     * normalized score is within epsilon of the exact one with probability 1 - delta; once k
+     * reaches n all sources are used and the result is exact.
+     */
+    private static double[] betweenness(CsrGraph out, boolean directed, StatisticsOptions options, ForkJoinPool pool,
+                                        int[] sampleCount) {
+        int n = out.getNodeCount();
+        int[] offsets = out.getOffsets();
+        int[] targets = out.getTargets();
+        
+        long bound = options.samples > 0 ? options.samples
+            : (long) Math.ceil(Math.log(2.0 * n / options.delta) / (2 * options.epsilon * options.epsilon));
+        int k = (int) Math.min(n, bound);
+        int[] sources = new int[n];
+        for (int i = 0; i < n; i++) {
+            sources[i] = i;
+        }
+        if (k < n) {
+            // Partial Fisher-Yates keeps the sample deterministic for a seed
+            Random random = new Random(options.seed);
+            for (int i = 0; i < k; i++) {
+                int j = i + random.nextInt(n - i);
+                int swap = sources[i];
+                sources[i] = sources[j];
+                sources[j] = swap;
+            }
+        }
+        sampleCount[0] = k;
+        
+        // One accumulator per worker, fewer if the heap cannot hold them
+        Runtime runtime = Runtime.getRuntime();
+        long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long perWorker = Math.max(1, BETWEENNESS_BYTES_PER_NODE * n);
+        int workers = (int) Math.max(1, Math.min(Math.min(pool.getParallelism(), k), available / 2 / perWorker));
+        double[][] partial = new double[workers][];
+        
+        ParallelChunks.forChunks(pool, k, workers, (chunk, from, to) -> {
+            int[] distance = new int[n];
+            int[] order = new int[n];
+            double[] paths = new double[n];
+            double[] dependency = new double[n];
+            double[] accumulator = new double[n];
+            Arrays.fill(distance, -1);
+            
+            for (int s = from; s < to; s++) {
+                int source = sources[s];
+                distance[source] = 0;
+                paths[source] = 1;
+                order[0] = source;
+                int head = 0;
+                int tail = 1;
+                // BFS; the queue doubles as the visiting order for the backward pass
+                while (head < tail) {
+                    int v = order[head++];
+                    for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                        int w = targets[e];
+                        if (distance[w] < 0) {
+                            distance[w] = distance[v] + 1;
+                            order[tail++] = w;
+                        }
+                        if (distance[w] == distance[v] + 1) {
+                            paths[w] += paths[v];
+                        }
+                    }
+                }
+                // Successors are exactly the out-neighbours one hop further, so no predecessor lists
+                for (int i = tail - 1; i >= 0; i--) {
+                    int v = order[i];
+                    double sum = 0;
+                    for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                        int w = targets[e];
+                        if (distance[w] == distance[v] + 1) {
+                            sum += paths[v] / paths[w] * (1 + dependency[w]);
+                        }
+                    }
+                    dependency[v] = sum;
+                    if (v != source) {
+                        accumulator[v] += sum;
+                    }
+                }
+                for (int i = 0; i < tail; i++) {
+                    int v = order[i];
+                    distance[v] = -1;
+                    paths[v] = 0;
+                    dependency[v] = 0;
+                }
+            }
+            partial[chunk] = accumulator;
+        });
+        
+        // Undirected paths are found from both ends, as in Gephi's GraphDistance
+        double scale = (double) n / k / (directed ? 1 : 2);
+        double[] result = new double[n];
+        ParallelChunks.forRange(pool, n, ParallelChunks.chunkCount(pool, n), (from, to) -> {
+            for (int v = from; v < to; v++) {
+                double sum = 0;
+                for (double[] accumulator : partial) {
+                    sum += accumulator[v];
+                }
+                result[v] = sum * scale;
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Level-synchronous peeling: at level k every node whose remaining degree is at most k is
+     * removed, in parallel rounds, and its neighbours' degrees drop atomically. Only the thread
+     * that takes a degree from k + 1 to k queues that neighbour, so each node is peeled once.
+     * Self loops are ignored; parallel edges count once per edge.
+     */
+    private static int[] coreNumbers(CsrGraph csr, ForkJoinPool pool) {
+        int n = csr.getNodeCount();
+        int[] offsets = csr.getOffsets();
+        int[] targets = csr.getTargets();
+        int chunks = ParallelChunks.chunkCount(pool, n);
+        
+        AtomicIntegerArray degree = new AtomicIntegerArray(n);
+        ParallelChunks.forRange(pool, n, chunks, (from, to) -> {
+            for (int v = from; v < to; v++) {
+                int d = 0;
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    if (targets[e] != v) {
+                        d++;
+                    }
+                }
+                degree.set(v, d);
+            }
+        });
+        
+        int[] core = new int[n];
+        Arrays.fill(core, -1);
+        int remaining = n;
+        int level = 0;
+        while (remaining > 0) {
+            int k = level;
+            int[][] found = new int[chunks][];
+            ParallelChunks.forChunks(pool, n, chunks, (chunk, from, to) -> {
+                IntBuffer buffer = new IntBuffer();
+                for (int v = from; v < to; v++) {
+                    if (core[v] < 0 && degree.get(v) <= k) {
+                        core[v] = k;
+                        buffer.add(v);
+                    }
+                }
+                found[chunk] = buffer.toArray();
+            });
+            int[] frontier = concat(found);
+            
+            if (frontier.length == 0) {
+                // Jump straight to the smallest remaining degree
+                int[] chunkMin = new int[chunks];
+                ParallelChunks.forChunks(pool, n, chunks, (chunk, from, to) -> {
+                    int min = Integer.MAX_VALUE;
+                    for (int v = from; v < to; v++) {
+                        if (core[v] < 0) {
+                            min = Math.min(min, degree.get(v));
+                        }
+                    }
+                    chunkMin[chunk] = min;
+                });
+                int min = Integer.MAX_VALUE;
+                for (int value : chunkMin) {
+                    min = Math.min(min, value);
+                }
+                level = Math.max(level + 1, min);
+                continue;
+            }
+            
+            while (frontier.length > 0) {
+                remaining -= frontier.length;
+                int[] current = frontier;
+                int roundChunks = ParallelChunks.chunkCount(pool, current.length);
+                int[][] next = new int[roundChunks][];
+                ParallelChunks.forChunks(pool, current.length, roundChunks, (chunk, from, to) -> {
+                    IntBuffer buffer = new IntBuffer();
+                    for (int i = from; i < to; i++) {
+                        int v = current[i];
+                        for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                            int w = targets[e];
+                            if (w != v && core[w] < 0 && degree.getAndDecrement(w) == k + 1) {
+                                core[w] = k;
+                                buffer.add(w);
+                            }
+                        }
+                    }
+                    next[chunk] = buffer.toArray();
+                });
+                frontier = concat(next);
+            }
+        }
+        return core;
+    }
+    
+    private static int[] concat(int[][] parts) {
+        int length = 0;
+        for (int[] part : parts) {
+            length += part.length;
+        }
+        int[] result = new int[length];
+        int position = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, result, position, part.length);
+            position += part.length;
+        }
+        return result;
+    }
+    
+    interface NodeValue {
+        Object get(int index);
+    }
+    
+    static void writeColumn(GephiSession session, Table table, String name, Class<?> type, CsrGraph csr,
+                                    NodeValue values) throws Exception {
+        Graph graph = session.getGraph();
+        graph.writeLock();
+        try {
+            Column column = table.getColumn(name);
+            if (column == null) {
+                column = table.addColumn(name, type);
+            } else if (column.getTypeClass() != type) {
+                throw new Exception("Column " + name + " already exists with type " + column.getTypeClass().getSimpleName());
+            }
+            Node[] nodes = csr.getNodes();
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i].setAttribute(column, values.get(i));
+            }
+        } finally {
+            graph.writeUnlock();
+        }
+        session.markChanged();
+    }
+    
+    /**
+     * Ids of the highest scoring nodes, best first
+     */
+    private static List<RankedNode> top(CsrGraph csr, double[] scores, int count) {
+        int n = scores.length;
+        count = Math.min(count, n);
+        // Small bounded selection; count is expected to be tiny compared to n
+        int[] best = new int[count];
+        int size = 0;
+        for (int v = 0; v < n; v++) {
+            if (size < count) {
+                best[size++] = v;
+            } else if (scores[v] > scores[best[size - 1]]) {
+                best[size - 1] = v;
+            } else {
+                continue;
+            }
+            for (int i = size - 1; i > 0 && scores[best[i]] > scores[best[i - 1]]; i--) {
+                int swap = best[i];
+                best[i] = best[i - 1];
+                best[i - 1] = swap;
+            }
+        }
+        List<RankedNode> result = new ArrayList<>(size);
+        Node[] nodes = csr.getNodes();
+        for (int i = 0; i < size; i++) {
+            result.add(new RankedNode(String.valueOf(nodes[best[i]].getId()), scores[best[i]]));
+        }
+        return result;
+    }
+    
+    private static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+    
+    private static class IntBuffer {
+        private int[] values = new int[16];
+        private int size;
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+    
+    public static class StatisticsOptions {
+        public Set<String> metrics = new LinkedHashSet<>(Arrays.asList("pagerank", "betweenness", "kcore"));
+        public double damping = 0.85;
+        public double epsilon = 0.05;
+        public double delta = 0.1;
+        public int samples = 0;
+        public double pageRankEpsilon = 1e-6;
+        public int maxIterations = 100;
+        public boolean weighted = false;
+        public long seed = 42;
+        public int topK = 10;
+        
+        public static StatisticsOptions fromJson(JsonObject params) {
+            StatisticsOptions options = new StatisticsOptions();
+            if (params.has("metrics")) {
+                options.metrics = new LinkedHashSet<>();
+                for (JsonElement metric : params.getAsJsonArray("metrics")) {
+                    String name = metric.getAsString();
+                    if (!"pagerank".equals(name) && !"betweenness".equals(name) && !"kcore".equals(name)) {
+                        throw new IllegalArgumentException("Unknown statistic: " + name);
+                    }
+                    options.metrics.add(name);
+                }
+            }
+            if (params.has("damping")) options.damping = params.get("damping").getAsDouble();
+            if (params.has("epsilon")) options.epsilon = params.get("epsilon").getAsDouble();
+            if (params.has("delta")) options.delta = params.get("delta").getAsDouble();
+            if (params.has("samples")) options.samples = params.get("samples").getAsInt();
+            if (params.has("pageRankEpsilon")) options.pageRankEpsilon = params.get("pageRankEpsilon").getAsDouble();
+            if (params.has("maxIterations")) options.maxIterations = params.get("maxIterations").getAsInt();
+            if (params.has("weighted")) options.weighted = params.get("weighted").getAsBoolean();
+            if (params.has("seed")) options.seed = params.get("seed").getAsLong();
+            if (params.has("topK")) options.topK = params.get("topK").getAsInt();
+            
+            if (options.damping < 0 || options.damping >= 1) {
+                throw new IllegalArgumentException("damping must be in [0, 1)");
+            }
+            if (options.epsilon <= 0 || options.delta <= 0 || options.delta >= 1) {
+                throw new IllegalArgumentException("epsilon must be positive and delta in (0, 1)");
+            }
+            return options;
+        }
+    }
+    
+    public static class RankedNode {
+        private final String id;
+        private final double value;
+        
+        public RankedNode(String id, double value) {
+            this.id = id;
+            this.value = value;
+        }
+        
+        public String getId() { return id; }
+        public double getValue() { return value; }
+    }
+    
+    public static class MetricResult {
+        private final String metric;
+        private final String column;
+        private final int iterations;
+        private final boolean converged;
+        private final int samples;
+        private final List<RankedNode> top;
+        private final long timeMs;
+        
+        public MetricResult(String metric, String column, int iterations, boolean converged, int samples,
+                            List<RankedNode> top, long timeMs) {
+            this.metric = metric;
+            this.column = column;
+            this.iterations = iterations;
+            this.converged = converged;
+            this.samples = samples;
+            this.top = top;
+            this.timeMs = timeMs;
+        }
+        
+        public String getMetric() { return metric; }
+        public String getColumn() { return column; }
+        public int getIterations() { return iterations; }
+        public boolean isConverged() { return converged; }
+        public int getSamples() { return samples; }
+        public List<RankedNode> getTop() { return top; }
+        public long getTimeMs() { return timeMs; }
+    }
+    
+    public static class StatisticsResult {
+        private final int nodeCount;
+        private final int edgeCount;
+        private final List<MetricResult> metrics;
+        
+        public StatisticsResult(int nodeCount, int edgeCount, List<MetricResult> metrics) {
+            this.nodeCount = nodeCount;
+            this.edgeCount = edgeCount;
+            this.metrics = metrics;
+        }
+        
+        public int getNodeCount() { return nodeCount; }
+        public int getEdgeCount() { return edgeCount; }
+        public List<MetricResult> getMetrics() { return metrics; }
+    }
+}
@@ -0,0 +1,645 @@
+package com.gephi.mcp;
+
+import com.google.gson.JsonObject;
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.Graph;
+import org.gephi.graph.api.Node;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Renders the visible graph straight to PNG at any resolution without holding the whole raster.
+ * The image is cut into horizontal strips; strips are drawn and deflated in parallel, each as a
+ * sync-flushed piece of one zlib stream, and written out in order as IDAT chunks. Memory depends
+ * on the strip size and the number of cores, not on the image size.
+ */
+public class TiledPngRenderer {
+    // Raw bytes per strip; strips get taller as images get narrower
+    private static final int STRIP_BYTES = 8 << 20;
+    private static final int IDAT_CHUNK = 1 << 20;
+    // Grid used to find what falls inside a strip or tile
+    private static final int GRID = 128;
+    // Edges spanning more cells than this are tested against every region instead
+    private static final int MAX_EDGE_CELLS = 256;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    
+    private TiledPngRenderer() {
+    }
+    
+    public static RenderResult render(Graph graph, File file, RenderOptions options) throws IOException {
+        long start = System.nanoTime();
+        ForkJoinPool pool = GephiContext.getInstance().getComputePool();
+        Scene scene = Scene.capture(graph, options);
+        int strips = writePng(scene, options, file, pool);
+        int tiles = 0;
+        if (options.pyramid) {
+            tiles = writePyramid(scene, options, file, pool);
+        }
+        return new RenderResult(options.width, options.height, strips, tiles, (System.nanoTime() - start) / 1_000_000);
+    }
+    
+    private static int writePng(Scene scene, RenderOptions options, File file, ForkJoinPool pool) throws IOException {
+        int width = options.width;
+        int height = options.height;
+        int bytesPerPixel = options.transparent ? 4 : 3;
+        int rowBytes = 1 + width * bytesPerPixel;
+        int stripHeight = Math.max(1, Math.min(height, STRIP_BYTES / rowBytes));
+        int strips = (height + stripHeight - 1) / stripHeight;
+        // A few strips per worker in flight at a time bounds memory while keeping every core busy
+        int batch = Math.max(1, pool.getParallelism() * 2);
+        
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()), 1 << 20)) {
+            out.write(PNG_SIGNATURE);
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(header);
+            data.writeInt(width);
+            data.writeInt(height);
+            data.writeByte(8);
+            data.writeByte(options.transparent ? 6 : 2);
+            data.writeByte(0);
+            data.writeByte(0);
+            data.writeByte(0);
+            writeChunk(out, "IHDR", header.toByteArray(), 0, header.size());
+            
+            // zlib header: deflate, 32K window, default compression, check bits
+            writeChunk(out, "IDAT", new byte[] {0x78, (byte) 0x9c}, 0, 2);
+            long adler = 1;
+            for (int first = 0; first < strips; first += batch) {
+                int count = Math.min(batch, strips - first);
+                Segment[] segments = new Segment[count];
+                int batchStart = first;
+                ParallelChunks.forChunks(pool, count, count, (chunk, from, to) -> {
+                    int strip = batchStart + chunk;
+                    int y0 = strip * stripHeight;
+                    int rows = Math.min(stripHeight, height - y0);
+                    segments[chunk] = encodeStrip(scene, options, y0, rows, strip == strips - 1);
+                });
+                for (Segment segment : segments) {
+                    for (int offset = 0; offset < segment.data.length; offset += IDAT_CHUNK) {
+                        writeChunk(out, "IDAT", segment.data, offset, Math.min(IDAT_CHUNK, segment.data.length - offset));
+                    }
+                    adler = adler32Combine(adler, segment.adler, segment.rawLength);
+                }
+            }
+            byte[] trailer = {(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler};
+            writeChunk(out, "IDAT", trailer, 0, 4);
+            writeChunk(out, "IEND", new byte[0], 0, 0);
+        }
+        return strips;
+    }
+    
+    /**
+     * Draws one strip, applies the Sub filter row by row and deflates it. Every strip but the last
+     * ends in a sync flush so the pieces concatenate into one valid stream.
+     */
+    private static Segment encodeStrip(Scene scene, RenderOptions options, int y0, int rows, boolean last) {
+        int width = options.width;
+        BufferedImage image = new BufferedImage(width, rows,
+            options.transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            if (!options.transparent) {
+                g.setColor(options.background);
+                g.fillRect(0, 0, width, rows);
+            }
+            g.translate(0, -y0);
+            scene.draw(g, 0, y0, width, y0 + rows, 1.0);
+        } finally {
+            g.dispose();
+        }
+        
+        int bytesPerPixel = options.transparent ? 4 : 3;
+        int rowBytes = 1 + width * bytesPerPixel;
+        byte[] raw = new byte[rowBytes * rows];
+        int[] pixels = new int[width];
+        for (int y = 0; y < rows; y++) {
+            image.getRGB(0, y, width, 1, pixels, 0, width);
+            int base = y * rowBytes;
+            raw[base] = 1; // Sub filter
+            int previous = 0;
+            for (int x = 0; x < width; x++) {
+                int argb = pixels[x];
+                int at = base + 1 + x * bytesPerPixel;
+                raw[at] = (byte) ((argb >>> 16) - (previous >>> 16));
+                raw[at + 1] = (byte) ((argb >>> 8) - (previous >>> 8));
+                raw[at + 2] = (byte) (argb - previous);
+                if (bytesPerPixel == 4) {
+                    raw[at + 3] = (byte) ((argb >>> 24) - (previous >>> 24));
+                }
+                previous = argb;
+            }
+        }
+        
+        Adler32 checksum = new Adler32();
+        checksum.update(raw, 0, raw.length);
+        
+        Deflater deflater = new Deflater(options.compression, true);
+        try {
+            deflater.setInput(raw);
+            if (last) {
+                deflater.finish();
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] buffer = new byte[64 << 10];
+            while (true) {
+                int written = last ? deflater.deflate(buffer) : deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                out.write(buffer, 0, written);
+                if (last ? deflater.finished() : written < buffer.length) {
+                    break;
+                }
+            }
+            return new Segment(out.toByteArray(), checksum.getValue(), raw.length);
+        } finally {
+            deflater.end();
+        }
+    }
+    
+    /**
+     * Deep Zoom pyramid next to the image: name.dzi plus name_files/level/col_row.png, every tile
+     * redrawn from the scene at its own scale
+     */
+    private static int writePyramid(Scene scene, RenderOptions options, File file, ForkJoinPool pool) throws IOException {
+        String base = file.getName().replaceFirst("\\.png$", "");
+        Path directory = file.toPath().resolveSibling(base + "_files");
+        int tileSize = options.tileSize;
+        int maxLevel = 32 - Integer.numberOfLeadingZeros(Math.max(options.width, options.height) - 1);
+        
+        List<int[]> tiles = new ArrayList<>();
+        for (int level = 0; level <= maxLevel; level++) {
+            Files.createDirectories(directory.resolve(String.valueOf(level)));
+            int levelWidth = levelSize(options.width, maxLevel - level);
+            int levelHeight = levelSize(options.height, maxLevel - level);
+            for (int row = 0; row * tileSize < levelHeight; row++) {
+                for (int col = 0; col * tileSize < levelWidth; col++) {
+                    tiles.add(new int[] {level, col, row});
+                }
+            }
+        }
+        
+        IOException[] failure = new IOException[1];
+        ParallelChunks.forRange(pool, tiles.size(), ParallelChunks.chunkCount(pool, tiles.size()), (from, to) -> {
+            for (int t = from; t < to; t++) {
+                int[] tile = tiles.get(t);
+                int shift = maxLevel - tile[0];
+                double scale = 1.0 / (1L << shift);
+                int levelWidth = levelSize(options.width, shift);
+                int levelHeight = levelSize(options.height, shift);
+                int x0 = tile[1] * tileSize;
+                int y0 = tile[2] * tileSize;
+                int w = Math.min(tileSize, levelWidth - x0);
+                int h = Math.min(tileSize, levelHeight - y0);
+                
+                BufferedImage image = new BufferedImage(w, h,
+                    options.transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = image.createGraphics();
+                try {
+                    if (!options.transparent) {
+                        g.setColor(options.background);
+                        g.fillRect(0, 0, w, h);
+                    }
+                    g.translate(-x0, -y0);
+                    // The region in full-resolution pixels
+                    scene.draw(g, x0 / scale, y0 / scale, (x0 + w) / scale, (y0 + h) / scale, scale);
+                } finally {
+                    g.dispose();
+                }
+                try {
+                    ImageIO.write(image, "png", directory.resolve(tile[0] + "/" + tile[1] + "_" + tile[2] + ".png").toFile());
+                } catch (IOException e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        
+        String descriptor = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"png\" Overlap=\"0\" TileSize=\"" + tileSize + "\">\n"
+            + "  <Size Width=\"" + options.width + "\" Height=\"" + options.height + "\"/>\n"
+            + "</Image>\n";
+        Files.write(file.toPath().resolveSibling(base + ".dzi"), descriptor.getBytes(StandardCharsets.UTF_8));
+        return tiles.size();
+    }
+    
+    private static int levelSize(int size, int shift) {
+        return (int) Math.max(1, (size + (1L << shift) - 1) >> shift);
+    }
+    
+    private static void writeChunk(OutputStream out, String type, byte[] data, int offset, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        writeInt(out, length);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        writeInt(out, (int) crc.getValue());
+    }
+    
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+    
+    /**
+     * Adler-32 of two concatenated blocks from their separate checksums (zlib's adler32_combine)
+     */
+    static long adler32Combine(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long remainder = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (remainder * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + base - remainder;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= base << 1) sum2 -= base << 1;
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+    
+    private static class Segment {
+        final byte[] data;
+        final long adler;
+        final long rawLength;
+        
+        Segment(byte[] data, long adler, long rawLength) {
+            this.data = data;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+    }
+    
+    /**
+     * Node and edge geometry in full-resolution image pixels, plus a grid over the image so a
+     * region only visits what can touch it
+     */
+    private static class Scene {
+        final float[] x;
+        final float[] y;
+        final float[] radius;
+        final int[] color;
+        final int[] edgeSource;
+        final int[] edgeTarget;
+        final RenderOptions options;
+        final float cellWidth;
+        final float cellHeight;
+        final float maxRadius;
+        // Cell -> nodes and cell -> edges, as CSR
+        final int[] nodeCells;
+        final int[] cellNodes;
+        final int[] edgeCells;
+        final int[] cellEdges;
+        final int[] longEdges;
+        
+        private Scene(float[] x, float[] y, float[] radius, int[] color, int[] edgeSource, int[] edgeTarget,
+                      RenderOptions options) {
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.color = color;
+            this.edgeSource = edgeSource;
+            this.edgeTarget = edgeTarget;
+            this.options = options;
+            this.cellWidth = (float) options.width / GRID;
+            this.cellHeight = (float) options.height / GRID;
+            
+            int n = x.length;
+            float max = 0;
+            for (float r : radius) {
+                max = Math.max(max, r);
+            }
+            this.maxRadius = max;
+            int[] nodeCounts = new int[GRID * GRID + 1];
+            for (int i = 0; i < n; i++) {
+                nodeCounts[cell(x[i], y[i]) + 1]++;
+            }
+            prefix(nodeCounts);
+            nodeCells = nodeCounts;
+            cellNodes = new int[n];
+            int[] cursor = Arrays.copyOf(nodeCells, GRID * GRID);
+            for (int i = 0; i < n; i++) {
+                cellNodes[cursor[cell(x[i], y[i])]++] = i;
+            }
+            
+            int m = edgeSource.length;
+            int[] edgeCounts = new int[GRID * GRID + 1];
+            int longCount = 0;
+            for (int e = 0; e < m; e++) {
+                int[] box = box(e);
+                int cells = (box[2] - box[0] + 1) * (box[3] - box[1] + 1);
+                if (cells > MAX_EDGE_CELLS) {
+                    longCount++;
+                    continue;
+                }
+                for (int cy = box[1]; cy <= box[3]; cy++) {
+                    for (int cx = box[0]; cx <= box[2]; cx++) {
+                        edgeCounts[cy * GRID + cx + 1]++;
+                    }
+                }
+            }
+            prefix(edgeCounts);
+            edgeCells = edgeCounts;
+            cellEdges = new int[edgeCells[GRID * GRID]];
+            longEdges = new int[longCount];
+            cursor = Arrays.copyOf(edgeCells, GRID * GRID);
+            int longAt = 0;
+            for (int e = 0; e < m; e++) {
+                int[] box = box(e);
+                if ((box[2] - box[0] + 1) * (box[3] - box[1] + 1) > MAX_EDGE_CELLS) {
+                    longEdges[longAt++] = e;
+                    continue;
+                }
+                for (int cy = box[1]; cy <= box[3]; cy++) {
+                    for (int cx = box[0]; cx <= box[2]; cx++) {
+                        cellEdges[cursor[cy * GRID + cx]++] = e;
+                    }
+                }
+            }
+        }
+        
+        static Scene capture(Graph graph, RenderOptions options) {
+            graph.readLock();
+            try {
+                Node[] nodes = graph.getNodes().toArray();
+                int n = nodes.length;
+                float minX = Float.POSITIVE_INFINITY;
+                float minY = Float.POSITIVE_INFINITY;
+                float maxX = Float.NEGATIVE_INFINITY;
+                float maxY = Float.NEGATIVE_INFINITY;
+                for (Node node : nodes) {
+                    minX = Math.min(minX, node.x() - node.size());
+                    maxX = Math.max(maxX, node.x() + node.size());
+                    minY = Math.min(minY, node.y() - node.size());
+                    maxY = Math.max(maxY, node.y() + node.size());
+                }
+                if (n == 0) {
+                    minX = minY = -1;
+                    maxX = maxY = 1;
+                }
+                
+                // Fit the layout into the image with a margin, keeping the aspect ratio; y points up in Gephi
+                float margin = 0.05f * Math.min(options.width, options.height);
+                float scale = (float) Math.min((options.width - 2 * margin) / Math.max(maxX - minX, 1e-6f),
+                    (options.height - 2 * margin) / Math.max(maxY - minY, 1e-6f));
+                float offsetX = (options.width - (maxX - minX) * scale) / 2;
+                float offsetY = (options.height - (maxY - minY) * scale) / 2;
+                
+                float[] x = new float[n];
+                float[] y = new float[n];
+                float[] radius = new float[n];
+                int[] color = new int[n];
+                int[] indexByStoreId = new int[n == 0 ? 0 : maxStoreId(nodes) + 1];
+                for (int i = 0; i < n; i++) {
+                    Node node = nodes[i];
+                    x[i] = (node.x() - minX) * scale + offsetX;
+                    y[i] = (maxY - node.y()) * scale + offsetY;
+                    radius[i] = Math.max(0.5f, node.size() * scale * options.nodeScale);
+                    color[i] = node.getColor().getRGB();
+                    indexByStoreId[node.getStoreId()] = i;
+                }
+                
+                int m = graph.getEdgeCount();
+                int[] edgeSource = new int[m];
+                int[] edgeTarget = new int[m];
+                int e = 0;
+                for (Edge edge : graph.getEdges()) {
+                    if (e == m) {
+                        break;
+                    }
+                    edgeSource[e] = indexByStoreId[edge.getSource().getStoreId()];
+                    edgeTarget[e] = indexByStoreId[edge.getTarget().getStoreId()];
+                    e++;
+                }
+                return new Scene(x, y, radius, color, Arrays.copyOf(edgeSource, e), Arrays.copyOf(edgeTarget, e), options);
+            } finally {
+                graph.readUnlock();
+            }
+        }
+        
+        private static int maxStoreId(Node[] nodes) {
+            int max = 0;
+            for (Node node : nodes) {
+                max = Math.max(max, node.getStoreId());
+            }
+            return max;
+        }
+        
+        /**
+         * Draws everything touching the region [x0, x1) x [y0, y1), given in full-resolution pixels,
+         * onto g at the given scale. Edges, then nodes, are painted in index order so overlaps look
+         * the same in every strip and tile.
+         */
+        void draw(Graphics2D g, double x0, double y0, double x1, double y1, double scale) {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            float stroke = (float) Math.max(0.25, options.edgeWidth * Math.sqrt(scale));
+            g.setStroke(new BasicStroke(stroke));
+            // Anything that reaches into the region from outside it, in full-resolution pixels
+            float pad = (float) Math.max(maxRadius, (1 + stroke) / scale);
+            int cx0 = clampCell((float) ((x0 - pad) / cellWidth));
+            int cx1 = clampCell((float) ((x1 + pad) / cellWidth));
+            int cy0 = clampCell((float) ((y0 - pad) / cellHeight));
+            int cy1 = clampCell((float) ((y1 + pad) / cellHeight));
+            
+            if (options.drawEdges) {
+                int[] edges = new int[64];
+                int count = 0;
+                for (int cy = cy0; cy <= cy1; cy++) {
+                    for (int cx = cx0; cx <= cx1; cx++) {
+                        int cell = cy * GRID + cx;
+                        for (int k = edgeCells[cell]; k < edgeCells[cell + 1]; k++) {
+                            int e = cellEdges[k];
+                            int s = edgeSource[e];
+                            int t = edgeTarget[e];
+                            // Edges listed in several cells are taken from the first one inside the region
+                            if (cx != Math.max(clampCell(Math.min(x[s], x[t]) / cellWidth), cx0)
+                                    || cy != Math.max(clampCell(Math.min(y[s], y[t]) / cellHeight), cy0)) {
+                                continue;
+                            }
+                            if (count == edges.length) {
+                                edges = Arrays.copyOf(edges, count * 2);
+                            }
+                            edges[count++] = e;
+                        }
+                    }
+                }
+                for (int e : longEdges) {
+                    int s = edgeSource[e];
+                    int t = edgeTarget[e];
+                    if (Math.max(x[s], x[t]) >= x0 - pad && Math.min(x[s], x[t]) <= x1 + pad
+                            && Math.max(y[s], y[t]) >= y0 - pad && Math.min(y[s], y[t]) <= y1 + pad) {
+                        if (count == edges.length) {
+                            edges = Arrays.copyOf(edges, count * 2);
+                        }
+                        edges[count++] = e;
+                    }
+                }
+                Arrays.sort(edges, 0, count);
+                
+                Line2D.Float line = new Line2D.Float();
+                int alpha = Math.round(options.edgeAlpha * 255) << 24;
+                for (int k = 0; k < count; k++) {
+                    int e = edges[k];
+                    int s = edgeSource[e];
+                    int t = edgeTarget[e];
+                    line.setLine(x[s] * scale, y[s] * scale, x[t] * scale, y[t] * scale);
+                    g.setColor(new Color((color[s] & 0xffffff) | alpha, true));
+                    g.draw(line);
+                }
+            }
+            
+            int[] nodes = new int[64];
+            int count = 0;
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    int cell = cy * GRID + cx;
+                    int size = nodeCells[cell + 1] - nodeCells[cell];
+                    if (count + size > nodes.length) {
+                        nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, count + size));
+                    }
+                    System.arraycopy(cellNodes, nodeCells[cell], nodes, count, size);
+                    count += size;
+                }
+            }
+            Arrays.sort(nodes, 0, count);
+            
+            Ellipse2D.Float circle = new Ellipse2D.Float();
+            for (int k = 0; k < count; k++) {
+                int i = nodes[k];
+                float r = (float) Math.max(0.5, radius[i] * scale);
+                circle.setFrame(x[i] * scale - r, y[i] * scale - r, 2 * r, 2 * r);
+                g.setColor(new Color(color[i], true));
+                g.fill(circle);
+            }
+        }
+        
+        private int[] box(int e) {
+            int s = edgeSource[e];
+            int t = edgeTarget[e];
+            return new int[] {
+                clampCell(Math.min(x[s], x[t]) / cellWidth), clampCell(Math.min(y[s], y[t]) / cellHeight),
+                clampCell(Math.max(x[s], x[t]) / cellWidth), clampCell(Math.max(y[s], y[t]) / cellHeight)
+            };
+        }
+        
+        private int cell(float px, float py) {
+            return clampCell(py / cellHeight) * GRID + clampCell(px / cellWidth);
+        }
+        
+        private static int clampCell(float value) {
+            return Math.max(0, Math.min(GRID - 1, (int) value));
+        }
+        
+        private static void prefix(int[] counts) {
+            for (int i = 0; i + 1 < counts.length; i++) {
+                counts[i + 1] += counts[i];
+            }
+        }
+    }
+    
+    public static class RenderOptions {
+        public static final int MAX_SIZE = 100_000;
+        
+        // "tiled", "preview" (Gephi's own renderer, with labels) or "auto"
+        public String renderer = "auto";
+        public int width = 1024;
+        public int height = 768;
+        public Color background = Color.WHITE;
+        public boolean transparent = false;
+        public boolean drawEdges = true;
+        public float edgeAlpha = 0.35f;
+        public float edgeWidth = 1f;
+        public float nodeScale = 1f;
+        // zlib level; 6 is what Deflater.DEFAULT_COMPRESSION (-1) resolves to
+        public int compression = 6;
+        public boolean pyramid = false;
+        public int tileSize = 256;
+        // Node labels, drawn by the preview renderer only
+        public boolean labels = true;
+        
+        public static RenderOptions fromJson(JsonObject params) {
+            RenderOptions options = new RenderOptions();
+            if (params.has("renderer")) options.renderer = params.get("renderer").getAsString();
+            if (params.has("width")) options.width = params.get("width").getAsInt();
+            if (params.has("height")) options.height = params.get("height").getAsInt();
+            if (params.has("background")) options.background = Color.decode(params.get("background").getAsString());
+            if (params.has("transparent")) options.transparent = params.get("transparent").getAsBoolean();
+            if (params.has("edges")) options.drawEdges = params.get("edges").getAsBoolean();
+            if (params.has("edgeAlpha")) options.edgeAlpha = params.get("edgeAlpha").getAsFloat();
+            if (params.has("edgeWidth")) options.edgeWidth = params.get("edgeWidth").getAsFloat();
+            if (params.has("nodeScale")) options.nodeScale = params.get("nodeScale").getAsFloat();
+            if (params.has("compression")) options.compression = params.get("compression").getAsInt();
+            if (params.has("pyramid")) options.pyramid = params.get("pyramid").getAsBoolean();
+            if (params.has("tileSize")) options.tileSize = params.get("tileSize").getAsInt();
+            if (params.has("labels")) options.labels = params.get("labels").getAsBoolean();
+            
+            if (!options.renderer.equals("auto") && !options.renderer.equals("tiled") && !options.renderer.equals("preview")) {
+                throw new IllegalArgumentException("renderer must be auto, tiled or preview");
+            }
+            if (options.width < 1 || options.height < 1 || options.width > MAX_SIZE || options.height > MAX_SIZE) {
+                throw new IllegalArgumentException("width and height must be between 1 and " + MAX_SIZE);
+            }
+            if (options.compression < 0 || options.compression > 9) {
+                throw new IllegalArgumentException("compression must be between 0 and 9");
+            }
+            if (options.tileSize < 16 || options.tileSize > 4096) {
+                throw new IllegalArgumentException("tileSize must be between 16 and 4096");
+            }
+            if (options.edgeAlpha < 0 || options.edgeAlpha > 1) {
+                throw new IllegalArgumentException("edgeAlpha must be between 0 and 1");
+            }
+            return options;
+        }
+    }
+    
+    public static class RenderResult {
+        private final int width;
+        private final int height;
+        private final int strips;
+        private final int tiles;
+        private final long timeMs;
+        
+        public RenderResult(int width, int height, int strips, int tiles, long timeMs) {
+            this.width = width;
+            this.height = height;
+            this.strips = strips;
+            this.tiles = tiles;
+            this.timeMs = timeMs;
+        }
+        
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public int getStrips() { return strips; }
+        public int getTiles() { return tiles; }
+        public long getTimeMs() { return timeMs; }
+    }
+}
@@ -3,12 +3,128 @@
 import { Server } from "@modelcontextprotocol/sdk/server/index.js";
 import { StdioServerTransport } from "@modelcontextprotocol/sdk/server/stdio.js";
 import { spawn } from "child_process";
+import fs from "fs";
+import readline from "readline";
 import path from "path";
 import { fileURLToPath } from "url";
 
 const __filename = fileURLToPath(import.meta.url);
 const __dirname = path.dirname(__filename);
 
+/**
+ * Splits the service's framed stdout into messages: a little-endian uint32 header length and
+ * payload length, the JSON header, then the payload. Each frame is copied at most once.
+ */
+class FrameReader {
+  constructor(onFrame) {
+    this.onFrame = onFrame;
+    this.chunks = [];
+    this.buffered = 0;
+    this.lengths = null;
+    this.needed = 8;
+  }
+
+  push(data) {
+    this.chunks.push(data);
+    this.buffered += data.length;
+    while (this.buffered >= this.needed) {
+      const bytes = this.take(this.needed);
+      if (!this.lengths) {
+        this.lengths = [bytes.readUInt32LE(0), bytes.readUInt32LE(4)];
+        this.needed = this.lengths[0] + this.lengths[1];
+      } else {
+        const [headerLength, payloadLength] = this.lengths;
+        this.lengths = null;
+        this.needed = 8;
+        this.onFrame(
+          bytes.subarray(0, headerLength).toString("utf8"),
+          payloadLength > 0 ? bytes.subarray(headerLength) : null
+        );
+      }
+    }
+  }
+
+  take(n) {
+    if (n === 0) return Buffer.alloc(0);
+    let bytes = this.chunks[0];
+    if (bytes.length === n) {
+      this.chunks.shift();
+    } else if (bytes.length > n) {
+      this.chunks[0] = bytes.subarray(n);
+      bytes = bytes.subarray(0, n);
+    } else {
+      bytes = Buffer.concat(this.chunks, this.buffered);
+      this.chunks = bytes.length > n ? [bytes.subarray(n)] : [];
+      bytes = bytes.subarray(0, n);
+    }
+    this.buffered -= n;
+    return bytes;
+  }
+}
+
+function encodeFrame(message) {
+  const header = Buffer.from(JSON.stringify(message), "utf8");
+  const prefix = Buffer.alloc(8);
+  prefix.writeUInt32LE(header.length, 0);
+  return Buffer.concat([prefix, header]);
+}
+
+/**
+ * Reads one section of a get_nodes chunk into an array of per-node values
+ */
+function readNodeSection(section, payload, count) {
+  const values = new Array(count);
+  let offset = section.byteOffset;
+  switch (section.type) {
+    case "float32":
+      for (let i = 0; i < count; i++) values[i] = payload.readFloatLE(offset + 4 * i);
+      break;
+    case "float64":
+      for (let i = 0; i < count; i++) {
+        const value = payload.readDoubleLE(offset + 8 * i);
+        values[i] = Number.isNaN(value) ? null : value;
+      }
+      break;
+    case "uint8":
+      for (let i = 0; i < count; i++) {
+        const value = payload[offset + i];
+        values[i] = value === 255 ? null : value === 1;
+      }
+      break;
+    case "rgba8":
+      for (let i = 0; i < count; i++) values[i] = [...payload.subarray(offset + 4 * i, offset + 4 * i + 4)];
+      break;
+    default: {
+      let position = offset + 4 * count;
+      for (let i = 0; i < count; i++) {
+        const length = payload.readUInt32LE(offset + 4 * i);
+        if (length === 0xFFFFFFFF) {
+          values[i] = null;
+        } else {
+          values[i] = payload.toString("utf8", position, position + length);
+          position += length;
+        }
+      }
+    }
+  }
+  return values;
+}
+
+/**
+ * JVM options and classpath for Java processes. A packaged build runs from jars only, the
+ * bridge jar and its dependencies in java/target, with the class-data-sharing archive the cds
+ * build profile recorded on that same classpath; the JVM ignores the archive if it does not match.
+ * A compile-only build runs from java/target/classes.
+ */
+function javaLaunchArgs() {
+  const target = path.join(__dirname, "..", "java", "target");
+  const cdsArchive = path.join(target, "gephi-mcp.jsa");
+  if (fs.existsSync(cdsArchive)) {
+    return [`-XX:SharedArchiveFile=${cdsArchive}`, "-Xshare:auto", "-cp", path.join(target, "*")];
+  }
+  return ["-cp", path.join(target, "classes") + ":" + path.join(target, "*")];
+}
+
 class GephiMCPServer {
   constructor() {
     this.server = new Server(
@@ -24,13 +140,20 @@ class GephiMCPServer {
     );
 
     this.javaService = null;
+    this.javaReady = null;
+    this.onJavaReady = null;
+    this.pendingRequests = new Map();
+    this.nextRequestId = 1;
+    // Length-prefixed frames unless GEPHI_MCP_TRANSPORT=line, which is easier to watch while debugging
+    this.framed = process.env.GEPHI_MCP_TRANSPORT !== "line";
+    this.requestTimeout = Number(process.env.GEPHI_MCP_TIMEOUT_MS) || 10000;
     this.setupToolHandlers();
     this.setupErrorHandling();
   }
 
   setupToolHandlers() {
     this.server.registerTool("load_graph", {
-      description: "Load a graph from file (GEXF, GraphML, GML, DOT, CSV)",
+      description: "Load a graph from file (GEXF, GraphML, GML, DOT, CSV, edge list)",
       inputSchema: {
         type: "object",
         properties: {
@@ -40,14 +163,53 @@ class GephiMCPServer {
           },
           format: {
             type: "string",
-            enum: ["gexf", "graphml", "gml", "dot", "csv"],
+            enum: ["gexf", "graphml", "gml", "dot", "csv", "edgelist"],
             description: "Graph file format"
+          },
+          cache: {
+            type: "boolean",
+            description: "Reuse a binary snapshot when the same unchanged file was loaded before",
+            default: true
+          },
+          fastImport: {
+            type: "boolean",
+            description: "Stream edge lists (format edgelist, or CSV with a Source,Target header) directly into the graph",
+            default: true
+          },
+          directed: {
+            type: "boolean",
+            description: "Edge direction for edge lists loaded through the fast path",
+            default: true
+          },
+          nodeColumns: {
+            type: "array",
+            items: { type: "string" },
+            description: "Node attribute columns to keep (by id or title); others are dropped on import"
+          },
+          edgeColumns: {
+            type: "array",
+            items: { type: "string" },
+            description: "Edge attribute columns to keep (by id or title); others are dropped on import"
+          },
+          internStrings: {
+            type: "boolean",
+            description: "Share one instance among equal string attribute values, e.g. category labels",
+            default: false
+          },
+          restorePositions: {
+            type: "boolean",
+            description: "Put nodes back where the last layout of this file left them",
+            default: true
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
           }
         },
         required: ["filePath"]
       }
     }, async (args) => {
-      return await this.loadGraph(args.filePath, args.format);
+      return await this.loadGraph(args);
     });
 
     this.server.registerTool("apply_force_atlas2", {
@@ -57,7 +219,7 @@ class GephiMCPServer {
         properties: {
           iterations: {
             type: "number",
-            description: "Number of iterations to run",
+            description: "Number of iterations to run (upper bound when convergence is enabled)",
             default: 100
           },
           adjustSizes: {
@@ -79,22 +241,118 @@ class GephiMCPServer {
             type: "number",
             description: "Scaling ratio",
             default: 2.0
+          },
+          convergenceTolerance: {
+            type: "number",
+            description: "Stop early once the mean node displacement per iteration stays below this value (0 disables)",
+            default: 0
+          },
+          convergenceWindow: {
+            type: "number",
+            description: "Consecutive settled iterations required before stopping early",
+            default: 5
+          },
+          engine: {
+            type: "string",
+            enum: ["gephi", "parallel", "multilevel"],
+            description: "Layout implementation: Gephi's ForceAtlas2, the multi-threaded array engine, or multilevel (coarsen, lay out, refine) for very large graphs",
+            default: "gephi"
+          },
+          checkpointInterval: {
+            type: "number",
+            description: "Parallel and multilevel engines: write positions back to the graph every N iterations (0 = only at the end)",
+            default: 0
+          },
+          coarsestSize: {
+            type: "number",
+            description: "Multilevel engine: stop coarsening at this many supernodes; iterations apply to that level",
+            default: 300
+          },
+          refineIterations: {
+            type: "number",
+            description: "Multilevel engine: refinement iterations on each finer level",
+            default: 30
+          },
+          incremental: {
+            type: "boolean",
+            description: "Only lay out nodes without a position (new since load or added by mutate_graph); everything else stays pinned",
+            default: false
+          },
+          neighbourMobility: {
+            type: "number",
+            description: "Incremental mode: how freely the placed neighbours of new nodes may move (0 = pinned, 1 = free)",
+            default: 0.25
+          },
+          persistPositions: {
+            type: "boolean",
+            description: "Save the resulting positions so reloading the same file restores them",
+            default: true
+          },
+          async: {
+            type: "boolean",
+            description: "Return a job id immediately and run the layout in the background",
+            default: false
+          },
+          progressIntervalMs: {
+            type: "number",
+            description: "How often the layout reports progress",
+            default: 1000
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        }
+      }
+    }, async (args, extra) => {
+      return await this.applyForceAtlas2(args, extra);
+    });
+
+    this.server.registerTool("job_status", {
+      description: "Report progress of layout jobs (iterations, elapsed time, energy)",
+      inputSchema: {
+        type: "object",
+        properties: {
+          jobId: {
+            type: "string",
+            description: "Job to report on; omit to list all jobs"
           }
         }
       }
     }, async (args) => {
-      return await this.applyForceAtlas2(args);
+      return await this.jobStatus(args.jobId);
+    });
+
+    this.server.registerTool("cancel_job", {
+      description: "Stop a running layout job after its current iteration",
+      inputSchema: {
+        type: "object",
+        properties: {
+          jobId: {
+            type: "string",
+            description: "Job to cancel"
+          }
+        },
+        required: ["jobId"]
+      }
+    }, async (args) => {
+      return await this.cancelJob(args.jobId);
     });
 
     this.server.registerTool("get_graph_info", {
-      description: "Get basic information about the loaded graph",
+      description: "Get basic information and degree, density and component statistics for the loaded graph",
       inputSchema: {
         type: "object",
-        properties: {},
+        properties: {
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
         additionalProperties: false
       }
-    }, async () => {
-      return await this.getGraphInfo();
+    }, async (args) => {
+      return await this.getGraphInfo(args.session);
     });
 
     this.server.registerTool("save_graph", {
@@ -108,28 +366,646 @@ class GephiMCPServer {
           },
           format: {
             type: "string",
-            enum: ["gexf", "graphml", "pdf", "png"],
-            description: "Output format"
+            enum: ["gexf", "graphml", "pdf", "png", "svg", "positions"],
+            description: "Output format; positions is a compact binary file of node ids, positions and sizes"
+          },
+          formats: {
+            type: "array",
+            description: "Several output formats in one call; filePath's extension is replaced by each format's",
+            items: { type: "string", enum: ["gexf", "graphml", "pdf", "png", "svg", "positions"] }
+          },
+          compress: {
+            type: "boolean",
+            description: "Gzip GEXF, GraphML and positions output (default: when filePath ends in .gz)"
+          },
+          attributes: {
+            type: "boolean",
+            description: "Include node and edge attributes in GEXF and GraphML (default true)"
+          },
+          delta: {
+            type: "boolean",
+            description: "Write positions as a delta against this session's previous positions export; falls back to a full file when nodes changed"
+          },
+          sizes: {
+            type: "boolean",
+            description: "Include node sizes in positions output (default true)"
+          },
+          labels: {
+            type: "boolean",
+            description: "Draw node labels in preview-rendered PNG, PDF and SVG (default true)"
+          },
+          width: {
+            type: "integer",
+            description: "PNG width in pixels, up to 100000 (default 1024)"
+          },
+          height: {
+            type: "integer",
+            description: "PNG height in pixels, up to 100000 (default 768)"
+          },
+          renderer: {
+            type: "string",
+            enum: ["auto", "tiled", "preview"],
+            description: "PNG renderer: tiled streams strips in parallel and scales to any size, preview is Gephi's own with labels; auto picks tiled above 10000 nodes or 4096x4096 pixels"
+          },
+          background: {
+            type: "string",
+            description: "PNG background colour, e.g. #ffffff"
+          },
+          transparent: {
+            type: "boolean",
+            description: "Transparent PNG background"
+          },
+          edges: {
+            type: "boolean",
+            description: "Draw edges in tiled PNGs (default true)"
+          },
+          edgeAlpha: {
+            type: "number",
+            description: "Edge opacity in tiled PNGs, 0 to 1 (default 0.35)"
+          },
+          edgeWidth: {
+            type: "number",
+            description: "Edge width in pixels in tiled PNGs (default 1)"
+          },
+          nodeScale: {
+            type: "number",
+            description: "Multiplier on node sizes in tiled PNGs (default 1)"
+          },
+          compression: {
+            type: "integer",
+            description: "PNG deflate level 0-9 for tiled PNGs (default 6)"
+          },
+          pyramid: {
+            type: "boolean",
+            description: "Also write a Deep Zoom tile pyramid (name.dzi and name_files/) next to the PNG"
+          },
+          tileSize: {
+            type: "integer",
+            description: "Pyramid tile size in pixels (default 256)"
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
+        required: ["filePath"]
+      }
+    }, async (args) => {
+      return await this.saveGraph(args);
+    });
+
+    this.server.registerTool("mutate_graph", {
+      description: "Add, remove or update nodes and edges in one atomic batch; returns the new graph version",
+      inputSchema: {
+        type: "object",
+        properties: {
+          addNodes: {
+            type: "array",
+            description: "Nodes to add: { id, label?, x?, y?, size?, attributes? }",
+            items: { type: "object" }
+          },
+          removeNodes: {
+            type: "array",
+            description: "Ids of nodes to remove, along with their edges",
+            items: { type: "string" }
+          },
+          addEdges: {
+            type: "array",
+            description: "Edges to add: { source, target, id?, weight?, directed?, label?, attributes? }",
+            items: { type: "object" }
+          },
+          removeEdges: {
+            type: "array",
+            description: "Edges to remove, as ids or { source, target }",
+            items: {}
+          },
+          updateNodes: {
+            type: "array",
+            description: "Node changes: { id, label?, x?, y?, size?, attributes? }",
+            items: { type: "object" }
+          },
+          updateEdges: {
+            type: "array",
+            description: "Edge changes, located by id or { source, target }: { weight?, label?, attributes? }",
+            items: { type: "object" }
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        }
+      }
+    }, async (args) => {
+      return await this.mutateGraph(args);
+    });
+
+    this.server.registerTool("compute_statistics", {
+      description: "Compute PageRank, approximate betweenness and k-core numbers in parallel and store them as node columns (pageranks, betweenesscentrality, kcore)",
+      inputSchema: {
+        type: "object",
+        properties: {
+          metrics: {
+            type: "array",
+            items: { type: "string", enum: ["pagerank", "betweenness", "kcore"] },
+            description: "Statistics to compute (default: all three)"
+          },
+          damping: {
+            type: "number",
+            description: "PageRank damping factor (default: 0.85)"
+          },
+          pageRankEpsilon: {
+            type: "number",
+            description: "PageRank stops once the total rank change drops below this (default: 1e-6)"
+          },
+          maxIterations: {
+            type: "number",
+            description: "Maximum PageRank iterations (default: 100)"
+          },
+          weighted: {
+            type: "boolean",
+            description: "Use edge weights in PageRank (default: false)"
+          },
+          epsilon: {
+            type: "number",
+            description: "Betweenness error bound on normalized scores; smaller samples more sources (default: 0.05)"
+          },
+          delta: {
+            type: "number",
+            description: "Probability that the betweenness error bound is exceeded (default: 0.1)"
+          },
+          samples: {
+            type: "number",
+            description: "Explicit number of betweenness source samples; overrides epsilon/delta"
+          },
+          seed: {
+            type: "number",
+            description: "Random seed for betweenness sampling (default: 42)"
+          },
+          topK: {
+            type: "number",
+            description: "Number of top nodes to report per statistic (default: 10)"
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.computeStatistics(args);
+    });
+
+    this.server.registerTool("detect_communities", {
+      description: "Detect communities with parallel Louvain, store them in the modularity_class node column and colour nodes by community",
+      inputSchema: {
+        type: "object",
+        properties: {
+          resolution: {
+            type: "number",
+            description: "Modularity resolution; higher values give more, smaller communities (default: 1.0)"
+          },
+          weighted: {
+            type: "boolean",
+            description: "Use edge weights (default: true)"
+          },
+          seed: {
+            type: "number",
+            description: "Seed for the node order; the same seed gives the same partition (default: 42)"
+          },
+          tolerance: {
+            type: "number",
+            description: "Minimum modularity gain per sweep before moving to the next level (default: 1e-4)"
+          },
+          maxLevels: {
+            type: "number",
+            description: "Maximum number of aggregation levels (default: 20)"
+          },
+          maxSweeps: {
+            type: "number",
+            description: "Maximum sweeps per level (default: 50)"
+          },
+          colorNodes: {
+            type: "boolean",
+            description: "Colour nodes by community so exported images show the partition (default: true)"
+          },
+          topK: {
+            type: "number",
+            description: "Number of largest community sizes to report (default: 10)"
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.detectCommunities(args);
+    });
+
+    this.server.registerTool("get_neighbourhood", {
+      description: "Get the k-hop neighbourhood (ego network) of one or more nodes",
+      inputSchema: {
+        type: "object",
+        properties: {
+          id: {
+            type: "string",
+            description: "Centre node id"
+          },
+          ids: {
+            type: "array",
+            items: { type: "string" },
+            description: "Several centre node ids"
+          },
+          depth: {
+            type: "number",
+            description: "Number of hops (default: 1)"
+          },
+          direction: {
+            type: "string",
+            enum: ["both", "out", "in"],
+            description: "Which edges to follow; out and in need a directed graph (default: both)"
+          },
+          maxNodes: {
+            type: "number",
+            description: "Stop after this many nodes; the result is then marked truncated (default: 10000)"
+          },
+          includeEdges: {
+            type: "boolean",
+            description: "Return the edges between the result nodes (default: true)"
+          },
+          view: {
+            type: "string",
+            description: "Also keep the result as a named graph view in the session; must not be the active view"
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.runQuery("get_neighbourhood", args);
+    });
+
+    this.server.registerTool("get_subgraph", {
+      description: "Get the subgraph induced by a set of node ids",
+      inputSchema: {
+        type: "object",
+        properties: {
+          ids: {
+            type: "array",
+            items: { type: "string" },
+            description: "Node ids to include"
+          },
+          includeEdges: {
+            type: "boolean",
+            description: "Return the edges between the result nodes (default: true)"
+          },
+          view: {
+            type: "string",
+            description: "Also keep the result as a named graph view in the session; must not be the active view"
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
+        required: ["ids"],
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.runQuery("get_subgraph", args);
+    });
+
+    this.server.registerTool("shortest_path", {
+      description: "Find a shortest path between two nodes",
+      inputSchema: {
+        type: "object",
+        properties: {
+          source: {
+            type: "string",
+            description: "Start node id"
+          },
+          target: {
+            type: "string",
+            description: "End node id"
+          },
+          weighted: {
+            type: "boolean",
+            description: "Treat edge weights as lengths instead of counting hops (default: false)"
+          },
+          directed: {
+            type: "boolean",
+            description: "Follow edge direction; needs a directed graph (default: whether the graph is directed)"
+          },
+          view: {
+            type: "string",
+            description: "Also keep the result as a named graph view in the session; must not be the active view"
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
+        required: ["source", "target"],
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.runQuery("shortest_path", args);
+    });
+
+    this.server.registerTool("filter", {
+      description: "Narrow the session to a filtered view; layout, statistics, queries and export then only see the view. Filters run in order, each on what the previous kept",
+      inputSchema: {
+        type: "object",
+        properties: {
+          filters: {
+            type: "array",
+            description: "Steps such as { type: \"giantComponent\" }, { type: \"degree\", min?, max? }, { type: \"edgeWeight\", min?, max? } or { type: \"attribute\", column, min?, max?, values? }",
+            items: { type: "object" }
+          },
+          view: {
+            type: "string",
+            description: "Name to keep the view under (default: \"filter\")"
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
+        required: ["filters"],
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.filterGraph(args);
+    });
+
+    this.server.registerTool("set_view", {
+      description: "Switch the session to a named view (from filter or a query's view option), or back to the full graph when view is omitted",
+      inputSchema: {
+        type: "object",
+        properties: {
+          view: {
+            type: "string",
+            description: "View name; omit to show the full graph"
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.setView(args);
+    });
+
+    this.server.registerTool("spatial_query", {
+      description: "Find nodes by position: every node inside a viewport rectangle, or the k nodes nearest a point. Uses a grid index kept until positions change",
+      inputSchema: {
+        type: "object",
+        properties: {
+          rect: {
+            type: "object",
+            description: "Viewport to search, in layout coordinates",
+            properties: {
+              minX: { type: "number" },
+              minY: { type: "number" },
+              maxX: { type: "number" },
+              maxY: { type: "number" }
+            },
+            required: ["minX", "minY", "maxX", "maxY"]
+          },
+          point: {
+            type: "object",
+            description: "Point to find the nearest nodes to; use instead of rect",
+            properties: {
+              x: { type: "number" },
+              y: { type: "number" }
+            },
+            required: ["x", "y"]
+          },
+          k: {
+            type: "number",
+            description: "Number of nearest nodes to return",
+            default: 10
+          },
+          maxDistance: {
+            type: "number",
+            description: "Ignore nodes further than this from point"
+          },
+          includeSize: {
+            type: "boolean",
+            description: "Match nodes by their whole disc rather than their centre",
+            default: true
+          },
+          limit: {
+            type: "number",
+            description: "Maximum nodes to list for rect; matches is still the full count",
+            default: 1000
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.spatialQuery(args);
+    });
+
+    this.server.registerTool("remove_overlap", {
+      description: "Move overlapping nodes, or overlapping labels, apart with minimal displacement after a layout",
+      inputSchema: {
+        type: "object",
+        properties: {
+          mode: {
+            type: "string",
+            enum: ["nodes", "labels"],
+            description: "Separate node discs or label boxes",
+            default: "nodes"
+          },
+          margin: {
+            type: "number",
+            description: "Extra gap to leave between items, in layout units",
+            default: 0
+          },
+          fontSize: {
+            type: "number",
+            description: "Label height in layout units for labels mode; width is estimated from the label length",
+            default: 12
+          },
+          maxIterations: {
+            type: "number",
+            description: "Maximum separation passes",
+            default: 50
+          },
+          apply: {
+            type: "boolean",
+            description: "Set to false to only count overlaps and list a sample of the pairs",
+            default: true
+          },
+          persistPositions: {
+            type: "boolean",
+            description: "Save the new positions alongside the source file",
+            default: true
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use (defaults to \"default\")"
+          }
+        },
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.removeOverlap(args);
+    });
+
+    this.server.registerTool("pipeline", {
+      description: "Run several graph operations in one request (e.g. load -> filter -> layout -> save), optionally once per input file in parallel sessions; returns per-step timings and results",
+      inputSchema: {
+        type: "object",
+        properties: {
+          steps: {
+            type: "array",
+            description: "Ordered steps: { operation, params }, where operation is any graph tool name (load_graph, filter, apply_force_atlas2, save_graph, ...)",
+            items: { type: "object" }
+          },
+          inputs: {
+            type: "array",
+            description: "Input files; the steps run once per file in its own session, with {input}, {name} and {index} replaced in step parameters",
+            items: { type: "string" }
+          },
+          concurrency: {
+            type: "integer",
+            description: "How many inputs run at once (default: number of cores)"
+          },
+          sessionPrefix: {
+            type: "string",
+            description: "Session names for inputs are prefix-index and must not exist yet (default \"pipeline-<run number>\")"
+          },
+          keepSessions: {
+            type: "boolean",
+            description: "Keep per-input sessions after the run instead of closing them (default false)"
+          },
+          session: {
+            type: "string",
+            description: "Named graph session to use when there are no inputs (defaults to \"default\")"
+          }
+        },
+        required: ["steps"],
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.runPipeline(args);
+    });
+
+    this.server.registerTool("get_nodes", {
+      description: "Read node ids, positions, sizes, colours and attribute columns in bulk. With filePath the packed little-endian arrays are written to the file; otherwise up to limit nodes are returned as JSON",
+      inputSchema: {
+        type: "object",
+        properties: {
+          session: {
+            type: "string",
+            description: "Graph session to read (default: \"default\")"
+          },
+          fields: {
+            type: "array",
+            items: { type: "string", enum: ["id", "x", "y", "z", "size", "color"] },
+            description: "Node fields to include (default: id, x, y, size, color)"
+          },
+          columns: {
+            type: "array",
+            items: { type: "string" },
+            description: "Node attribute columns to include, e.g. modularity_class"
+          },
+          offset: {
+            type: "number",
+            description: "Index of the first node to read",
+            default: 0
+          },
+          limit: {
+            type: "number",
+            description: "Maximum number of nodes (default: all with filePath, 1000 without)"
+          },
+          chunkSize: {
+            type: "number",
+            description: "Nodes per streamed chunk",
+            default: 65536
+          },
+          filePath: {
+            type: "string",
+            description: "Write the chunks' binary arrays to this file; the response indexes each chunk's sections"
+          }
+        },
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.getNodes(args);
+    });
+
+    this.server.registerTool("list_sessions", {
+      description: "List the graph sessions held in memory",
+      inputSchema: {
+        type: "object",
+        properties: {},
+        additionalProperties: false
+      }
+    }, async () => {
+      return await this.listSessions();
+    });
+
+    this.server.registerTool("metrics", {
+      description: "Per-operation latency percentiles, allocation, GC time and slowest calls, plus heap usage",
+      inputSchema: {
+        type: "object",
+        properties: {
+          operation: {
+            type: "string",
+            description: "Only report this operation, e.g. apply_force_atlas2"
+          },
+          reset: {
+            type: "boolean",
+            description: "Clear the figures after reading them",
+            default: false
+          }
+        },
+        additionalProperties: false
+      }
+    }, async (args) => {
+      return await this.getMetrics(args);
+    });
+
+    this.server.registerTool("close_session", {
+      description: "Drop a graph session and free its workspace",
+      inputSchema: {
+        type: "object",
+        properties: {
+          session: {
+            type: "string",
+            description: "Name of the session to close"
           }
         },
-        required: ["filePath", "format"]
+        required: ["session"]
       }
     }, async (args) => {
-      return await this.saveGraph(args.filePath, args.format);
+      return await this.closeSession(args.session);
     });
   }
 
   async startJavaService() {
     if (this.javaService && !this.javaService.killed) {
-      return;
+      return this.javaReady;
     }
 
-    const javaPath = path.join(__dirname, "..", "java");
-    const classpath = path.join(javaPath, "target", "classes") + ":" + path.join(javaPath, "target", "*");
-
     this.javaService = spawn("java", [
-      "-cp", classpath,
-      "com.gephi.mcp.GephiService"
+      ...javaLaunchArgs(),
+      "com.gephi.mcp.GephiService",
+      ...(this.framed ? ["--framed"] : [])
     ], {
       stdio: ["pipe", "pipe", "pipe"],
       env: { ...process.env, PATH: "/opt/homebrew/opt/openjdk@11/bin:" + process.env.PATH }
@@ -139,53 +1015,122 @@ class GephiMCPServer {
       console.error("Java service error:", data.toString());
     });
 
+    // Replies arrive in any order, tagged with the request id
+    if (this.framed) {
+      const reader = new FrameReader((header, payload) => this.handleServiceMessage(header, payload));
+      this.javaService.stdout.on("data", (data) => reader.push(data));
+    } else {
+      readline.createInterface({ input: this.javaService.stdout })
+        .on("line", (line) => {
+          if (line.trim()) this.handleServiceMessage(line, null);
+        });
+    }
+
     this.javaService.on("close", (code) => {
       console.log("Java service exited with code:", code);
       this.javaService = null;
+
+      for (const [, pending] of this.pendingRequests) {
+        clearTimeout(pending.timeout);
+        pending.reject(new Error(`Java service exited with code ${code}`));
+      }
+      this.pendingRequests.clear();
+    });
+
+    // The service warms up Gephi and then sends a ready event; requests queue until then
+    const startupTimeout = Number(process.env.GEPHI_MCP_STARTUP_TIMEOUT_MS) || 120000;
+    const service = this.javaService;
+    this.javaReady = new Promise((resolve, reject) => {
+      const timer = setTimeout(() => reject(new Error("Java service did not become ready")), startupTimeout);
+      this.onJavaReady = (message) => {
+        clearTimeout(timer);
+        if (message.warmupErrors) {
+          console.error("Java service warmup errors:", message.warmupErrors.join("; "));
+        }
+        console.error(`Java service ready after ${message.warmupMs} ms warmup`);
+        resolve();
+      };
+      service.on("close", (code) => {
+        clearTimeout(timer);
+        reject(new Error(`Java service exited with code ${code} before it was ready`));
+      });
     });
+    return this.javaReady;
+  }
+
+  handleServiceMessage(text, payload) {
+    let message;
+    try {
+      message = JSON.parse(text);
+    } catch (e) {
+      console.error("Invalid JSON response from Java service:", text);
+      return;
+    }
 
-    // Wait for service to start
-    await new Promise(resolve => setTimeout(resolve, 1000));
+    // Line mode carries binary data as base64
+    if (message.payload !== undefined) {
+      payload = Buffer.from(message.payload, "base64");
+      delete message.payload;
+    }
+
+    if (message.event === "ready") {
+      if (this.onJavaReady) this.onJavaReady(message);
+      return;
+    }
+
+    // Progress and heartbeat events keep the originating call alive while the work is queued or running
+    if (message.event) {
+      const pending = this.pendingRequests.get(message.requestId);
+      if (pending) {
+        this.armTimeout(message.requestId, pending);
+        if (pending.onProgress && message.event !== "heartbeat") pending.onProgress(message, payload);
+      }
+      return;
+    }
+
+    const pending = this.pendingRequests.get(message.id);
+    if (!pending) return;
+
+    this.pendingRequests.delete(message.id);
+    clearTimeout(pending.timeout);
+    pending.resolve(message);
+  }
+
+  armTimeout(id, pending) {
+    clearTimeout(pending.timeout);
+    pending.timeout = setTimeout(() => {
+      this.pendingRequests.delete(id);
+      pending.reject(new Error("Java service timeout"));
+      this.cancelJavaRequest(id);
+    }, this.requestTimeout);
   }
 
-  async callJavaService(operation, params = {}) {
+  // Tells the service to drop or stop a request nobody waits for any more; its answer is ignored
+  cancelJavaRequest(requestId) {
+    if (!this.javaService || !this.javaService.stdin.writable) return;
+    const request = { id: this.nextRequestId++, operation: "cancel_request", params: { requestId } };
+    this.javaService.stdin.write(this.framed ? encodeFrame(request) : JSON.stringify(request) + "\n");
+  }
+
+  async callJavaService(operation, params = {}, onProgress = null) {
     await this.startJavaService();
 
     return new Promise((resolve, reject) => {
-      const request = JSON.stringify({ operation, params });
+      const id = this.nextRequestId++;
+      const request = { id, operation, params };
 
-      let responseReceived = false;
-      const timeout = setTimeout(() => {
-        if (!responseReceived) {
-          reject(new Error("Java service timeout"));
-        }
-      }, 10000);
-
-      const onData = (data) => {
-        if (responseReceived) return;
-        responseReceived = true;
-        clearTimeout(timeout);
-
-        try {
-          const response = JSON.parse(data.toString().trim());
-          resolve(response);
-        } catch (e) {
-          reject(new Error("Invalid JSON response from Java service"));
-        }
-      };
+      const pending = { resolve, reject, onProgress, timeout: null };
+      this.armTimeout(id, pending);
 
-      this.javaService.stdout.once("data", onData);
-      this.javaService.stdin.write(request + "\n");
+      this.pendingRequests.set(id, pending);
+      this.javaService.stdin.write(this.framed ? encodeFrame(request) : JSON.stringify(request) + "\n");
     });
   }
 
   async callJavaProcess(className, args = []) {
     return new Promise((resolve, reject) => {
-      const javaPath = path.join(__dirname, "..", "java");
-      const classpath = path.join(javaPath, "target", "classes") + ":" + path.join(javaPath, "target", "*");
-
       const javaProcess = spawn("java", [
-        "-cp", classpath,
+        ...javaLaunchArgs(),
         className,
         ...args
       ], {
@@ -223,15 +1168,64 @@ class GephiMCPServer {
     });
   }
 
-  async loadGraph(filePath, format) {
-    const result = await this.callJavaService("load_graph", { filePath, format: format || "auto" });
+  async loadGraph(options = {}) {
+    const result = await this.callJavaService("load_graph", { ...options, format: options.format || "auto" });
+
+    if (result.success) {
+      return {
+        content: [
+          {
+            type: "text",
+            text: `Graph loaded successfully into session "${result.session}": ${result.nodeCount} nodes, ${result.edgeCount} edges${result.fromCache ? " (from snapshot cache)" : ""}${result.positionsRestored ? `, ${result.positionsRestored} positions restored` : ""}`
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async applyForceAtlas2(options = {}, extra = {}) {
+    const progressToken = extra?._meta?.progressToken;
+    const onProgress = progressToken !== undefined && extra.sendNotification
+      ? (event) => extra.sendNotification({
+          method: "notifications/progress",
+          params: {
+            progressToken,
+            progress: event.job.iterations,
+            total: event.job.requestedIterations
+          }
+        })
+      : null;
+
+    const result = await this.callJavaService("apply_force_atlas2", options, onProgress);
+
+    if (result.success) {
+      const text = result.jobId && options.async
+        ? `Force Atlas 2 layout started as job ${result.jobId}`
+        : `Force Atlas 2 layout ${result.status}: ${result.iterations} iterations completed`;
+      return {
+        content: [
+          {
+            type: "text",
+            text
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async jobStatus(jobId) {
+    const result = await this.callJavaService("job_status", jobId ? { jobId } : {});
 
     if (result.success) {
       return {
         content: [
           {
             type: "text",
-            text: `Graph loaded successfully: ${result.nodeCount} nodes, ${result.edgeCount} edges`
+            text: JSON.stringify(result.job || result.jobs, null, 2)
           }
         ]
       };
@@ -240,15 +1234,15 @@ class GephiMCPServer {
     }
   }
 
-  async applyForceAtlas2(options = {}) {
-    const result = await this.callJavaService("apply_force_atlas2", options);
+  async cancelJob(jobId) {
+    const result = await this.callJavaService("cancel_job", { jobId });
 
     if (result.success) {
       return {
         content: [
           {
             type: "text",
-            text: `Force Atlas 2 layout applied: ${result.iterations} iterations completed`
+            text: `${result.message}: ${JSON.stringify(result.job)}`
           }
         ]
       };
@@ -257,33 +1251,341 @@ class GephiMCPServer {
     }
   }
 
-  async getGraphInfo() {
-    const result = await this.callJavaService("get_graph_info");
+  async getGraphInfo(session) {
+    const result = await this.callJavaService("get_graph_info", { session });
 
     return {
       content: [
         {
           type: "text",
           text: JSON.stringify({
+            session: result.session,
             nodeCount: result.nodeCount,
             edgeCount: result.edgeCount,
             directed: result.directed,
-            status: result.status
+            status: result.status,
+            version: result.version,
+            stats: result.stats
           }, null, 2)
         }
       ]
     };
   }
 
-  async saveGraph(filePath, format) {
-    const result = await this.callJavaService("save_graph", { filePath, format });
+  async saveGraph(params = {}) {
+    const result = await this.callJavaService("save_graph", params);
+
+    if (result.success) {
+      const files = result.files.map((file) => {
+        const render = file.render
+          ? ` (${file.render.width}x${file.render.height} in ${file.render.strips} strips${file.render.tiles ? `, ${file.render.tiles} pyramid tiles` : ""}, ${file.render.timeMs} ms)`
+          : "";
+        const positions = file.exportId
+          ? ` (${file.delta ? `delta against ${file.baseExportId}` : "full"}, export ${file.exportId})`
+          : "";
+        return `${file.filePath}${file.cached ? " (cached)" : ""}${render}${positions}`;
+      });
+      return {
+        content: [
+          {
+            type: "text",
+            text: `Graph saved successfully to ${files.join(", ")}`
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async mutateGraph(batch = {}) {
+    const result = await this.callJavaService("mutate_graph", batch);
+
+    if (result.success) {
+      return {
+        content: [
+          {
+            type: "text",
+            text: `Graph updated to version ${result.version}: +${result.nodesAdded}/-${result.nodesRemoved} nodes, +${result.edgesAdded}/-${result.edgesRemoved} edges, ${result.nodesUpdated + result.edgesUpdated} updated (${result.nodeCount} nodes, ${result.edgeCount} edges)`
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async computeStatistics(options = {}) {
+    const result = await this.callJavaService("compute_statistics", options);
+
+    if (result.success) {
+      return {
+        content: [
+          {
+            type: "text",
+            text: JSON.stringify({
+              session: result.session,
+              nodeCount: result.nodeCount,
+              edgeCount: result.edgeCount,
+              metrics: result.metrics
+            }, null, 2)
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async detectCommunities(options = {}) {
+    const result = await this.callJavaService("detect_communities", options);
+
+    if (result.success) {
+      return {
+        content: [
+          {
+            type: "text",
+            text: `Found ${result.communityCount} communities (modularity ${result.modularity.toFixed(4)}, ${result.levels} levels) in ${result.timeMs} ms; largest sizes: ${result.largestCommunities.join(", ")}`
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async runQuery(operation, params = {}) {
+    const result = await this.callJavaService(operation, params);
+
+    if (result.success) {
+      return {
+        content: [
+          {
+            type: "text",
+            text: JSON.stringify({
+              nodeCount: result.nodeCount,
+              edgeCount: result.edgeCount,
+              truncated: result.truncated,
+              view: result.view,
+              nodes: result.nodes,
+              edges: result.edges
+            }, null, 2)
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async filterGraph(params = {}) {
+    const result = await this.callJavaService("filter", params);
+
+    if (result.success) {
+      return {
+        content: [
+          {
+            type: "text",
+            text: `View "${result.view}" active: ${result.nodeCount} of ${result.totalNodeCount} nodes, ${result.edgeCount} of ${result.totalEdgeCount} edges (nodes after each step: ${result.remainingAfterStep.join(" -> ")}) in ${result.timeMs} ms`
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async setView(params = {}) {
+    const result = await this.callJavaService("set_view", params);
+
+    if (result.success) {
+      return {
+        content: [
+          {
+            type: "text",
+            text: `${result.message}: ${result.nodeCount} nodes, ${result.edgeCount} edges`
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async spatialQuery(params = {}) {
+    const result = await this.callJavaService("spatial_query", params);
+
+    if (result.success) {
+      const more = result.truncated ? ` (showing ${result.nodes.length})` : "";
+      return {
+        content: [
+          {
+            type: "text",
+            text: `Found ${result.matches} nodes${more} in ${result.timeMicros} µs:\n` +
+              JSON.stringify(result.nodes, null, 2)
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async removeOverlap(params = {}) {
+    const result = await this.callJavaService("remove_overlap", params);
+
+    if (result.success) {
+      let text = `${result.message}: ${result.overlapsBefore} overlapping pairs before, ` +
+        `${result.overlapsRemaining} remaining after ${result.iterations} passes; ` +
+        `moved ${result.movedNodes} nodes (max ${result.maxDisplacement.toFixed(2)}) in ${result.timeMs}ms`;
+      if (result.samplePairs && result.samplePairs.length > 0) {
+        text += `\nSample pairs: ${JSON.stringify(result.samplePairs)}`;
+      }
+      return {
+        content: [
+          {
+            type: "text",
+            text
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async getNodes(params = {}) {
+    const { filePath, ...request } = params;
+    // Without a file the nodes come back as JSON, so only a page of them is fetched
+    if (!filePath && request.limit === undefined) request.limit = 1000;
+
+    const fd = filePath ? fs.openSync(filePath, "w") : null;
+    const index = [];
+    const nodes = [];
+    let fileOffset = 0;
+    let result;
+    try {
+      result = await this.callJavaService("get_nodes", request, (event, payload) => {
+        if (event.event !== "nodes_chunk" || !payload) return;
+        if (fd !== null) {
+          fs.writeSync(fd, payload);
+          index.push({ offset: event.offset, count: event.count, byteOffset: fileOffset, sections: event.sections });
+          fileOffset += payload.length;
+        } else {
+          const columns = event.sections.map((section) => readNodeSection(section, payload, event.count));
+          for (let i = 0; i < event.count; i++) {
+            const node = {};
+            event.sections.forEach((section, c) => { node[section.name] = columns[c][i]; });
+            nodes.push(node);
+          }
+        }
+      });
+    } finally {
+      if (fd !== null) fs.closeSync(fd);
+    }
+
+    if (result.success) {
+      const summary = {
+        nodeCount: result.nodeCount,
+        totalNodes: result.totalNodes,
+        fields: result.fields,
+        columns: result.columns,
+        version: result.version,
+        timeMs: result.timeMs
+      };
+      if (filePath) {
+        summary.filePath = filePath;
+        summary.fileSize = fileOffset;
+        summary.chunks = index;
+      } else {
+        summary.nodes = nodes;
+      }
+      return {
+        content: [
+          {
+            type: "text",
+            text: JSON.stringify(summary, null, 2)
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async runPipeline(params = {}) {
+    // Each finished step sends a progress event, which keeps the request from timing out
+    const result = await this.callJavaService("pipeline", params, () => {});
+
+    if (result.runs) {
+      return {
+        content: [
+          {
+            type: "text",
+            text: JSON.stringify({
+              success: result.success,
+              timeMs: result.timeMs,
+              runs: result.runs
+            }, null, 2)
+          }
+        ],
+        isError: !result.success
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async listSessions() {
+    const result = await this.callJavaService("list_sessions");
+
+    if (result.success) {
+      return {
+        content: [
+          {
+            type: "text",
+            text: JSON.stringify({
+              sessions: result.sessions,
+              heapBudgetBytes: result.heapBudgetBytes
+            }, null, 2)
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async getMetrics(params) {
+    const result = await this.callJavaService("metrics", params);
 
     if (result.success) {
       return {
         content: [
           {
             type: "text",
-            text: `Graph saved successfully to ${filePath}`
+            text: JSON.stringify({
+              since: result.since,
+              operations: result.operations,
+              heap: result.heap
+            }, null, 2)
+          }
+        ]
+      };
+    } else {
+      throw new Error(result.error || result.message);
+    }
+  }
+
+  async closeSession(session) {
+    const result = await this.callJavaService("close_session", { session });
+
+    if (result.success) {
+      return {
+        content: [
+          {
+            type: "text",
+            text: result.message
           }
         ]
       };
@@ -310,6 +1612,11 @@ class GephiMCPServer {
     const transport = new StdioServerTransport();
     await this.server.connect(transport);
     console.error("Gephi Toolkit MCP Server running on stdio");
+
+    // Start and warm the JVM now rather than on the first tool call
+    if (process.env.GEPHI_MCP_LAZY_START !== "1") {
+      this.startJavaService().catch((error) => console.error("Java service failed to start:", error.message));
+    }
   }
 }
 